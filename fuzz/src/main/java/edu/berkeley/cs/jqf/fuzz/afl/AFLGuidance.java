@@ -47,10 +47,12 @@ import edu.berkeley.cs.jqf.fuzz.guidance.Guidance;
 import edu.berkeley.cs.jqf.fuzz.guidance.GuidanceException;
 import edu.berkeley.cs.jqf.fuzz.guidance.Result;
 import edu.berkeley.cs.jqf.fuzz.guidance.TimeoutException;
+import edu.berkeley.cs.jqf.fuzz.util.Coverage;
+import edu.berkeley.cs.jqf.fuzz.util.CoverageShards;
 import edu.berkeley.cs.jqf.fuzz.util.Hashing;
-import edu.berkeley.cs.jqf.instrument.tracing.events.BranchEvent;
-import edu.berkeley.cs.jqf.instrument.tracing.events.CallEvent;
+import edu.berkeley.cs.jqf.instrument.tracing.SingleSnoop;
 import edu.berkeley.cs.jqf.instrument.tracing.events.TraceEvent;
+import janala.instrument.CoverageListener;
 
 
 /**
@@ -87,6 +89,12 @@ public class AFLGuidance implements Guidance {
     /** The bits that will be communicated to the AFL proxy. */
     protected ByteBuffer feedback;
 
+    /** Per-thread coverage from the instrumentation probes. */
+    private final CoverageShards coverageShards = new CoverageShards();
+
+    /** Coverage counts for the current run, hashed into the trace bits when it ends. */
+    protected final Coverage runCoverage = new Coverage();
+
     /** A temporary holding the opened input file stream during a run. */
     private InputStream inputFileStream;
 
@@ -96,7 +104,10 @@ public class AFLGuidance implements Guidance {
     /** Date when last run was started. */
     private Date runStart;
 
-    /** Number of conditional jumps since last run was started. */
+    /** The thread that runs the trials, which is the only one that times them out. */
+    private volatile Thread fuzzingThread;
+
+    /** Number of conditional jumps since last run was started; only touched by the fuzzing thread. */
     private long branchCount;
 
     /** Flag that is set if the current run exceeds time limit. */
@@ -119,6 +130,21 @@ public class AFLGuidance implements Guidance {
         this.proxyOutput = new BufferedOutputStream(new FileOutputStream(outPipe));
         this.feedback = ByteBuffer.allocate(FEEDBACK_BUFFER_SIZE);
         this.feedback.order(ByteOrder.LITTLE_ENDIAN);
+        SingleSnoop.setCoverageListener(new CoverageListener() {
+            @Override
+            public void logCoverage(int iid, int arm) {
+                coverageShards.logCoverage(iid, arm);
+                // Other threads may not belong to the trial, and must not be the ones to throw
+                if (Thread.currentThread() == fuzzingThread) {
+                    checkForTimeout();
+                }
+            }
+
+            @Override
+            public void registerThread(Thread thread) {
+                coverageShards.registerThread(thread);
+            }
+        });
 
         // Try to parse the single-run timeout
         String timeout = System.getProperty("jqf.afl.TIMEOUT");
@@ -185,9 +211,12 @@ public class AFLGuidance implements Guidance {
 
         try {
             this.inputFileStream = new BufferedInputStream(new FileInputStream(this.inputFile));
+            this.fuzzingThread = Thread.currentThread();
             this.runStart = new Date();
             this.branchCount = 0;
             this.timeoutHasOccurred = false;
+            runCoverage.clear();
+            coverageShards.startTrial();
             return this.inputFileStream;
         } catch (IOException e) {
             throw new GuidanceException(e);
@@ -261,6 +290,10 @@ public class AFLGuidance implements Guidance {
         // Reset the feedback buffer for a new run
         clearFeedbackBuffer();
 
+        // Hash the coverage of this run into the trace bits
+        coverageShards.mergeInto(runCoverage);
+        runCoverage.forEachCount(this::recordCoverage);
+
         // Set at least one tracebit so that AFL doesn't complain about
         // no instrumentation
         traceBits[0] = traceBits[0] == 0 ? 1 : traceBits[0];
@@ -345,40 +378,49 @@ public class AFLGuidance implements Guidance {
     }
 
     /**
-     * Records branch coverage by snooping on branch events
-     * and incrementing the branch-specific counter in
-     * the tracebits map.
+     * Handles a trace event.
+     *
+     * <p>Branch coverage does not come from trace events but from
+     * the instrumentation probes (see {@link #recordCoverage(int, int)}),
+     * so this does nothing by default.</p>
      *
      * @param e  the trace event to handle
      */
     protected void handleEvent(TraceEvent e) {
-        if (e instanceof BranchEvent) {
-            BranchEvent b = (BranchEvent) e;
-            // Map branch IID to [1, MAP_SIZE); the odd bound also reduces collisions
-            int edgeId = 1 + Hashing.hash1(b.getIid(), b.getArm(), COVERAGE_MAP_SIZE-1);
-
-            // Increment the 8-bit branch counter
-            incrementTraceBits(edgeId);
-
-            // Check for possible timeouts every so often
-            if (this.singleRunTimeoutMillis > 0 &&
-                    this.runStart != null && (++this.branchCount) % 10_000 == 0) {
-                long elapsed = new Date().getTime() - runStart.getTime();
-                if (elapsed > this.singleRunTimeoutMillis) {
-                    timeoutHasOccurred = true;
-                    throw new TimeoutException(elapsed, this.singleRunTimeoutMillis);
-                }
-            }
-
-        } else if (e instanceof CallEvent) {
 
-            // Map IID to [1, MAP_SIZE]; the odd bound also reduces collisions
-            int edgeId = 1 + Hashing.hash(e.getIid(), COVERAGE_MAP_SIZE-1);
+    }
 
-            // Increment the 8-bit branch counter
-            incrementTraceBits(edgeId);
+    /**
+     * Checks for possible timeouts every so often.
+     *
+     * <p>This is called on every coverage probe that the fuzzing
+     * thread (the one that called {@link #getInput()}) hits, so that
+     * the timeout is thrown into the trial itself.</p>
+     */
+    protected void checkForTimeout() {
+        if (this.singleRunTimeoutMillis > 0 &&
+                this.runStart != null && (++this.branchCount) % 10_000 == 0) {
+            long elapsed = new Date().getTime() - runStart.getTime();
+            if (elapsed > this.singleRunTimeoutMillis) {
+                timeoutHasOccurred = true;
+                throw new TimeoutException(elapsed, this.singleRunTimeoutMillis);
+            }
         }
+    }
+
+    /**
+     * Records the coverage of one branch for the run that just ended,
+     * by adding its hit count to its counter in the tracebits map.
+     *
+     * @param key    the coverage key of the branch
+     * @param count  the number of times it was hit during the run
+     */
+    protected void recordCoverage(int key, int count) {
+        // Map coverage key to [1, MAP_SIZE); the odd bound also reduces collisions
+        int edgeId = 1 + Hashing.hash(key, COVERAGE_MAP_SIZE-1);
 
+        // Increment the 8-bit branch counter
+        incrementTraceBits(edgeId, count);
     }
 
     /**
@@ -392,6 +434,18 @@ public class AFLGuidance implements Guidance {
         traceBits[index]++;
     }
 
+    /**
+     * Adds to the 8-bit counter at given index.
+     *
+     * <p>Overflows are possible but ignored (as in AFL).
+     *
+     * @param index the key in the trace bits map
+     * @param delta the amount to add
+     */
+    protected void incrementTraceBits(int index, int delta) {
+        traceBits[index] += delta;
+    }
+
 
     /** Clears the feedback buffer by resetting it to zero. */
     protected void clearFeedbackBuffer() {
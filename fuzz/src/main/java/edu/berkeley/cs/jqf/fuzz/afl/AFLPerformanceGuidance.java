@@ -44,7 +44,6 @@ import edu.berkeley.cs.jqf.fuzz.util.Counter;
 import edu.berkeley.cs.jqf.fuzz.util.Hashing;
 import edu.berkeley.cs.jqf.fuzz.util.MapOfCounters;
 import edu.berkeley.cs.jqf.instrument.tracing.events.AllocEvent;
-import edu.berkeley.cs.jqf.instrument.tracing.events.BranchEvent;
 import edu.berkeley.cs.jqf.instrument.tracing.events.CallEvent;
 import edu.berkeley.cs.jqf.instrument.tracing.events.ReadEvent;
 import edu.berkeley.cs.jqf.instrument.tracing.events.ReturnEvent;
@@ -139,24 +138,24 @@ public class AFLPerformanceGuidance extends AFLGuidance {
     private PrintWriter scores = new PrintWriter(new FileOutputStream("scores.log"), true);
 
     @Override
-    protected void handleEvent(TraceEvent e) {
-        //trace.println(e.toString());
-        if (e instanceof BranchEvent) {
-            BranchEvent b = (BranchEvent) e;
-
-            // Map branch IID to first half of the tracebits map (excluding 0)
-            int edgeId = 1 + Hashing.hash1(b.getIid(), b.getArm(), (COVERAGE_MAP_SIZE/2) - 1);
+    protected void recordCoverage(int key, int count) {
+        // Map coverage key to first half of the tracebits map (excluding 0)
+        int edgeId = 1 + Hashing.hash(key, (COVERAGE_MAP_SIZE/2) - 1);
 
-            // Increment the 8-bit branch counter
-            incrementTraceBits(edgeId);
+        // Increment the 8-bit branch counter
+        incrementTraceBits(edgeId, count);
 
-            // Increment the fine-grained branch counter
-            branchCounts.increment(edgeId);
+        // Increment the fine-grained branch counter
+        branchCounts.increment(edgeId, count);
 
-            // Increment the total branch count (holds max 16 bits)
-            totalBranchCount++;
+        // Increment the total branch count (holds max 16 bits)
+        totalBranchCount += count;
+    }
 
-        } else if (e instanceof ReadEvent) {
+    @Override
+    protected void handleEvent(TraceEvent e) {
+        //trace.println(e.toString());
+        if (e instanceof ReadEvent) {
             ReadEvent read = (ReadEvent) e;
             if (perfFeedbackType == PerfFeedbackType.REDUNDANCY_SCORES) {
                 // Get memory location that was accessed
@@ -172,12 +171,6 @@ public class AFLPerformanceGuidance extends AFLGuidance {
         } else if (e instanceof CallEvent) {
             // Push to calling context
             callingContext.push((CallEvent) e);
-
-            // Map branch IID to first half of the tracebits map (excluding 0)
-            int edgeId = 1 + Hashing.hash(e.getIid(), (COVERAGE_MAP_SIZE/2) - 1);
-
-            // Increment the 8-bit counter
-            incrementTraceBits(edgeId);
         } else if (e instanceof ReturnEvent) {
             // Pop from calling context
             callingContext.pop();
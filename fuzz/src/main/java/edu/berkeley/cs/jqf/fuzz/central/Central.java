@@ -37,7 +37,7 @@ public class Central {
         ServerSocket ss = new ServerSocket(PORT);
 
         ZestWorker zest = null;
-        KnarrWorker knarr = null;
+        boolean knarrConnected = false;
 
         Properties props = new Properties();
         String outputDirectoryName = args.length > 0 ? args[0] : "fuzz-results";
@@ -101,34 +101,39 @@ public class Central {
             ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(s.getInputStream()));
 
             Type t = (Type) ois.readObject();
+            try {
+                WireProtocol.readHandshake(ois);
+                WireProtocol.writeHandshake(oos);
+                oos.flush();
+            } catch (IOException e) {
+                System.err.println("Rejecting " + t + " connection: " + e.getMessage());
+                s.close();
+                continue;
+            }
             switch (t) {
 
                 case Knarr:
-                    if (knarr != null) {
-                        s.close();
-                    } else {
-                        knarr = new KnarrWorker(ois, oos, c);
-                        c.setKnarrWorker(knarr, zest);
-                    }
+                    c.addKnarrWorker(ois, oos, zest);
+                    knarrConnected = true;
                     break;
                 case Zest_Initial:
                     if (zest != null) {
                         s.close();
                     }
                     else {
+                        WireProtocol.Encoder encoder = new WireProtocol.Encoder();
                         if (config.triggerZ3) {
-                            oos.writeObject(config.triggerZ3SampleWindow);
-                            oos.writeObject(config.triggerZ3SampleThreshold);
-                            oos.flush();
-
+                            encoder.writeBoolean(true);
+                            encoder.writeInt(config.triggerZ3SampleWindow);
+                            encoder.writeDouble(config.triggerZ3SampleThreshold);
                         } else {
-                            oos.writeObject(null);
-                            oos.writeObject(null);
-                            oos.flush();
+                            encoder.writeBoolean(false);
                         }
+                        encoder.sendTo(oos);
+                        oos.flush();
 
                         zest = new ZestWorker(ois, oos, c);
-                        if(knarr != null && c.zest == null){
+                        if(knarrConnected && c.zest == null){
                             c.zest = zest;
                         }
                         new Thread(zest, "CONFETTI Zest Worker").start();
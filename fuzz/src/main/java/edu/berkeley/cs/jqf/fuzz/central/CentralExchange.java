@@ -0,0 +1,197 @@
+package edu.berkeley.cs.jqf.fuzz.central;
+
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance;
+import edu.berkeley.cs.jqf.fuzz.guidance.RecordingInputStream;
+import edu.berkeley.cs.jqf.fuzz.guidance.Result;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+/**
+ * Talks to Central on behalf of ZestGuidance so that the fuzzing thread never waits on the socket.
+ *
+ * New inputs are encoded on the fuzzing thread and queued; a background thread sends them, and polls Central for
+ * recommendations, Z3 inputs and score updates, dropping the answers into a local mailbox. Hints for every recommended
+ * input are fetched as soon as Central recommends it, before the input is reported to the fuzzer, so by the time Zest
+ * picks that parent its hints are already here. If Central goes away, the mailbox simply stays empty and Zest carries
+ * on fuzzing by itself.
+ */
+public class CentralExchange implements Runnable {
+    /* How long the exchange thread waits between polls of Central for recommendations, Z3 inputs and score updates */
+    private static final int POLL_INTERVAL = Integer.getInteger("confetti.centralPollMillis", 500);
+    /* How many Z3 inputs to fetch ahead of the fuzzer asking for them */
+    private static final int Z3_PREFETCH = Integer.getInteger("confetti.z3Prefetch", 16);
+
+    /**
+     * Everything Central sends back for one selected input
+     */
+    public static class Hints {
+        public final LinkedList<int[]> instructions;
+        public final LinkedList<Coordinator.StringHint[]> stringEqualsHints;
+        public final HashSet<Coordinator.TargetedHint> targetedHints;
+
+        Hints(LinkedList<int[]> instructions, LinkedList<Coordinator.StringHint[]> stringEqualsHints, HashSet<Coordinator.TargetedHint> targetedHints) {
+            this.instructions = instructions;
+            this.stringEqualsHints = stringEqualsHints;
+            this.targetedHints = targetedHints;
+        }
+    }
+
+    private final ZestClient client;
+    private final boolean fetchScoreUpdates;
+
+    /* Only used from the fuzzing thread */
+    private final WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+
+    /* Guards everything below */
+    private final Object lock = new Object();
+    private final LinkedList<byte[]> outbox = new LinkedList<>();
+    private final LinkedList<Coordinator.Input> z3Inputs = new LinkedList<>();
+    private final LinkedList<Integer> recommendations = new LinkedList<>();
+    private final IntObjectHashMap<Hints> hints = new IntObjectHashMap<>();
+    private final LinkedList<Coordinator.Input> scoreUpdates = new LinkedList<>();
+    private boolean connected = true;
+    private boolean z3InputsRunningLow = true;
+
+    public CentralExchange(ZestClient client, boolean fetchScoreUpdates) {
+        this.client = client;
+        this.fetchScoreUpdates = fetchScoreUpdates;
+        Thread t = new Thread(this, "CONFETTI Central Exchange");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void sendInput(RecordingInputStream.MarkedInput recorded, Result result, ZestGuidance.Input input, double coveragePercentage, long totalExecutions) throws IOException {
+        byte[] frame = ZestClient.encodeInput(encoder, recorded, result, input, coveragePercentage, totalExecutions);
+        synchronized (lock) {
+            if (!connected)
+                return;
+            outbox.add(frame);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the next input that Z3 generated, or null if none has arrived yet
+     */
+    public Coordinator.Input pollZ3Input() {
+        synchronized (lock) {
+            Coordinator.Input ret = z3Inputs.poll();
+            if (ret != null && z3Inputs.size() < Z3_PREFETCH / 2) {
+                z3InputsRunningLow = true;
+                lock.notifyAll();
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * @return the inputs that Central has recommended since the last call; their hints are ready in pollHints
+     */
+    public LinkedList<Integer> pollRecommendations() {
+        synchronized (lock) {
+            LinkedList<Integer> ret = new LinkedList<>(recommendations);
+            recommendations.clear();
+            return ret;
+        }
+    }
+
+    /**
+     * @return the hints for this input, or null if Central has not sent any (or they were already taken)
+     */
+    public Hints pollHints(int inputID) {
+        synchronized (lock) {
+            return hints.remove(inputID);
+        }
+    }
+
+    public LinkedList<Coordinator.Input> pollScoreUpdates() {
+        synchronized (lock) {
+            LinkedList<Coordinator.Input> ret = new LinkedList<>(scoreUpdates);
+            scoreUpdates.clear();
+            return ret;
+        }
+    }
+
+    public boolean isConnected() {
+        synchronized (lock) {
+            return connected;
+        }
+    }
+
+    @Override
+    public void run() {
+        long nextPoll = 0;
+        try {
+            while (true) {
+                byte[] frame;
+                boolean poll;
+                boolean refill;
+                synchronized (lock) {
+                    long now = System.currentTimeMillis();
+                    while (outbox.isEmpty() && now < nextPoll && !z3InputsRunningLow) {
+                        lock.wait(nextPoll - now);
+                        now = System.currentTimeMillis();
+                    }
+                    frame = outbox.poll();
+                    poll = now >= nextPoll;
+                    refill = z3InputsRunningLow || poll;
+                    if (frame == null)
+                        z3InputsRunningLow = false;
+                }
+                if (frame != null) {
+                    client.sendFrame(frame);
+                    continue; //Send everything that is queued before asking for anything back
+                }
+                if (refill)
+                    fillZ3Inputs();
+                if (poll) {
+                    fetchRecommendations();
+                    if (fetchScoreUpdates) {
+                        LinkedList<Coordinator.Input> updates = client.fetchScoreUpdates();
+                        synchronized (lock) {
+                            scoreUpdates.addAll(updates);
+                        }
+                    }
+                    nextPoll = System.currentTimeMillis() + POLL_INTERVAL;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Lost connection to central, continuing without it");
+            e.printStackTrace();
+        } finally {
+            synchronized (lock) {
+                connected = false;
+                outbox.clear();
+            }
+        }
+    }
+
+    private void fillZ3Inputs() throws IOException {
+        while (true) {
+            synchronized (lock) {
+                if (z3Inputs.size() >= Z3_PREFETCH)
+                    return;
+            }
+            Coordinator.Input in = client.fetchZ3Input();
+            if (in == null)
+                return;
+            synchronized (lock) {
+                z3Inputs.add(in);
+            }
+        }
+    }
+
+    private void fetchRecommendations() throws IOException {
+        for (Integer id : client.fetchRecommendations()) {
+            client.selectInput(id);
+            Hints h = new Hints(client.receiveInstructions(), client.receiveStringEqualsHints(), client.receiveTargetedHints());
+            synchronized (lock) {
+                hints.put(id, h);
+                recommendations.add(id);
+            }
+        }
+    }
+}
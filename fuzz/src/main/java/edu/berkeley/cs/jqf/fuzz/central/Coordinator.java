@@ -17,6 +17,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeoutException;
 import java.util.function.BinaryOperator;
 import java.util.regex.Matcher;
@@ -37,8 +41,11 @@ public class Coordinator implements Runnable {
     private HashMap<Integer, Set<Branch>> seenBranches = new HashMap<>();
 
     private ConcurrentHashMap<Input, ConstraintRepresentation> constraints = new ConcurrentHashMap<>();
-    private KnarrWorker knarr;
+    private final KnarrWorkerPool knarr;
+    private boolean knarrConnected; //Guarded by inputs
     private RemoteZ3WorkerFacade z3;
+    private ExecutorService z3Pool; //Only used if we are configured for more than one solver thread
+    private Semaphore z3Permits;
     ZestWorker zest;
 
     protected Boolean z3Started = false;
@@ -47,11 +54,23 @@ public class Coordinator implements Runnable {
 
     public Coordinator(Config config) {
         this.config = config;
+        this.knarr = new KnarrWorkerPool(config);
+        if (config.z3Threads > 1) {
+            this.z3Permits = new Semaphore(config.z3Threads);
+            this.z3Pool = Executors.newFixedThreadPool(config.z3Threads, new ThreadFactory() {
+                private int n;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CONFETTI Z3 Solver " + (n++));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
     }
 
 
-    protected LinkedList<Input> inputsToSendToKnarr = new LinkedList<>(); //Only used if knarr is not initialized
-
     protected final void foundInput(int id, RecordingInputStream.MarkedInput recording, boolean valid, LinkedList<StringHint[]> hints, LinkedList<int[]> instructions, LinkedList<TargetedHint> targetedHints, Double coveragePercentage, long numExecutions, Integer score) {
         Input in = new Input();
         in.bytes = recording.getBytesRead();
@@ -63,27 +82,11 @@ public class Coordinator implements Runnable {
         in.numExecutions = numExecutions;
         in.score = score;
         in.isValid = valid;
-        in.requestsForRandom = new int[recording.getMarks().length * 2];
-        int i = 0;
-        for (int k = 0; k < recording.getMarks().length; k++) {
-            int mark = recording.getMarks()[k];
-            int len = recording.getMarkLength(k);
-            in.requestsForRandom[i] = mark;
-            i++;
-            in.requestsForRandom[i] = len;
-            i++;
-        }
+        in.requestsForRandom = recording.getRuns();
         in.targetedHints = new HashSet<>(targetedHints);
 
-        if(this.knarr != null){
-            try {
-                knarr.sendInputToKnarr(in);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        } else{
-            this.inputsToSendToKnarr.add(in);
-        }
+        //Queued until some Knarr process is free to take it
+        knarr.sendInputToKnarr(in);
 
         synchronized (this.inputs){
             this.inputs.put(in.id, in);
@@ -254,7 +257,7 @@ public class Coordinator implements Runnable {
         HashMap<Integer, TreeSet<Integer>> lastRecommendation = new HashMap<>();
 
         synchronized (this.inputs) {
-            while (this.knarr == null) {
+            while (!this.knarrConnected) {
                 try {
                     this.inputs.wait();
                 } catch (InterruptedException e) {
@@ -263,14 +266,12 @@ public class Coordinator implements Runnable {
             }
         }
         while (true) {
-            if (this.knarr != null) {
-                //TODO can this be safely deleted now?
-                // if for some reason z3 isn't started, start it here
-                if (config.usez3Hints && !z3Started) {
-                    if (this.z3 == null)
-                        this.z3 = new RemoteZ3WorkerFacade();
-                    startZ3Thread();
-                }
+            //TODO can this be safely deleted now?
+            // if for some reason z3 isn't started, start it here
+            if (config.usez3Hints && !z3Started) {
+                if (this.z3 == null)
+                    this.z3 = new RemoteZ3WorkerFacade(config.z3WorkerPoolSize);
+                startZ3Thread();
             }
 
             int n = 0;
@@ -414,24 +415,23 @@ public class Coordinator implements Runnable {
         }
     }
 
-    public final void setKnarrWorker(KnarrWorker knarr, ZestWorker zest) {
+    /**
+     * Attach another Knarr process. Any number may connect; they all pull from the same queue of inputs.
+     */
+    public final void addKnarrWorker(ObjectInputStream ois, ObjectOutputStream oos, ZestWorker zest) {
         synchronized (this.inputs) {
-            this.knarr = knarr;
-            this.knarr.setConfig(config);
-            this.zest = zest;
+            new KnarrWorker(ois, oos, this.knarr);
+            if (this.knarrConnected)
+                return;
+            this.knarrConnected = true;
+            if (this.zest == null)
+                this.zest = zest;
 
             if (config.usez3Hints) {
-                this.z3 = new RemoteZ3WorkerFacade();
+                this.z3 = new RemoteZ3WorkerFacade(config.z3WorkerPoolSize);
                 startZ3Thread();
             }
             this.inputs.notifyAll();
-            while(!this.inputsToSendToKnarr.isEmpty()){
-                try {
-                    this.knarr.sendInputToKnarr(this.inputsToSendToKnarr.pop());
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
         }
 
     }
@@ -506,7 +506,7 @@ public class Coordinator implements Runnable {
                             .filter(b -> !triedTops.contains(b))
                             .filter(b -> isInWhitelist(b.source))
                             .filter(b -> !b.isSolved && !b.isTimedOut)
-                            .reduce(BinaryOperator.minBy(Comparator.comparingInt(o -> o.inputsTried.size())));
+                            .reduce(BinaryOperator.minBy(Comparator.comparingInt(Branch::numInputsTried)));
 
                     if (!maybeTop.isPresent()) {
                         RemoteZ3WorkerFacade.appendToLogFile((int) num, "",0,0,0,0,"NO_BRANCHES");
@@ -526,67 +526,41 @@ public class Coordinator implements Runnable {
                     triedTops.add(top);
                     if (!maybeInputToTarget.isPresent()) {
                         //System.out.println("Z3 couldn't find an input to target for " + branchToTarget);
-                        RemoteZ3WorkerFacade.appendToLogFile((int) num, top.source,0,top.inputsTried.size(),0,0,"NO_INPUTS");
+                        RemoteZ3WorkerFacade.appendToLogFile((int) num, top.source,0,top.numInputsTried(),0,0,"NO_INPUTS");
                         continue;
                     }
 
-                    long start = System.currentTimeMillis();
                     //System.out.println("Targeting: " + branchToTarget);
                     inputToTarget = maybeInputToTarget.get();
-                    top.inputsTried.add(inputToTarget.id);
+                    synchronized (top) {
+                        top.inputsTried.add(inputToTarget.id);
+                        if (top.inputsTried.size() > BRANCH_SOLVES_TIMEOUT) {
+                            top.isTimedOut = true;
+                        }
+                    }
 
 
                     hadWork = true;
 
-                    try {
-                        if (top.isSwitch()) {
-                            //Try to target each of the arms that haven't been yet fully covered
-                            for (int i = 0; i < top.armsSolved.length; i++) {
-                                if (!top.armsSolved[i]) {
-                                    Z3Worker.Target target = new Z3Worker.Target(inputToTarget, top, i, inputToTarget.bytes, constraints.get(inputToTarget).getExpressions(), perByteStringEqualsHints.get(inputToTarget.id));
-                                    Optional<Coordinator.Input> newInput = z3.exploreTarget(target);
-
-                                    RemoteZ3WorkerFacade.appendToLogFile((int) num, top.source + "_arm" + i, top.getInputsStillUseful().size(), top.inputsTried.size(), inputToTarget.id, (int) (System.currentTimeMillis() - start), newInput.isPresent() ? "SAT" : "UNSAT");
-
-                                    // Handle result
-                                    if (newInput.isPresent()) {
-                                        //System.out.println("Z3 found new input for " + inputToTarget.id + " " + target.branch.source);
-                                        zest.addInputFromZ3(newInput.get(), inputToTarget);
-                                    }
-                                }
-                            }
-                        } else {
-                            Z3Worker.Target target = new Z3Worker.Target(inputToTarget, top, inputToTarget.bytes, constraints.get(inputToTarget).getExpressions(), perByteStringEqualsHints.get(inputToTarget.id));
-                            Optional<Coordinator.Input> newInput = z3.exploreTarget(target);
-                            RemoteZ3WorkerFacade.appendToLogFile((int) num, top.source,top.getInputsStillUseful().size(),top.inputsTried.size(),inputToTarget.id, (int) (System.currentTimeMillis() - start),newInput.isPresent() ? "SAT" : "UNSAT");
-
-                            // Handle result
-                            if (newInput.isPresent()) {
-                                //System.out.println("Z3 found new input for " + inputToTarget.id + " " + target.branch.source);
-                                zest.addInputFromZ3(newInput.get(), inputToTarget);
+                    // Read the constraints once, they are shared by each of the arms that we target
+                    LinkedList<Expression> cs = constraints.get(inputToTarget).getExpressions();
+                    HashMap<Integer, HashSet<StringHint>> hints;
+                    synchronized (perByteStringEqualsHints) {
+                        hints = perByteStringEqualsHints.get(inputToTarget.id);
+                    }
+                    if (top.isSwitch()) {
+                        //Try to target each of the arms that haven't been yet fully covered
+                        for (int i = 0; i < top.armsSolved.length; i++) {
+                            if (inputToTarget.evicted)
+                                break; //An earlier arm timed out on this input
+                            if (!top.armsSolved[i]) {
+                                Z3Worker.Target target = new Z3Worker.Target(inputToTarget, top, i, inputToTarget.bytes, cs, hints);
+                                submitTarget(target, top.source + "_arm" + i, (int) num);
                             }
                         }
-
-                    } catch (TimeoutException ex) {
-                        RemoteZ3WorkerFacade.appendToLogFile((int) num, top.source,top.getInputsStillUseful().size(),top.inputsTried.size(),inputToTarget.id, (int) (System.currentTimeMillis() - start), "TIMEOUT");
-
-                        ex.printStackTrace();
-                        if (top != null && top.trueExplored != null)
-                            top.trueExplored.remove(inputToTarget.id);
-                        if (top != null && top.falseExplored != null)
-                            top.falseExplored.remove(inputToTarget.id);
-                        ConstraintRepresentation cr = constraints.get(inputToTarget);
-                        long bytes = 0;
-                        if (cr != null)
-                            bytes = cr.destroy();
-                        inputToTarget.evicted = true;
-                        for (Branch b : this.branches.values()) {
-                            b.evict(inputToTarget.id);
-                        }
-                        System.err.println("Evicted " + bytes + " of constraints for input #" + inputToTarget.id);
-                    }
-                    if (top.inputsTried.size() > BRANCH_SOLVES_TIMEOUT) {
-                        top.isTimedOut = true;
+                    } else {
+                        Z3Worker.Target target = new Z3Worker.Target(inputToTarget, top, inputToTarget.bytes, cs, hints);
+                        submitTarget(target, top.source, (int) num);
                     }
                 }
             }catch(Throwable t){
@@ -596,6 +570,72 @@ public class Coordinator implements Runnable {
         }
     }
 
+    /**
+     * Solves a target on the Z3 thread pool, or right here if we are only configured for one solver thread.
+     * With a pool, this blocks until one of the solver threads is free, so that we never pick more targets than we
+     * can work on at once.
+     */
+    private void submitTarget(Z3Worker.Target target, String branchName, int numBranchesUnsolved) throws InterruptedException {
+        if (z3Pool == null) {
+            solveTarget(target, branchName, numBranchesUnsolved);
+            return;
+        }
+        z3Permits.acquire();
+        if (target.branch.isSolved || target.originalInput.evicted) {
+            //Solved by another input while we were waiting for a slot
+            z3Permits.release();
+            return;
+        }
+        z3Pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!target.originalInput.evicted)
+                        solveTarget(target, branchName, numBranchesUnsolved);
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                } finally {
+                    z3Permits.release();
+                }
+            }
+        });
+    }
+
+    private void solveTarget(Z3Worker.Target target, String branchName, int numBranchesUnsolved) {
+        Branch top = target.branch;
+        Input inputToTarget = target.originalInput;
+        long start = System.currentTimeMillis();
+        try {
+            Optional<Coordinator.Input> newInput = z3.exploreTarget(target);
+            RemoteZ3WorkerFacade.appendToLogFile(numBranchesUnsolved, branchName, top.getInputsStillUseful().size(), top.numInputsTried(), inputToTarget.id, (int) (System.currentTimeMillis() - start), newInput.isPresent() ? "SAT" : "UNSAT");
+
+            // Handle result
+            if (newInput.isPresent()) {
+                //System.out.println("Z3 found new input for " + inputToTarget.id + " " + target.branch.source);
+                zest.addInputFromZ3(newInput.get(), inputToTarget);
+            }
+        } catch (TimeoutException ex) {
+            RemoteZ3WorkerFacade.appendToLogFile(numBranchesUnsolved, branchName, top.getInputsStillUseful().size(), top.numInputsTried(), inputToTarget.id, (int) (System.currentTimeMillis() - start), "TIMEOUT");
+
+            ex.printStackTrace();
+            synchronized (top) {
+                if (top.trueExplored != null)
+                    top.trueExplored.remove(inputToTarget.id);
+                if (top.falseExplored != null)
+                    top.falseExplored.remove(inputToTarget.id);
+            }
+            ConstraintRepresentation cr = constraints.get(inputToTarget);
+            long bytes = 0;
+            if (cr != null)
+                bytes = cr.destroy();
+            inputToTarget.evicted = true;
+            for (Branch b : this.branches.values()) {
+                b.evict(inputToTarget.id);
+            }
+            System.err.println("Evicted " + bytes + " of constraints for input #" + inputToTarget.id);
+        }
+    }
+
     private long lastGC = 0;
     private void garbageCollect(){
         long start = System.currentTimeMillis();
@@ -1120,7 +1160,8 @@ public class Coordinator implements Runnable {
         transient boolean isInFilter;
 
 
-        public boolean isUsefulInputForNegation(Input input) {
+        /** Reads the branch under its lock, as the Z3 threads update it while the next target is picked */
+        public synchronized boolean isUsefulInputForNegation(Input input) {
             if (input == null || input.evicted)
                 return false;
             if (!this.isSwitch()) {
@@ -1135,6 +1176,9 @@ public class Coordinator implements Runnable {
                 return false;
             }
         }
+        public synchronized int numInputsTried() {
+            return this.inputsTried == null ? 0 : this.inputsTried.size();
+        }
         public boolean isSwitch(){
             return this.armsExplored != null;
         }
@@ -1247,7 +1291,7 @@ public class Coordinator implements Runnable {
             return ret;
         }
 
-        public void evict(int inputID){
+        public synchronized void evict(int inputID){
             if(this.isSwitch()){
                 for(int i = 0; i < this.armsExplored.length; i++){
                     this.armsExplored[i].remove(inputID);
@@ -1299,6 +1343,10 @@ public class Coordinator implements Runnable {
 
         public final boolean usez3Hints;
 
+        public final int z3WorkerPoolSize; // Number of persistent Z3 processes to keep warm; 0 starts a new process per target
+
+        public final int z3Threads; // Number of targets to solve concurrently
+
         public final boolean doNotUseHints;
 
         public final String constraintsPath;
@@ -1342,6 +1390,8 @@ public class Coordinator implements Runnable {
                 constraintsPath = p.getProperty("constraintsPath");
                 useConstraints = (p.getProperty("useConstraints") != null);
                 usez3Hints = (p.getProperty("usez3Hints") != null);
+                z3WorkerPoolSize = Integer.parseInt(p.getProperty("z3Workers", "0"));
+                z3Threads = Integer.parseInt(p.getProperty("z3Threads", "1"));
 
                 triggerZ3 = (p.getProperty("triggerZ3") != null);
 
@@ -1406,13 +1456,13 @@ public class Coordinator implements Runnable {
             }
         }
 
-        public LinkedList<Expression> getExpressions() {
+        public synchronized LinkedList<Expression> getExpressions() {
             if(evicted)
                 return new LinkedList<Expression>();
             return this.expr != null ? this.expr : readConstraintsFromFile();
         }
 
-        public long destroy() {
+        public synchronized long destroy() {
             long ret = 0;
             if (this.exprFile != null) {
                 Path p = Paths.get(this.exprFile);
@@ -19,27 +19,28 @@ public class KnarrClient extends Central {
          * WARNING: after constraintSender thread starts, oos should ONLY be used from that thread!
          */
         oos.writeObject(Type.Knarr);
+        WireProtocol.writeHandshake(oos);
         oos.flush();
+        WireProtocol.readHandshake(ois);
         constraintSender = new ConstraintSendingThread();
         constraintSender.setDaemon(true);
         constraintSender.start();
 
     }
     public Coordinator.Input getInput() throws IOException {
-        try {
-            Coordinator.Input ret = new Coordinator.Input();
-            ret.bytes = (byte[]) ois.readObject();
-            ret.hints = (LinkedList<Coordinator.StringHint[]>) ois.readObject();
-            ret.instructions = (LinkedList<int[]>) ois.readObject();
-            ret.targetedHints = (HashSet<Coordinator.TargetedHint>) ois.readObject();
-            ret.id = ois.readInt();
-            ret.isValid = ois.readBoolean();
-            return ret;
-        } catch (ClassNotFoundException e) {
-            throw new Error(e);
-        }
+        decoder.readFrom(ois);
+        Coordinator.Input ret = new Coordinator.Input();
+        ret.bytes = decoder.readByteArray();
+        ret.hints = decoder.readHints();
+        ret.instructions = decoder.readInstructions();
+        ret.targetedHints = decoder.readTargetedHints(new HashSet<>());
+        ret.id = decoder.readInt();
+        ret.isValid = decoder.readBoolean();
+        return ret;
     }
 
+    private final WireProtocol.Decoder decoder = new WireProtocol.Decoder();
+
     private ConstraintSerializer constraintSerializer = new ConstraintSerializer();
 
     public void sendConstraints(int inputID, LinkedList<Expression> constraints, HashMap<String, String> generatedStrings) throws IOException {
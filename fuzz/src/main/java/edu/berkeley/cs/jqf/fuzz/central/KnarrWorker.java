@@ -4,6 +4,7 @@ import edu.gmu.swe.knarr.ConstraintDeserializer;
 import edu.gmu.swe.knarr.runtime.StringUtils;
 import org.apache.commons.io.input.TeeInputStream;
 import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.io.output.ProxyOutputStream;
 import za.ac.sun.cs.green.expr.*;
 
 import java.io.*;
@@ -11,26 +12,16 @@ import java.util.*;
 import java.util.zip.GZIPOutputStream;
 
 public class KnarrWorker extends Worker {
-    private ArrayList<LinkedList<byte[]>> inputs = new ArrayList<>();
-    private ArrayList<Integer> fuzzing = new ArrayList<>();
-    private Coordinator c;
+    private static int nextID;
 
-    private LinkedList<KnarrResponse> responses = new LinkedList<>();
+    final int id;
+    private final KnarrWorkerPool pool;
     private ConstraintReceivingThread constraintReceivingThread;
     private KnarrSendingThread knarrSendingThread;
 
-    public static int numOutstandingKnarrInputs = 0;
-    private LinkedList<Coordinator.Input> pendingInputsNotSentYet = new LinkedList<>();
-
-    private Coordinator.Config config;
-
-    public void setConfig(Coordinator.Config config) {
-        this.config = config;
-        if (this.config.useConstraints && this.config.constraintsPath != null) {
-            File dir = new File(this.config.constraintsPath);
-            dir.mkdirs();
-        }
-    }
+    /* Inputs sent to this Knarr process that it has not yet answered, oldest first. Guarded by the pool's queue */
+    private final LinkedList<Coordinator.Input> outstanding = new LinkedList<>();
+    private boolean alive = true;
 
     /**
      * Encapsulates what we get back from Knarr to describe an input
@@ -47,79 +38,85 @@ public class KnarrWorker extends Worker {
             this.generatedStrings = generatedStrings;
         }
     }
-    public KnarrWorker(ObjectInputStream ois, ObjectOutputStream oos, Coordinator c) {
+    public KnarrWorker(ObjectInputStream ois, ObjectOutputStream oos, KnarrWorkerPool pool) {
         super(ois, oos);
+        synchronized (KnarrWorker.class) {
+            this.id = nextID++;
+        }
+        this.pool = pool;
+        pool.addWorker(this);
         constraintReceivingThread = new ConstraintReceivingThread();
         constraintReceivingThread.setDaemon(true);
         constraintReceivingThread.start();
         knarrSendingThread = new KnarrSendingThread();
         knarrSendingThread.setDaemon(true);
         knarrSendingThread.start();
-
-        this.c = c;
     }
 
     ConstraintDeserializer deserializer = new ConstraintDeserializer();
-    static final int KNARR_MAX_QUEUE_SIZE = 5; // maximum number of outstanding requests to knarr permitted
+    static final int KNARR_MAX_QUEUE_SIZE = 5; // maximum number of outstanding requests to each knarr process permitted
     // this controls how much might get queued in that process. once we overflow this, we queue in this process.
 
-    public synchronized void sendInputToKnarr(Coordinator.Input input) throws IOException {
-        synchronized (this.pendingInputsNotSentYet){
-            this.pendingInputsNotSentYet.add(input);
-            this.pendingInputsNotSentYet.notifyAll();
+    /**
+     * The connection to this Knarr process is gone. Hand whatever it was still working on back to the pool.
+     */
+    private void die(Throwable cause) {
+        LinkedList<Coordinator.Input> unfinished;
+        synchronized (pool.pendingInputsNotSentYet) {
+            if (!alive)
+                return;
+            alive = false;
+            unfinished = new LinkedList<>(outstanding);
+            outstanding.clear();
+            pool.pendingInputsNotSentYet.notifyAll();
         }
-    }
-
-    public KnarrResponse getConstraintsFromKnarr(){
-        synchronized (responses){
-            while(responses.isEmpty()){
-                try {
-                    responses.wait();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-            return responses.pop();
+        cause.printStackTrace();
+        try {
+            ois.close();
+        } catch (IOException e) {
+            //Already gone
+        }
+        try {
+            oos.close();
+        } catch (IOException e) {
+            //Already gone
         }
+        pool.removeWorker(this, unfinished);
     }
+
     class KnarrSendingThread extends Thread {
+        private final WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+
         public KnarrSendingThread(){
-            super("Knarr-ConstraintSender");
+            super("Knarr-ConstraintSender-" + id);
         }
 
         @Override
         public void run() {
+            LinkedList<Coordinator.Input> pendingInputsNotSentYet = pool.pendingInputsNotSentYet;
             while(true){
+                Coordinator.Input input = null;
                 try{
                     synchronized (pendingInputsNotSentYet) {
-                        while (pendingInputsNotSentYet.isEmpty()) {
+                        while (alive && (pendingInputsNotSentYet.isEmpty() || outstanding.size() >= KNARR_MAX_QUEUE_SIZE)) {
                             pendingInputsNotSentYet.wait();
                         }
+                        if (!alive)
+                            return;
+                        input = pendingInputsNotSentYet.pop();
+                        outstanding.add(input);
                     }
-                    synchronized (responses) {
-                        while (numOutstandingKnarrInputs >= KNARR_MAX_QUEUE_SIZE) {
-                            responses.wait();
-                        }
-                    }
-                    Coordinator.Input input = null;
-                    synchronized (pendingInputsNotSentYet){
-                        if(!pendingInputsNotSentYet.isEmpty()){
-                            input = pendingInputsNotSentYet.pop();
-                        }
-                    }
-                    if (input != null) {
-                        oos.writeObject(input.bytes);
-                        oos.writeObject(input.hints);
-                        oos.writeObject(input.instructions);
-                        oos.writeObject(input.targetedHints);
-                        oos.writeInt(input.id);
-                        oos.writeBoolean(input.isValid);
-                        oos.reset();
-                        oos.flush();
-                        synchronized (responses) {
-                            numOutstandingKnarrInputs++;
-                        }
-                    }
+                    encoder.writeByteArray(input.bytes);
+                    encoder.writeHints(input.hints);
+                    encoder.writeInstructions(input.instructions);
+                    encoder.writeTargetedHints(input.targetedHints);
+                    encoder.writeInt(input.id);
+                    encoder.writeBoolean(input.isValid);
+                    encoder.sendTo(oos);
+                    oos.flush();
+                } catch (IOException ex) {
+                    die(ex);
+                    return;
                 } catch (Throwable tr) {
                     tr.printStackTrace();
                 }
@@ -128,56 +125,98 @@ public class KnarrWorker extends Worker {
     }
     class ConstraintReceivingThread extends Thread {
         public ConstraintReceivingThread(){
-            super("Knarr-ConstraintReceiver");
+            super("Knarr-ConstraintReceiver-" + id);
         }
 
         @Override
         public void run() {
             while (true) {
+                int inputID;
                 try {
-                    // Get constraints from Knarr process
-                    LinkedList<Expression> constraints;
-
-                    int inputID = ois.readInt();
-                    OutputStream fileOrNull = NullOutputStream.NULL_OUTPUT_STREAM;
-                    String filename = null;
-                    if (config.useConstraints && config.constraintsPath != null) {
-                        filename = config.constraintsPath + "/input_" + inputID;
-                        try {
-                            fileOrNull = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
-                        } catch (FileNotFoundException e) {
-                            e.printStackTrace();
-                        } catch (IOException e) {
-                            e.printStackTrace();
+                    inputID = ois.readInt();
+                } catch (IOException ex) {
+                    //The Knarr process crashed or hung up: the other workers pick up its inputs
+                    die(ex);
+                    return;
+                }
+                KnarrResponse response;
+                try {
+                    response = receive(inputID);
+                } catch (Throwable tr) {
+                    //Responses are not length-prefixed, so there is no finding the start of the next one: treat
+                    //this as a crash, and the other workers pick up this input too
+                    die(tr);
+                    return;
+                }
+                synchronized (pool.pendingInputsNotSentYet) {
+                    for (Iterator<Coordinator.Input> iter = outstanding.iterator(); iter.hasNext(); ) {
+                        if (iter.next().id == inputID) {
+                            iter.remove();
+                            break;
                         }
                     }
+                    pool.pendingInputsNotSentYet.notifyAll();
+                }
+                pool.addResponse(response);
+            }
+        }
 
-                    TeeInputStream tis = new TeeInputStream(ois, fileOrNull);
-                    constraints = deserializer.fromInputStream(tis);
-                    fileOrNull.close();
-                    int nEntries = ois.readInt();
-                    HashMap<String, String> generatedStrings = new HashMap<>();
-                    for (int i = 0; i < nEntries; i++) {
-                        generatedStrings.put(ois.readUTF(), ois.readUTF());
-                    }
+        /**
+         * Reads the rest of the response for an input from the Knarr process.
+         */
+        private KnarrResponse receive(int inputID) throws IOException {
+            Coordinator.Config config = pool.config;
+            // Get constraints from Knarr process
+            LinkedList<Expression> constraints;
+
+            OutputStream fileOrNull = NullOutputStream.NULL_OUTPUT_STREAM;
+            String filename = null;
+            if (config.useConstraints && config.constraintsPath != null) {
+                filename = config.constraintsPath + "/input_" + inputID;
+                fileOrNull = openConstraintsFile(filename);
+            }
+
+            try {
+                TeeInputStream tis = new TeeInputStream(ois, fileOrNull);
+                constraints = deserializer.fromInputStream(tis);
+            } finally {
+                fileOrNull.close();
+            }
+            int nEntries = ois.readInt();
+            HashMap<String, String> generatedStrings = new HashMap<>();
+            for (int i = 0; i < nEntries; i++) {
+                generatedStrings.put(ois.readUTF(), ois.readUTF());
+            }
 
-                    KnarrResponse response = new KnarrResponse(inputID, constraints, generatedStrings);
+            KnarrResponse response = new KnarrResponse(inputID, constraints, generatedStrings);
 
-                    response.fileName = filename;
-                    synchronized (responses) {
-                        responses.add(response);
-                        numOutstandingKnarrInputs--;
-                        responses.notifyAll();
+            response.fileName = filename;
+            return response;
+        }
+    }
+
+    /**
+     * Opens a file to copy constraints to. If the file cannot be written, the copy is given up on
+     * instead of failing the read that it is teed from.
+     */
+    private static OutputStream openConstraintsFile(String filename) {
+        try {
+            return new ProxyOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+                @Override
+                protected void handleIOException(IOException e) {
+                    e.printStackTrace();
+                    OutputStream file = out;
+                    out = NullOutputStream.NULL_OUTPUT_STREAM;
+                    try {
+                        file.close();
+                    } catch (IOException ex) {
+                        //Already reported
                     }
-                }catch(EOFException ex){
-                    ex.printStackTrace();
-                    System.exit(-1);
-                    return;
-                } catch (Throwable tr) {
-                    tr.printStackTrace();
-                    System.exit(-1);
                 }
-            }
+            };
+        } catch (IOException e) {
+            e.printStackTrace();
+            return NullOutputStream.NULL_OUTPUT_STREAM;
         }
     }
 
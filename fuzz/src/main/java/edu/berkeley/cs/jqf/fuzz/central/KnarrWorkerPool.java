@@ -0,0 +1,82 @@
+package edu.berkeley.cs.jqf.fuzz.central;
+
+import java.io.File;
+import java.util.LinkedList;
+
+/**
+ * Spreads inputs over every Knarr process that is connected to central, and funnels their constraints back into
+ * the single Coordinator.process loop.
+ *
+ * Inputs wait in one shared queue. Each KnarrWorker pulls from it whenever it has fewer than KNARR_MAX_QUEUE_SIZE
+ * inputs outstanding, so an idle Knarr process takes the next input while a busy one keeps its backlog bounded. If a
+ * Knarr process dies, the inputs that it was still working on go back to the front of the queue for the others.
+ */
+public class KnarrWorkerPool {
+    final LinkedList<Coordinator.Input> pendingInputsNotSentYet = new LinkedList<>();
+    private final LinkedList<KnarrWorker.KnarrResponse> responses = new LinkedList<>();
+    private final LinkedList<KnarrWorker> workers = new LinkedList<>();
+
+    final Coordinator.Config config;
+
+    public KnarrWorkerPool(Coordinator.Config config) {
+        this.config = config;
+        if (this.config.useConstraints && this.config.constraintsPath != null) {
+            File dir = new File(this.config.constraintsPath);
+            dir.mkdirs();
+        }
+    }
+
+    public void sendInputToKnarr(Coordinator.Input input) {
+        synchronized (pendingInputsNotSentYet) {
+            pendingInputsNotSentYet.add(input);
+            pendingInputsNotSentYet.notifyAll();
+        }
+    }
+
+    public KnarrWorker.KnarrResponse getConstraintsFromKnarr() {
+        synchronized (responses) {
+            while (responses.isEmpty()) {
+                try {
+                    responses.wait();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+            return responses.pop();
+        }
+    }
+
+    void addResponse(KnarrWorker.KnarrResponse response) {
+        synchronized (responses) {
+            responses.add(response);
+            responses.notifyAll();
+        }
+    }
+
+    void addWorker(KnarrWorker worker) {
+        synchronized (workers) {
+            workers.add(worker);
+            System.out.println("Knarr worker #" + worker.id + " connected, " + workers.size() + " active");
+        }
+    }
+
+    /**
+     * Called once a worker's connection is gone: whatever it had not answered yet is handed to the other workers
+     */
+    void removeWorker(KnarrWorker worker, LinkedList<Coordinator.Input> unfinished) {
+        synchronized (pendingInputsNotSentYet) {
+            pendingInputsNotSentYet.addAll(0, unfinished);
+            pendingInputsNotSentYet.notifyAll();
+        }
+        synchronized (workers) {
+            workers.remove(worker);
+            System.err.println("Knarr worker #" + worker.id + " disconnected, re-queued " + unfinished.size() + " inputs, " + workers.size() + " still active");
+        }
+    }
+
+    public int getNumWorkers() {
+        synchronized (workers) {
+            return workers.size();
+        }
+    }
+}
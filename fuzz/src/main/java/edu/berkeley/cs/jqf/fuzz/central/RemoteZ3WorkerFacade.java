@@ -4,8 +4,13 @@ import za.ac.sun.cs.green.service.z3.Z3JavaTranslator;
 
 import java.io.*;
 import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -16,9 +21,43 @@ import java.util.concurrent.TimeoutException;
  * Making the coordinator fault tolerant to segfaults is an unpleasant activity. But, at the same time, most calls into Z3
  * take seconds to get an answer to, and we do not store any shared state in Z3 to reuse between calls. So, now Z3 sits in a separate
  * process, invoked on demand, but this shim.
+ *
+ * Starting a fresh JVM for every target costs hundreds of milliseconds of startup and classloading, so the facade can
+ * also keep a pool of warm Z3Worker processes, each connected back to us over a loopback socket. A pooled worker that
+ * crashes or stops answering is killed and replaced, without disturbing the other workers in the pool.
  */
 public class RemoteZ3WorkerFacade {
     static final int MARGIN_FOR_SERIALIZATION = 5000; //Extra time to wait for process to finish
+    static final int WORKER_STARTUP_TIMEOUT = 60000; //Time to wait for a pooled worker to connect back to us
+
+    /**
+     * Number of persistent worker processes to keep, or 0 to spawn a new process for every target
+     */
+    private final int poolSize;
+    private final LinkedList<PooledWorker> idleWorkers = new LinkedList<>();
+    private final LinkedList<PooledWorker> allWorkers = new LinkedList<>();
+    private int numLiveWorkers;
+    private int nextWorkerID;
+    private int workerRestarts;
+
+    public RemoteZ3WorkerFacade() {
+        this(0);
+    }
+
+    public RemoteZ3WorkerFacade(int poolSize) {
+        this.poolSize = poolSize;
+        if (poolSize > 0) {
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (RemoteZ3WorkerFacade.this) {
+                        for (PooledWorker w : allWorkers)
+                            w.destroy();
+                    }
+                }
+            }));
+        }
+    }
 
     private static void appendSystemPropertyIfDefined(String prop, LinkedList<String> list) {
         String s = System.getProperty(prop);
@@ -28,27 +67,32 @@ public class RemoteZ3WorkerFacade {
     }
 
     static PrintWriter statsLogger;
+    static PrintWriter workerStatsLogger;
 
     static {
         String z3StatsFile = System.getProperty("z3StatsLog");
         if (z3StatsFile != null) {
             try {
                 statsLogger = new PrintWriter(new BufferedWriter(new FileWriter(z3StatsFile)));
+                workerStatsLogger = new PrintWriter(new BufferedWriter(new FileWriter(z3StatsFile + ".workers")));
                 Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
                     @Override
                     public void run() {
                         if (statsLogger != null)
                             statsLogger.close();
+                        if (workerStatsLogger != null)
+                            workerStatsLogger.close();
                     }
                 }));
                 statsLogger.println("time,numBranchesUnsolved,selectedBranch,numInputsNotTried,selectedInput,timeSpent,result");
+                workerStatsLogger.println("time,worker,solveTime,result,workerSolves,workerRestarts");
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
     }
 
-    public static void appendToLogFile(int numBranchesUnsolved, String selectedBranch, int numInputsNotTried, int numInputsTried, int selectedInput, int timeSpent, String result) {
+    public static synchronized void appendToLogFile(int numBranchesUnsolved, String selectedBranch, int numInputsNotTried, int numInputsTried, int selectedInput, int timeSpent, String result) {
 
         if (statsLogger != null) {
             statsLogger.println(String.format("%d,%d,%s,%d,%d,%d,%d,%s",
@@ -62,7 +106,58 @@ public class RemoteZ3WorkerFacade {
         }
     }
 
+    /**
+     * Records the latency of a single solve, along with the number of times we have had to replace a worker.
+     * Workers are numbered from 0 in pooled mode; -1 denotes a process started for just this one target.
+     */
+    public static void appendToWorkerLogFile(int workerID, int solveTime, String result, int workerSolves, int workerRestarts) {
+        if (workerStatsLogger != null) {
+            synchronized (workerStatsLogger) {
+                workerStatsLogger.println(String.format("%d,%d,%d,%s,%d,%d",
+                        System.currentTimeMillis(),
+                        workerID, solveTime, result, workerSolves, workerRestarts
+                ));
+                workerStatsLogger.flush();
+            }
+        }
+    }
+
+    private static LinkedList<String> z3WorkerCommand() {
+        String separator = System.getProperty("file.separator");
+        String classpath = System.getProperty("java.class.path");
+        String path = System.getProperty("java.home")
+                + separator + "bin" + separator + "java";
+        LinkedList<String> z3Args = new LinkedList<>();
+        z3Args.add(path);
+        z3Args.add("-cp");
+        z3Args.add(classpath);
+        z3Args.add("-Xmx1g");
+        z3Args.add("-Xss16m");
+        appendSystemPropertyIfDefined("java.library.path", z3Args);
+        appendSystemPropertyIfDefined("Z3_timeout", z3Args);
+        appendSystemPropertyIfDefined("Z3_INCREMENTAL", z3Args);
+        z3Args.add("edu.berkeley.cs.jqf.fuzz.central.Z3Worker");
+        return z3Args;
+    }
+
     public Optional<Coordinator.Input> exploreTarget(Z3Worker.Target target) throws TimeoutException {
+        if (poolSize > 0)
+            return exploreTargetOnPooledWorker(target);
+        long start = System.currentTimeMillis();
+        String result = "CRASH";
+        try {
+            Optional<Coordinator.Input> ret = exploreTargetInNewProcess(target);
+            result = ret.isPresent() ? "SAT" : "UNSAT";
+            return ret;
+        } catch (TimeoutException ex) {
+            result = "TIMEOUT";
+            throw ex;
+        } finally {
+            appendToWorkerLogFile(-1, (int) (System.currentTimeMillis() - start), result, 1, 0);
+        }
+    }
+
+    private Optional<Coordinator.Input> exploreTargetInNewProcess(Z3Worker.Target target) throws TimeoutException {
         try {
             Path inputToZ3Worker = Files.createTempFile("knarr_z3_input", ".ser");
             Path outputFromZ3Worker = Files.createTempFile("knarr_z3_output", ".ser");
@@ -71,19 +166,7 @@ public class RemoteZ3WorkerFacade {
             oos.writeObject(target);
             oos.close();
 
-            String separator = System.getProperty("file.separator");
-            String classpath = System.getProperty("java.class.path");
-            String path = System.getProperty("java.home")
-                    + separator + "bin" + separator + "java";
-            LinkedList<String> z3Args = new LinkedList<>();
-            z3Args.add(path);
-            z3Args.add("-cp");
-            z3Args.add(classpath);
-            z3Args.add("-Xmx1g");
-            z3Args.add("-Xss16m");
-            appendSystemPropertyIfDefined("java.library.path", z3Args);
-            appendSystemPropertyIfDefined("Z3_timeout", z3Args);
-            z3Args.add("edu.berkeley.cs.jqf.fuzz.central.Z3Worker");
+            LinkedList<String> z3Args = z3WorkerCommand();
             z3Args.add(inputToZ3Worker.toAbsolutePath().toString());
             z3Args.add(outputFromZ3Worker.toAbsolutePath().toString());
             ProcessBuilder pb = new ProcessBuilder(z3Args);
@@ -98,10 +181,7 @@ public class RemoteZ3WorkerFacade {
                     e.printStackTrace();
                 }
                 if (proc.isAlive()) {
-                    long pid = getPidOfProcess(proc);
-                    if (pid > 0) {
-                        Runtime.getRuntime().exec(new String[]{"kill", "-9", "" + pid});
-                    }
+                    killProcess(proc);
                     throw new TimeoutException("Z3 Process didn't finish in time");
                 }
                 if (proc.exitValue() != 0) {
@@ -135,6 +215,170 @@ public class RemoteZ3WorkerFacade {
         return Optional.empty();
     }
 
+    private Optional<Coordinator.Input> exploreTargetOnPooledWorker(Z3Worker.Target target) throws TimeoutException {
+        PooledWorker worker = borrowWorker(target.originalInput.id);
+        boolean healthy = false;
+        String result = "CRASH";
+        long start = System.currentTimeMillis();
+        try {
+            worker.socket.setSoTimeout(Z3JavaTranslator.timeoutMS + MARGIN_FOR_SERIALIZATION);
+            worker.oos.writeObject(target);
+            worker.oos.flush();
+            worker.oos.reset();
+            byte status = worker.ois.readByte();
+            worker.solves++;
+            switch (status) {
+                case Z3Worker.RESULT_SAT:
+                    worker.lastInputID = target.originalInput.id;
+                    Coordinator.Input ret = (Coordinator.Input) worker.ois.readObject();
+                    healthy = true;
+                    result = "SAT";
+                    return Optional.of(ret);
+                case Z3Worker.RESULT_UNSAT:
+                    worker.lastInputID = target.originalInput.id;
+                    healthy = true;
+                    result = "UNSAT";
+                    return Optional.empty();
+                case Z3Worker.RESULT_TIMEOUT:
+                    //The worker itself gave up in time, so it is still usable
+                    healthy = true;
+                    result = "TIMEOUT";
+                    throw new TimeoutException("Z3 timed out on worker #" + worker.id);
+                default:
+                    throw new IOException("Unexpected response from Z3 worker: " + status);
+            }
+        } catch (SocketTimeoutException ex) {
+            result = "HUNG";
+            throw new TimeoutException("Z3 worker #" + worker.id + " didn't finish in time");
+        } catch (IOException | ClassNotFoundException ex) {
+            ex.printStackTrace();
+            throw new TimeoutException("Z3 worker #" + worker.id + " failed: " + ex);
+        } finally {
+            int restarts;
+            synchronized (this) {
+                if (healthy) {
+                    idleWorkers.add(worker);
+                } else {
+                    retireWorker(worker);
+                }
+                restarts = workerRestarts;
+                this.notifyAll();
+            }
+            appendToWorkerLogFile(worker.id, (int) (System.currentTimeMillis() - start), result, worker.solves, restarts);
+        }
+    }
+
+    /**
+     * Takes an idle worker from the pool, starting a new one if we have not yet reached the pool size,
+     * and otherwise waiting for another solve to finish. We prefer a worker that last solved for the same input,
+     * since with Z3_INCREMENTAL it still has that input's path condition loaded.
+     */
+    private PooledWorker borrowWorker(int inputID) throws TimeoutException {
+        int id;
+        synchronized (this) {
+            while (idleWorkers.isEmpty() && numLiveWorkers >= poolSize) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (!idleWorkers.isEmpty()) {
+                for (Iterator<PooledWorker> iter = idleWorkers.iterator(); iter.hasNext(); ) {
+                    PooledWorker w = iter.next();
+                    if (w.lastInputID == inputID) {
+                        iter.remove();
+                        return w;
+                    }
+                }
+                return idleWorkers.pop();
+            }
+            numLiveWorkers++;
+            id = nextWorkerID++;
+        }
+        try {
+            PooledWorker worker = new PooledWorker(id);
+            synchronized (this) {
+                allWorkers.add(worker);
+            }
+            return worker;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            synchronized (this) {
+                numLiveWorkers--;
+                this.notifyAll();
+            }
+            throw new TimeoutException("Unable to start Z3 worker: " + ex);
+        }
+    }
+
+    /**
+     * Kills a worker that crashed or hung; a fresh one will be started the next time that the pool runs dry.
+     * Caller must hold the lock on this.
+     */
+    private void retireWorker(PooledWorker worker) {
+        worker.destroy();
+        allWorkers.remove(worker);
+        numLiveWorkers--;
+        workerRestarts++;
+    }
+
+    /**
+     * A Z3Worker process that stays alive between targets, reading them from a socket that it opens back to us.
+     */
+    static class PooledWorker {
+        final int id;
+        final Process proc;
+        final Socket socket;
+        final ObjectOutputStream oos;
+        final ObjectInputStream ois;
+        int solves;
+        int lastInputID = -1;
+
+        PooledWorker(int id) throws IOException {
+            this.id = id;
+            try (ServerSocket ss = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                ss.setSoTimeout(WORKER_STARTUP_TIMEOUT);
+                LinkedList<String> z3Args = z3WorkerCommand();
+                z3Args.add(Z3Worker.SERVER_MODE);
+                z3Args.add(String.valueOf(ss.getLocalPort()));
+                this.proc = new ProcessBuilder(z3Args).inheritIO().start();
+                try {
+                    this.socket = ss.accept();
+                    socket.setTcpNoDelay(true);
+                    this.oos = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    oos.flush();
+                    this.ois = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+                } catch (IOException ex) {
+                    killProcess(proc);
+                    throw ex;
+                }
+            }
+        }
+
+        void destroy() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            killProcess(proc);
+        }
+    }
+
+    static void killProcess(Process proc) {
+        long pid = getPidOfProcess(proc);
+        if (pid > 0) {
+            try {
+                Runtime.getRuntime().exec(new String[]{"kill", "-9", "" + pid});
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        proc.destroyForcibly();
+    }
+
     public static long getPidOfProcess(Process p) {
         long pid = -1;
 
@@ -0,0 +1,515 @@
+package edu.berkeley.cs.jqf.fuzz.central;
+
+import edu.berkeley.cs.jqf.fuzz.guidance.RecordingInputStream;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Binary encoding for everything that Zest, Central and Knarr send each other.
+ *
+ * Each message is one frame: an int length followed by that many bytes. An Encoder builds a frame in a reusable
+ * buffer and a Decoder reads one back, so nothing is handed to Java serialization and there are no class descriptors
+ * to re-send (or oos.reset() to call) after every message. Branches are written once per frame and referenced by
+ * index afterwards, since the StringHints in one message usually share a handful of Branches.
+ *
+ * Both sides exchange MAGIC and VERSION when they connect; bump VERSION whenever the layout of anything here changes.
+ */
+public final class WireProtocol {
+    public static final int MAGIC = 0x434f4e46; // "CONF"
+    public static final int VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte CHAR_HINT = 1;
+    private static final byte NEW_BRANCH = 1;
+    private static final byte BRANCH_REF = 2;
+
+    private WireProtocol() {
+    }
+
+    public static void writeHandshake(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Reads the other side's handshake, failing if it is not speaking this version of the protocol
+     */
+    public static void readHandshake(DataInput in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC)
+            throw new IOException("Not a CONFETTI peer: expected magic " + Integer.toHexString(MAGIC) + ", got " + Integer.toHexString(magic));
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Peer speaks wire protocol version " + version + ", but this process speaks version " + VERSION);
+    }
+
+    /**
+     * Builds one frame. Write the message with the write* methods, then sendTo the connection; the buffer is then
+     * ready for the next message.
+     */
+    public static class Encoder extends DataOutputStream {
+        private final IdentityHashMap<Coordinator.Branch, Integer> branches = new IdentityHashMap<>();
+
+        public Encoder() {
+            super(new ByteArrayOutputStream(1024));
+        }
+
+        private ByteArrayOutputStream buffer() {
+            return (ByteArrayOutputStream) this.out;
+        }
+
+        public void sendTo(DataOutput connection) throws IOException {
+            ByteArrayOutputStream buf = buffer();
+            connection.writeInt(buf.size());
+            if (connection instanceof OutputStream)
+                buf.writeTo((OutputStream) connection);
+            else
+                connection.write(buf.toByteArray());
+            clear();
+        }
+
+        public byte[] toByteArray() {
+            return buffer().toByteArray();
+        }
+
+        public void clear() {
+            buffer().reset();
+            branches.clear();
+            this.written = 0;
+        }
+
+        public void writeString(String s) throws IOException {
+            if (s == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(b.length);
+            write(b);
+        }
+
+        public void writeByteArray(byte[] b) throws IOException {
+            if (b == null) {
+                writeInt(-1);
+                return;
+            }
+            writeByteArray(b, b.length);
+        }
+
+        /** Writes the first <tt>len</tt> bytes of an array, to be read back by readByteArray */
+        public void writeByteArray(byte[] b, int len) throws IOException {
+            writeInt(len);
+            write(b, 0, len);
+        }
+
+        public void writeInts(int[] a) throws IOException {
+            if (a == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInts(a, a.length);
+        }
+
+        /** Writes the first <tt>len</tt> elements of an array, to be read back by readInts */
+        public void writeInts(int[] a, int len) throws IOException {
+            writeInt(len);
+            for (int i = 0; i < len; i++)
+                writeInt(a[i]);
+        }
+
+        public void writeIntegers(Collection<Integer> c) throws IOException {
+            if (c == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(c.size());
+            for (Integer i : c)
+                writeInt(i);
+        }
+
+        public void writeInstructions(Collection<int[]> instructions) throws IOException {
+            if (instructions == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(instructions.size());
+            for (int[] insn : instructions)
+                writeInts(insn);
+        }
+
+        public void writeHints(Collection<Coordinator.StringHint[]> hints) throws IOException {
+            if (hints == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(hints.size());
+            for (Coordinator.StringHint[] h : hints) {
+                if (h == null) {
+                    writeInt(-1);
+                    continue;
+                }
+                writeInt(h.length);
+                for (Coordinator.StringHint sh : h)
+                    writeStringHint(sh);
+            }
+        }
+
+        public void writeTargetedHints(Collection<? extends Coordinator.TargetedHint> hints) throws IOException {
+            if (hints == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(hints.size());
+            for (Coordinator.TargetedHint h : hints)
+                writeTargetedHint(h);
+        }
+
+        public void writeTargetedHint(Coordinator.TargetedHint h) throws IOException {
+            if (h == null) {
+                writeByte(NULL);
+            } else if (h instanceof Coordinator.CharHint) {
+                writeByte(CHAR_HINT);
+                writeCharHint((Coordinator.CharHint) h);
+            } else {
+                throw new NotSerializableException(h.getClass().getName());
+            }
+        }
+
+        void writeCharHint(Coordinator.CharHint h) throws IOException {
+            writeInt(h.hint);
+            writeByte(h.type == null ? -1 : h.type.ordinal());
+            writeInt(h.positionOfStringInInput);
+            writeInt(h.lengthOfStringInInput);
+            writeInt(h.offsetOfCharInString);
+            writeString(h.originalString);
+        }
+
+        public void writeStringHint(Coordinator.StringHint h) throws IOException {
+            if (h == null) {
+                writeBoolean(false);
+                return;
+            }
+            writeBoolean(true);
+            writeString(h.hint);
+            writeByte(h.type == null ? -1 : h.type.ordinal());
+            writeInt(h.priority);
+            writeBranch(h.targetBranch);
+        }
+
+        public void writeBranch(Coordinator.Branch b) throws IOException {
+            if (b == null) {
+                writeByte(NULL);
+                return;
+            }
+            Integer ref = branches.get(b);
+            if (ref != null) {
+                writeByte(BRANCH_REF);
+                writeInt(ref);
+                return;
+            }
+            branches.put(b, branches.size());
+            writeByte(NEW_BRANCH);
+            writeInt(b.takenID);
+            writeInt(b.notTakenID);
+            writeBoolean(b.result);
+            writeBoolean(b.keep);
+            writeIntegers(b.controllingBytes);
+            writeString(b.source);
+        }
+
+        public void writeStringHintGroup(Coordinator.StringHintGroup g) throws IOException {
+            writeInstructions(g.instructions);
+            writeInt(g.hints.size());
+            for (Coordinator.StringHint h : g.hints)
+                writeStringHint(h);
+        }
+
+        public void writeMarkedInput(RecordingInputStream.MarkedInput in) throws IOException {
+            writeByteArray(in.getBuffer(), in.getLength());
+            writeInts(in.getRunBuffer(), 2 * in.getNumRuns());
+        }
+
+        /**
+         * Writes the same fields as Coordinator.Input.writeExternal; a null Input is allowed
+         */
+        public void writeInput(Coordinator.Input in) throws IOException {
+            if (in == null) {
+                writeBoolean(false);
+                return;
+            }
+            writeBoolean(true);
+            writeInt(in.id);
+            writeByteArray(in.bytes);
+            writeInstructions(in.instructions);
+            writeBoolean(in.recommendedBefore);
+            writeInts(in.requestsForRandom);
+            writeBoolean(in.isNew);
+            writeDouble(in.coveragePercentage);
+            writeLong(in.numExecutions);
+            writeHints(in.hints);
+            writeInt(in.score);
+            writeBoolean(in.isValid);
+            if (in.hintGroups == null) {
+                writeInt(-1);
+            } else {
+                writeInt(in.hintGroups.size());
+                for (Coordinator.StringHintGroup g : in.hintGroups)
+                    writeStringHintGroup(g);
+            }
+            writeTargetedHints(in.targetedHints);
+        }
+    }
+
+    /**
+     * Reads one frame at a time off a connection; the frame buffer is reused from one message to the next.
+     */
+    public static class Decoder extends DataInputStream {
+        private final ArrayList<Coordinator.Branch> branches = new ArrayList<>();
+
+        public Decoder() {
+            super(new FrameInputStream());
+        }
+
+        private FrameInputStream frame() {
+            return (FrameInputStream) this.in;
+        }
+
+        /**
+         * Blocks until the next frame has arrived on the connection
+         */
+        public Decoder readFrom(DataInput connection) throws IOException {
+            int len = connection.readInt();
+            if (len < 0)
+                throw new StreamCorruptedException("Negative frame length " + len);
+            FrameInputStream f = frame();
+            f.ensureCapacity(len);
+            connection.readFully(f.buf(), 0, len);
+            f.load(len);
+            branches.clear();
+            return this;
+        }
+
+        /**
+         * Decode a frame that is already in memory
+         */
+        public Decoder load(byte[] frame) {
+            FrameInputStream f = frame();
+            f.ensureCapacity(frame.length);
+            System.arraycopy(frame, 0, f.buf(), 0, frame.length);
+            f.load(frame.length);
+            branches.clear();
+            return this;
+        }
+
+        public String readString() throws IOException {
+            int len = readInt();
+            if (len == -1)
+                return null;
+            byte[] b = new byte[len];
+            readFully(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        public byte[] readByteArray() throws IOException {
+            int len = readInt();
+            if (len == -1)
+                return null;
+            byte[] b = new byte[len];
+            readFully(b);
+            return b;
+        }
+
+        public int[] readInts() throws IOException {
+            int len = readInt();
+            if (len == -1)
+                return null;
+            int[] a = new int[len];
+            for (int i = 0; i < len; i++)
+                a[i] = readInt();
+            return a;
+        }
+
+        public LinkedList<Integer> readIntegers() throws IOException {
+            int len = readInt();
+            if (len == -1)
+                return null;
+            LinkedList<Integer> ret = new LinkedList<>();
+            for (int i = 0; i < len; i++)
+                ret.add(readInt());
+            return ret;
+        }
+
+        public LinkedList<int[]> readInstructions() throws IOException {
+            int len = readInt();
+            if (len == -1)
+                return null;
+            LinkedList<int[]> ret = new LinkedList<>();
+            for (int i = 0; i < len; i++)
+                ret.add(readInts());
+            return ret;
+        }
+
+        public LinkedList<Coordinator.StringHint[]> readHints() throws IOException {
+            int len = readInt();
+            if (len == -1)
+                return null;
+            LinkedList<Coordinator.StringHint[]> ret = new LinkedList<>();
+            for (int i = 0; i < len; i++) {
+                int n = readInt();
+                if (n == -1) {
+                    ret.add(null);
+                    continue;
+                }
+                Coordinator.StringHint[] h = new Coordinator.StringHint[n];
+                for (int j = 0; j < n; j++)
+                    h[j] = readStringHint();
+                ret.add(h);
+            }
+            return ret;
+        }
+
+        public <C extends Collection<Coordinator.TargetedHint>> C readTargetedHints(C into) throws IOException {
+            int len = readInt();
+            if (len == -1)
+                return null;
+            for (int i = 0; i < len; i++)
+                into.add(readTargetedHint());
+            return into;
+        }
+
+        public Coordinator.TargetedHint readTargetedHint() throws IOException {
+            byte kind = readByte();
+            switch (kind) {
+                case NULL:
+                    return null;
+                case CHAR_HINT:
+                    return readCharHint();
+                default:
+                    throw new StreamCorruptedException("Unknown targeted hint kind " + kind);
+            }
+        }
+
+        Coordinator.CharHint readCharHint() throws IOException {
+            Coordinator.CharHint h = new Coordinator.CharHint();
+            h.hint = readInt();
+            h.type = readHintType();
+            h.positionOfStringInInput = readInt();
+            h.lengthOfStringInInput = readInt();
+            h.offsetOfCharInString = readInt();
+            h.originalString = readString();
+            return h;
+        }
+
+        private Coordinator.HintType readHintType() throws IOException {
+            byte type = readByte();
+            return type == -1 ? null : Coordinator.HintType.values()[type];
+        }
+
+        public Coordinator.StringHint readStringHint() throws IOException {
+            if (!readBoolean())
+                return null;
+            Coordinator.StringHint h = new Coordinator.StringHint();
+            String hint = readString();
+            h.hint = hint == null ? null : hint.intern();
+            h.type = readHintType();
+            h.priority = readInt();
+            h.targetBranch = readBranch();
+            return h;
+        }
+
+        public Coordinator.Branch readBranch() throws IOException {
+            byte kind = readByte();
+            switch (kind) {
+                case NULL:
+                    return null;
+                case BRANCH_REF:
+                    return branches.get(readInt());
+                case NEW_BRANCH:
+                    Coordinator.Branch b = new Coordinator.Branch();
+                    b.takenID = readInt();
+                    b.notTakenID = readInt();
+                    b.result = readBoolean();
+                    b.keep = readBoolean();
+                    LinkedList<Integer> controllingBytes = readIntegers();
+                    if (controllingBytes != null)
+                        b.controllingBytes = new HashSet<>(controllingBytes);
+                    b.source = readString();
+                    branches.add(b);
+                    return b;
+                default:
+                    throw new StreamCorruptedException("Unknown branch kind " + kind);
+            }
+        }
+
+        public Coordinator.StringHintGroup readStringHintGroup() throws IOException {
+            Coordinator.StringHintGroup g = new Coordinator.StringHintGroup();
+            LinkedList<int[]> instructions = readInstructions();
+            if (instructions != null)
+                g.instructions = instructions;
+            int nHints = readInt();
+            for (int i = 0; i < nHints; i++)
+                g.hints.add(readStringHint());
+            return g;
+        }
+
+        public RecordingInputStream.MarkedInput readMarkedInput() throws IOException {
+            byte[] bytes = readByteArray();
+            int[] runs = readInts();
+            return new RecordingInputStream.MarkedInput(bytes, bytes.length, runs, runs.length / 2);
+        }
+
+        /**
+         * Reads an Input back the same way Coordinator.Input.readExternal does: missing lists come back empty,
+         * missing requestsForRandom and targetedHints come back null
+         */
+        public Coordinator.Input readInput() throws IOException {
+            if (!readBoolean())
+                return null;
+            Coordinator.Input in = new Coordinator.Input();
+            in.id = readInt();
+            in.bytes = readByteArray();
+            in.instructions = readInstructions();
+            if (in.instructions == null)
+                in.instructions = new LinkedList<>();
+            in.recommendedBefore = readBoolean();
+            in.requestsForRandom = readInts();
+            in.isNew = readBoolean();
+            in.coveragePercentage = readDouble();
+            in.numExecutions = readLong();
+            in.hints = readHints();
+            if (in.hints == null)
+                in.hints = new LinkedList<>();
+            in.score = readInt();
+            in.isValid = readBoolean();
+            int nHintGroups = readInt();
+            in.hintGroups = new LinkedList<>();
+            for (int i = 0; i < nHintGroups; i++)
+                in.hintGroups.add(readStringHintGroup());
+            in.targetedHints = readTargetedHints(new HashSet<>());
+            return in;
+        }
+    }
+
+    private static class FrameInputStream extends ByteArrayInputStream {
+        FrameInputStream() {
+            super(new byte[1024], 0, 0);
+        }
+
+        byte[] buf() {
+            return buf;
+        }
+
+        void ensureCapacity(int len) {
+            if (buf.length < len)
+                buf = new byte[Math.max(len, buf.length * 2)];
+        }
+
+        void load(int len) {
+            this.pos = 0;
+            this.mark = 0;
+            this.count = len;
+        }
+    }
+}
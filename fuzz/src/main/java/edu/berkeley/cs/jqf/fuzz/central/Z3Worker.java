@@ -17,6 +17,8 @@ import za.ac.sun.cs.green.util.Configuration;
 
 import java.io.*;
 import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.Socket;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
@@ -47,7 +49,19 @@ public class Z3Worker {
         }
     }
 
+    /* Flag to run as a persistent worker, connecting back to the facade's port; see RemoteZ3WorkerFacade */
+    static final String SERVER_MODE = "--server";
+
+    /* Responses sent back to the facade by a persistent worker */
+    static final byte RESULT_UNSAT = 0;
+    static final byte RESULT_SAT = 1;
+    static final byte RESULT_TIMEOUT = 2;
+
     public static void main(String[] args) {
+        if (args.length == 2 && SERVER_MODE.equals(args[0])) {
+            serve(Integer.parseInt(args[1]));
+            return;
+        }
         try {
             ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(args[0])));
             Z3Worker.Target target = (Target) ois.readObject();
@@ -69,8 +83,52 @@ public class Z3Worker {
         }
     }
 
+    /**
+     * Solve targets sent over a socket until the facade hangs up. If Z3 crashes this JVM, or a solve gets stuck,
+     * the facade will kill this process and start over with a fresh one.
+     */
+    private static void serve(int port) {
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            s.setTcpNoDelay(true);
+            ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            oos.flush();
+            ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(s.getInputStream()));
+            Z3Worker worker = new Z3Worker();
+            while (true) {
+                Z3Worker.Target target;
+                try {
+                    target = (Target) ois.readObject();
+                } catch (EOFException ex) {
+                    break;
+                }
+                try {
+                    Optional<Coordinator.Input> maybeInput = worker.exploreTarget(target);
+                    if (maybeInput.isPresent()) {
+                        oos.writeByte(RESULT_SAT);
+                        oos.writeObject(maybeInput.get());
+                    } else {
+                        oos.writeByte(RESULT_UNSAT);
+                    }
+                } catch (TimeoutException ex) {
+                    oos.writeByte(RESULT_TIMEOUT);
+                }
+                oos.flush();
+                oos.reset();
+            }
+            System.exit(0);
+        } catch (Throwable t) {
+            t.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
     private static final int EXTRA_ZEROES_FOR_Z3 = Integer.parseInt(System.getProperty("extraZeroesForZ3", "0"));
 
+    /* Keep the path condition of the last input asserted between targets, see IncrementalSolver */
+    static final boolean INCREMENTAL = Boolean.getBoolean("Z3_INCREMENTAL");
+
+    private IncrementalSolver incremental;
+
     public Z3Worker() {
         data = new Data();
         data.green = new Green();
@@ -210,24 +268,16 @@ public class Z3Worker {
             System.out.println("Trying to use Z3 to get to " + t.branch + (t.arm != -1 ? " arm#" + t.arm : "") + " using input #" + t.originalInput.id);
 
         for (Expression e : t.constraints) {
-            if (e.metadata instanceof Coverage.BranchData) {
-                Coverage.BranchData data = (Coverage.BranchData) e.metadata;
-                if (data.takenCode == t.branch.takenID) {
+            switch (classifyConstraint(e, t)) {
+                case TARGET:
                     targetConstraint = e;
                     break;
-                }
-            } else if (e.metadata instanceof Coverage.SwitchData) {
-                Coverage.SwitchData data = (Coverage.SwitchData) e.metadata;
-                if (data.switchID == t.branch.takenID) {
-                    if (data.arm == t.arm) {
-                        targetConstraint = e;
-                        break;
-                    } else {
-                        continue; //Don't add constraints for other arms.
-                    }
-                }
+                case PATH:
+                    res.put("c" + res.size(), e);
+                    break;
             }
-            res.put("c" + res.size(), e);
+            if (targetConstraint != null)
+                break;
         }
         //Add string function captures
         for(Expression e : createCaptureVariables(t.constraints)){
@@ -241,26 +291,9 @@ public class Z3Worker {
             System.out.println(targetConstraint);
         }
 
-        // If we are negating something like char == 'A', we might end up solving it to char == '\0', which has a special
-        // meaning, and will likely not end up making any sense.
-        try {
-            CharEqualityFindingVisitor v = new CharEqualityFindingVisitor();
-            targetConstraint.accept(v);
-            for (FunctionCall strChar : v.getGeneratorCalls()) {
-                //res.put("c" + res.size(), new BinaryOperation(Operation.Operator.NE, strChar, new IntConstant(0)));
-                res.put("c" + res.size(), new BinaryOperation(Operation.Operator.AND, new BinaryOperation(Operation.Operator.GT, new IntConstant(128), strChar),
-                        new BinaryOperation(Operation.Operator.GT, strChar, new IntConstant(0))));
-
-            }
-        } catch (VisitorException e) {
-            e.printStackTrace();
-        }
-
-        // Negate the target constraint
-        Expression negatedTargetConstraint = new UnaryOperation(Operation.Operator.NOT, targetConstraint);
-
-        // Try to solve it
-        res.put("c" + res.size(), negatedTargetConstraint);
+        // Negate the target constraint, and try to solve it
+        for (Expression e : negationOf(targetConstraint))
+            res.put("c" + res.size(), e);
         ArrayList<AbstractMap.SimpleEntry<String, Object>> sat = new ArrayList<>();
         HashSet<String> unsat = new HashSet<>();
         solve(res, sat, unsat);
@@ -269,27 +302,7 @@ public class Z3Worker {
             if(PRINT_Z3_DEBUG_INFO)
                 System.out.println("Z3 found solution for " + t.branch);
             // Solution found, generate input
-            HashMap<String, byte[]> genFuncs = new HashMap<>();
-            Coordinator.Input ret = new Coordinator.Input();
-            ret.bytes = solutionToInput(sat, genFuncs);
-            Coordinator.StringHintGroup hg = generatorsToHints(res.values(), genFuncs, t.originalInput);
-            if(hg != null){
-                if(ret.hintGroups == null){
-                    ret.hintGroups = new LinkedList<>();
-                }
-                ret.hintGroups.add(hg);
-                if(PRINT_Z3_DEBUG_INFO)
-                    System.out.println(hg);
-            }
-
-            // Add more bytes to maybe explore new paths
-            if (EXTRA_ZEROES_FOR_Z3 > 0) {
-                byte[] bytes = new byte[ret.bytes.length + EXTRA_ZEROES_FOR_Z3];
-                System.arraycopy(ret.bytes, 0, bytes, 0, ret.bytes.length);
-                ret.bytes = bytes;
-            }
-
-            return Optional.of(ret);
+            return Optional.of(buildInput(sat, res.values(), t));
         } else {
             if(PRINT_Z3_DEBUG_INFO) {
                 System.out.println("Z3 failed to solve for " + t.branch + unsat);
@@ -341,25 +354,7 @@ public class Z3Worker {
                             if(PRINT_Z3_DEBUG_INFO)
                                 System.out.println("Z3 found solution after failing w string hack for " + t.branch);
                             // Solution found, generate input
-                            HashMap<String, byte[]> genFuncs = new HashMap<>();
-                            Coordinator.Input ret = new Coordinator.Input();
-                            ret.bytes = solutionToInput(sat, genFuncs);
-                            Coordinator.StringHintGroup hg = generatorsToHints(res.values(), genFuncs, t.originalInput);
-                            if (hg != null) {
-                                if (ret.hintGroups == null) {
-                                    ret.hintGroups = new LinkedList<>();
-                                }
-                                ret.hintGroups.add(hg);
-                            }
-
-                            // Add more bytes to maybe explore new paths
-                            if (EXTRA_ZEROES_FOR_Z3 > 0) {
-                                byte[] bytes = new byte[ret.bytes.length + EXTRA_ZEROES_FOR_Z3];
-                                System.arraycopy(ret.bytes, 0, bytes, 0, ret.bytes.length);
-                                ret.bytes = bytes;
-                            }
-
-                            return Optional.of(ret);
+                            return Optional.of(buildInput(sat, res.values(), t));
                         }else{
                             if(PRINT_Z3_DEBUG_INFO) {
                                 System.out.println("Z3 failed even after string hacking: " + unsat);
@@ -376,6 +371,76 @@ public class Z3Worker {
         }
     }
 
+    private static Coordinator.Input buildInput(ArrayList<AbstractMap.SimpleEntry<String, Object>> sat, Collection<Expression> exps, Target t) {
+        HashMap<String, byte[]> genFuncs = new HashMap<>();
+        Coordinator.Input ret = new Coordinator.Input();
+        ret.bytes = solutionToInput(sat, genFuncs);
+        Coordinator.StringHintGroup hg = generatorsToHints(exps, genFuncs, t.originalInput);
+        if(hg != null){
+            if(ret.hintGroups == null){
+                ret.hintGroups = new LinkedList<>();
+            }
+            ret.hintGroups.add(hg);
+            if(PRINT_Z3_DEBUG_INFO)
+                System.out.println(hg);
+        }
+
+        // Add more bytes to maybe explore new paths
+        if (EXTRA_ZEROES_FOR_Z3 > 0) {
+            byte[] bytes = new byte[ret.bytes.length + EXTRA_ZEROES_FOR_Z3];
+            System.arraycopy(ret.bytes, 0, bytes, 0, ret.bytes.length);
+            ret.bytes = bytes;
+        }
+        return ret;
+    }
+
+    enum ConstraintRole { PATH, TARGET, OTHER_ARM }
+
+    /**
+     * Decides what part a constraint of the original path condition plays when we try to reach the target:
+     * either it must still hold, it is the one that we negate, or it belongs to another arm of the targeted switch
+     */
+    private static ConstraintRole classifyConstraint(Expression e, Target t) {
+        if (e.metadata instanceof Coverage.BranchData) {
+            Coverage.BranchData data = (Coverage.BranchData) e.metadata;
+            if (data.takenCode == t.branch.takenID)
+                return ConstraintRole.TARGET;
+        } else if (e.metadata instanceof Coverage.SwitchData) {
+            Coverage.SwitchData data = (Coverage.SwitchData) e.metadata;
+            if (data.switchID == t.branch.takenID) {
+                if (data.arm == t.arm)
+                    return ConstraintRole.TARGET;
+                else
+                    return ConstraintRole.OTHER_ARM; //Don't add constraints for other arms.
+            }
+        }
+        return ConstraintRole.PATH;
+    }
+
+    /**
+     * Constraints that replace the target constraint: its negation, plus bounds on any generated characters
+     */
+    private static LinkedList<Expression> negationOf(Expression targetConstraint) {
+        LinkedList<Expression> ret = new LinkedList<>();
+        // If we are negating something like char == 'A', we might end up solving it to char == '\0', which has a special
+        // meaning, and will likely not end up making any sense.
+        try {
+            CharEqualityFindingVisitor v = new CharEqualityFindingVisitor();
+            targetConstraint.accept(v);
+            for (FunctionCall strChar : v.getGeneratorCalls()) {
+                //ret.add(new BinaryOperation(Operation.Operator.NE, strChar, new IntConstant(0)));
+                ret.add(new BinaryOperation(Operation.Operator.AND, new BinaryOperation(Operation.Operator.GT, new IntConstant(128), strChar),
+                        new BinaryOperation(Operation.Operator.GT, strChar, new IntConstant(0))));
+
+            }
+        } catch (VisitorException e) {
+            e.printStackTrace();
+        }
+
+        ret.add(new UnaryOperation(Operation.Operator.NOT, targetConstraint));
+        return ret;
+    }
+
     public static Coordinator.StringHintGroup generatorsToHints(Collection<Expression> exps, Map<String, byte[]> genFuncs, Coordinator.Input originalInput) {
         LinkedList<Coordinator.StringHint[]> ret = new LinkedList<>();
 
@@ -545,6 +610,12 @@ public class Z3Worker {
 //                return Optional.empty();
 //            }
 
+            if (INCREMENTAL && Z3_OUTPUT_DIR == null) {
+                Optional<Coordinator.Input> input = negateConstraintIncrementally(t);
+                if (input != null)
+                    return input;
+            }
+
             Set<Expression> stringHintConstraints = hintsToConstraints(t.constraints, t.hints);
             Optional<Coordinator.Input> input = negateConstraint(t, stringHintConstraints);
 
@@ -562,6 +633,22 @@ public class Z3Worker {
 
         return Optional.empty();
     }
+    /**
+     * Tries to reach the target reusing the solver that we set up for the previous target, if it was on the same input.
+     * Returns null if the target needs the full treatment of negateConstraint, which can retry an UNSAT string
+     * comparison with adjusted lengths.
+     */
+    private Optional<Coordinator.Input> negateConstraintIncrementally(Target t) throws VisitorException, TimeoutException {
+        if (incremental == null || !incremental.isFor(t)) {
+            if (incremental != null) {
+                incremental.close();
+                incremental = null;
+            }
+            incremental = new IncrementalSolver(t);
+        }
+        return incremental.negate(t);
+    }
+
     static class AutoVarVisitor extends Visitor {
         private IntArrayList autoVars = new IntArrayList(4);
         @Override
@@ -1060,69 +1147,7 @@ public class Z3Worker {
             if (Status.SATISFIABLE == result) {
                 // SAT
 //				System.out.println("SAT: " + data.constraints);
-                Model model = solver.getModel();
-                for (FuncDecl decl : functions) {
-                    boolean present = false;
-                    for (FuncDecl dd : model.getFuncDecls())
-                        if (dd.equals(decl)) {
-                            present = true;
-                            break;
-                        }
-
-                    if (!present)
-                        break;
-
-                    FuncInterp z3Val = model.getFuncInterp(decl);
-                    // TODO Look at the arguments past first
-                    // TODO Support more than BV arguments and BV results
-                    // TODO Support more than sequential first arguments
-                    int[] funcRes = new int[z3Val.getNumEntries()];
-                    for (FuncInterp.Entry e : z3Val.getEntries()) {
-                        if (!e.getArgs()[0].isIntNum() || !e.getValue().isBV())
-                            throw new Error("Non BV arguments not supported");
-                        Long arg = ((IntNum) e.getArgs()[0]).getInt64();
-                        Long res = ((BitVecNum) e.getValue()).getLong();
-                        if (arg.intValue() >= 0 && arg.intValue() < funcRes.length)
-                            funcRes[arg.intValue()] = res.intValue();
-                    }
-
-                    sat.add(new AbstractMap.SimpleEntry<>(decl.getName().toString(), funcRes));
-                }
-                for (Expr z3Var : vars) {
-                    Expr z3Val = model.evaluate(z3Var, true);
-                    Object val = null;
-                    if (z3Val.isIntNum()) {
-                        val = Long.parseLong(z3Val.toString());
-                    } else if (z3Val.isBV()) {
-                        BitVecNum bv = (BitVecNum) z3Val;
-                        if (bv.getSortSize() == 64) {
-                            // Long
-                            BigInteger bi = bv.getBigInteger();
-                            val = bi.longValue();
-                        } else {
-                            // Int
-                            Long l = bv.getLong();
-                            val = l.intValue();
-                        }
-                    } else if (z3Val.isRatNum()) {
-                        RatNum rt = (RatNum) z3Val;
-                        val = ((double) rt.getNumerator().getInt64()) / ((double) rt.getDenominator().getInt64());
-                    } else {
-                        //Must be string?
-                        String sval = z3Val.toString();
-                        //Need to clean up string
-                        java.util.regex.Pattern p = Pattern.compile("\\\\x(\\d\\d)");
-                        Matcher m = p.matcher(sval);
-                        while (m.find()) {
-                            int i = Long.decode("0x" + m.group(1)).intValue();
-                            sval = sval.replace(m.group(0), String.valueOf((char) i));
-                        }
-                        val = sval;
-                    }
-                    sat.add(new AbstractMap.SimpleEntry<>(z3Var.toString(), val));
-//					String logMessage = "" + greenVar + " has value " + val;
-//					log.log(Level.INFO,logMessage);
-                }
+                readModel(solver.getModel(), functions, vars, sat);
             } else {
                 // UNSAT or Timeout
                 BoolExpr[] unsatCore = solver.getUnsatCore();
@@ -1146,6 +1171,71 @@ public class Z3Worker {
         }
     }
 
+    private static void readModel(Model model, Collection<FuncDecl> functions, Collection<Expr> vars, ArrayList<AbstractMap.SimpleEntry<String, Object>> sat) {
+        for (FuncDecl decl : functions) {
+            boolean present = false;
+            for (FuncDecl dd : model.getFuncDecls())
+                if (dd.equals(decl)) {
+                    present = true;
+                    break;
+                }
+
+            if (!present)
+                break;
+
+            FuncInterp z3Val = model.getFuncInterp(decl);
+            // TODO Look at the arguments past first
+            // TODO Support more than BV arguments and BV results
+            // TODO Support more than sequential first arguments
+            int[] funcRes = new int[z3Val.getNumEntries()];
+            for (FuncInterp.Entry e : z3Val.getEntries()) {
+                if (!e.getArgs()[0].isIntNum() || !e.getValue().isBV())
+                    throw new Error("Non BV arguments not supported");
+                Long arg = ((IntNum) e.getArgs()[0]).getInt64();
+                Long res = ((BitVecNum) e.getValue()).getLong();
+                if (arg.intValue() >= 0 && arg.intValue() < funcRes.length)
+                    funcRes[arg.intValue()] = res.intValue();
+            }
+
+            sat.add(new AbstractMap.SimpleEntry<>(decl.getName().toString(), funcRes));
+        }
+        for (Expr z3Var : vars) {
+            Expr z3Val = model.evaluate(z3Var, true);
+            Object val = null;
+            if (z3Val.isIntNum()) {
+                val = Long.parseLong(z3Val.toString());
+            } else if (z3Val.isBV()) {
+                BitVecNum bv = (BitVecNum) z3Val;
+                if (bv.getSortSize() == 64) {
+                    // Long
+                    BigInteger bi = bv.getBigInteger();
+                    val = bi.longValue();
+                } else {
+                    // Int
+                    Long l = bv.getLong();
+                    val = l.intValue();
+                }
+            } else if (z3Val.isRatNum()) {
+                RatNum rt = (RatNum) z3Val;
+                val = ((double) rt.getNumerator().getInt64()) / ((double) rt.getDenominator().getInt64());
+            } else {
+                //Must be string?
+                String sval = z3Val.toString();
+                //Need to clean up string
+                java.util.regex.Pattern p = Pattern.compile("\\\\x(\\d\\d)");
+                Matcher m = p.matcher(sval);
+                while (m.find()) {
+                    int i = Long.decode("0x" + m.group(1)).intValue();
+                    sval = sval.replace(m.group(0), String.valueOf((char) i));
+                }
+                val = sval;
+            }
+            sat.add(new AbstractMap.SimpleEntry<>(z3Var.toString(), val));
+//					String logMessage = "" + greenVar + " has value " + val;
+//					log.log(Level.INFO,logMessage);
+        }
+    }
+
     private static void dumpToTXTFile(File file, Map<String, Expression> constraints) throws IOException {
         Map<String, Expression> res = new HashMap<>();
 
@@ -1206,6 +1296,142 @@ public class Z3Worker {
         }
     }
 
+    /**
+     * A constraint translated to Z3, along with the variables and functions that appear in it
+     */
+    static class Translation {
+        BoolExpr expr;
+        HashSet<Expr> variables = new HashSet<>();
+        HashSet<FuncDecl> functions = new HashSet<>();
+
+        static Translation of(Expression e, Context ctx) throws VisitorException, TimeoutException {
+            Translation ret = new Translation();
+            ret.expr = translate(Collections.singletonMap("c", e), ret.variables, ret.functions, ctx).get("c");
+            return ret;
+        }
+    }
+
+    /**
+     * Successive targets on the same input share nearly all of their path condition, and differ only in which branch
+     * (or switch arm) gets negated. Rather than translating and asserting all of it for every target, we translate
+     * each constraint of the input once, and assert it guarded by its own tracking literal. The prefix that applies to
+     * a target is then selected by passing those literals as assumptions, while the negated branch is asserted
+     * inside a push()/pop() scope.
+     */
+    static class IncrementalSolver {
+        private final int inputID;
+        private final int numConstraints;
+        private final Context ctx;
+        private final Solver solver;
+        private final BoolExpr[] tracking;
+        private final Translation[] path;
+        private final LinkedList<Expression> captures;
+        private final HashSet<Expr> captureVariables = new HashSet<>();
+        private final HashSet<FuncDecl> captureFunctions = new HashSet<>();
+
+        IncrementalSolver(Target t) throws VisitorException, TimeoutException {
+            this.inputID = t.originalInput.id;
+            this.numConstraints = t.constraints.size();
+            this.ctx = new Context();
+            try {
+                this.solver = ctx.mkSolver();
+                Params p = ctx.mkParams();
+                p.add("timeout", Z3JavaTranslator.timeoutMS);
+                solver.setParameters(p);
+
+                this.tracking = new BoolExpr[numConstraints];
+                this.path = new Translation[numConstraints];
+                int i = 0;
+                for (Expression e : t.constraints) {
+                    path[i] = Translation.of(e, ctx);
+                    tracking[i] = ctx.mkBoolConst("c" + i);
+                    solver.add(ctx.mkImplies(tracking[i], path[i].expr));
+                    i++;
+                }
+
+                //String function captures apply to every target
+                this.captures = createCaptureVariables(t.constraints);
+                for (Expression e : captures) {
+                    Translation capture = Translation.of(e, ctx);
+                    solver.add(capture.expr);
+                    captureVariables.addAll(capture.variables);
+                    captureFunctions.addAll(capture.functions);
+                }
+            } catch (VisitorException | TimeoutException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        boolean isFor(Target t) {
+            return t.originalInput.id == inputID && t.constraints.size() == numConstraints;
+        }
+
+        Optional<Coordinator.Input> negate(Target t) throws VisitorException, TimeoutException {
+            LinkedList<BoolExpr> assumptions = new LinkedList<>();
+            LinkedList<Expression> exprs = new LinkedList<>();
+            HashSet<Expr> vars = new HashSet<>(captureVariables);
+            HashSet<FuncDecl> functions = new HashSet<>(captureFunctions);
+            Expression targetConstraint = null;
+            int i = 0;
+            for (Expression e : t.constraints) {
+                ConstraintRole role = classifyConstraint(e, t);
+                if (role == ConstraintRole.TARGET) {
+                    targetConstraint = e;
+                    break;
+                }
+                if (role == ConstraintRole.PATH) {
+                    assumptions.add(tracking[i]);
+                    exprs.add(e);
+                    vars.addAll(path[i].variables);
+                    functions.addAll(path[i].functions);
+                }
+                i++;
+            }
+            if (targetConstraint == null)
+                throw new IllegalStateException();
+            exprs.addAll(captures);
+
+            solver.push();
+            try {
+                int n = 0;
+                for (Expression e : negationOf(targetConstraint)) {
+                    Translation negated = Translation.of(e, ctx);
+                    BoolExpr track = ctx.mkBoolConst("n" + (n++));
+                    solver.add(ctx.mkImplies(track, negated.expr));
+                    assumptions.add(track);
+                    exprs.add(e);
+                    vars.addAll(negated.variables);
+                    functions.addAll(negated.functions);
+                }
+
+                long start = System.currentTimeMillis();
+                Status result = solver.check(assumptions.toArray(new BoolExpr[0]));
+                long solvingTime = System.currentTimeMillis() - start;
+
+                if (result == Status.SATISFIABLE) {
+                    ArrayList<AbstractMap.SimpleEntry<String, Object>> sat = new ArrayList<>();
+                    readModel(solver.getModel(), functions, vars, sat);
+                    if(PRINT_Z3_DEBUG_INFO)
+                        System.out.println("Z3 found solution incrementally for " + t.branch);
+                    return Optional.of(buildInput(sat, exprs, t));
+                }
+                if (solvingTime >= Z3JavaTranslator.timeoutMS)
+                    throw new TimeoutException("Operation took " + solvingTime + ", timeout=" + Z3JavaTranslator.timeoutMS);
+                if (result == Status.UNSATISFIABLE && solver.getUnsatCore().length == 1)
+                    return null; //A single culprit might be a String.equals that negateConstraint can fix up
+                return Optional.empty();
+            } finally {
+                solver.pop();
+            }
+        }
+
+        void close() {
+            ctx.close();
+            Native.finalizeMemory();
+        }
+    }
+
     private static class Data {
         Green green;
         ModelFactorizerService slicer;
@@ -17,17 +17,28 @@ public class ZestClient extends Central {
 
        public Integer triggerZ3SampleWindow;
        public Double triggerZ3SampleThreshold;
+
+    private final WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+    private final WireProtocol.Decoder decoder = new WireProtocol.Decoder();
+
     public ZestClient() throws IOException  {
         super();
         oos.writeObject(Type.Zest_Initial);
+        WireProtocol.writeHandshake(oos);
         oos.flush();
-        oos.reset();
-        try {
-            triggerZ3SampleWindow = (Integer) ois.readObject();
-            triggerZ3SampleThreshold = (Double) ois.readObject();
-        } catch(Exception e) {}
+        WireProtocol.readHandshake(ois);
+        decoder.readFrom(ois);
+        if (decoder.readBoolean()) {
+            triggerZ3SampleWindow = decoder.readInt();
+            triggerZ3SampleThreshold = decoder.readDouble();
+        }
+
 
+    }
 
+    private void send() throws IOException {
+        encoder.sendTo(oos);
+        oos.flush();
     }
 //
 //    public void sendHeartBeat(Long numExecutions, Double currentCoverage) throws IOException {
@@ -62,68 +73,67 @@ public class ZestClient extends Central {
      * 3. Receive instructions
      */
     public void sendInput(RecordingInputStream.MarkedInput recorded, Result result, ZestGuidance.Input input, double coveragePercentage, long totalExecutions) throws IOException {
-        oos.writeObject(ZestMessageType.SENDINPUT);
-        oos.writeObject(recorded);
-        oos.writeObject(result);
-        oos.writeInt(input.id);
-        oos.writeObject(input.stringEqualsHints == null ? new LinkedList<Coordinator.StringHint[]>() : input.stringEqualsHints);
-        oos.writeObject(input.instructions == null ? new LinkedList<int[]>() : input.instructions);
-        oos.writeObject((input.appliedTargetedHints == null ? new LinkedList<Coordinator.TargetedHint>() : input.appliedTargetedHints));
-        oos.writeDouble(coveragePercentage);
-        oos.writeLong(totalExecutions);
-        oos.writeInt(input.score);
+        sendFrame(encodeInput(encoder, recorded, result, input, coveragePercentage, totalExecutions));
+    }
+
+    /**
+     * Builds the SENDINPUT frame without sending it, so that the input can go on changing while the frame waits
+     * to be sent by another thread
+     */
+    static byte[] encodeInput(WireProtocol.Encoder encoder, RecordingInputStream.MarkedInput recorded, Result result, ZestGuidance.Input input, double coveragePercentage, long totalExecutions) throws IOException {
+        encoder.writeByte(ZestMessageType.SENDINPUT.ordinal());
+        encoder.writeMarkedInput(recorded);
+        encoder.writeByte(result.ordinal());
+        encoder.writeInt(input.id);
+        encoder.writeHints(input.stringEqualsHints == null ? new LinkedList<Coordinator.StringHint[]>() : input.stringEqualsHints);
+        encoder.writeInstructions(input.instructions == null ? new LinkedList<int[]>() : input.instructions);
+        encoder.writeTargetedHints((input.appliedTargetedHints == null ? new LinkedList<Coordinator.TargetedHint>() : input.appliedTargetedHints));
+        encoder.writeDouble(coveragePercentage);
+        encoder.writeLong(totalExecutions);
+        encoder.writeInt(input.score);
+        byte[] frame = encoder.toByteArray();
+        encoder.clear();
+        return frame;
+    }
+
+    void sendFrame(byte[] frame) throws IOException {
+        oos.writeInt(frame.length);
+        oos.write(frame);
         oos.flush();
-        oos.reset();
     }
 
     private boolean hasSeenNullZ3Input = false;
 
     public void selectInput(int id) throws IOException {
-        oos.writeObject(ZestMessageType.SELECTINPUT);
-        oos.writeObject(new Integer(id));
-        oos.flush();
+        encoder.writeByte(ZestMessageType.SELECTINPUT.ordinal());
+        encoder.writeInt(id);
+        send();
         hasSeenNullZ3Input = false;
     }
 
+    /* The reply to selectInput is a single frame holding the instructions, then the string hints, then the targeted
+     * hints: receiveInstructions reads that frame, and the other receive* calls decode the rest of it in order.
+     */
     public LinkedList<int[]> receiveInstructions() throws IOException {
-        try {
-            return (LinkedList<int[]>) ois.readObject();
-        } catch (ClassNotFoundException e) {
-            throw new Error(e);
-        }
+        decoder.readFrom(ois);
+        return decoder.readInstructions();
     }
 
 
     public LinkedList<Coordinator.StringHint[]> receiveStringEqualsHints() throws IOException {
-        try {
-            return (LinkedList<Coordinator.StringHint[]>) ois.readObject();
-        } catch (ClassNotFoundException e) {
-            throw new Error(e);
-        }
+        return decoder.readHints();
     }
 
     public LinkedList<Coordinator.StringHint[]> receivePreviouslyUsedStringEqualsHints() throws IOException {
-        try {
-            return (LinkedList<Coordinator.StringHint[]>) ois.readObject();
-        } catch (ClassNotFoundException e) {
-            throw new Error(e);
-        }
+        return decoder.readHints();
     }
 
     public LinkedList<int[]> receiveByteRangesUsedAsControlInGenerator() throws IOException {
-        try {
-            return (LinkedList<int[]>) ois.readObject();
-        } catch (ClassNotFoundException e) {
-            throw new Error(e);
-        }
+        return decoder.readInstructions();
     }
 
     public HashSet<Coordinator.TargetedHint> receiveTargetedHints() throws IOException {
-        try {
-            return (HashSet<Coordinator.TargetedHint>) ois.readObject();
-        } catch (ClassNotFoundException e) {
-            throw new Error(e);
-        }
+        return decoder.readTargetedHints(new HashSet<>());
     }
 
     public void sendCoverage(Coverage totalCoverage) {
@@ -133,26 +143,24 @@ public class ZestClient extends Central {
     public List<Coordinator.Input> getScoreUpdates() {
 
         try {
-
-            LinkedList<Coordinator.Input> ret = new LinkedList<>();
-            oos.writeObject(ZestMessageType.GETSCOREUPDATES);
-            oos.flush();
-            oos.reset();
-            Coordinator.Input i = (Coordinator.Input) ois.readObject();
-            while(i != null) {
-                ret.add(i);
-                i = (Coordinator.Input) ois.readObject();
-            }
-
-            return ret;
-
-        } catch (ClassNotFoundException e) {
-            throw new Error(e);
+            return fetchScoreUpdates();
         } catch (IOException e) {
             return new LinkedList<>();
         }
     }
 
+    LinkedList<Coordinator.Input> fetchScoreUpdates() throws IOException {
+        LinkedList<Coordinator.Input> ret = new LinkedList<>();
+        encoder.writeByte(ZestMessageType.GETSCOREUPDATES.ordinal());
+        send();
+        decoder.readFrom(ois);
+        int n = decoder.readInt();
+        for (int i = 0; i < n; i++) {
+            ret.add(decoder.readInput());
+        }
+        return ret;
+    }
+
     /* If things are going very fast, it's likely that there will be some GC pauses on central,
     reducing how often we reach out reduces the likelihood of us eating the big cheese, too,
     while that pause happens.*/
@@ -166,41 +174,42 @@ public class ZestClient extends Central {
         lastCentralGetInputCall = now;
 
         try {
-            oos.writeObject(ZestMessageType.GETZ3INPUT);
-            oos.flush();
-            oos.reset();
-            Coordinator.Input ret = (Coordinator.Input) ois.readObject();
+            Coordinator.Input ret = fetchZ3Input();
 
             if (ret == null)
                 hasSeenNullZ3Input = true;
 
             return ret;
-        } catch (ClassNotFoundException e) {
-            throw new Error(e);
         } catch (IOException e) {
             throw new GuidanceException(e);
         }
     }
 
+    Coordinator.Input fetchZ3Input() throws IOException {
+        encoder.writeByte(ZestMessageType.GETZ3INPUT.ordinal());
+        send();
+        return decoder.readFrom(ois).readInput();
+    }
+
     public LinkedList<Integer> getRecommendations() {
         long now = System.currentTimeMillis();
         if(now < lastCentralGetRecsCall + MIN_TIME_BEFORE_BUGGING_CENTRAL)
             return new LinkedList<>();
         lastCentralGetRecsCall = now;
         try {
-            oos.writeObject(ZestMessageType.GETRECOMMENDATIONS);
-            oos.flush();
-            oos.reset();
-            LinkedList<Integer> ret = (LinkedList<Integer>) ois.readObject();
-            if(ret == null)
-                ret = new LinkedList<>();
-
-            return ret;
-        } catch (ClassNotFoundException e) {
-            throw new Error(e);
+            return fetchRecommendations();
         } catch (IOException e) {
             return null;
         }
     }
 
+    LinkedList<Integer> fetchRecommendations() throws IOException {
+        encoder.writeByte(ZestMessageType.GETRECOMMENDATIONS.ordinal());
+        send();
+        LinkedList<Integer> ret = decoder.readFrom(ois).readIntegers();
+        if(ret == null)
+            ret = new LinkedList<>();
+        return ret;
+    }
+
 }
@@ -21,6 +21,9 @@ class ZestWorker extends Worker {
     private LinkedList<Coordinator.Input> fromZ3 = new LinkedList<>();
     private LinkedList<Coordinator.Input> updatedScoreInputs = new LinkedList<>();
 
+    private final WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+    private final WireProtocol.Decoder decoder = new WireProtocol.Decoder();
+
     public ZestWorker(ObjectInputStream ois, ObjectOutputStream oos, Coordinator c) throws IOException {
         super(ois, oos);
         this.c = c;
@@ -42,9 +45,8 @@ class ZestWorker extends Worker {
 
 
             oos.flush();
-            oos.reset();
-            ZestMessageType messageType = (ZestMessageType) ois.readObject();
-            if (messageType == null) continue;
+            decoder.readFrom(ois);
+            ZestMessageType messageType = ZestMessageType.values()[decoder.readByte()];
 
             switch(messageType) {
 
@@ -62,17 +64,17 @@ class ZestWorker extends Worker {
 
                 case SENDINPUT:
                     // Receive input
-                    RecordingInputStream.MarkedInput recording = (RecordingInputStream.MarkedInput) ois.readObject();
-                    Result res = (Result) ois.readObject();
-                    int id = ois.readInt();
+                    RecordingInputStream.MarkedInput recording = decoder.readMarkedInput();
+                    Result res = Result.values()[decoder.readByte()];
+                    int id = decoder.readInt();
 
-                    LinkedList<Coordinator.StringHint[]> hints = (LinkedList<Coordinator.StringHint[]>) ois.readObject();
-                    LinkedList<int[]> instructions = (LinkedList<int[]>) ois.readObject();
-                    LinkedList<Coordinator.TargetedHint> targetedHints = (LinkedList<Coordinator.TargetedHint>) ois.readObject();
+                    LinkedList<Coordinator.StringHint[]> hints = decoder.readHints();
+                    LinkedList<int[]> instructions = decoder.readInstructions();
+                    LinkedList<Coordinator.TargetedHint> targetedHints = decoder.readTargetedHints(new LinkedList<>());
 
-                    double coveragePercentage = ois.readDouble();
-                    long numExecutions = ois.readLong();
-                    int score = ois.readInt();
+                    double coveragePercentage = decoder.readDouble();
+                    long numExecutions = decoder.readLong();
+                    int score = decoder.readInt();
 
                     // Receive coverage
                     //                Coverage cov = (Coverage) ois.readObject();
@@ -102,7 +104,7 @@ class ZestWorker extends Worker {
 
                 case SELECTINPUT:
                     // Select input
-                    int selected = (Integer) ois.readObject();
+                    int selected = decoder.readInt();
 
                     // Select part of the input to fuzz
                     LinkedList<int[]> instructionsToSend = new LinkedList<>();
@@ -120,9 +122,10 @@ class ZestWorker extends Worker {
 
                     int offset = 0;
                     //12-29-21: JSB refactored to reduce array allocations, this code should probably be refactored further... TBD...
-                    for(int i = 0; i < inputs.get(selected).getMarks().length; i++){
-                        int mark = inputs.get(selected).getMarks()[i];
-                        int reqLen = inputs.get(selected).getMarkLength(i);
+                    RecordingInputStream.MarkedInput selectedRecording = inputs.get(selected);
+                    for(int i = 0; i < selectedRecording.getNumRuns(); i++){
+                        int mark = selectedRecording.getRunOffset(i);
+                        int reqLen = selectedRecording.getRunLength(i);
                         if (!recs.isEmpty()) {
                             boolean addThis = false;
 
@@ -189,9 +192,10 @@ class ZestWorker extends Worker {
                     //    System.out.println(in.hints);
                     //}
                     // Send instructions
-                    oos.writeObject(instructionsToSend);
-                    oos.writeObject(stringsToSend);     // Strings that are new hints
-                    oos.writeObject(in == null || in.targetedHints == null ? new HashSet<>() : in.targetedHints);
+                    encoder.writeInstructions(instructionsToSend);
+                    encoder.writeHints(stringsToSend);     // Strings that are new hints
+                    encoder.writeTargetedHints(in == null || in.targetedHints == null ? new HashSet<Coordinator.TargetedHint>() : in.targetedHints);
+                    encoder.sendTo(oos);
 
                     //Evict this input: the fuzz client should never call "selectInput" a second time for the same input.
                     synchronized (recommendations){
@@ -212,30 +216,28 @@ class ZestWorker extends Worker {
                         //System.out.println(next.hintGroups);
                     //}
 
-                    oos.writeObject(next);
+                    encoder.writeInput(next);
+                    encoder.sendTo(oos);
                     break;
                 case GETRECOMMENDATIONS:
                     synchronized (recommendations){
                         //if(!newlyRecommendedInputsToQueue.isEmpty())
                         //    System.out.println("Recommending inputs: " + newlyRecommendedInputsToQueue);
-                        oos.writeObject(newlyRecommendedInputsToQueue);
+                        encoder.writeIntegers(newlyRecommendedInputsToQueue);
                         newlyRecommendedInputsToQueue.clear();
+                        encoder.sendTo(oos);
                     }
                     break;
                 case GETSCOREUPDATES:
                     // Zest is asking if there's an Inputs whose scores we should update
-                    Coordinator.Input n;
                     synchronized (updatedScoreInputs) {
-
-                        while(true) {
-                            n = (updatedScoreInputs.isEmpty() ? null : updatedScoreInputs.removeFirst());
-                            //if (n != null) {
-                                //System.out.println("SCORE UPDATES FOR INPUTS BEING SENT");
-                            //}
-                            oos.writeObject(n);
-                            if(n == null) break;
+                        encoder.writeInt(updatedScoreInputs.size());
+                        for (Coordinator.Input n : updatedScoreInputs) {
+                            encoder.writeInput(n);
                         }
+                        updatedScoreInputs.clear();
                     }
+                    encoder.sendTo(oos);
 
                     break;
 
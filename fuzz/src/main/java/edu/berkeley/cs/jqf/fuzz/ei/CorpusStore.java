@@ -0,0 +1,529 @@
+package edu.berkeley.cs.jqf.fuzz.ei;
+
+import edu.berkeley.cs.jqf.fuzz.central.WireProtocol;
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.Input;
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.LinearInput;
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.MappedInput;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only store for the inputs that Zest saves, instead of one Java-serialized <tt>id_NNNNNN</tt> file
+ * per input.
+ *
+ * <p>Inputs are appended as records to segment files (<tt>segment_NNNN</tt>): a header (magic, version) followed
+ * by records of (payload length, CRC32 of the payload, payload), where the payload holds the same fields as the
+ * old files, encoded with {@link WireProtocol}. A new segment is started once the current one would grow past
+ * <tt>jqf.ei.CORPUS_SEGMENT_SIZE</tt> bytes, which may be at most 2GB so that segments can be mapped. The
+ * <tt>index</tt> file has the same kind of header, followed by one fixed-size entry per record: (input id,
+ * segment, offset, payload length, CRC32 of the entry). Saving an input again, as Zest does once Central has sent
+ * hints for it, appends another record, and the last one wins.</p>
+ *
+ * <p>A record is written to its segment before its entry is written to the index, so a crash can only leave
+ * the index ending in a torn entry, or in one whose record did not make it to disk. Readers stop at the first
+ * entry that fails its checksum, and check each record's checksum as they read it. A writer reopening the
+ * store verifies every record, truncates the index after the last good one, and starts a new segment.</p>
+ *
+ * <p>Readers map the index and the segments into memory, and can fetch the latest version of each input by
+ * position without reading the others.</p>
+ *
+ * <p>Run this class to convert a corpus directory of <tt>id_NNNNNN</tt> files into a store:
+ * <tt>java edu.berkeley.cs.jqf.fuzz.ei.CorpusStore OLD_CORPUS_DIR STORE_DIR</tt>.</p>
+ */
+public class CorpusStore {
+
+    static final String INDEX_FILE = "index";
+    private static final int INDEX_MAGIC = 0x4A514649; // "JQFI"
+    private static final int SEGMENT_MAGIC = 0x4A514653; // "JQFS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 24;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** The size past which a writer starts a new segment */
+    static final long SEGMENT_SIZE = Long.getLong("jqf.ei.CORPUS_SEGMENT_SIZE", 64L << 20);
+
+    private CorpusStore() {}
+
+    /**
+     * Returns whether a directory holds a corpus store.
+     *
+     * @param dir a directory
+     * @return <tt>true</tt> iff <tt>dir</tt> has a store index
+     */
+    public static boolean isStore(File dir) {
+        return new File(dir, INDEX_FILE).isFile();
+    }
+
+    private static File segmentFile(File dir, int segment) {
+        return new File(dir, String.format("segment_%04d", segment));
+    }
+
+    private static void checkHeader(ByteBuffer buf, int magic, File file) throws IOException {
+        if (buf.limit() < HEADER_SIZE || buf.getInt(0) != magic || buf.getInt(4) != VERSION) {
+            throw new IOException("Not a corpus store file: " + file);
+        }
+    }
+
+    private static int entryChecksum(ByteBuffer index, int entryOffset) {
+        byte[] bytes = new byte[ENTRY_SIZE - 4];
+        ByteBuffer dup = index.duplicate();
+        dup.position(entryOffset);
+        dup.get(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] toBytes(Input<?> input) {
+        if (input instanceof LinearInput) {
+            return ((LinearInput) input).toByteArray();
+        } else if (input instanceof MappedInput) {
+            return ((MappedInput) input).toByteArray();
+        }
+        throw new IllegalArgumentException("Cannot save an input of type " + input.getClass().getName());
+    }
+
+    private static LinearInput decode(WireProtocol.Decoder decoder) throws IOException {
+        int id = decoder.readInt();
+        LinearInput input = new LinearInput(decoder.readByteArray());
+        input.id = id;
+        input.instructions = decoder.readInstructions();
+        input.stringEqualsHints = decoder.readHints();
+        input.appliedTargetedHints = decoder.readTargetedHints(new LinkedList<>());
+        input.offsetOfLastHintAdded = decoder.readInt();
+        input.allInstructions = decoder.readInstructions();
+        input.allStringEqualsHints = decoder.readHints();
+        input.parentInputIdx = decoder.readInt();
+        byte seedSource = decoder.readByte();
+        input.seedSource = seedSource == -1 ? null : ZestGuidance.SeedSource.values()[seedSource];
+        byte mutationType = decoder.readByte();
+        input.mutationType = mutationType == -1 ? null : ZestGuidance.MutationType.values()[mutationType];
+        input.numGlobalDictionaryHintsApplied = decoder.readInt();
+        input.numHintsAppliedThisRound = decoder.readInt();
+        input.numMutations = decoder.readInt();
+        // Elapsed time, number of trials and extended dictionary size when saved; only for offline analysis
+        decoder.readLong();
+        decoder.readLong();
+        decoder.readLong();
+        return input;
+    }
+
+    /** Appends inputs to a store; not thread-safe. */
+    public static class Writer implements Closeable {
+        private final File dir;
+        private final FileChannel index;
+        private FileChannel segment;
+        private int segmentNumber;
+        private long segmentPosition;
+        private final WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+        private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        private final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * Opens a store for appending, creating it if needed. An existing store is checked, and any entries
+         * left behind by a crash are dropped.
+         *
+         * @param dir the directory of the store
+         * @throws IOException if the store could not be created, or is not a store
+         */
+        public Writer(File dir) throws IOException {
+            if (SEGMENT_SIZE > Integer.MAX_VALUE) {
+                // Readers could not map such segments, nor address records past 2GB in them
+                throw new IllegalArgumentException("jqf.ei.CORPUS_SEGMENT_SIZE must be at most " + Integer.MAX_VALUE);
+            }
+            this.dir = dir;
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create corpus store directory " + dir);
+            }
+            File indexFile = new File(dir, INDEX_FILE);
+            this.index = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (index.size() == 0) {
+                writeFully(index, header(INDEX_MAGIC), 0);
+            } else {
+                int valid;
+                try (Reader reader = new Reader(dir)) {
+                    valid = reader.verify();
+                }
+                index.truncate(HEADER_SIZE + (long) valid * ENTRY_SIZE);
+            }
+            // Never append to a segment that may end in a torn record
+            int last = -1;
+            String[] names = dir.list();
+            for (String name : names == null ? new String[0] : names) {
+                if (name.startsWith("segment_")) {
+                    try {
+                        last = Math.max(last, Integer.parseInt(name.substring("segment_".length())));
+                    } catch (NumberFormatException ignore) {
+                    }
+                }
+            }
+            this.segmentNumber = last;
+        }
+
+        private static ByteBuffer header(int magic) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(magic).putInt(VERSION).flip();
+            return header;
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+        }
+
+        /**
+         * Appends a saved input.
+         *
+         * @param input the input
+         * @param id the input's id, which it might not carry yet
+         * @param elapsedMillis the time since the campaign started
+         * @param numTrials the number of trials run so far
+         * @param extendedDictionarySize the size of the extended dictionary
+         * @throws IOException if the input could not be written
+         */
+        public void append(Input<?> input, int id, long elapsedMillis, long numTrials,
+                           long extendedDictionarySize) throws IOException {
+            encoder.writeInt(id);
+            encoder.writeByteArray(toBytes(input));
+            encoder.writeInstructions(input.instructions);
+            encoder.writeHints(input.stringEqualsHints);
+            encoder.writeTargetedHints(input.appliedTargetedHints);
+            encoder.writeInt(input.offsetOfLastHintAdded);
+            encoder.writeInstructions(input.allInstructions);
+            encoder.writeHints(input.allStringEqualsHints);
+            encoder.writeInt(input.parentInputIdx);
+            encoder.writeByte(input.seedSource == null ? -1 : input.seedSource.ordinal());
+            encoder.writeByte(input.mutationType == null ? -1 : input.mutationType.ordinal());
+            encoder.writeInt(input.numGlobalDictionaryHintsApplied);
+            encoder.writeInt(input.numHintsAppliedThisRound);
+            encoder.writeInt(input.numMutations);
+            encoder.writeLong(elapsedMillis);
+            encoder.writeLong(numTrials);
+            encoder.writeLong(extendedDictionarySize);
+            byte[] payload = encoder.toByteArray();
+            encoder.clear();
+
+            if ((long) HEADER_SIZE + RECORD_HEADER_SIZE + payload.length > Integer.MAX_VALUE) {
+                throw new IOException("Input " + id + " is too big for a corpus segment");
+            }
+            if (segment == null || (segmentPosition > HEADER_SIZE
+                    && segmentPosition + RECORD_HEADER_SIZE + payload.length > SEGMENT_SIZE)) {
+                startSegment();
+            }
+
+            crc.reset();
+            crc.update(payload);
+            int checksum = (int) crc.getValue();
+            long offset = segmentPosition;
+            recordHeader.clear();
+            recordHeader.putInt(payload.length).putInt(checksum).flip();
+            writeFully(segment, recordHeader, offset);
+            writeFully(segment, ByteBuffer.wrap(payload), offset + RECORD_HEADER_SIZE);
+            segmentPosition = offset + RECORD_HEADER_SIZE + payload.length;
+
+            entry.clear();
+            entry.putInt(id).putInt(segmentNumber).putLong(offset).putInt(payload.length);
+            entry.putInt(entryChecksum(entry, 0));
+            entry.flip();
+            writeFully(index, entry, index.size());
+        }
+
+        private void startSegment() throws IOException {
+            if (segment != null) {
+                segment.force(false);
+                segment.close();
+            }
+            segmentNumber++;
+            segment = FileChannel.open(segmentFile(dir, segmentNumber).toPath(), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+            writeFully(segment, header(SEGMENT_MAGIC), 0);
+            segmentPosition = HEADER_SIZE;
+        }
+
+        /**
+         * Drops the index entries of inputs with the given id or above, keeping the order of the others, as when
+         * a campaign resumes from a checkpoint that was taken before they were saved. Their records are left in
+         * the segments, but are no longer reachable.
+         *
+         * @param firstId the lowest id to drop
+         * @throws IOException if the index could not be rewritten
+         */
+        public void dropIdsFrom(int firstId) throws IOException {
+            long end = index.size();
+            long kept = HEADER_SIZE;
+            for (long position = HEADER_SIZE; position + ENTRY_SIZE <= end; position += ENTRY_SIZE) {
+                entry.clear();
+                while (entry.hasRemaining()) {
+                    if (index.read(entry, position + entry.position()) < 0) {
+                        throw new IOException("Corpus store index ended mid-entry in " + dir);
+                    }
+                }
+                if (entry.getInt(0) >= firstId) {
+                    continue;
+                }
+                if (kept != position) {
+                    entry.flip();
+                    writeFully(index, entry, kept);
+                }
+                kept += ENTRY_SIZE;
+            }
+            index.truncate(kept);
+            index.force(false);
+        }
+
+        /**
+         * Forces everything appended so far to disk.
+         *
+         * @throws IOException if the store could not be synced
+         */
+        public void flush() throws IOException {
+            if (segment != null) {
+                segment.force(false);
+            }
+            index.force(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            if (segment != null) {
+                segment.close();
+            }
+            index.close();
+        }
+    }
+
+    /**
+     * Reads the inputs in a store, by memory-mapping it. Appends made after the reader was opened are not seen.
+     */
+    public static class Reader implements Closeable, Iterable<LinearInput> {
+        private final File dir;
+        private final MappedByteBuffer index;
+        private final int numEntries;
+        /** The index entry of the latest record for each input, in the order inputs were first saved */
+        private final IntArrayList latest = new IntArrayList();
+        /** The position of each input id in {@link #latest} */
+        private final IntIntHashMap positions = new IntIntHashMap();
+        private final ArrayList<MappedByteBuffer> segments = new ArrayList<>();
+        private final WireProtocol.Decoder decoder = new WireProtocol.Decoder();
+
+        /**
+         * Opens a store for reading.
+         *
+         * @param dir the directory of the store
+         * @throws IOException if the store could not be read
+         */
+        public Reader(File dir) throws IOException {
+            this.dir = dir;
+            File indexFile = new File(dir, INDEX_FILE);
+            try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+                this.index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            checkHeader(index, INDEX_MAGIC, indexFile);
+
+            int n = 0;
+            for (int offset = HEADER_SIZE; offset + ENTRY_SIZE <= index.limit(); offset += ENTRY_SIZE, n++) {
+                if (index.getInt(offset + ENTRY_SIZE - 4) != entryChecksum(index, offset)) {
+                    break; // Torn by a crash; nothing after it can be trusted
+                }
+                int id = index.getInt(offset);
+                if (positions.containsKey(id)) {
+                    latest.set(positions.get(id), n);
+                } else {
+                    positions.put(id, latest.size());
+                    latest.add(n);
+                }
+            }
+            this.numEntries = n;
+        }
+
+        /** Returns the directory of the store. */
+        public File getDirectory() {
+            return dir;
+        }
+
+        /** Returns the number of distinct inputs in the store. */
+        public int size() {
+            return latest.size();
+        }
+
+        /**
+         * Returns the position of an input.
+         *
+         * @param id the input's id
+         * @return its position, or -1 if the store does not hold it
+         */
+        public int indexOf(int id) {
+            return positions.getIfAbsent(id, -1);
+        }
+
+        /**
+         * Returns the id of an input.
+         *
+         * @param position the position of the input, in the order inputs were first saved
+         * @return its id
+         */
+        public int idAt(int position) {
+            return index.getInt(entryOffset(latest.get(position)));
+        }
+
+        /**
+         * Reads the latest version of an input.
+         *
+         * @param position the position of the input, in the order inputs were first saved
+         * @return the input
+         * @throws IOException if its record is missing or corrupt
+         */
+        public LinearInput get(int position) throws IOException {
+            return decode(decoder.load(payload(latest.get(position))));
+        }
+
+        @Override
+        public Iterator<LinearInput> iterator() {
+            return new Iterator<LinearInput>() {
+                int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size();
+                }
+
+                @Override
+                public LinearInput next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    try {
+                        return get(next++);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+        }
+
+        /** Returns the number of entries, counting from the start, whose records are intact. */
+        int verify() {
+            for (int n = 0; n < numEntries; n++) {
+                try {
+                    payload(n);
+                } catch (IOException e) {
+                    return n;
+                }
+            }
+            return numEntries;
+        }
+
+        private static int entryOffset(int entry) {
+            return HEADER_SIZE + entry * ENTRY_SIZE;
+        }
+
+        private byte[] payload(int entry) throws IOException {
+            int offset = entryOffset(entry);
+            int segmentNumber = index.getInt(offset + 4);
+            long position = index.getLong(offset + 8);
+            int length = index.getInt(offset + 16);
+            MappedByteBuffer segment = segment(segmentNumber);
+            // Once the record is known to be within the mapped segment, its position fits in an int
+            if (position < HEADER_SIZE || position + RECORD_HEADER_SIZE + length > segment.limit()
+                    || segment.getInt((int) position) != length) {
+                throw new IOException(String.format("Record %d is missing from %s", entry, segmentFile(dir, segmentNumber)));
+            }
+            byte[] payload = new byte[length];
+            ByteBuffer dup = segment.duplicate();
+            dup.position((int) position + RECORD_HEADER_SIZE);
+            dup.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (segment.getInt((int) position + 4) != (int) crc.getValue()) {
+                throw new IOException(String.format("Record %d in %s is corrupt", entry, segmentFile(dir, segmentNumber)));
+            }
+            return payload;
+        }
+
+        private MappedByteBuffer segment(int segmentNumber) throws IOException {
+            while (segments.size() <= segmentNumber) {
+                segments.add(null);
+            }
+            MappedByteBuffer segment = segments.get(segmentNumber);
+            if (segment == null) {
+                File file = segmentFile(dir, segmentNumber);
+                if (!file.isFile()) {
+                    throw new IOException("Missing corpus segment " + file);
+                }
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                checkHeader(segment, SEGMENT_MAGIC, file);
+                segments.set(segmentNumber, segment);
+            }
+            return segment;
+        }
+
+        @Override
+        public void close() {
+            // Mappings are released once the buffers are collected
+            segments.clear();
+        }
+    }
+
+    /**
+     * Converts a corpus directory of <tt>id_NNNNNN</tt> files, as written by earlier versions of Zest, into a
+     * store.
+     *
+     * @param args the corpus directory, and the directory to create the store in
+     * @throws IOException if the conversion failed
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java " + CorpusStore.class.getName() + " OLD_CORPUS_DIR STORE_DIR");
+            System.exit(1);
+        }
+        File from = new File(args[0]);
+        File to = new File(args[1]);
+        if (isStore(to)) {
+            System.err.println(to + " already holds a corpus store");
+            System.exit(1);
+        }
+        File[] files = from.listFiles((dir, name) -> name.matches("id_\\d+"));
+        if (files == null) {
+            System.err.println("Cannot list " + from);
+            System.exit(1);
+        }
+        Arrays.sort(files);
+        long start = System.currentTimeMillis();
+        long[] bookkeeping = new long[3];
+        try (Writer writer = new Writer(to)) {
+            for (File file : files) {
+                LinearInput input;
+                try {
+                    input = LinearInput.fromFile(file, bookkeeping);
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Cannot read " + file, e);
+                }
+                writer.append(input, input.id, bookkeeping[0], bookkeeping[1], bookkeeping[2]);
+            }
+        }
+        System.out.println(String.format("Converted %d inputs in %.1fs", files.length,
+                (System.currentTimeMillis() - start) / 1000.0));
+    }
+}
@@ -30,6 +30,8 @@ package edu.berkeley.cs.jqf.fuzz.ei;
 
 import java.util.Arrays;
 
+import edu.berkeley.cs.jqf.instrument.tracing.CallStack;
+
 /**
  * An execution index represents a unique point in a program's execution.
  *
@@ -40,7 +42,10 @@ import java.util.Arrays;
  *
  * <p>The execution index is a basically a wrapper around an integer array
  * of even length, in which every pair of elements represents an IID of a
- * call site and its associated count.</p>
+ * call site and its associated count. Its 64-bit hash is computed once, the
+ * same way that {@link CallStack} computes it incrementally, so that an
+ * execution index can be looked up by the hash of the current point of
+ * execution before (or instead of) copying the call stack.</p>
  *
  * @author Rohan Padhye
  */
@@ -48,11 +53,19 @@ public class ExecutionIndex implements Comparable<ExecutionIndex> {
 
     final int[] ei;
 
+    /** The hash of {@link #ei}, as computed by {@link CallStack#hash(int[])} */
+    final long hash;
+
     public ExecutionIndex(int[] ei) {
+        this(ei, CallStack.hash(ei));
+    }
+
+    ExecutionIndex(int[] ei, long hash) {
         if (ei.length == 0 || ei.length % 2 == 1) {
             throw new IllegalArgumentException("Execution index must have non-zero even elements");
         }
         this.ei = ei;
+        this.hash = hash;
     }
 
     public ExecutionIndex(Prefix prefix, Suffix suffix) {
@@ -72,17 +85,20 @@ public class ExecutionIndex implements Comparable<ExecutionIndex> {
         for (int i = suffix.offset; i < size; i++) {
             this.ei[i] = suffixEi[i];
         }
+        this.hash = CallStack.hash(this.ei);
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(ei);
+        return (int) (hash ^ (hash >>> 32));
     }
 
     @Override
     public boolean equals(Object other) {
-        if (other != null && other instanceof ExecutionIndex) {
-            return Arrays.equals(ei, ((ExecutionIndex) other).ei);
+        if (other == this) {
+            return true;
+        } else if (other != null && other instanceof ExecutionIndex) {
+            return hash == ((ExecutionIndex) other).hash && Arrays.equals(ei, ((ExecutionIndex) other).ei);
         } else {
             return false;
         }
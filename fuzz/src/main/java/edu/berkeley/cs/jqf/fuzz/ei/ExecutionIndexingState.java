@@ -28,11 +28,7 @@
  */
 package edu.berkeley.cs.jqf.fuzz.ei;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-
-import edu.berkeley.cs.jqf.fuzz.util.Counter;
-import edu.berkeley.cs.jqf.fuzz.util.NonZeroCachingCounter;
+import edu.berkeley.cs.jqf.instrument.tracing.CallStack;
 import edu.berkeley.cs.jqf.instrument.tracing.events.CallEvent;
 import edu.berkeley.cs.jqf.instrument.tracing.events.ReturnEvent;
 import edu.berkeley.cs.jqf.instrument.tracing.events.TraceEvent;
@@ -41,69 +37,95 @@ import edu.berkeley.cs.jqf.instrument.tracing.events.TraceEvent;
  * A mutable state representing the current call stack with prefix counts,
  * used to compute light-weight execution indexes.
  *
+ * <p>During fuzzing, the stack is the one that the instrumentation's call-site
+ * probes maintain for the fuzzing thread (see {@link #forCurrentThread()}), so
+ * no trace events are involved. The event-based methods remain for driving a
+ * private stack by hand.</p>
+ *
  * @see ExecutionIndex
  *
  * @author Rohan Padhye
  */
 public class ExecutionIndexingState {
-    private final int COUNTER_SIZE = 6151;
-    private final int MAX_SUPPORTED_DEPTH = 1024; // Nothing deeper than this
+    /** The key under which reads of the input are counted within a frame; iids start at 1 */
+    private static final int READ_KEY = 0;
 
-    private int depth = 0;
-    private ArrayList<Counter> stackOfCounters = new ArrayList<>();
-    private int[] rollingIndex = new int[2*MAX_SUPPORTED_DEPTH];
+    private final CallStack stack;
 
+    /** Creates a state with its own, empty, call stack. */
     public ExecutionIndexingState() {
-        // Create a counter for depth = 0
-        stackOfCounters.add(new NonZeroCachingCounter(COUNTER_SIZE));
+        this(new CallStack());
     }
 
-    public void pushCall(CallEvent e) {
-        // Increment counter for call-site (note: this is subject to hash collisions)
-        int count = stackOfCounters.get(depth).increment(e.getIid());
-
-        // Add to rolling execution index
-        rollingIndex[2*depth] = e.getIid();
-        rollingIndex[2*depth + 1] = count;
-
-        // Increment depth
-        depth++;
-
-        // Ensure that we do not go very deep
-        if (depth >= MAX_SUPPORTED_DEPTH) {
-            throw new StackOverflowError("Very deep stack; cannot compute execution index");
-        }
+    private ExecutionIndexingState(CallStack stack) {
+        this.stack = stack;
+    }
 
-        // Push a new counter if it does not exist
-        if (depth >= stackOfCounters.size()) {
-            stackOfCounters.add(new NonZeroCachingCounter(COUNTER_SIZE));
-        }
+    /**
+     * Returns a state backed by the current thread's probe-maintained call
+     * stack, which is emptied first.
+     *
+     * @return the execution indexing state of the current thread
+     */
+    public static ExecutionIndexingState forCurrentThread() {
+        CallStack stack = CallStack.current();
+        stack.reset();
+        return new ExecutionIndexingState(stack);
+    }
 
+    public void pushCall(CallEvent e) {
+        stack.call(e.getIid());
     }
 
     public void popReturn(ReturnEvent e) {
-        // Clear the top-of-stack
-        stackOfCounters.get(depth).clear();
-
-        // Decrement depth
-        depth--;
-
-        assert (depth >= 0);
+        stack.pop();
     }
 
     public ExecutionIndex getExecutionIndex(TraceEvent e) {
-        // Increment counter for event (note: this is subject to hash collisions)
-        int count = stackOfCounters.get(depth).increment(e.getIid());
+        return new ExecutionIndex(stack.executionIndex(e.getIid()));
+    }
 
-        // Add to rolling execution index
-        rollingIndex[2*depth] = e.getIid();
-        rollingIndex[2*depth + 1] = count;
+    /**
+     * Returns the execution index of a read of the input at the current point
+     * of execution.
+     *
+     * @return the execution index
+     */
+    public ExecutionIndex getExecutionIndex() {
+        return getLastRead(countRead());
+    }
+
+    /**
+     * Counts a read of the input at the current point of execution, like
+     * {@link #getExecutionIndex()}, but only returns the hash of its execution
+     * index. Callers that already hold an equal execution index can then use
+     * it (see {@link #isLastRead}) instead of building a new one with
+     * {@link #getLastRead}.
+     *
+     * @return the hash of the execution index of the read
+     */
+    public long countRead() {
+        return stack.executionIndexHash(READ_KEY);
+    }
 
-        // Snapshot the rolling index
-        int size = 2*(depth+1); // 2 integers for each depth value
-        int[] ei = Arrays.copyOf(rollingIndex, size);
+    /**
+     * Returns whether an execution index is that of the read last counted by
+     * {@link #countRead()}.
+     *
+     * @param ei the execution index to compare
+     * @return whether it is the execution index of the last read
+     */
+    public boolean isLastRead(ExecutionIndex ei) {
+        return stack.isLastExecutionIndex(ei.ei);
+    }
 
-        // Create an execution index
-        return new ExecutionIndex(ei);
+    /**
+     * Returns a new execution index for the read last counted by {@link #countRead()}.
+     *
+     * @param hash the hash returned by {@link #countRead()}
+     * @return the execution index
+     */
+    public ExecutionIndex getLastRead(long hash) {
+        return new ExecutionIndex(stack.lastExecutionIndex(), hash);
     }
 }
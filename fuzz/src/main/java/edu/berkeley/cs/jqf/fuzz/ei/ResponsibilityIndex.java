@@ -0,0 +1,128 @@
+package edu.berkeley.cs.jqf.fuzz.ei;
+
+import java.util.function.Consumer;
+
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.Input;
+import edu.berkeley.cs.jqf.fuzz.util.Coverage;
+import org.eclipse.collections.api.iterator.IntIterator;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+
+/**
+ * Maps each coverage key to the saved input that is responsible for it, the
+ * inverse of {@link Input#responsibilities}.
+ *
+ * <p>Every key is the responsibility of at most one input, so the inputs whose
+ * responsibilities a run covers entirely can be found from the keys the run
+ * covers alone, without looking at any other saved input.</p>
+ *
+ * <p>The index also keeps count of the favored inputs, those responsible for
+ * at least one key, so that they need not be recounted over the whole corpus.</p>
+ */
+class ResponsibilityIndex {
+
+    private final IntObjectHashMap<Input> owners;
+
+    /** Called with each input that loses its last responsibility */
+    private final Consumer<Input> onUnfavored;
+
+    private int numFavored = 0;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param expectedKeys the number of keys expected to be covered
+     */
+    ResponsibilityIndex(int expectedKeys) {
+        this(expectedKeys, input -> {});
+    }
+
+    /**
+     * Creates an empty index that reports inputs that stop being favored.
+     *
+     * @param expectedKeys the number of keys expected to be covered
+     * @param onUnfavored called with each input whose last responsibility is taken away
+     */
+    ResponsibilityIndex(int expectedKeys, Consumer<Input> onUnfavored) {
+        this.owners = new IntObjectHashMap<>(expectedKeys);
+        this.onUnfavored = onUnfavored;
+    }
+
+    /**
+     * Returns the input responsible for a coverage key.
+     *
+     * @param key the coverage key
+     * @return the responsible input, or null if none is
+     */
+    Input get(int key) {
+        return owners.get(key);
+    }
+
+    /**
+     * Returns the number of inputs responsible for at least one key.
+     *
+     * @return the number of favored inputs
+     */
+    int numFavored() {
+        return numFavored;
+    }
+
+    /**
+     * Returns the number of keys that some input is responsible for, which is
+     * the sum of the sizes of all responsibility sets.
+     *
+     * @return the number of keys in the index
+     */
+    int sumResponsibilities() {
+        return owners.size();
+    }
+
+    /**
+     * Makes an input responsible for a set of keys, taking each one away from
+     * the input that was responsible for it before.
+     *
+     * <p>The input must not have been assigned any keys before.</p>
+     *
+     * @param input the input
+     * @param keys the keys, which become the input's responsibilities
+     */
+    void assign(Input input, IntHashSet keys) {
+        input.responsibilities = keys;
+        IntIterator iter = keys.intIterator();
+        while (iter.hasNext()) {
+            int b = iter.next();
+            // If there is an old input that is responsible, subsume it
+            Input oldResponsible = owners.put(b, input);
+            if (oldResponsible != null && oldResponsible != input) {
+                oldResponsible.responsibilities.remove(b);
+                if (oldResponsible.responsibilities.isEmpty()) {
+                    numFavored--;
+                    onUnfavored.accept(oldResponsible);
+                }
+            }
+        }
+        if (!keys.isEmpty()) {
+            numFavored++;
+        }
+    }
+
+    /**
+     * Counts, for each input responsible for a key that a run covers, how many
+     * of its responsibilities the run covers. An input whose count equals the
+     * size of its responsibilities is subsumed by the run.
+     *
+     * @param run the coverage of the run
+     * @return the number of covered responsibilities of each input that has any
+     */
+    ObjectIntHashMap<Input> countCoveredResponsibilities(Coverage run) {
+        ObjectIntHashMap<Input> counts = new ObjectIntHashMap<>();
+        run.forEachCount((b, count) -> {
+            Input owner = owners.get(b);
+            if (owner != null) {
+                counts.addToValue(owner, 1);
+            }
+        });
+        return counts;
+    }
+}
@@ -0,0 +1,179 @@
+package edu.berkeley.cs.jqf.fuzz.ei;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.Input;
+import org.eclipse.collections.api.map.primitive.IntIntMap;
+
+/**
+ * A max-heap of saved inputs ordered by score, from which {@link ZestGuidance}
+ * picks the next parent when the priority queue is enabled.
+ *
+ * <p>Unlike a {@link java.util.PriorityQueue}, the heap knows where each input is,
+ * by input id, so changing the score of a queued input costs O(log n) instead of
+ * a linear search and removal. Inputs with equal scores come out in order of id.</p>
+ */
+class ScoredInputQueue {
+
+    private Input[] heap = new Input[16];
+    private int size = 0;
+
+    /** The position in the heap of each input, by id; -1 if not queued */
+    private int[] positions = new int[16];
+
+    ScoredInputQueue() {
+        Arrays.fill(positions, -1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(Input input) {
+        return positionOf(input.id) >= 0;
+    }
+
+    private int positionOf(int id) {
+        return id >= 0 && id < positions.length ? positions[id] : -1;
+    }
+
+    /**
+     * Queues an input, or moves it to its place if it is already queued and its score has changed.
+     *
+     * @param input the input
+     */
+    void add(Input input) {
+        int pos = positionOf(input.id);
+        if (pos >= 0) {
+            siftDown(siftUp(pos));
+            return;
+        }
+        append(input);
+        siftUp(size - 1);
+    }
+
+    /**
+     * Queues every input that is not queued yet, rebuilding the heap in linear time.
+     *
+     * @param inputs the inputs
+     */
+    void addAll(Collection<? extends Input> inputs) {
+        for (Input input : inputs) {
+            if (positionOf(input.id) < 0) {
+                append(input);
+            }
+        }
+        heapify();
+    }
+
+    /**
+     * Removes the input with the highest score.
+     *
+     * @return the input
+     * @throws NoSuchElementException if the queue is empty
+     */
+    Input remove() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        Input top = heap[0];
+        positions[top.id] = -1;
+        size--;
+        if (size > 0) {
+            place(heap[size], 0);
+            siftDown(0);
+        }
+        heap[size] = null;
+        return top;
+    }
+
+    /**
+     * Adds to the scores of queued inputs, and moves them to their new places. Inputs that are not
+     * queued are left alone. Large batches rebuild the heap once rather than moving each input.
+     *
+     * @param deltas the amount to add to the score of each input, by id
+     */
+    void addScores(IntIntMap deltas) {
+        boolean rebuild = deltas.size() > size / 8;
+        deltas.forEachKeyValue((id, delta) -> {
+            int pos = positionOf(id);
+            if (pos >= 0) {
+                heap[pos].score += delta;
+                if (!rebuild) {
+                    siftDown(siftUp(pos));
+                }
+            }
+        });
+        if (rebuild) {
+            heapify();
+        }
+    }
+
+    private void append(Input input) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        if (input.id >= positions.length) {
+            int oldLength = positions.length;
+            positions = Arrays.copyOf(positions, Math.max(input.id + 1, oldLength * 2));
+            Arrays.fill(positions, oldLength, positions.length, -1);
+        }
+        place(input, size++);
+    }
+
+    private void place(Input input, int pos) {
+        heap[pos] = input;
+        positions[input.id] = pos;
+    }
+
+    /** Whether <tt>a</tt> comes out before <tt>b</tt> */
+    private static boolean before(Input a, Input b) {
+        int sa = a.score;
+        int sb = b.score;
+        return sa > sb || (sa == sb && a.id < b.id);
+    }
+
+    private int siftUp(int pos) {
+        Input input = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!before(input, heap[parent])) {
+                break;
+            }
+            place(heap[parent], pos);
+            pos = parent;
+        }
+        place(input, pos);
+        return pos;
+    }
+
+    private void siftDown(int pos) {
+        Input input = heap[pos];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && before(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!before(heap[child], input)) {
+                break;
+            }
+            place(heap[child], pos);
+            pos = child;
+        }
+        place(input, pos);
+    }
+
+    private void heapify() {
+        for (int pos = (size >>> 1) - 1; pos >= 0; pos--) {
+            siftDown(pos);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package edu.berkeley.cs.jqf.fuzz.ei;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the checkpoint file from which {@link ZestGuidance} resumes a campaign.
+ *
+ * <p>The guidance encodes its own state; this class frames it with a header (magic, version, payload length,
+ * CRC32 of the payload) and replaces the previous checkpoint atomically, so that a campaign killed while
+ * checkpointing can still resume from the one before. The bytes of saved inputs are not part of the checkpoint:
+ * they are read back from the corpus, which is synced before the checkpoint is written.</p>
+ */
+class ZestCheckpoint {
+
+    static final String FILE = "checkpoint";
+    private static final int MAGIC = 0x4A51464B; // "JQFK"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private ZestCheckpoint() {}
+
+    /**
+     * Replaces a checkpoint file, syncing it to disk first.
+     *
+     * @param file the checkpoint file
+     * @param payload the encoded guidance state
+     * @throws IOException if the checkpoint could not be written
+     */
+    static void write(File file, byte[] payload) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(payload.length).putInt((int) crc.getValue()).flip();
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer body = ByteBuffer.wrap(payload);
+            while (header.hasRemaining() || body.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, body});
+            }
+            channel.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a checkpoint file.
+     *
+     * @param file the checkpoint file
+     * @return the encoded guidance state
+     * @throws IOException if the file could not be read, or is not an intact checkpoint
+     */
+    static byte[] read(File file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_SIZE || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            throw new IOException("Not a checkpoint: " + file);
+        }
+        int length = buf.getInt();
+        int checksum = buf.getInt();
+        if (length != bytes.length - HEADER_SIZE) {
+            throw new IOException("Truncated checkpoint: " + file);
+        }
+        byte[] payload = new byte[length];
+        buf.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Corrupt checkpoint: " + file);
+        }
+        return payload;
+    }
+
+    static void writeLongs(DataOutput out, long[] a) throws IOException {
+        out.writeInt(a.length);
+        for (long l : a) {
+            out.writeLong(l);
+        }
+    }
+
+    /** Reads longs written by {@link #writeLongs} into an array; extra values on either side are ignored. */
+    static void readLongs(DataInput in, long[] into) throws IOException {
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            long l = in.readLong();
+            if (i < into.length) {
+                into[i] = l;
+            }
+        }
+    }
+}
@@ -31,6 +31,9 @@ package edu.berkeley.cs.jqf.fuzz.ei;
 
 import java.io.File;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import edu.berkeley.cs.jqf.fuzz.junit.GuidedFuzzing;
 
@@ -42,8 +45,13 @@ import edu.berkeley.cs.jqf.fuzz.junit.GuidedFuzzing;
 public class ZestDriver {
 
     public static void main(String[] args) {
+        // Carry on from the checkpoint in OUTPUT_DIR instead of starting afresh
+        List<String> argList = new ArrayList<>(Arrays.asList(args));
+        boolean resume = argList.remove("--resume");
+        args = argList.toArray(new String[0]);
+
         if (args.length < 2){
-            System.err.println("Usage: java " + ZestDriver.class + " TEST_CLASS TEST_METHOD [OUTPUT_DIR [SEEDS...]]");
+            System.err.println("Usage: java " + ZestDriver.class + " [--resume] TEST_CLASS TEST_METHOD [OUTPUT_DIR [SEEDS...]]");
             System.exit(1);
         }
 
@@ -74,9 +82,15 @@ public class ZestDriver {
             Integer heartbeatDuration = 1000;
             if(System.getProperty("heartbeatDuration") != null)
                 heartbeatDuration = Integer.parseInt(System.getProperty("heartbeatDuration"));
-            ZestGuidance guidance = seedFiles != null ?
-                    new ZestGuidance(title, d, heartbeatDuration, outputDirectory, seedFiles) :
-                    new ZestGuidance(title, d, heartbeatDuration, outputDirectory);
+            ZestGuidance guidance;
+            if (resume) {
+                // Seeds were run before the checkpoint, and their descendants are in the corpus
+                guidance = new ZestGuidance(title, d, heartbeatDuration, outputDirectory, true);
+            } else {
+                guidance = seedFiles != null ?
+                        new ZestGuidance(title, d, heartbeatDuration, outputDirectory, seedFiles) :
+                        new ZestGuidance(title, d, heartbeatDuration, outputDirectory);
+            }
 
             // Ensure that generators are being traced
             if (!ZestGuidance.DISABLE_EXECUTION_INDEXING) {
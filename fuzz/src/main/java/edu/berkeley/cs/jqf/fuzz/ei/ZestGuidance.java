@@ -28,26 +28,27 @@
  */
 package edu.berkeley.cs.jqf.fuzz.ei;
 
+import edu.berkeley.cs.jqf.fuzz.central.CentralExchange;
 import edu.berkeley.cs.jqf.fuzz.central.Coordinator;
+import edu.berkeley.cs.jqf.fuzz.central.WireProtocol;
 import edu.berkeley.cs.jqf.fuzz.central.ZestClient;
 import edu.berkeley.cs.jqf.fuzz.ei.ExecutionIndex.Prefix;
 import edu.berkeley.cs.jqf.fuzz.ei.ExecutionIndex.Suffix;
 import edu.berkeley.cs.jqf.fuzz.guidance.*;
 import edu.berkeley.cs.jqf.fuzz.util.Coverage;
+import edu.berkeley.cs.jqf.fuzz.util.CoverageMapFile;
+import edu.berkeley.cs.jqf.fuzz.util.CoverageShards;
 import edu.berkeley.cs.jqf.fuzz.util.ProducerHashMap;
 import edu.berkeley.cs.jqf.instrument.tracing.SingleSnoop;
-import edu.berkeley.cs.jqf.instrument.tracing.events.CallEvent;
-import edu.berkeley.cs.jqf.instrument.tracing.events.ReturnEvent;
 import edu.berkeley.cs.jqf.instrument.tracing.events.TraceEvent;
 import edu.berkeley.cs.jqf.instrument.tracing.events.TraceEventVisitor;
-import edu.columbia.cs.psl.phosphor.struct.IntSinglyLinkedList;
+import janala.instrument.GlobalStateForInstrumentation;
 import org.apache.bcel.classfile.JavaClass;
 import org.eclipse.collections.api.iterator.IntIterator;
-import org.eclipse.collections.api.iterator.ShortIterator;
 import org.eclipse.collections.api.list.primitive.IntList;
 import org.eclipse.collections.impl.list.mutable.primitive.ByteArrayList;
-import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
-import org.eclipse.collections.impl.list.mutable.primitive.ShortArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
 import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
 import org.paukov.combinatorics3.Generator;
 import org.w3c.dom.Document;
@@ -61,6 +62,7 @@ import javax.xml.transform.stream.StreamResult;
 import java.io.*;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
@@ -82,9 +84,6 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
     // This field is used to ensure that
     private Thread appThread;
 
-    /** The last event handled by this guidance */
-    private TraceEvent lastEvent;
-
     /** The execution indexing logic. */
     private ExecutionIndexingState eiState;
 
@@ -113,6 +112,9 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
     /** The directory where saved inputs are written. */
     private File savedInputsDirectory;
 
+    /** Where saved inputs are appended, unless they are written as files */
+    private CorpusStore.Writer corpusWriter;
+
     /** The directory where saved inputs are written. */
     private File savedFailuresDirectory;
 
@@ -165,18 +167,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
      */
     private static final boolean INCLUDE_SINGLE_HINTS_AS_BONUS_MUTATIONS = false;
 
-    private PriorityQueue<Input> savedInputsAccess = new PriorityQueue<Input>(new InputComparator());
-
-    private class InputComparator implements Comparator<Input> {
-        public int compare(Input i1, Input i2)
-        {
-            if (i1.score < i2.score)
-                return 1;
-            else if (i1.score > i2.score)
-                return -1;
-            return 0;
-        }
-    }
+    private ScoredInputQueue savedInputsAccess = new ScoredInputQueue();
 
     public static PriorityQueueConfig priorityQueueConfig;
 
@@ -337,6 +328,9 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
     /** Coverage statistics for a single run. */
     private Coverage runCoverage = new Coverage();
 
+    /** Per-thread coverage from instrumented branches, merged into runCoverage when the run ends. */
+    private final CoverageShards coverageShards = new CoverageShards();
+
     /** Cumulative coverage statistics. */
     private Coverage totalCoverage = new Coverage();
 
@@ -349,16 +343,26 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
     private int heartbeatInterval = 1000;
 
-    /** A mapping of coverage keys to inputs that are responsible for them. */
-    private Map<Object, Input> responsibleInputs = new HashMap<>(totalCoverage.size());
+    /**
+     * A mapping of coverage keys to inputs that are responsible for them.
+     *
+     * Inputs that lose their last responsibility are no longer favored, and are taken out of the splice map.
+     */
+    private ResponsibilityIndex responsibleInputs
+            = new ResponsibilityIndex(totalCoverage.size(), this::unmapEcToInputLoc);
 
     /** The set of unique failures found so far. */
     private Set<List<StackTraceElement>> uniqueFailures = new HashSet<>();
 
+    /** The id of the first failure in {@link #uniqueFailures}; past the failures kept from before a resume. */
+    private int firstFailureIdx = 0;
+
     /**
      * A map of execution contexts (call stacks) to locations in saved inputs with those contexts.
      *
      * This is a nifty data structure for quickly finding candidates for input splicing.
+     * It holds the locations of favored inputs only, and is kept up to date as inputs are
+     * saved and lose their responsibilities.
      */
     private Map<ExecutionContext, ArrayList<InputLocation>> ecToInputLoc
             = new ProducerHashMap<>(() -> new ArrayList<>());
@@ -390,6 +394,36 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
     /** The file where saved plot data is written. */
     private File statsFile;
 
+    /** The file where total coverage is written, for a later run to start from (see {@link CoverageMapFile}). */
+    private File coverageMapFile;
+
+    /** The file where collisions between stable instruction ids are listed. */
+    private File idCollisionsFile;
+
+    /** The number of branches loaded from a previous run's coverage map, which no input here is responsible for. */
+    private int preloadedCoverageCount;
+
+    /** Whether the coverage map was written after fuzzing stopped. */
+    private boolean savedFinalCoverageMap;
+
+    /** The file where the guidance state is checkpointed (see {@link ZestCheckpoint}). */
+    private File checkpointFile;
+
+    /** Whether this campaign carries on from the checkpoint in the output directory. */
+    private final boolean resume;
+
+    /** The instrumentation that numbers coverage keys. */
+    private final GlobalStateForInstrumentation instrumentation;
+
+    /** Milliseconds between checkpoints; 0 if none are written. */
+    private final long checkpointIntervalMillis;
+
+    /** Whether checkpoints are written; not without stable ids, as coverage keys would not match after a restart. */
+    private final boolean checkpointing;
+
+    /** Time of the last checkpoint. */
+    private long lastCheckpointTime = System.currentTimeMillis();
+
     /** Whether to hide fuzzing statistics **/
     protected final boolean QUIET_MODE = Boolean.getBoolean("jqf.ei.QUIET_MODE");
 
@@ -460,11 +494,40 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
     /** Whether to steal responsibility from old inputs (this increases computation cost). */
     static final boolean STEAL_RESPONSIBILITY = Boolean.getBoolean("jqf.ei.STEAL_RESPONSIBILITY");
 
+    /** Whether to check the favored-input counts and the splice map against the corpus after each cycle (debug option). */
+    static final boolean CHECK_FAVORED_INPUTS = Boolean.getBoolean("jqf.ei.CHECK_FAVORED_INPUTS");
+
     /** Probability of splicing in getOrGenerateFresh() */
     static final double DEMAND_DRIVEN_SPLICING_PROBABILITY = 0;
 
     static final int UNIQUE_SENSITIVITY = Integer.getInteger("jqf.ei.UNIQUE_SENSITIVITY", Integer.MAX_VALUE);
 
+    /**
+     * How saved inputs are written: "segments" appends them to a {@link CorpusStore} in the corpus directory,
+     * "files" writes one serialized <tt>id_NNNNNN</tt> file per input. Failures are always written as files.
+     */
+    static final boolean CORPUS_SEGMENTS = !"files".equals(System.getProperty("jqf.ei.CORPUS_FORMAT", "segments"));
+
+    /** Whether to also write the generated arguments of each saved input to an <tt>id_NNNNNN.input</tt> file */
+    static final boolean SAVE_INPUT_ARGS = Boolean.parseBoolean(System.getProperty("jqf.ei.SAVE_INPUT_ARGS",
+            String.valueOf(!CORPUS_SEGMENTS)));
+
+    /**
+     * Seconds between checkpoints of the guidance state, from which a campaign can be resumed; 0 disables them.
+     * Checkpoints need stable instruction ids (<tt>janala.stableIds</tt>) and linear inputs, so they default to
+     * every 300 seconds with stable ids, and to none without.
+     */
+    static final String CHECKPOINT_INTERVAL = System.getProperty("jqf.ei.CHECKPOINT_INTERVAL");
+
+    static long checkpointIntervalMillis(GlobalStateForInstrumentation instrumentation) {
+        long seconds = CHECKPOINT_INTERVAL != null ? Long.parseLong(CHECKPOINT_INTERVAL)
+                : instrumentation.isStable() ? 300 : 0;
+        return TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    /** A coverage map saved by an earlier run (or merged from several), to load into total coverage at startup. */
+    static final String COVERAGE_MAP = System.getProperty("jqf.ei.COVERAGE_MAP");
+
     static final boolean PROFILE_HEAP_USAGE = Boolean.valueOf(System.getenv("PROFILE_HEAP") != null ? System.getenv("PROFILE_HEAP") : "false");
 
     private MemoryMXBean memoryMXBean;
@@ -478,6 +541,11 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
     private static ZestClient central;
     private ZestClient triggerClient;
+    /**
+     * All traffic with central after the initial connection goes through here, so that the fuzzing thread never
+     * waits on central
+     */
+    private CentralExchange exchange;
     private RecordingInputStream ris;
 
 
@@ -492,11 +560,11 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
     public static int extendedDictionarySize;
 
     /**
-     * These two buffers are used by recordinginpustream, and could become quite large. We don't want to allocate them for each
-     * input, and making them static in RecordingInputStream will cause a nasty thread safety bug one day, surely...
+     * This buffer is used by recordinginpustream, and could become quite large. We don't want to allocate it for each
+     * input, and making it static in RecordingInputStream will cause a nasty thread safety bug one day, surely...
      */
-    private final ByteArrayList  recordingInputStreamBuffer = new ByteArrayList(ZestGuidance.MAX_INPUT_SIZE / 4);
-    private final IntArrayList recordingInputStreamMarksBuffer = new IntArrayList(ZestGuidance.MAX_INPUT_SIZE / 16);
+    private final RecordingInputStream.MarkedInput recordingInputStreamBuffer = new RecordingInputStream.MarkedInput(
+            new byte[ZestGuidance.MAX_INPUT_SIZE / 4], 0, new int[ZestGuidance.MAX_INPUT_SIZE / 8], 0);
 
     /**
      * @param testName the name of test to display on the status screen
@@ -508,14 +576,60 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
      * @throws IOException if the output directory could not be prepared
      */
     public ZestGuidance(String testName, Duration duration,Integer heartbeatDuration, File outputDirectory) throws IOException {
+        this(testName, duration, heartbeatDuration, outputDirectory, false);
+    }
+
+    /**
+     * @param testName the name of test to display on the status screen
+     * Creates a new execution-index-parametric guidance, possibly carrying on from an earlier campaign.
+     *
+     * @param duration the amount of time to run fuzzing for, where
+     *                 {@code null} indicates unlimited time.
+     * @param outputDirectory the directory where fuzzing results will be written
+     * @param resume whether to restore the state checkpointed in the output directory, and keep its results,
+     *               instead of starting afresh
+     * @throws IOException if the output directory could not be prepared, or the checkpoint could not be restored
+     * @throws GuidanceException if asked to resume but checkpoints are disabled, or the output directory has
+     *                           no checkpoint; the directory is left as it is
+     */
+    public ZestGuidance(String testName, Duration duration, Integer heartbeatDuration, File outputDirectory,
+                        boolean resume) throws IOException {
+        this(testName, duration, heartbeatDuration, outputDirectory, resume, GlobalStateForInstrumentation.instance);
+    }
+
+    /* Creates a guidance whose coverage keys are numbered by the given instrumentation */
+    ZestGuidance(String testName, Duration duration, Integer heartbeatDuration, File outputDirectory,
+                 boolean resume, GlobalStateForInstrumentation instrumentation) throws IOException {
         this.testName = testName;
         this.maxDurationMillis = duration != null ? duration.toMillis() : Long.MAX_VALUE;
         this.outputDirectory = outputDirectory;
         this.heartbeatInterval = heartbeatDuration;
-        SingleSnoop.setCoverageListener(runCoverage);
+        this.checkpointFile = new File(outputDirectory, ZestCheckpoint.FILE);
+        this.instrumentation = instrumentation;
+        this.checkpointIntervalMillis = checkpointIntervalMillis(instrumentation);
+        this.checkpointing = checkpointIntervalMillis > 0 && DISABLE_EXECUTION_INDEXING && instrumentation.isStable();
+        if (CHECKPOINT_INTERVAL != null && checkpointIntervalMillis > 0 && !checkpointing) {
+            System.err.println("Warning: no checkpoints will be written, as " + whyNoCheckpoints());
+        }
+        if (resume && !checkpointing) {
+            throw new GuidanceException("Cannot resume: checkpoints are disabled, as " + whyNoCheckpoints());
+        }
+        if (resume && !checkpointFile.isFile()) {
+            // Never fall back to a new campaign, which would delete the results we were asked to carry on from
+            throw new GuidanceException("Cannot resume: no checkpoint in " + outputDirectory);
+        }
+        this.resume = resume;
+        SingleSnoop.setCoverageListener(coverageShards);
 
         prepareOutputDirectory();
 
+        if (resume) {
+            restoreCheckpoint();
+        } else if (COVERAGE_MAP != null) {
+            preloadedCoverageCount = CoverageMapFile.load(new File(COVERAGE_MAP), totalCoverage);
+            infoLog("Loaded %d branches from coverage map %s", preloadedCoverageCount, COVERAGE_MAP);
+        }
+
         // Try to parse the single-run timeout
         String timeout = System.getProperty("jqf.ei.TIMEOUT");
         if (timeout != null && !timeout.isEmpty()) {
@@ -534,6 +648,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
             this.triggerClient = new ZestClient();
             if(this.triggerClient.triggerZ3SampleThreshold == null && this.triggerClient.triggerZ3SampleWindow == null) {
                 this.central = triggerClient;
+                this.exchange = new CentralExchange(central, priorityQueueConfig.usePriorityQueue);
                 startedCentral = true;
             }
         } catch (IOException e) {
@@ -543,6 +658,18 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
 
 
+    /* Explains why checkpoints are not written in this configuration */
+    private String whyNoCheckpoints() {
+        if (checkpointIntervalMillis <= 0) {
+            return CHECKPOINT_INTERVAL != null ? "jqf.ei.CHECKPOINT_INTERVAL is not positive"
+                    : "instruction ids are not stable; set janala.stableIds=true in janala.conf";
+        } else if (!DISABLE_EXECUTION_INDEXING) {
+            return "execution indexing is enabled (jqf.ei.ENABLE_EXECUTION_INDEXING)";
+        } else {
+            return "instruction ids are not stable; set janala.stableIds=true in janala.conf";
+        }
+    }
+
     protected final synchronized void handleHeartbeat(long numExecs, double coveragePercentage) {
         if (this.central == null && this.triggerClient == null )
             return;
@@ -586,7 +713,13 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
      */
     public ZestGuidance(String testName, Duration duration, Integer heartbeatDuration, File outputDirectory, File... seedInputFiles) throws IOException {
         this(testName, duration, heartbeatDuration, outputDirectory);
-        if(seedInputFiles.length == 1 && seedInputFiles[0].isDirectory()){
+        if(seedInputFiles.length == 1 && CorpusStore.isStore(seedInputFiles[0])){
+            try (CorpusStore.Reader corpus = new CorpusStore.Reader(seedInputFiles[0])) {
+                for (LinearInput saved : corpus) {
+                    seedInputs.add(new SeedInput(saved));
+                }
+            }
+        } else if(seedInputFiles.length == 1 && seedInputFiles[0].isDirectory()){
             for(File f : seedInputFiles[0].listFiles()){
                 if(f.getName().endsWith(".input")){
                     continue;
@@ -629,22 +762,33 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
         this.statsFile = new File(outputDirectory, "plot_data");
         this.logFile = new File(outputDirectory, "fuzz.log");
         this.currentInputFile = new File(outputDirectory, ".cur_input");
+        this.coverageMapFile = new File(outputDirectory, "coverage_map");
+        this.idCollisionsFile = new File(outputDirectory, "id_collisions");
 
 
-        // Delete everything that we may have created in a previous run.
+        // Delete everything that we may have created in a previous run, unless we carry on from it.
         // Trying to stay away from recursive delete of parent output directory in case there was a
         // typo and that was not a directory we wanted to nuke.
         // We also do not check if the deletes are actually successful.
-        statsFile.delete();
-        logFile.delete();
-        for (File file : savedInputsDirectory.listFiles()) {
-            file.delete();
+        if (!resume) {
+            statsFile.delete();
+            logFile.delete();
+            coverageMapFile.delete();
+            idCollisionsFile.delete();
+            checkpointFile.delete();
+            for (File file : savedInputsDirectory.listFiles()) {
+                file.delete();
+            }
+            for (File file : savedFailuresDirectory.listFiles()) {
+                file.delete();
+            }
         }
-        for (File file : savedFailuresDirectory.listFiles()) {
-            file.delete();
+        if (CORPUS_SEGMENTS) {
+            // Reopening a store drops anything a crash left half-written
+            corpusWriter = new CorpusStore.Writer(savedInputsDirectory);
         }
 
-        statsWriter = new PrintWriter(new FileWriter(this.statsFile));
+        statsWriter = new PrintWriter(new FileWriter(this.statsFile, resume));
         if(PROFILE_HEAP_USAGE){
             memoryMXBean = ManagementFactory.getMemoryMXBean();
         }
@@ -655,9 +799,13 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                     statsWriter.flush();
                     statsWriter.close();
                 }
+                closeCorpus();
             }
         }));
 
+        if (resume) {
+            return;
+        }
         appendToStatsFile("# unix_time, cycles_done, cur_path, paths_total, pending_total, " +
                 "pending_favs, map_size, unique_crashes, unique_hangs, max_depth, execs_per_sec, total_inputs, " +
                 "mutated_bytes, valid_inputs, invalid_inputs, all_cov, z3, " +
@@ -668,7 +816,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                 "inputsSavedWith_Z3Origin, " +
                 "inputsSavedWithoutHintsOrZ3,countOfSavedInputsWithExtendedDictionaryHints," +
                 "countOfCreatedInputsWithExtendedDictionaryHints," +
-                "extendedDictionarySize,heapUsageBytes,nonHeapUsageBytes");
+                "extendedDictionarySize,central_attached,heapUsageBytes,nonHeapUsageBytes");
     }
 
     static PrintWriter statsWriter;
@@ -836,7 +984,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                 - countOfInputsCreatedByMutation[MutationType.APPLY_SINGLE_HINT.ordinal()]
                 - countOfInputsCreatedByMutation[MutationType.APPLY_SINGLE_CHAR_HINT.ordinal()];
 
-        String plotData = String.format("%d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %.2f, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d",
+        String plotData = String.format("%d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %.2f, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d",
                 TimeUnit.MILLISECONDS.toSeconds(now.getTime()), cyclesCompleted, currentParentInputIdx,
                 savedInputs.size(), 0, 0, nonZeroCount, uniqueFailures.size(), 0, 0, intervalExecsPerSecDouble,
                 numTrials, mutatedBytes/numTrials, numValid, numTrials-numValid, nonZeroCount,
@@ -857,7 +1005,8 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                 countOfSavedInputsBySeedSource[SeedSource.RANDOM.ordinal()],
                 countOfSavedInputsWithExtendedDictionaryHints,
                 countOfCreatedInputsWithExtendedDictionaryHints,
-                ZestGuidance.extendedDictionarySize);
+                ZestGuidance.extendedDictionarySize,
+                exchange != null && exchange.isConnected() ? 1 : 0);
         if(PROFILE_HEAP_USAGE){
             plotData += ", " + memoryMXBean.getHeapMemoryUsage().getUsed() + ", " + memoryMXBean.getNonHeapMemoryUsage().getUsed();
         }
@@ -890,47 +1039,43 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
         infoLog("\n# Cycle " + cyclesCompleted + " completed.");
         if(!FETCH_HINTS_MID_CYCLE){
             //Find inputs that we now have hints for
-            if(central != null){
-                LinkedList<Integer> fetchHintsFor = central.getRecommendations();
+            if(exchange != null){
+                LinkedList<Integer> fetchHintsFor = exchange.pollRecommendations();
                 for(Integer i : fetchHintsFor){
                     this.inputsWithHintsAtStartOfCycle.add(i.intValue());
                 }
             }
         }
 
-        // Go over all inputs and do a sanity check (plus log)
-        infoLog("Here is a list of favored inputs:");
-        int sumResponsibilities = 0;
-        numFavoredLastCycle = 0;
-        for (Input input : savedInputs) {
+        // The favored inputs and their responsibilities are counted as they change
+        numFavoredLastCycle = responsibleInputs.numFavored();
+        int sumResponsibilities = responsibleInputs.sumResponsibilities();
 
-            // refill the priority queue
-            if(priorityQueueConfig.usePriorityQueue) {
-                savedInputsAccess.add(input);
-            }
+        // refill the priority queue
+        if(priorityQueueConfig.usePriorityQueue) {
+            savedInputsAccess.addAll(savedInputs);
+        }
 
-            if (input.isFavored()) {
-                int responsibleFor = input.responsibilities.size();
-                infoLog("Input %d is responsible for %d branches", input.id, responsibleFor);
-                sumResponsibilities += responsibleFor;
-                numFavoredLastCycle++;
+        if (verbose) {
+            infoLog("Here is a list of favored inputs:");
+            for (Input input : savedInputs) {
+                if (input.isFavored()) {
+                    infoLog("Input %d is responsible for %d branches", input.id, input.responsibilities.size());
+                }
             }
         }
+        if (CHECK_FAVORED_INPUTS) {
+            checkFavoredInputs();
+        }
 
         int totalCoverageCount = totalCoverage.getNonZeroCount();
         infoLog("Total %d branches covered", totalCoverageCount);
-        if (sumResponsibilities != totalCoverageCount) {
+        if (sumResponsibilities != totalCoverageCount - preloadedCoverageCount) {
             //throw new AssertionError("Responsibilty mistmatch: " + sumResponsibilities + " vs " + totalCoverageCount);
             System.err.println("Responsibility mismatch: " + sumResponsibilities + " vs " + totalCoverageCount);
         }
 
-        // Refresh ecToInputLoc so that subsequent splices are only from favored inputs
-        ecToInputLoc.clear();
-        for (Input input : savedInputs) {
-            if (input.isFavored()) {
-                mapEcToInputLoc(input);
-            }
-        }
+        saveCoverageMap();
 
         // Break log after cycle
         infoLog("\n\n\n");
@@ -942,9 +1087,10 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
         // Clear coverage stats for this run
         runCoverage.clear();
+        coverageShards.startTrial();
 
-        // Reset execution index state
-        eiState = new ExecutionIndexingState();
+        // Reset execution index state (the fuzzing thread's probe-maintained call stack)
+        eiState = ExecutionIndexingState.forCurrentThread();
 
         Coordinator.Input inputFromCentral;
 
@@ -973,7 +1119,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
             Input currentParentInput = savedInputs.get(currentParentInputIdx);
             int targetNumChildren = getTargetChildrenForParent(currentParentInput);
             if (numChildrenGeneratedForCurrentParentInput >= targetNumChildren &&
-                    central != null && (inputFromCentral = central.getInput()) != null) {
+                    exchange != null && (inputFromCentral = exchange.pollZ3Input()) != null) {
                 // Central sent input, use that instead
 
                 currentInput = new ZestGuidance.SeedInput(inputFromCentral.bytes, "From central");
@@ -1016,8 +1162,8 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
                 if (numChildrenGeneratedForCurrentParentInput >= targetNumChildren) {
                     // Select the next saved input to fuzz
-                    if (FETCH_HINTS_MID_CYCLE && recommendedInputsToFuzz.isEmpty() && central != null && triggerClient != null) {
-                        recommendedInputsToFuzz = triggerClient.getRecommendations();
+                    if (FETCH_HINTS_MID_CYCLE && recommendedInputsToFuzz.isEmpty() && exchange != null) {
+                        recommendedInputsToFuzz = exchange.pollRecommendations();
                     }
                     if (FETCH_HINTS_MID_CYCLE && !recommendedInputsToFuzz.isEmpty()) {
                         if (recommendedInputsToFuzz.peek() > currentParentInputCounter + 1) {
@@ -1059,13 +1205,14 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                     parent.numHintsAppliedThisRound = 0;
                 }
 
-                if (newParent && getRecommendations && central != null) {
+                if (newParent && getRecommendations && exchange != null) {
+                    // Central's hints for recommended inputs were fetched ahead of time by the exchange thread
+                    CentralExchange.Hints hints = exchange.pollHints(parent.id);
                     try {
-                        central.selectInput(parent.id);
-                        LinkedList<int[]> instructionsToTryInChildren = central.receiveInstructions();
-                        LinkedList<Coordinator.StringHint[]> stringEqualsHintsToTryInChildren = central.receiveStringEqualsHints();
-                        HashSet<Coordinator.TargetedHint> targetedHints = central.receiveTargetedHints();
-                        if (!parent.alreadyReceivedHints) {
+                        if (hints != null && !parent.alreadyReceivedHints) {
+                            LinkedList<int[]> instructionsToTryInChildren = hints.instructions;
+                            LinkedList<Coordinator.StringHint[]> stringEqualsHintsToTryInChildren = hints.stringEqualsHints;
+                            HashSet<Coordinator.TargetedHint> targetedHints = hints.targetedHints;
                             //Not sure why this happens, but also not sure if it's a big deal?
                             //if(instructionsToTryInChildren.isEmpty()){
                                 //throw new IllegalStateException("Central didn't send instructions for input "+ parent.id + " even though it suggested it!");
@@ -1091,7 +1238,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                             if(INCLUDE_SINGLE_HINTS_AS_BONUS_MUTATIONS)
                                 parent.bonusMutations = Math.min(parent.hintsRemaining, getTargetChildrenForParent(parent));
                             //Save the input again, since we now have hints for it!
-                            writeInputToFile(parent, new File(savedInputsDirectory, String.format("id_%06d", parent.id)));
+                            writeInputToCorpus(parent, parent.id);
 
                         }
 
@@ -1134,11 +1281,6 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
             @Override
             public int read() throws IOException {
 
-                // lastEvent must not be null
-                if (DISABLE_EXECUTION_INDEXING == false && lastEvent == null) {
-                    throw new IOException("Could not compute execution index; no instrumentation?");
-                }
-
                 // For linear inputs, get with key = bytesRead (which is then incremented)
                 if (currentInput instanceof LinearInput) {
                     LinearInput linearInput = (LinearInput) currentInput;
@@ -1152,8 +1294,8 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                 else {
                     MappedInput mappedInput = (MappedInput) currentInput;
 
-                    // Get the execution index of the last event
-                    ExecutionIndex executionIndex = eiState.getExecutionIndex(lastEvent);
+                    // Get the execution index of this read, reusing the input's own copy if it maps it
+                    ExecutionIndex executionIndex = mappedInput.getExecutionIndex(eiState);
 
                     // Attempt to get a value from the map, or else generate a random value
                     int value = mappedInput.getOrGenerateFresh(executionIndex, random);
@@ -1165,10 +1307,29 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
                 }
             }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (off < 0 || len < 0 || len > b.length - off) {
+                    throw new IndexOutOfBoundsException();
+                }
+
+                // Linear inputs can hand out a whole range at once
+                if (currentInput instanceof LinearInput) {
+                    int ret = ((LinearInput) currentInput).getOrGenerateFresh(bytesRead, b, off, len, random);
+                    if (ret > 0) {
+                        bytesRead += ret;
+                    }
+                    return ret;
+                }
+
+                // Every byte of a mapped input has its own execution index
+                return super.read(b, off, len);
+            }
         };
 
         if (central != null || triggerClient != null) {
-            ris = new RecordingInputStream(is, recordingInputStreamBuffer, recordingInputStreamMarksBuffer);
+            ris = new RecordingInputStream(is, recordingInputStreamBuffer);
             is = ris;
 
             if ((currentInput.stringEqualsHints != null))
@@ -1182,7 +1343,45 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
     public boolean hasInput() {
         Date now = new Date();
         long elapsedMilliseconds = now.getTime() - startTime.getTime();
-        return elapsedMilliseconds < maxDurationMillis;
+        if (elapsedMilliseconds < maxDurationMillis) {
+            return true;
+        }
+        if (!savedFinalCoverageMap) {
+            savedFinalCoverageMap = true;
+            saveCoverageMap();
+            if (checkpointing) {
+                writeCheckpoint();
+            }
+            closeCorpus();
+        }
+        return false;
+    }
+
+    /** Flushes and closes the corpus store, if saved inputs go to one. */
+    private synchronized void closeCorpus() {
+        if (corpusWriter != null) {
+            try {
+                corpusWriter.close();
+            } catch (IOException e) {
+                System.err.println("Could not close corpus store in " + savedInputsDirectory);
+                e.printStackTrace();
+            }
+            corpusWriter = null;
+        }
+    }
+
+    /** Writes total coverage and any instruction id collisions to the output directory. */
+    private void saveCoverageMap() {
+        try {
+            CoverageMapFile.save(totalCoverage, coverageMapFile);
+            List<String> collisions = GlobalStateForInstrumentation.instance.getCollisions();
+            if (!collisions.isEmpty()) {
+                Files.write(idCollisionsFile.toPath(), collisions);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not save coverage map to " + coverageMapFile);
+            e.printStackTrace();
+        }
     }
 
     private Object[] args;
@@ -1211,6 +1410,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
 
         // stop collecting coverage for the run
+        coverageShards.mergeInto(runCoverage);
         runCoverage.lock();
 
         // Increment run count
@@ -1358,7 +1558,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                     throw new GuidanceException(e);
                 }
 
-                if(central != null) {
+                if(exchange != null) {
 
                     try {
                         // Send new input / random requests used
@@ -1367,7 +1567,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                         double coveragePercentage = totalCoverage.getNonZeroCount() * 100.0 / totalCoverage.size();
                         //if (!(currentInput instanceof SeedInput)) {
                             //Don't send seed inputs to central, they should already have hints
-                            central.sendInput(ris.getRecordedInput(), result, currentInput,
+                            exchange.sendInput(ris.getRecordedInput(), result, currentInput,
                                     coveragePercentage, numTrials);
 
                             // Send updated coverage
@@ -1408,7 +1608,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
                 // Save crash to disk
                 try {
-                    int crashIdx = uniqueFailures.size()-1;
+                    int crashIdx = firstFailureIdx + uniqueFailures.size()-1;
                     String saveFileName = String.format("id_%06d", crashIdx);
                     File saveFile = new File(savedFailuresDirectory, saveFileName);
                     writeCurrentInputToFile(saveFile);
@@ -1434,6 +1634,284 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
         runCoverage.unlock();
 
+        if (checkpointing && System.currentTimeMillis() - lastCheckpointTime >= checkpointIntervalMillis) {
+            writeCheckpoint();
+        }
+    }
+
+    /**
+     * Writes everything needed to carry on with this campaign to the checkpoint file: counters, coverage, unique
+     * failures, and the queue state and hint bookkeeping of every saved input. The inputs themselves are read back
+     * from the corpus, so it is synced first.
+     */
+    void writeCheckpoint() {
+        lastCheckpointTime = System.currentTimeMillis();
+        try {
+            if (corpusWriter != null) {
+                corpusWriter.flush();
+            }
+            WireProtocol.Encoder out = new WireProtocol.Encoder();
+            out.writeBoolean(CORPUS_SEGMENTS);
+            out.writeLong(lastCheckpointTime - campaignStartTime);
+            out.writeLong(numTrials);
+            out.writeLong(numValid);
+            out.writeInt(numSavedInputs);
+            out.writeInt(cyclesCompleted);
+            out.writeInt(numFavoredLastCycle);
+            out.writeInt(currentParentInputIdx);
+            out.writeInt(currentParentInputCounter);
+            out.writeInt(numChildrenGeneratedForCurrentParentInput);
+            out.writeInt(numChildrenGeneratedForCurrentMutationLocation);
+            out.writeInt(maxCoverage);
+            out.writeInt(preloadedCoverageCount);
+            ZestCheckpoint.writeLongs(out, countOfInputsSavedByMutation);
+            ZestCheckpoint.writeLongs(out, countOfInputsCreatedByMutation);
+            ZestCheckpoint.writeLongs(out, countOfSavedInputsBySeedSource);
+            ZestCheckpoint.writeLongs(out, countOfFailingInputsBySeedSource);
+            ZestCheckpoint.writeLongs(out, countOfInputsSavedWithMutationCounts);
+            ZestCheckpoint.writeLongs(out, countOfInputsCreatedWithMutationCounts);
+            ZestCheckpoint.writeLongs(out, countOfInputsSavedWithHintMutationCounts);
+            ZestCheckpoint.writeLongs(out, countOfInputsCreatedWithHintMutationCounts);
+            out.writeLong(countOfSavedInputsWithExtendedDictionaryHints);
+            out.writeLong(countOfCreatedInputsWithExtendedDictionaryHints);
+            out.writeIntegers(recommendedInputsToFuzz);
+            out.writeInts(inputsWithHintsAtStartOfCycle.toSortedArray());
+
+            out.writeInt(uniqueFailures.size());
+            for (List<StackTraceElement> trace : uniqueFailures) {
+                out.writeInt(trace.size());
+                for (StackTraceElement e : trace) {
+                    out.writeString(e.getClassName());
+                    out.writeString(e.getMethodName());
+                    out.writeString(e.getFileName());
+                    out.writeInt(e.getLineNumber());
+                }
+            }
+
+            CoverageMapFile.write(totalCoverage, out, instrumentation.getIdBits());
+            CoverageMapFile.write(validCoverage, out, instrumentation.getIdBits());
+
+            out.writeInt(savedInputs.size());
+            for (Input input : savedInputs) {
+                writeCheckpointedInput(out, input);
+            }
+            ZestCheckpoint.write(checkpointFile, out.toByteArray());
+        } catch (IOException e) {
+            System.err.println("Could not write checkpoint " + checkpointFile);
+            e.printStackTrace();
+        }
+    }
+
+    private void writeCheckpointedInput(WireProtocol.Encoder out, Input input) throws IOException {
+        out.writeInt(input.id);
+        // Inputs that were not written to the corpus carry their own bytes and hints
+        boolean inCorpus = SAVE_ONLY_VALID == false || input.valid;
+        out.writeBoolean(inCorpus);
+        if (!inCorpus) {
+            LinearInput linearInput = (LinearInput) input;
+            out.writeByteArray(linearInput.toByteArray());
+            out.writeInstructions(input.instructions);
+            out.writeHints(input.stringEqualsHints);
+            out.writeTargetedHints(input.appliedTargetedHints);
+            out.writeInt(input.offsetOfLastHintAdded);
+        }
+        out.writeString(input.desc);
+        out.writeByte(input.seedSource == null ? -1 : input.seedSource.ordinal());
+        out.writeByte(input.mutationType == null ? -1 : input.mutationType.ordinal());
+        out.writeBoolean(input.valid);
+        out.writeBoolean(input.z3);
+        out.writeBoolean(input.alreadyReceivedHints);
+        out.writeInt(input.nonZeroCoverage);
+        out.writeInt(input.offspring);
+        out.writeInt(input.score);
+        out.writeInt(input.bonusMutations);
+        out.writeInt(input.numHintsAppliedThisRound);
+        out.writeInt(input.numGlobalDictionaryHintsApplied);
+        out.writeInt(input.numMutations);
+        out.writeInt(input.parentInputIdx);
+        out.writeInt(input.lastFuzzedCycle);
+        out.writeInt(input.idxOfNextStringHintGroupToTry);
+        out.writeInts(input.responsibilities == null ? null : input.responsibilities.toSortedArray());
+        out.writeInstructions(input.allInstructions);
+        out.writeHints(input.allStringEqualsHints);
+        out.writeInstructions(input.instructionsToTryInChildren);
+        out.writeHints(input.stringEqualsHintsToTryInChildren);
+        out.writeTargetedHints(input.targetedHintsToTryInChildren);
+        out.writeInt(input.stringHintGroupsToTryInChildren == null ? -1 : input.stringHintGroupsToTryInChildren.size());
+        if (input.stringHintGroupsToTryInChildren != null) {
+            for (Object group : input.stringHintGroupsToTryInChildren) {
+                out.writeStringHintGroup((Coordinator.StringHintGroup) group);
+            }
+        }
+        out.writeIntegers(input.bytesFoundUsedInSUT);
+    }
+
+    /**
+     * Restores the state written by {@link #writeCheckpoint()}, reading saved inputs back from the corpus, without
+     * running any of them. Inputs saved after the checkpoint are forgotten and their files removed, as their ids
+     * are handed out again. Failures saved after the checkpoint are kept, and new failures are numbered past them.
+     */
+    private void restoreCheckpoint() throws IOException {
+        if (!DISABLE_EXECUTION_INDEXING) {
+            throw new IOException("Only campaigns with linear inputs can be resumed; " +
+                    "run without -Djqf.ei.ENABLE_EXECUTION_INDEXING");
+        }
+        WireProtocol.Decoder in = new WireProtocol.Decoder().load(ZestCheckpoint.read(checkpointFile));
+        if (in.readBoolean() != CORPUS_SEGMENTS) {
+            throw new IOException("Checkpoint " + checkpointFile + " was written with another jqf.ei.CORPUS_FORMAT");
+        }
+        campaignStartTime = System.currentTimeMillis() - in.readLong();
+        numTrials = in.readLong();
+        numValid = in.readLong();
+        numSavedInputs = in.readInt();
+        cyclesCompleted = in.readInt();
+        numFavoredLastCycle = in.readInt();
+        currentParentInputIdx = in.readInt();
+        currentParentInputCounter = in.readInt();
+        numChildrenGeneratedForCurrentParentInput = in.readInt();
+        numChildrenGeneratedForCurrentMutationLocation = in.readInt();
+        maxCoverage = in.readInt();
+        preloadedCoverageCount = in.readInt();
+        ZestCheckpoint.readLongs(in, countOfInputsSavedByMutation);
+        ZestCheckpoint.readLongs(in, countOfInputsCreatedByMutation);
+        ZestCheckpoint.readLongs(in, countOfSavedInputsBySeedSource);
+        ZestCheckpoint.readLongs(in, countOfFailingInputsBySeedSource);
+        ZestCheckpoint.readLongs(in, countOfInputsSavedWithMutationCounts);
+        ZestCheckpoint.readLongs(in, countOfInputsCreatedWithMutationCounts);
+        ZestCheckpoint.readLongs(in, countOfInputsSavedWithHintMutationCounts);
+        ZestCheckpoint.readLongs(in, countOfInputsCreatedWithHintMutationCounts);
+        countOfSavedInputsWithExtendedDictionaryHints = in.readLong();
+        countOfCreatedInputsWithExtendedDictionaryHints = in.readLong();
+        recommendedInputsToFuzz = in.readIntegers();
+        inputsWithHintsAtStartOfCycle = IntHashSet.newSetWith(in.readInts());
+
+        int numFailures = in.readInt();
+        for (int i = 0; i < numFailures; i++) {
+            StackTraceElement[] trace = new StackTraceElement[in.readInt()];
+            for (int j = 0; j < trace.length; j++) {
+                trace[j] = new StackTraceElement(in.readString(), in.readString(), in.readString(), in.readInt());
+            }
+            uniqueFailures.add(Arrays.asList(trace));
+        }
+        firstFailureIdx = Math.max(0, highestSavedId(savedFailuresDirectory) + 1 - uniqueFailures.size());
+
+        CoverageMapFile.read(in, totalCoverage, checkpointFile.toString(), instrumentation.getIdBits());
+        CoverageMapFile.read(in, validCoverage, checkpointFile.toString(), instrumentation.getIdBits());
+
+        int numInputs = in.readInt();
+        try (CorpusStore.Reader corpus = CORPUS_SEGMENTS ? new CorpusStore.Reader(savedInputsDirectory) : null) {
+            for (int i = 0; i < numInputs; i++) {
+                Input input = readCheckpointedInput(in, corpus);
+                savedInputs.add(input);
+                responsibleInputs.assign(input, input.responsibilities);
+                if (input.isFavored()) {
+                    mapEcToInputLoc(input);
+                }
+            }
+        }
+        if (priorityQueueConfig.usePriorityQueue) {
+            savedInputsAccess.addAll(savedInputs);
+        }
+        // Forget the inputs saved after the checkpoint
+        if (CORPUS_SEGMENTS) {
+            corpusWriter.dropIdsFrom(numSavedInputs);
+        } else {
+            for (File file : savedInputsDirectory.listFiles()) {
+                if (savedId(file) >= numSavedInputs) {
+                    file.delete();
+                }
+            }
+        }
+        infoLog("Resumed from %s: %d saved inputs, %d trials, %d cycles", checkpointFile, numInputs, numTrials,
+                cyclesCompleted);
+    }
+
+    /* Returns the id of a file saved as id_NNNNNN (or id_NNNNNN.ext), or -1 if it is not such a file */
+    private static int savedId(File file) {
+        String name = file.getName();
+        int end = name.indexOf('.');
+        if (!name.startsWith("id_")) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(3, end < 0 ? name.length() : end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int highestSavedId(File directory) {
+        int highest = -1;
+        for (File file : directory.listFiles()) {
+            highest = Math.max(highest, savedId(file));
+        }
+        return highest;
+    }
+
+    private Input readCheckpointedInput(WireProtocol.Decoder in, CorpusStore.Reader corpus) throws IOException {
+        int id = in.readInt();
+        LinearInput input;
+        if (in.readBoolean()) {
+            if (corpus != null) {
+                int position = corpus.indexOf(id);
+                if (position < 0) {
+                    throw new IOException(String.format("Input %d is missing from %s", id, savedInputsDirectory));
+                }
+                input = corpus.get(position);
+            } else {
+                try {
+                    input = LinearInput.fromFile(new File(savedInputsDirectory, String.format("id_%06d", id)));
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+        } else {
+            input = new LinearInput(in.readByteArray());
+            input.instructions = in.readInstructions();
+            input.stringEqualsHints = in.readHints();
+            input.appliedTargetedHints = in.readTargetedHints(new LinkedList<>());
+            input.offsetOfLastHintAdded = in.readInt();
+        }
+        input.id = id;
+        input.saveFile = new File(savedInputsDirectory, String.format("id_%06d", id));
+        input.desc = in.readString();
+        byte seedSource = in.readByte();
+        input.seedSource = seedSource == -1 ? null : SeedSource.values()[seedSource];
+        byte mutationType = in.readByte();
+        input.mutationType = mutationType == -1 ? null : MutationType.values()[mutationType];
+        input.valid = in.readBoolean();
+        input.z3 = in.readBoolean();
+        input.alreadyReceivedHints = in.readBoolean();
+        input.nonZeroCoverage = in.readInt();
+        input.offspring = in.readInt();
+        input.score = in.readInt();
+        input.bonusMutations = in.readInt();
+        input.numHintsAppliedThisRound = in.readInt();
+        input.numGlobalDictionaryHintsApplied = in.readInt();
+        input.numMutations = in.readInt();
+        input.parentInputIdx = in.readInt();
+        input.lastFuzzedCycle = in.readInt();
+        int idxOfNextStringHintGroupToTry = in.readInt();
+        int[] responsibilities = in.readInts();
+        input.responsibilities = responsibilities == null ? new IntHashSet() : IntHashSet.newSetWith(responsibilities);
+        input.allInstructions = in.readInstructions();
+        input.allStringEqualsHints = in.readHints();
+        input.instructionsToTryInChildren = in.readInstructions();
+        input.stringEqualsHintsToTryInChildren = in.readHints();
+        input.targetedHintsToTryInChildren = in.readTargetedHints(new LinkedList<>());
+        int numGroups = in.readInt();
+        input.stringHintGroupsToTryInChildren = numGroups == -1 ? null : new LinkedList<>();
+        for (int i = 0; i < numGroups; i++) {
+            input.stringHintGroupsToTryInChildren.add(in.readStringHintGroup());
+        }
+        LinkedList<Integer> bytesFoundUsedInSUT = in.readIntegers();
+        input.bytesFoundUsedInSUT = bytesFoundUsedInSUT == null ? null : new HashSet<>(bytesFoundUsedInSUT);
+
+        // Hint combinations are regenerated (in a new shuffled order), picking up after as many as were tried
+        input.organizeStringHintsForCombinations();
+        input.idxOfNextStringHintGroupToTry = idxOfNextStringHintGroupToTry;
+        input.updateHintsRemainingCount();
+        return input;
     }
 
 
@@ -1459,23 +1937,12 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
         if (STEAL_RESPONSIBILITY) {
             int currentNonZeroCoverage = runCoverage.getNonZeroCount();
             int currentInputSize = currentInput.size();
-            IntHashSet covered = new IntHashSet();
-            IntSinglyLinkedList.IntListIterator coveredIter = runCoverage.getCovered().iterator();
-            while(coveredIter.hasNext()){
-                int v = coveredIter.nextInt();
-                covered.add(v);
-            }
 
-            // Search for a candidate to steal responsibility from
-            candidate_search:
-            for (Input candidate : savedInputs) {
+            // Only inputs responsible for something this input covers are candidates;
+            // inputs with no responsibility are never responsible for anything
+            responsibleInputs.countCoveredResponsibilities(runCoverage).forEachKeyValue((candidate, covered) -> {
                 IntHashSet responsibilities = candidate.responsibilities;
 
-                // Candidates with no responsibility are not interestig
-                if (responsibilities.isEmpty()) {
-                    continue candidate_search;
-                }
-
                 // To avoid thrashing, only consider candidates with either
                 // (1) strictly smaller total coverage or
                 // (2) same total coverage but strictly larger size
@@ -1483,22 +1950,13 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                         (candidate.nonZeroCoverage == currentNonZeroCoverage &&
                                 currentInputSize < candidate.size())) {
 
-                    // Check if we can steal all responsibilities from candidate
-                    IntIterator iter = responsibilities.intIterator();
-                    while(iter.hasNext()){
-                        int b = iter.next();
-                        if (covered.contains(b) == false) {
-                            // Cannot steal if this input does not cover something
-                            // that the candidate is responsible for
-                            continue candidate_search;
-                        }
-                    }
                     // If all of candidate's responsibilities are covered by the
                     // current input, then it can completely subsume the candidate
-                    result.addAll(responsibilities);
+                    if (covered == responsibilities.size()) {
+                        result.addAll(responsibilities);
+                    }
                 }
-
-            }
+            });
         }
 
         return result;
@@ -1508,6 +1966,16 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
         writeInputToFile(currentInput, saveFile);
     }
 
+    /** Saves an input to the corpus, as a new version if it was saved before. */
+    private synchronized void writeInputToCorpus(Input input, int id) throws IOException {
+        if (corpusWriter != null) {
+            corpusWriter.append(input, id, System.currentTimeMillis() - this.campaignStartTime, this.numTrials,
+                    extendedDictionarySize);
+        } else if (!CORPUS_SEGMENTS) {
+            writeInputToFile(input, new File(savedInputsDirectory, String.format("id_%06d", id)));
+        }
+    }
+
     private void writeInputToFile(Input input, File saveFile) throws IOException{
         try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(saveFile)))) {
             out.writeInt(input.size());
@@ -1517,12 +1985,12 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                     out.write(b);
                 }
             }else if(input instanceof LinearInput){
-                ShortIterator iter = ((LinearInput) input).shortIterator();
-                while(iter.hasNext()){
-                    short b = iter.next();
-                    assert (b >= 0 && b < 256);
-                    out.write((int) b);
+                LinearInput linearInput = (LinearInput) input;
+                for (int i = 0; i < linearInput.size(); i++) {
+                    out.write(linearInput.get(i));
                 }
+            }else if(input instanceof MappedInput){
+                out.write(((MappedInput) input).toByteArray());
             }
             out.writeObject(input.instructions);
             out.writeObject(input.stringEqualsHints);
@@ -1575,6 +2043,11 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
     private void saveCurrentInput(IntHashSet responsibilities, String why) throws IOException {
 
+        // Saved inputs become parents, so give them compact bytes of their own
+        if (currentInput instanceof LinearInput) {
+            ((LinearInput) currentInput).compact();
+        }
+
         // First, save to disk (note: we issue IDs to everyone, but only write to disk  if valid)
         int newInputIdx = numSavedInputs++;
         String saveFileName = String.format("id_%06d", newInputIdx);
@@ -1584,12 +2057,12 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
         String how = currentInput.desc;
         File saveFile = new File(savedInputsDirectory, saveFileName);
         if (SAVE_ONLY_VALID == false || currentInput.valid) {
-            writeCurrentInputToFile(saveFile);
+            writeInputToCorpus(currentInput, newInputIdx);
             infoLog("Saved - %s %s %s", saveFile.getPath(), how, why);
         }
 
         File argsFile = new File(savedInputsDirectory, saveFileName + ".input");
-        if (args != null) //todo why does this happen?
+        if (SAVE_INPUT_ARGS && args != null) //todo why does this happen?
             for (Object o : args)
                 saveInputToDisk(argsFile, o);
 
@@ -1622,49 +2095,27 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
         currentInput.offspring = 0;
         savedInputs.get(currentParentInputIdx).offspring += 1;
 
-        // Fourth, assume responsibility for branches
-        currentInput.responsibilities = responsibilities;
-        IntIterator iter = responsibilities.intIterator();
-        while(iter.hasNext()){
-            int b = iter.next();
-            // If there is an old input that is responsible,
-            // subsume it
-            Input oldResponsible = responsibleInputs.get(b);
-            if (oldResponsible != null) {
-                oldResponsible.responsibilities.remove(b);
-                // infoLog("-- Stealing responsibility for %s from input %d", b, oldResponsible.id);
-            } else {
-                // infoLog("-- Assuming new responsibility for %s", b);
-            }
-            // We are now responsible
-            responsibleInputs.put(b, currentInput);
-        }
+        // Fourth, assume responsibility for branches, subsuming any inputs
+        // that were responsible for them
+        responsibleInputs.assign(currentInput, responsibilities);
 
 
         // Fifth, map executions to input locations for splicing
-        mapEcToInputLoc(currentInput);
+        if (currentInput.isFavored()) {
+            mapEcToInputLoc(currentInput);
+        }
 
 
-        if (priorityQueueConfig.usePriorityQueue && central != null) {
+        if (priorityQueueConfig.usePriorityQueue && exchange != null) {
             currentInput.calculateScore(StringEqualsHintingInputStream.getHints());
             savedInputsAccess.add(currentInput);
 
-            List<Coordinator.Input> newScoreInputs = central.getScoreUpdates();
-
-            Input temp = null;
-            for(Coordinator.Input n : newScoreInputs) {
-                for (Input i : savedInputsAccess) {
-                    if (n.id == i.id){
-                       temp = i;
-                       break;
-                    }
-                }
-                if(temp != null) {
-                    savedInputsAccess.remove(temp);
-                    temp.score += n.score;
-                    savedInputsAccess.add(temp);
-                }
+            // Sum the updates for each input, so that each queued input is moved once
+            IntIntHashMap scoreDeltas = new IntIntHashMap();
+            for(Coordinator.Input n : exchange.pollScoreUpdates()) {
+                scoreDeltas.addToValue(n.id, n.score);
             }
+            savedInputsAccess.addScores(scoreDeltas);
 
 
         }
@@ -1673,15 +2124,85 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
     private void mapEcToInputLoc(Input input) {
         if (input instanceof MappedInput) {
             MappedInput mappedInput = (MappedInput) input;
+            ArrayList<InputLocation> locations = new ArrayList<>(mappedInput.size());
             for (int offset = 0; offset < mappedInput.size(); offset++) {
                 ExecutionIndex ei = mappedInput.orderedKeys.get(offset);
                 ExecutionContext ec = new ExecutionContext(ei);
-                ecToInputLoc.get(ec).add(new InputLocation(mappedInput, offset));
+                InputLocation location = new InputLocation(mappedInput, offset);
+                location.attach(ecToInputLoc.get(ec));
+                locations.add(location);
             }
+            mappedInput.inputLocations = locations;
         }
 
     }
 
+    private void unmapEcToInputLoc(Input input) {
+        if (input instanceof MappedInput) {
+            MappedInput mappedInput = (MappedInput) input;
+            if (mappedInput.inputLocations != null) {
+                for (InputLocation location : mappedInput.inputLocations) {
+                    if (location.unmap()) {
+                        // Do not keep a list for every context that any favored input ever had
+                        ecToInputLoc.remove(new ExecutionContext(mappedInput.orderedKeys.get(location.offset)));
+                    }
+                }
+                mappedInput.inputLocations = null;
+            }
+        }
+    }
+
+    /* Recounts the favored inputs over the whole corpus, and checks them against the responsibility index and the splice map */
+    private void checkFavoredInputs() {
+        int numFavored = 0;
+        int sumResponsibilities = 0;
+        int numLocations = 0;
+        for (Input input : savedInputs) {
+            boolean mapped = input instanceof MappedInput && ((MappedInput) input).inputLocations != null;
+            if (input.isFavored()) {
+                numFavored++;
+                sumResponsibilities += input.responsibilities.size();
+                IntIterator iter = input.responsibilities.intIterator();
+                while (iter.hasNext()) {
+                    int b = iter.next();
+                    if (responsibleInputs.get(b) != input) {
+                        throw new AssertionError("Input " + input.id + " is responsible for " + b +
+                                " but the index says " + responsibleInputs.get(b));
+                    }
+                }
+                if (input instanceof MappedInput) {
+                    if (!mapped || ((MappedInput) input).inputLocations.size() != input.size()) {
+                        throw new AssertionError("Favored input " + input.id + " is not in the splice map");
+                    }
+                    numLocations += input.size();
+                }
+            } else if (mapped) {
+                throw new AssertionError("Input " + input.id + " is not favored but is in the splice map");
+            }
+        }
+        if (numFavored != responsibleInputs.numFavored() ||
+                sumResponsibilities != responsibleInputs.sumResponsibilities()) {
+            throw new AssertionError("Favored input mismatch: " + numFavored + " inputs responsible for " +
+                    sumResponsibilities + " branches, but counted " + responsibleInputs.numFavored() +
+                    " responsible for " + responsibleInputs.sumResponsibilities());
+        }
+        int numMapped = 0;
+        for (ArrayList<InputLocation> bucket : ecToInputLoc.values()) {
+            if (bucket.isEmpty()) {
+                throw new AssertionError("Splice map has an empty list");
+            }
+            for (int i = 0; i < bucket.size(); i++) {
+                if (bucket.get(i).bucket != bucket || bucket.get(i).index != i) {
+                    throw new AssertionError("Misplaced splice location of input " + bucket.get(i).input.id);
+                }
+            }
+            numMapped += bucket.size();
+        }
+        if (numMapped != numLocations) {
+            throw new AssertionError("Splice map has " + numMapped + " locations, expected " + numLocations);
+        }
+    }
+
 
     @Override
     public Consumer<TraceEvent> generateCallBack(Thread thread) {
@@ -1696,14 +2217,6 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
     }
 
     private void handleEvent(TraceEvent e) {
-        // Set last event to this event
-        lastEvent = e;
-
-        // Update execution indexing logic
-        if (!DISABLE_EXECUTION_INDEXING) {
-            e.applyVisitor(this);
-        }
-
         // Collect totalCoverage
         runCoverage.handleEvent(e);
         // Check for possible timeouts every so often
@@ -1716,16 +2229,6 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
         }
     }
 
-    @Override
-    public void visitCallEvent(CallEvent c) {
-        eiState.pushCall(c);
-    }
-
-    @Override
-    public void visitReturnEvent(ReturnEvent r) {
-        eiState.popReturn(r);
-    }
-
     /**
      * Returns a reference to the coverage statistics.
      * @return a reference to the coverage statistics
@@ -2160,41 +2663,108 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
     public static class LinearInput extends Input<Integer> {
 
-        /** A list of byte values (0-255) ordered by their index. */
-        public ShortArrayList values;
-        //Note: Would save more space if this were a ByteArrayList, but the code as I found it
-        //used an ArrayList<Integer> (and assumed all bytes were unsigned), so there would be more
-        //refactoring needed to migrate to actual byte types, this gives a savings enough from avoiding
-        //primitive boxing, at least.
+        private static final byte[] EMPTY = new byte[0];
 
-        /** The number of bytes requested so far */
-        protected int requested = 0;
+        /** Patches beyond which a child stops overlaying its parent's bytes and takes its own copy */
+        private static final int MAX_PATCHES = 256;
+
+        /**
+         * The byte values of this input, ordered by their index. A child created by {@link #fuzz} shares
+         * this array with its parent, and records its own mutations as patches on top of it, so that
+         * creating a child does not copy the parent's bytes; it gets its own copy only if it needs to
+         * grow, or is saved (see {@link #compact()}).
+         */
+        private byte[] bytes;
 
+        /** The number of bytes in this input; <tt>bytes</tt> may be longer */
+        private int length;
 
+        /** Whether <tt>bytes</tt> may be seen by another input, and so must not be written to */
+        private boolean shared;
+
+        /** Offsets and values written to a shared array, in the order in which they were written */
+        private int[] patchOffsets;
+        private byte[] patchValues;
+        private int numPatches;
+
+        /** Whether the patches are sorted by offset, with one per offset, as sequential reads need */
+        private boolean patchesSorted = true;
+
+        /** The first patch that may apply to the next byte requested */
+        private int patchCursor;
+
+        /** The number of bytes requested so far */
+        protected int requested = 0;
 
 
         public LinearInput() {
             super();
-            this.values = new ShortArrayList();
+            this.bytes = EMPTY;
+        }
+
+        /**
+         * Creates an input that owns an array of byte values.
+         *
+         * @param bytes the byte values, which the caller must not modify afterwards
+         */
+        public LinearInput(byte[] bytes) {
+            super();
+            wrap(bytes);
         }
 
         public LinearInput(LinearInput other) {
             super(other);
-            this.values = new ShortArrayList(other.values.size());
-            this.values.addAll(other.values);
+            // Copy-on-write: neither input may now write to the array in place
+            other.shared = true;
+            this.bytes = other.bytes;
+            this.length = other.length;
+            this.shared = true;
+            if (other.numPatches > 0) {
+                this.patchOffsets = Arrays.copyOf(other.patchOffsets, other.patchOffsets.length);
+                this.patchValues = Arrays.copyOf(other.patchValues, other.patchValues.length);
+                this.numPatches = other.numPatches;
+                this.patchesSorted = false;
+            }
+        }
+
+        /** Replaces the byte values of this input with an array that it then owns. */
+        protected void wrap(byte[] bytes) {
+            this.bytes = bytes;
+            this.length = bytes.length;
+            this.shared = false;
+            this.numPatches = 0;
+            this.patchesSorted = true;
+            this.patchCursor = 0;
         }
 
         public void reset(){
             this.requested = 0;
+            this.patchCursor = 0;
         }
 
         public static LinearInput fromFile(File f) throws IOException, ClassNotFoundException {
+            return fromFile(f, null);
+        }
+
+        /**
+         * Reads an input saved as an <tt>id_NNNNNN</tt> file.
+         *
+         * @param f the file
+         * @param bookkeeping if not null, receives the elapsed time, number of trials and extended dictionary size
+         *                    recorded when the input was saved
+         * @return the input
+         * @throws IOException if the file could not be read
+         * @throws ClassNotFoundException if the file holds unknown classes
+         */
+        public static LinearInput fromFile(File f, long[] bookkeeping) throws IOException, ClassNotFoundException {
             LinearInput ret = new LinearInput();
             try(ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(f)))){
                 int size = ois.readInt();
+                byte[] bytes = new byte[size];
                 for(int i = 0; i < size; i++){
-                    ret.values.add((short) ois.read());
+                    bytes[i] = (byte) ois.read();
                 }
+                ret.wrap(bytes);
                 ret.instructions = (LinkedList<int[]>) ois.readObject();
                 ret.stringEqualsHints = (LinkedList<Coordinator.StringHint[]>) ois.readObject();
                 ret.appliedTargetedHints = (LinkedList<Coordinator.TargetedHint>) ois.readObject();
@@ -2212,10 +2782,147 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                 long execTime  =ois.readLong();
                 long numTrials = ois.readLong();
                 long extendedDictSize = ois.readLong();
+                if (bookkeeping != null) {
+                    bookkeeping[0] = execTime;
+                    bookkeeping[1] = numTrials;
+                    bookkeeping[2] = extendedDictSize;
+                }
             }
             return ret;
         }
 
+        /**
+         * Returns a byte value.
+         *
+         * @param i the index of the byte, which must be less than {@link #size()}
+         * @return the byte value (0-255)
+         */
+        public int get(int i) {
+            if (i >= length) {
+                throw new IndexOutOfBoundsException("Index: " + i + " Size: " + length);
+            }
+            // The last write to an offset wins
+            for (int p = numPatches - 1; p >= 0; p--) {
+                if (patchOffsets[p] == i) {
+                    return patchValues[p] & 0xFF;
+                }
+            }
+            return bytes[i] & 0xFF;
+        }
+
+        /**
+         * Replaces a byte value.
+         *
+         * @param i the index of the byte, which must be less than {@link #size()}
+         * @param value the new byte value; only its low 8 bits are kept
+         */
+        public void set(int i, int value) {
+            if (i >= length) {
+                throw new IndexOutOfBoundsException("Index: " + i + " Size: " + length);
+            }
+            if (!shared) {
+                bytes[i] = (byte) value;
+            } else if (numPatches < MAX_PATCHES) {
+                if (patchOffsets == null) {
+                    patchOffsets = new int[16];
+                    patchValues = new byte[16];
+                } else if (numPatches == patchOffsets.length) {
+                    patchOffsets = Arrays.copyOf(patchOffsets, numPatches * 2);
+                    patchValues = Arrays.copyOf(patchValues, numPatches * 2);
+                }
+                patchOffsets[numPatches] = i;
+                patchValues[numPatches] = (byte) value;
+                numPatches++;
+                patchesSorted = false;
+            } else {
+                ensureOwned(length);
+                bytes[i] = (byte) value;
+            }
+        }
+
+        /**
+         * Returns a copy of the byte values of this input.
+         *
+         * @return an array of {@link #size()} bytes
+         */
+        public byte[] toByteArray() {
+            byte[] ret = Arrays.copyOf(bytes, length);
+            for (int p = 0; p < numPatches; p++) {
+                if (patchOffsets[p] < length) {
+                    ret[patchOffsets[p]] = patchValues[p];
+                }
+            }
+            return ret;
+        }
+
+        /**
+         * Gives this input its own array of exactly {@link #size()} bytes, with all patches applied,
+         * so that it no longer keeps its parent's array alive. Called when an input is saved.
+         */
+        public void compact() {
+            if (numPatches > 0 || bytes.length != length) {
+                wrap(toByteArray());
+            }
+        }
+
+        /** Makes <tt>bytes</tt> an array of at least <tt>capacity</tt> bytes that only this input writes to. */
+        private void ensureOwned(int capacity) {
+            if (shared) {
+                byte[] copy = toByteArray();
+                wrap(capacity > length ? Arrays.copyOf(copy, capacity) : copy);
+                this.length = copy.length;
+            } else if (bytes.length < capacity) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, Math.max(16, bytes.length * 2)));
+            }
+        }
+
+        /** Sorts the patches by offset, keeping only the last one written to each offset. */
+        private void sortPatches() {
+            // Insertion sort is stable, and there are few patches
+            for (int i = 1; i < numPatches; i++) {
+                int offset = patchOffsets[i];
+                byte value = patchValues[i];
+                int j = i - 1;
+                while (j >= 0 && patchOffsets[j] > offset) {
+                    patchOffsets[j + 1] = patchOffsets[j];
+                    patchValues[j + 1] = patchValues[j];
+                    j--;
+                }
+                patchOffsets[j + 1] = offset;
+                patchValues[j + 1] = value;
+            }
+            int n = 0;
+            for (int i = 0; i < numPatches; i++) {
+                if (n > 0 && patchOffsets[n - 1] == patchOffsets[i]) {
+                    patchValues[n - 1] = patchValues[i];
+                } else {
+                    patchOffsets[n] = patchOffsets[i];
+                    patchValues[n] = patchValues[i];
+                    n++;
+                }
+            }
+            numPatches = n;
+            patchesSorted = true;
+            patchCursor = 0;
+        }
+
+        /** Returns the next byte requested, which must exist; patches must be sorted. */
+        private int next(int i) {
+            while (patchCursor < numPatches && patchOffsets[patchCursor] < i) {
+                patchCursor++;
+            }
+            if (patchCursor < numPatches && patchOffsets[patchCursor] == i) {
+                return patchValues[patchCursor] & 0xFF;
+            }
+            return bytes[i] & 0xFF;
+        }
+
+        /** Appends a fresh byte value. */
+        private void append(byte value) {
+            ensureOwned(length + 1);
+            bytes[length++] = value;
+        }
+
         @Override
         public int getOrGenerateFresh(Integer key, Random random) {
             // Don't generate over the limit
@@ -2227,14 +2934,17 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
             // assert (key == values.size());
             if (key != requested) {
                 throw new GuidanceException(String.format("Bytes from linear input out of order. " +
-                        "Size = %d, Key = %d", values.size(), key));
+                        "Size = %d, Key = %d", length, key));
             }
 
             // If it exists in the list, return it
-            if (key < values.size()) {
+            if (key < length) {
+                if (!patchesSorted) {
+                    sortPatches();
+                }
                 requested++;
                 // infoLog("Returning old byte at key=%d, total requested=%d", key, requested);
-                return values.get(key);
+                return next(key);
             }
 
             // Handle end of stream
@@ -2242,36 +2952,72 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                 return -1;
             } else {
                 // Just generate a random input
-                short val = (short) random.nextInt(256);
-                values.add(val);
+                int val = random.nextInt(256);
+                append((byte) val);
                 requested++;
                 // infoLog("Generating fresh byte at key=%d, total requested=%d", key, requested);
                 return val;
             }
         }
 
+        /**
+         * Reads a range of bytes at once, as if by calling {@link #getOrGenerateFresh}
+         * with consecutive keys until it returns -1 or <tt>len</tt> bytes are read.
+         *
+         * @param key the key of the first byte, which must be the next one requested
+         * @param b the buffer to read into
+         * @param off the offset in <tt>b</tt> of the first byte
+         * @param len the maximum number of bytes to read
+         * @param random the source of fresh bytes past the end of the list
+         * @return the number of bytes read, or -1 if none could be
+         */
+        public int getOrGenerateFresh(int key, byte[] b, int off, int len, Random random) {
+            if (key != requested) {
+                throw new GuidanceException(String.format("Bytes from linear input out of order. " +
+                        "Size = %d, Key = %d", length, key));
+            }
+            // Don't generate over the limit
+            int n = Math.min(len, MAX_INPUT_SIZE - requested);
+            int count = Math.max(0, Math.min(n, length - requested));
+            if (count > 0) {
+                System.arraycopy(bytes, requested, b, off, count);
+                if (numPatches > 0) {
+                    if (!patchesSorted) {
+                        sortPatches();
+                    }
+                    int end = requested + count;
+                    while (patchCursor < numPatches && patchOffsets[patchCursor] < requested) {
+                        patchCursor++;
+                    }
+                    for (int p = patchCursor; p < numPatches && patchOffsets[p] < end; p++) {
+                        b[off + patchOffsets[p] - requested] = patchValues[p];
+                    }
+                }
+            }
+            if (count < n && !GENERATE_EOF_WHEN_OUT) {
+                // Just generate random inputs
+                ensureOwned(length + n - count);
+                for (; count < n; count++) {
+                    byte val = (byte) random.nextInt(256);
+                    bytes[length++] = val;
+                    b[off + count] = val;
+                }
+            }
+            requested += count;
+            return count > 0 || len == 0 ? count : -1;
+        }
+
         @Override
         public int size() {
-            return values.size();
+            return length;
         }
 
         /**
-         * Truncates the input list to remove values that were never actually requested.
-         *
-         * <p>Although this operation mutates the underlying object, the effect should
-         * not be externally visible (at least as long as the test executions are
-         * deterministic).</p>
+         * Does nothing: values that were never requested are kept on purpose, so that
+         * saved inputs, and the children mutated from them, keep their tail.
          */
         @Override
         public void gc() {
-            // Remove elements beyond "requested"
-            ShortArrayList old = values;
-            if(requested != old.size()) {
-                values = new ShortArrayList(requested);
-                for (int i = 0; i < old.size(); i++)
-                    values.add(old.get(i));
-                values.trimToSize();
-            }
         }
 
         @Override
@@ -2320,7 +3066,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                         for(int i = insn[0]; i < insn[0]+insn[1]; i++){
                             int mutatedValue = setToZero ? 0 : random.nextInt(256);
                             mutatedBytes += Integer.BYTES;
-                            newInput.values.set(i, (short) mutatedValue);
+                            newInput.set(i, mutatedValue);
                         }
                         newInput.mutationType = MutationType.TARGETED_RANDOM;
                         newInput.seedSource = SeedSource.RANDOM;
@@ -2438,7 +3184,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                 }
 
                 int mutateOnlyAfter = 0;
-                int mutateOnlyBefore = newInput.values.size();
+                int mutateOnlyBefore = newInput.size();
                 //if (this.offsetOfLastHintAdded >= 0) {
                 //    if (random.nextBoolean()) {
                 //        // Also constrain how far out we look for mutations to stay close to this hint.
@@ -2492,23 +3238,19 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                     // Mutate a contiguous set of bytes from offset
                     for (int i = offset; i < offset + mutationSize; i++) {
                         // Don't go past end of list
-                        if (i >= newInput.values.size()) {
+                        if (i >= newInput.size()) {
                             break;
                         }
 
                         // Otherwise, apply a random mutation
                         int mutatedValue = setToZero ? 0 : random.nextInt(256);
                         mutatedBytes += Integer.BYTES;
-                        newInput.values.set(i, (short) mutatedValue);
+                        newInput.set(i, mutatedValue);
                     }
                 }
             }
             return newInput;
         }
-
-        public ShortIterator shortIterator() {
-            return values.shortIterator();
-        }
     }
 
 
@@ -2533,12 +3275,24 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
          * When this field is {@code false}, the field {@link #orderedKeys}
          * is not yet populated and must not be used. When this field is {@code true},
          * the input should be considered immutable and neither {@link #orderedKeys} nor
-         * {@link #valuesMap} must be modified.
+         * the mapping must be modified.
          */
         protected boolean executed = false;
 
-        /** A map from execution indexes to the byte (0-255) to be returned at that index. */
-        protected LinkedHashMap<ExecutionIndex, Integer> valuesMap;
+        /**
+         * The execution indexes mapped by this input, in the order in which they
+         * were first mapped. After execution, this is the same as {@link #orderedKeys}.
+         */
+        protected ArrayList<ExecutionIndex> keys;
+
+        /** The byte (0-255) mapped at each execution index in {@link #keys}. */
+        protected ByteArrayList values;
+
+        /** The position in {@link #keys} of each execution index, by its 64-bit hash. */
+        protected LongIntHashMap positions;
+
+        /** Positions of execution indexes whose hash is already taken by another one; almost always null. */
+        private HashMap<ExecutionIndex, Integer> collisions;
 
         /**
          * A list of execution indexes that are actually requested by the test program when
@@ -2554,12 +3308,17 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
         private List<InputPrefixMapping> demandDrivenSpliceMap = new ArrayList<>();
 
+        /** The locations of this input in the splice map, one per offset; null unless this input is saved and favored. */
+        private ArrayList<InputLocation> inputLocations = null;
+
         /**
          * Create an empty input map.
          */
         public MappedInput() {
             super();
-            valuesMap = new LinkedHashMap<>();
+            keys = new ArrayList<>();
+            values = new ByteArrayList();
+            positions = new LongIntHashMap();
         }
 
         /**
@@ -2569,7 +3328,13 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
          */
         public MappedInput(MappedInput toClone) {
             super(toClone);
-            valuesMap = new LinkedHashMap<>(toClone.valuesMap);
+            keys = new ArrayList<>(toClone.keys);
+            values = new ByteArrayList(toClone.values.size());
+            values.addAll(toClone.values);
+            positions = new LongIntHashMap(toClone.positions);
+            if (toClone.collisions != null) {
+                collisions = new HashMap<>(toClone.collisions);
+            }
         }
 
         /**
@@ -2579,7 +3344,17 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
          * @return the size of this input
          */
         public final int size() {
-            return valuesMap.size();
+            return keys.size();
+        }
+
+        /**
+         * Returns the bytes mapped by this input, in the order in which their
+         * execution indexes were first mapped.
+         *
+         * @return a new array of the bytes of this input
+         */
+        public byte[] toByteArray() {
+            return values.toArray();
         }
 
         /**
@@ -2598,9 +3373,8 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                 throw new GuidanceException("Cannot get with offset before execution");
             }
 
-            // Return the mapping for the execution index queried at the offset
-            ExecutionIndex ei = orderedKeys.get(offset);
-            return valuesMap.get(ei);
+            // After execution, keys are in the order they were queried in
+            return values.get(offset) & 0xFF;
         }
 
 
@@ -2633,6 +3407,59 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
             return null;
         }
 
+        /** Returns the position of an execution index in {@link #keys}, or -1 if it is not mapped. */
+        private int positionOf(ExecutionIndex ei) {
+            int pos = positions.getIfAbsent(ei.hash, -1);
+            if (pos >= 0 && keys.get(pos).equals(ei)) {
+                return pos;
+            }
+            if (collisions != null) {
+                Integer collidingPos = collisions.get(ei);
+                if (collidingPos != null) {
+                    return collidingPos;
+                }
+            }
+            return -1;
+        }
+
+        /** Maps an execution index to a byte, replacing any previous mapping. */
+        private void put(ExecutionIndex ei, int val) {
+            int pos = positionOf(ei);
+            if (pos >= 0) {
+                values.set(pos, (byte) val);
+                return;
+            }
+            pos = keys.size();
+            keys.add(ei);
+            values.add((byte) val);
+            if (positions.containsKey(ei.hash)) {
+                if (collisions == null) {
+                    collisions = new HashMap<>();
+                }
+                collisions.put(ei, pos);
+            } else {
+                positions.put(ei.hash, pos);
+            }
+        }
+
+        /**
+         * Counts a read at the current point of execution and returns its
+         * execution index, which is this input's own copy if it maps it
+         * (as it does for most reads of a child of an executed input), and
+         * a new one otherwise.
+         *
+         * @param eiState the execution indexing state of the run
+         * @return the execution index of the read
+         */
+        public ExecutionIndex getExecutionIndex(ExecutionIndexingState eiState) {
+            long hash = eiState.countRead();
+            int pos = positions.getIfAbsent(hash, -1);
+            if (pos >= 0 && eiState.isLastRead(keys.get(pos))) {
+                return keys.get(pos);
+            }
+            return eiState.getLastRead(hash);
+        }
+
 
         /**
          * Retrieve a value for an execution index if mapped, else generate
@@ -2656,10 +3483,11 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
             }
 
             // Try to get existing values
-            Integer val = valuesMap.get(key);
+            int pos = positionOf(key);
+            int val = pos >= 0 ? values.get(pos) & 0xFF : -1;
 
             // If not, generate a new value
-            if (val == null) {
+            if (val < 0) {
                 InputPrefixMapping ipm;
 
                 // If we have an input prefix mapping for this execution index,
@@ -2669,11 +3497,14 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                     Suffix sourceSuffix = ipm.sourcePrefix.getEi().getSuffixOfPrefix(sourcePrefix);
                     ExecutionIndex sourceEi = new ExecutionIndex(sourcePrefix, sourceSuffix);
                     // The value can be taken from the source
-                    val = ipm.sourceInput.getValueAtKey(sourceEi);
+                    int sourcePos = ipm.sourceInput.positionOf(sourceEi);
+                    if (sourcePos >= 0) {
+                        val = ipm.sourceInput.values.get(sourcePos) & 0xFF;
+                    }
                 }
 
                 // If we could not splice or were unsuccessful, try to generate a new input
-                if (val == null) {
+                if (val < 0) {
                     if (GENERATE_EOF_WHEN_OUT) {
                         return -1;
                     }
@@ -2690,9 +3521,9 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                 }
 
                 // Put the new value into the map
-                assert (val != null);
+                assert (val >= 0);
 
-                valuesMap.put(key, val);
+                put(key, val);
             }
 
             // Mark this key as visited
@@ -2712,7 +3543,8 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
          *      larger than {@link #size}()-1
          */
         protected final Integer getValueAtKey(ExecutionIndex ei) throws IndexOutOfBoundsException {
-            return valuesMap.get(ei);
+            int pos = positionOf(ei);
+            return pos >= 0 ? Integer.valueOf(values.get(pos) & 0xFF) : null;
         }
 
         /**
@@ -2731,7 +3563,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                 throw new IllegalStateException("Cannot set value before execution");
             }
 
-            valuesMap.put(ei, val);
+            put(ei, val);
         }
 
         /**
@@ -2744,11 +3576,26 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
          */
         @Override
         public void gc() {
-            LinkedHashMap<ExecutionIndex, Integer> newMap = new LinkedHashMap<>();
+            // Each key is requested at most once per run, since its last count is always new
+            ByteArrayList newValues = new ByteArrayList(orderedKeys.size());
             for (ExecutionIndex key : orderedKeys) {
-                newMap.put(key, valuesMap.get(key));
+                newValues.add(values.get(positionOf(key)));
+            }
+            keys = orderedKeys;
+            values = newValues;
+            positions = new LongIntHashMap(orderedKeys.size());
+            collisions = null;
+            for (int pos = 0; pos < keys.size(); pos++) {
+                ExecutionIndex key = keys.get(pos);
+                if (positions.containsKey(key.hash)) {
+                    if (collisions == null) {
+                        collisions = new HashMap<>();
+                    }
+                    collisions.put(key, pos);
+                } else {
+                    positions.put(key.hash, pos);
+                }
             }
-            valuesMap = newMap;
 
             // Set the `executed` flag
             executed = true;
@@ -2811,17 +3658,18 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                         // Choose an execution context at which to splice at
                         // Note: We get EI and value from `this` rather than `newInput`
                         // because `this` has already been executed
-                        int targetOffset = random.nextInt(newInput.valuesMap.size());
+                        int targetOffset = random.nextInt(newInput.size());
                         ExecutionIndex targetEi = this.getKeyAtOffset(targetOffset);
 
                         ExecutionContext targetEc = new ExecutionContext(targetEi);
                         int valueAtTarget = this.getValueAtOffset(targetOffset);
 
-                        // Find a suitable input location to splice from
-                        ArrayList<InputLocation> inputLocations = ecToInputLoc.get(targetEc);
+                        // Find a suitable input location to splice from; unlike get(), getOrDefault()
+                        // does not add an empty list to a ProducerHashMap
+                        ArrayList<InputLocation> inputLocations = ecToInputLoc.getOrDefault(targetEc, null);
 
                         // If this was a bad choice of target, try again without penalty if possible
-                        if (inputLocations.size() == 0) {
+                        if (inputLocations == null || inputLocations.size() == 0) {
                             // Try to increase the loop bound a little bit to get another chance
                             targetAttempts = Math.min(targetAttempts+1, MAX_TARGET_ATTEMPTS);
                             continue;
@@ -2872,7 +3720,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                                     }
                                     Suffix spliceSuffix = candidateEi.getSuffixOfPrefix(sourcePrefix);
                                     ExecutionIndex spliceEi = new ExecutionIndex(targetPrefix, spliceSuffix);
-                                    newInput.valuesMap.put(spliceEi, sourceInput.valuesMap.get(candidateEi));
+                                    newInput.put(spliceEi, sourceInput.getValueAtOffset(srcIdx));
 
                                     srcIdx++;
                                 }
@@ -2919,23 +3767,18 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                 for (int mutation = 1; mutation <= numMutations; mutation++) {
 
                     // Select a random offset and size
-                    int offset = random.nextInt(newInput.valuesMap.size());
+                    int offset = random.nextInt(newInput.size());
                     int mutationSize = sampleGeometric(random, MEAN_MUTATION_SIZE);
 
                     // desc += String.format(":%d@%d", mutationSize, idx);
 
-                    // Iterate over all entries in the value map
-                    Iterator<Map.Entry<ExecutionIndex, Integer>> entryIterator
-                            = newInput.valuesMap.entrySet().iterator();
-                    for (int i = 0; entryIterator.hasNext(); i++) {
-                        Map.Entry<ExecutionIndex, Integer> e = entryIterator.next();
-                        // Only mutate `mutationSize` contiguous entries from
-                        // the randomly selected `idx`.
-                        if (i >= offset && i < (offset + mutationSize)) {
-                            // Apply a random mutation
-                            int mutatedValue = setToZero ? 0 : random.nextInt(256);
-                            e.setValue(mutatedValue);
-                        }
+                    // Mutate `mutationSize` contiguous entries from the randomly
+                    // selected `idx`, in the order in which they were mapped
+                    int end = Math.min(offset + mutationSize, newInput.size());
+                    for (int i = offset; i < end; i++) {
+                        // Apply a random mutation
+                        int mutatedValue = setToZero ? 0 : random.nextInt(256);
+                        newInput.values.set(i, (byte) mutatedValue);
                     }
                 }
             }
@@ -2956,7 +3799,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
 
                 @Override
                 public Integer next() {
-                    return valuesMap.get(keyIt.next());
+                    return getValueAtKey(keyIt.next());
                 }
             };
         }
@@ -2987,10 +3830,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
                 this.instructions = instructions;
                 this.appliedTargetedHints = targetedHints;
                 this.organizeStringHintsForCombinations();
-                this.values = new ShortArrayList(input.length);
-                for(int i = 0; i < input.length; i++){
-                    this.values.add((short) (input[i] & 0xff));
-                }
+                this.wrap(input);
 
             } catch (ClassNotFoundException e) {
                 e.printStackTrace();
@@ -2999,6 +3839,25 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
             this.desc = "seed";
         }
 
+        /**
+         * Seeds with an input read back from a {@link CorpusStore}, hints included.
+         *
+         * @param saved the saved input
+         */
+        public SeedInput(LinearInput saved) {
+            super();
+            this.seedFile = Optional.empty();
+            this.wrap(saved.toByteArray());
+            this.instructions = saved.instructions;
+            this.stringEqualsHints = saved.stringEqualsHints;
+            this.appliedTargetedHints = saved.appliedTargetedHints;
+            this.offsetOfLastHintAdded = saved.offsetOfLastHintAdded;
+            this.allInstructions = saved.allInstructions;
+            this.allStringEqualsHints = saved.allStringEqualsHints;
+            this.organizeStringHintsForCombinations();
+            this.desc = "seed";
+        }
+
         /**
          * WARNING This version does NOT assume that the hints were packed in...
          * @param seedBytes
@@ -3007,10 +3866,7 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
         public SeedInput(byte[] seedBytes, String desc) {
             this.seedFile = Optional.empty();
             this.desc = desc;
-            this.values = new ShortArrayList(seedBytes.length);
-            for(int i = 0; i < seedBytes.length; i++){
-                this.values.add((short) (seedBytes[i] & 0xff));
-            }
+            this.wrap(seedBytes.clone());
         }
 
     }
@@ -3020,10 +3876,40 @@ public class ZestGuidance implements Guidance, TraceEventVisitor {
         private final MappedInput input;
         private final int offset;
 
+        /** The splice-map list that holds this location, if any, and the index of this location in it */
+        private ArrayList<InputLocation> bucket;
+        private int index;
+
         InputLocation(MappedInput input, int offset) {
             this.input = input;
             this.offset = offset;
         }
+
+        /**
+         * Appends this location to a splice-map list, so that it can later be removed in constant time.
+         */
+        void attach(ArrayList<InputLocation> bucket) {
+            this.bucket = bucket;
+            this.index = bucket.size();
+            bucket.add(this);
+        }
+
+        /**
+         * Removes this location from its list in constant time, moving the last location of
+         * the list into its place; locations are picked at random, so their order does not matter.
+         *
+         * @return whether the list is now empty
+         */
+        boolean unmap() {
+            ArrayList<InputLocation> list = bucket;
+            InputLocation last = list.remove(list.size() - 1);
+            if (last != this) {
+                list.set(index, last);
+                last.index = index;
+            }
+            bucket = null;
+            return list.isEmpty();
+        }
     }
 
     static class InputPrefixMapping {
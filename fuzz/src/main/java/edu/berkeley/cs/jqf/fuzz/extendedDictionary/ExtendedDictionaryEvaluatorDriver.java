@@ -29,6 +29,7 @@
 
 package edu.berkeley.cs.jqf.fuzz.extendedDictionary;
 
+import edu.berkeley.cs.jqf.fuzz.ei.CorpusStore;
 import edu.berkeley.cs.jqf.fuzz.junit.GuidedFuzzing;
 import edu.berkeley.cs.jqf.fuzz.knarr.KnarrGuidance;
 import edu.columbia.cs.psl.phosphor.PreMain;
@@ -68,8 +69,11 @@ public class ExtendedDictionaryEvaluatorDriver {
             String outputFileName = System.getenv("EVAL_FILE");
             File outputFile = outputFileName != null ? new File(outputFileName) : null;
 
-            // Load the guidance
-            ExtendedDictionaryEvaluatorGuidance guidance = new ExtendedDictionaryEvaluatorGuidance(testInputFiles, outputFile);
+            // Load the guidance; a corpus saved as a store is read from the store
+            File corpusDir = new File(args[2]);
+            ExtendedDictionaryEvaluatorGuidance guidance = args.length == 3 && CorpusStore.isStore(corpusDir)
+                    ? new ExtendedDictionaryEvaluatorGuidance(new CorpusStore.Reader(corpusDir), outputFile)
+                    : new ExtendedDictionaryEvaluatorGuidance(testInputFiles, outputFile);
 
             // Run the Junit test
             GuidedFuzzing.run(testClassName, testMethodName, guidance, (System.getenv("QUIET")  == null ? System.out : null));
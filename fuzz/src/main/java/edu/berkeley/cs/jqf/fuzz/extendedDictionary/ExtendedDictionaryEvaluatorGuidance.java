@@ -30,14 +30,15 @@ package edu.berkeley.cs.jqf.fuzz.extendedDictionary;
 
 import edu.berkeley.cs.jqf.fuzz.central.Coordinator;
 import edu.berkeley.cs.jqf.fuzz.central.ZestClient;
+import edu.berkeley.cs.jqf.fuzz.ei.CorpusStore;
 import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance;
 import edu.berkeley.cs.jqf.fuzz.guidance.*;
 import edu.berkeley.cs.jqf.fuzz.util.Coverage;
+import edu.berkeley.cs.jqf.fuzz.util.CoverageShards;
 import edu.berkeley.cs.jqf.instrument.tracing.SingleSnoop;
 import edu.berkeley.cs.jqf.instrument.tracing.events.TraceEvent;
 import org.eclipse.collections.api.iterator.IntIterator;
 import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
-import org.eclipse.collections.impl.list.mutable.primitive.ShortArrayList;
 import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import java.io.*;
@@ -46,6 +47,7 @@ import java.util.function.Consumer;
 
 public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
     private final File[] inputFiles;
+    private final CorpusStore.Reader corpus;
     private final File traceDir;
     private int nextFileIdx = 0;
     private List<PrintStream> traceStreams = new ArrayList<>();
@@ -56,6 +58,7 @@ public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
     private Set<String> allBranchesCovered;
     private boolean ignoreInvalidCoverage;
     private Coverage runCoverage = new Coverage();
+    private final CoverageShards coverageShards = new CoverageShards();
     public static final int NUM_TRIALS_PER_INPUT = System.getenv("TRIALS") == null ? 10 : Integer.parseInt(System.getenv("TRIALS"));
 
 
@@ -107,17 +110,12 @@ public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
         IntArrayList indicesOfHintsThatAreGlobalDictionaryHints = new IntArrayList();
 
         //Allocate these lists once and reuse them for each child input
-        private ShortArrayList mutatedArrayList;
         private LinkedList<int[]> nonGlobalDictInsns;
         private LinkedList<Coordinator.StringHint[]> nonGlobalDictHints;
         private int[] positionsToMutateInChildren;
 
         ExtendedDictionaryLinearInput(ZestGuidance.LinearInput other) {
             super(other);
-            this.mutatedArrayList = new ShortArrayList(other.values.size());
-            for (int i = 0; i < other.values.size(); i++) {
-                this.mutatedArrayList.add(other.values.get(i));
-            }
 
             this.parentInputIdx = other.parentInputIdx;
             this.numGlobalDictionaryHintsApplied = other.numGlobalDictionaryHintsApplied;
@@ -185,7 +183,7 @@ public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
                     this.id,
                     this.seedSource.toString(),
                     this.parentInputIdx,
-                    this.values.size(),
+                    this.size(),
                     this.numStrings,
                     this.indicesOfHintsThatAreGlobalDictionaryHints.size(),
                     this.numCharHintsApplied,
@@ -248,8 +246,7 @@ public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
             // Create a new input that is the same as this one, but with the hints removed, and the corresponding input bytes
             // replaced to pick something at random from the dictionary
             if (this.childInput == null) {
-                childInput = new ZestGuidance.LinearInput();
-                childInput.values = this.mutatedArrayList;
+                childInput = new ZestGuidance.LinearInput(this.toByteArray());
                 childInput.stringEqualsHints = this.nonGlobalDictHints;
                 childInput.instructions = this.nonGlobalDictInsns;
             } else {
@@ -257,14 +254,14 @@ public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
             }
             for (int i = 0; i < this.positionsToMutateInChildren.length; i++) {
                 int pos = this.positionsToMutateInChildren[i];
-                childInput.values.set(pos - 1, (short) 0);
+                childInput.set(pos - 1, 0);
                 int newChoice = random.nextInt();
                 if (newChoice < 0)
                     newChoice = 0 - newChoice;
-                childInput.values.set(pos, (byte) newChoice);
-                childInput.values.set(pos + 1, (byte) (newChoice >> 8));
-                childInput.values.set(pos + 2, (byte) (newChoice >> 16));
-                childInput.values.set(pos + 3, (byte) (newChoice >> 24));
+                childInput.set(pos, newChoice);
+                childInput.set(pos + 1, newChoice >> 8);
+                childInput.set(pos + 2, newChoice >> 16);
+                childInput.set(pos + 3, newChoice >> 24);
             }
             numTimesSelectedForFuzzing++;
             return childInput;
@@ -293,7 +290,24 @@ public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
      *                 traces
      */
     public ExtendedDictionaryEvaluatorGuidance(File[] inputFiles, File traceDir) {
+        this(inputFiles, null, traceDir);
+    }
+
+    /**
+     * Constructs an instance that evaluates every input of a
+     * corpus store.
+     *
+     * @param corpus the corpus store to evaluate
+     * @param traceDir an optional file, which if non-null will
+     *                 be the destination for the statistics
+     */
+    public ExtendedDictionaryEvaluatorGuidance(CorpusStore.Reader corpus, File traceDir) {
+        this(null, corpus, traceDir);
+    }
+
+    private ExtendedDictionaryEvaluatorGuidance(File[] inputFiles, CorpusStore.Reader corpus, File traceDir) {
         this.inputFiles = inputFiles;
+        this.corpus = corpus;
         this.traceDir = traceDir;
 
         this.startTime = System.currentTimeMillis();
@@ -309,7 +323,7 @@ public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
         else
             this.experimentName = "";
 
-        SingleSnoop.setCoverageListener(runCoverage);
+        SingleSnoop.setCoverageListener(coverageShards);
         if (Boolean.getBoolean("jqf.repro.logUniqueBranches")) {
             allBranchesCovered = new HashSet<>();
             branchesCoveredInCurrentRun = new HashSet<>();
@@ -340,6 +354,7 @@ public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
     @Override
     public InputStream getInput() {
         runCoverage.clear();
+        coverageShards.startTrial();
         generatedStrings = 0;
         executions++;
         if (this.inputUnderAnalysis != null && this.inputUnderAnalysis.hasInputsToTry()) {
@@ -350,16 +365,21 @@ public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
 
             if(nextFileIdx % 100 == 0){
                 int speed = (int) (1000*executions / (System.currentTimeMillis() - startTime));
-                System.out.println("Status: " + nextFileIdx + "/" + inputFiles.length + " seeds evaluated, " + executions + " executions, at " + speed + " execs/sec");
+                System.out.println("Status: " + nextFileIdx + "/" + numInputFiles() + " seeds evaluated, " + executions + " executions, at " + speed + " execs/sec");
             }
 
-            File inputFile = inputFiles[nextFileIdx];
-            nextFileIdx++;
-            this.currentInputFile = inputFile;
             try {
-                ZestGuidance.LinearInput linearInput = ZestGuidance.LinearInput.fromFile(inputFile);
+                ZestGuidance.LinearInput linearInput;
+                if (corpus != null) {
+                    linearInput = corpus.get(nextFileIdx);
+                    this.currentInputFile = new File(corpus.getDirectory(), String.format("id_%06d", linearInput.id));
+                } else {
+                    this.currentInputFile = inputFiles[nextFileIdx];
+                    linearInput = ZestGuidance.LinearInput.fromFile(currentInputFile);
+                }
+                nextFileIdx++;
                 this.inputUnderAnalysis = new ExtendedDictionaryLinearInput(linearInput);
-                this.inputUnderAnalysis.id = Integer.parseInt(inputFile.getName().substring(3));
+                this.inputUnderAnalysis.id = linearInput.id;
                 this.analyzedInputs.add(inputUnderAnalysis);
                 currentInput = inputUnderAnalysis;
             } catch (IOException | ClassNotFoundException e) {
@@ -380,6 +400,18 @@ public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
                 return ret;
 
             }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (off < 0 || len < 0 || len > b.length - off) {
+                    throw new IndexOutOfBoundsException();
+                }
+                int ret = currentInput.getOrGenerateFresh(bytesRead, b, off, len, random);
+                if (ret > 0) {
+                    bytesRead += ret;
+                }
+                return ret;
+            }
         };
         if ((currentInput.stringEqualsHints != null))
             is = new StringEqualsHintingInputStream(is, ris, currentInput);
@@ -398,7 +430,11 @@ public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
     public boolean hasInput() {
         if (this.inputUnderAnalysis != null && this.inputUnderAnalysis.hasInputsToTry())
             return true;
-        return nextFileIdx < inputFiles.length;
+        return nextFileIdx < numInputFiles();
+    }
+
+    private int numInputFiles() {
+        return corpus != null ? corpus.size() : inputFiles.length;
     }
 
     /**
@@ -425,6 +461,7 @@ public class ExtendedDictionaryEvaluatorGuidance implements Guidance {
         } catch (IOException e) {
             throw new GuidanceException(e);
         }
+        coverageShards.mergeInto(runCoverage);
         runCoverage.lock();
         if (this.currentInput == this.inputUnderAnalysis) {
             //We just ran the input as-is, record the coverage!
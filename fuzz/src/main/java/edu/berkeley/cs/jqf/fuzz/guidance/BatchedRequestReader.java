@@ -0,0 +1,46 @@
+package edu.berkeley.cs.jqf.fuzz.guidance;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that keeps track of read requests, and can serve a batch of equal-sized requests in one call.
+ *
+ * <p>{@link RecordingInputStream} records one (offset, length) run per request, and
+ * {@link StringEqualsHintingInputStream} lines hints up with those runs; Central and the Z3 worker then address
+ * hints by run offset. A bulk read that stands in for many small ones, such as {@link StreamBackedRandom#nextBytes}
+ * for a run of ints, goes through this interface so that each of the small requests is still a run of its own.</p>
+ */
+public interface BatchedRequestReader {
+
+    /**
+     * Reads up to <tt>len</tt> bytes, as if by consecutive calls to <tt>read(b, off, requestLength)</tt>, with the
+     * last request taking whatever is left.
+     *
+     * @param b the buffer to read into
+     * @param off the offset in <tt>b</tt> of the first byte
+     * @param len the maximum number of bytes to read
+     * @param requestLength the number of bytes in each request
+     * @return the number of bytes read, or -1 if EOF has been reached before reading any
+     * @throws IOException if the underlying stream could not be read
+     */
+    int read(byte[] b, int off, int len, int requestLength) throws IOException;
+
+    /**
+     * Reads from any stream as if by a batch of requests, tracking them if the stream can.
+     *
+     * @param is the stream
+     * @param b the buffer to read into
+     * @param off the offset in <tt>b</tt> of the first byte
+     * @param len the maximum number of bytes to read
+     * @param requestLength the number of bytes in each request
+     * @return the number of bytes read, or -1 if EOF has been reached before reading any
+     * @throws IOException if the stream could not be read
+     */
+    static int read(InputStream is, byte[] b, int off, int len, int requestLength) throws IOException {
+        if (is instanceof BatchedRequestReader) {
+            return ((BatchedRequestReader) is).read(b, off, len, requestLength);
+        }
+        return is.read(b, off, len);
+    }
+}
@@ -1,51 +1,49 @@
 package edu.berkeley.cs.jqf.fuzz.guidance;
 
-import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance;
-import org.eclipse.collections.impl.list.mutable.primitive.ByteArrayList;
-import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
-
 import java.io.*;
-import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 
-public class RecordingInputStream extends InputStream {
+/**
+ * Records the bytes read through it, and the read requests that asked for them: each call to one of the
+ * read methods that returns data is one request, kept as an (offset, length) run over the recorded bytes.
+ * A batch of requests read through {@link BatchedRequestReader} is recorded as one run per request.
+ */
+public class RecordingInputStream extends InputStream implements BatchedRequestReader {
 
     private final InputStream is;
 
     /*
-    Track all of the bytes read
-     */
-    private final ByteArrayList bytesRead;
-    /*
-    Track the marks at which a new request starts
+    Track all of the bytes read, and the run of bytes returned by each request
      */
-    private final IntArrayList marks;
-    private int pos = 0;
+    private final MarkedInput recording;
+
 
+    private static MarkedInput current; //WARNING NOT THREAD SAFE, NEED THIS IN GENERATORS :/
 
-    private static ByteArrayList currentBuf; //WARNING NOT THREAD SAFE, NEED THIS IN GENERATORS :/
-    private static IntArrayList currentMarks;
-    public RecordingInputStream(InputStream is, ByteArrayList bytesReadBuffer, IntArrayList marksBuffer) {
+    /**
+     * Creates a stream that records into an existing buffer, so that a fuzzing loop does not need to allocate
+     * one for each input. Anything already in the buffer is cleared.
+     *
+     * @param is the stream to read from
+     * @param recording the buffer to record into
+     */
+    public RecordingInputStream(InputStream is, MarkedInput recording) {
         this.is = is;
-        this.bytesRead = bytesReadBuffer;
-        this.marks = marksBuffer;
-        this.bytesRead.clear();
-        this.marks.clear();
-        currentBuf = this.bytesRead;
-        currentMarks = this.marks;
+        this.recording = recording;
+        this.recording.clear();
+        current = this.recording;
     }
 
     public RecordingInputStream(InputStream is) {
-        this(is, new ByteArrayList(ZestGuidance.MAX_INPUT_SIZE / 4), new IntArrayList(ZestGuidance.MAX_INPUT_SIZE / 16));
+        this(is, new MarkedInput());
     }
 
     @Override
     public int read() throws IOException {
         int r = is.read();
         if (r != -1) {
-            bytesRead.add((byte) r);
-            marks.add(pos);
-            pos++;
+            recording.add((byte) r);
         }
 
         return r;
@@ -53,83 +51,194 @@ public class RecordingInputStream extends InputStream {
 
     @Override
     public int read(byte[] b) throws IOException {
-        int r = is.read(b);
-        if (r != -1) {
-            marks.add(pos);
-            for(int i = 0; i < r; i++){
-                bytesRead.add(b[i]);
-            }
-            pos += r;
-        }
-        return r;
+        return read(b, 0, b.length);
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
         int r = is.read(b, off, len);
-        if (len > 0 && r != -1) {
-            marks.add(pos);
-            for(int i = 0; i < r; i++){
-                bytesRead.add(b[i]);
-            }
-            pos += r;
+        if (r > 0) {
+            recording.add(b, off, r);
+        }
+
+        return r;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len, int requestLength) throws IOException {
+        int r = BatchedRequestReader.read(is, b, off, len, requestLength);
+        if (r > 0) {
+            recording.add(b, off, r, requestLength);
         }
 
         return r;
     }
 
+    /**
+     * Returns what has been recorded so far. This is not a copy: it remains valid only until the buffer it
+     * was recorded into is reused for another input.
+     *
+     * @return the recorded bytes and requests
+     */
     public MarkedInput getRecordedInput() {
-        return new MarkedInput(bytesRead, marks);
+        return recording;
     }
 
     public static void unsafePatchLastReadIntTo(int newVal){
-        if (currentMarks != null && currentBuf != null) {
+        if (current != null && current.numRuns > 0) {
             //Did we in fact just read an int?
-            int currentMark = currentMarks.getLast();
-            if (currentBuf.size() - currentMark != 4) {
-                throw new IllegalStateException("Expected to find a 4 byte int, but found " + (currentBuf.size() - currentMark));
-            }
-            byte[] tmp = new byte[4];
-            ByteBuffer.wrap(tmp).putInt(newVal);
-            for (int i = 0; i < 4; i++) {
-                currentBuf.set(currentMark + i, tmp[i]);
+            int currentMark = current.getRunOffset(current.numRuns - 1);
+            if (current.length - currentMark != 4) {
+                throw new IllegalStateException("Expected to find a 4 byte int, but found " + (current.length - currentMark));
             }
+            byte[] buf = current.bytesRead;
+            buf[currentMark] = (byte) (newVal >>> 24);
+            buf[currentMark + 1] = (byte) (newVal >>> 16);
+            buf[currentMark + 2] = (byte) (newVal >>> 8);
+            buf[currentMark + 3] = (byte) newVal;
         }
     }
     public static int unsafeGetLastMark(){
-        if(currentMarks == null)
+        if(current == null || current.numRuns == 0)
             return 0;
-        return currentMarks.getLast();
+        return current.getRunOffset(current.numRuns - 1);
     }
 
+    /**
+     * Recorded bytes, along with the read requests that returned them as (offset, length) runs, stored flat
+     * in one array in the same layout as Coordinator.Input.requestsForRandom. The arrays may be longer than
+     * what is in use.
+     */
     public static class MarkedInput implements Externalizable {
         private byte[] bytesRead;
-        private int[] marks;
+        private int length;
+        private int[] runs;
+        private int numRuns;
 
         public MarkedInput(){
+            this(new byte[1024], 0, new int[256], 0);
+        }
+
+        /**
+         * @param bytesRead the bytes read
+         * @param marks the offset at which each request started; each one runs up to the next
+         */
+        public MarkedInput(byte[] bytesRead, int[] marks){
+            this(bytesRead, bytesRead.length, new int[marks.length * 2], marks.length);
+            for (int i = 0; i < marks.length; i++) {
+                this.runs[2 * i] = marks[i];
+                this.runs[2 * i + 1] = (i == marks.length - 1 ? bytesRead.length : marks[i + 1]) - marks[i];
+            }
+        }
+
+        /**
+         * @param bytesRead a buffer whose first <tt>length</tt> bytes were read
+         * @param length the number of bytes read
+         * @param runs a buffer whose first <tt>numRuns</tt> pairs are the (offset, length) of each request
+         * @param numRuns the number of requests
+         */
+        public MarkedInput(byte[] bytesRead, int length, int[] runs, int numRuns){
+            this.bytesRead = bytesRead;
+            this.length = length;
+            this.runs = runs;
+            this.numRuns = numRuns;
+        }
+
+        void clear() {
+            this.length = 0;
+            this.numRuns = 0;
+        }
+
+        void add(byte b) {
+            if (length == bytesRead.length) {
+                bytesRead = Arrays.copyOf(bytesRead, Math.max(16, length * 2));
+            }
+            bytesRead[length] = b;
+            addRun(length, 1);
+            length++;
+        }
+
+        void add(byte[] b, int off, int len) {
+            add(b, off, len, len);
+        }
 
+        /** Adds bytes returned by consecutive requests of <tt>runLength</tt> bytes each, the last one shorter. */
+        void add(byte[] b, int off, int len, int runLength) {
+            if (length + len > bytesRead.length) {
+                bytesRead = Arrays.copyOf(bytesRead, Math.max(length + len, length * 2));
+            }
+            System.arraycopy(b, off, bytesRead, length, len);
+            int newRuns = (len + runLength - 1) / runLength;
+            if (2 * (numRuns + newRuns) > runs.length) {
+                runs = Arrays.copyOf(runs, Math.max(2 * (numRuns + newRuns), runs.length * 2));
+            }
+            for (int run = 0; run < len; run += runLength) {
+                addRun(length + run, Math.min(runLength, len - run));
+            }
+            length += len;
         }
 
-        protected MarkedInput(ByteArrayList bytesRead, IntArrayList marks){
-            this.bytesRead = bytesRead.toArray();
-            this.marks = marks.toArray();
+        private void addRun(int offset, int len) {
+            if (2 * numRuns == runs.length) {
+                runs = Arrays.copyOf(runs, Math.max(16, runs.length * 2));
+            }
+            runs[2 * numRuns] = offset;
+            runs[2 * numRuns + 1] = len;
+            numRuns++;
         }
 
         @Override
         public void writeExternal(ObjectOutput out) throws IOException {
-            out.writeInt(bytesRead.length);
-            out.write(bytesRead);
-            out.writeInt(marks.length);
-            for(int i = 0; i < marks.length; i++){
-                out.writeInt(marks[i]);
+            out.writeInt(length);
+            out.write(bytesRead, 0, length);
+            out.writeInt(numRuns * 2);
+            for(int i = 0; i < numRuns * 2; i++){
+                out.writeInt(runs[i]);
             }
         }
 
+        /** Returns the bytes read, copying them only if the buffer holding them is larger. */
         public byte[] getBytesRead() {
+            return length == bytesRead.length ? bytesRead : Arrays.copyOf(bytesRead, length);
+        }
+
+        /** Returns the buffer holding the bytes read, which may be longer than {@link #getLength()}. */
+        public byte[] getBuffer() {
             return bytesRead;
         }
 
+        public int getLength() {
+            return length;
+        }
+
+        /** Returns the (offset, length) runs, copying them only if the buffer holding them is larger. */
+        public int[] getRuns() {
+            return 2 * numRuns == runs.length ? runs : Arrays.copyOf(runs, 2 * numRuns);
+        }
+
+        /** Returns the buffer holding the (offset, length) runs, which may be longer than needed. */
+        public int[] getRunBuffer() {
+            return runs;
+        }
+
+        public int getNumRuns() {
+            return numRuns;
+        }
+
+        public int getRunOffset(int run) {
+            return runs[2 * run];
+        }
+
+        public int getRunLength(int run) {
+            return runs[2 * run + 1];
+        }
+
+        /** Returns the offset at which each request started. */
         public int[] getMarks() {
+            int[] marks = new int[numRuns];
+            for (int i = 0; i < numRuns; i++) {
+                marks[i] = runs[2 * i];
+            }
             return marks;
         }
 
@@ -139,21 +248,18 @@ public class RecordingInputStream extends InputStream {
          * @return
          */
         public int getMarkLength(int markIndex){
-            if (markIndex == marks.length - 1) {
-                return bytesRead.length - marks[markIndex]; //if last mark, the length of the read is the remaining length of the array
-            } else {
-                //else it's the distance to the next mark
-                return marks[markIndex+1] - marks[markIndex];
-            }
+            return getRunLength(markIndex);
         }
 
         @Override
         public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-            this.bytesRead = new byte[in.readInt()];
+            this.length = in.readInt();
+            this.bytesRead = new byte[this.length];
             in.readFully(this.bytesRead);
-            this.marks = new int[in.readInt()];
-            for(int i = 0; i < this.marks.length; i++){
-                this.marks[i] = in.readInt();
+            this.runs = new int[in.readInt()];
+            this.numRuns = this.runs.length / 2;
+            for(int i = 0; i < this.runs.length; i++){
+                this.runs[i] = in.readInt();
             }
         }
     }
@@ -152,6 +152,79 @@ public class StreamBackedRandom extends Random {
 
     }
 
+    /**
+     * Reads raw bytes from the backing source, yielding the same bytes as
+     * that many calls to {@link #nextByte()} but without stopping at EOF.
+     * Each byte is still a read request of its own, to streams that keep
+     * track of them (see {@link BatchedRequestReader}).
+     *
+     * @param b   the buffer to read into
+     * @param off the offset in <tt>b</tt> of the first byte
+     * @param len the maximum number of bytes to read
+     * @return the number of bytes read, or -1 if EOF has been reached
+     *    before reading any
+     */
+    public int read(byte[] b, int off, int len) {
+        return read(b, off, len, 1);
+    }
+
+    /* Reads raw bytes as a batch of read requests of requestLength bytes each */
+    private int read(byte[] b, int off, int len, int requestLength) {
+        int count = 0;
+        // Ignored leading bytes read as zeros, as they do in next()
+        while (this.leadingBytesToIgnore > 0 && count < len) {
+            this.leadingBytesToIgnore--;
+            b[off + count++] = 0;
+        }
+        try {
+            while (count < len) {
+                int r = BatchedRequestReader.read(inputStream, b, off + count, len - count, requestLength);
+                if (r == -1) {
+                    break;
+                }
+                totalBytesRead += r;
+                count += r;
+            }
+        } catch (IOException e) {
+            throw new GuidanceException(e);
+        }
+        return count == 0 && len > 0 ? -1 : count;
+    }
+
+    /**
+     * Fills a buffer with bytes from the backing source.
+     *
+     * <p>This reads the same bytes, in the same order, as {@link Random#nextBytes},
+     * which takes them four at a time from {@link #nextInt()}; but whole groups
+     * of four are read in one go, as a batch of 4-byte read requests.</p>
+     *
+     * @param bytes the buffer to fill
+     * @throws IllegalStateException  if EOF is reached
+     */
+    @Override
+    public void nextBytes(byte[] bytes) {
+        if (this.leadingBytesToIgnore > 0) {
+            // Ignored bytes are the high-order ones of an int, so let next() place them
+            super.nextBytes(bytes);
+            return;
+        }
+        int whole = bytes.length & ~3;
+        int actualBytesRead = read(bytes, 0, whole, Integer.BYTES);
+        if (actualBytesRead != whole) {
+            String message = String.format("EOF reached; total bytes read = %d, " +
+                            "last read got %d of %d bytes",
+                    totalBytesRead, Math.max(actualBytesRead, 0), whole);
+            throw new IllegalStateException(new EOFException(message));
+        }
+        // The rest come from the low-order end of one more int, as in Random
+        if (whole < bytes.length) {
+            int rnd = nextInt();
+            for (int i = whole; i < bytes.length; i++, rnd >>= Byte.SIZE) {
+                bytes[i] = (byte) rnd;
+            }
+        }
+    }
+
     @Override
     public int nextInt(int bound) {
         if (bound <= 0)
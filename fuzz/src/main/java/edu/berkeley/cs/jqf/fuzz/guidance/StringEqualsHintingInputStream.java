@@ -7,7 +7,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.LinkedList;
 
-public class StringEqualsHintingInputStream extends InputStream {
+public class StringEqualsHintingInputStream extends InputStream implements BatchedRequestReader {
 
     private final InputStream is;
     private final LinkedList<int[]> reqs;
@@ -102,4 +102,14 @@ public class StringEqualsHintingInputStream extends InputStream {
     public int read(byte[] b, int off, int len) throws IOException {
         return setHints(is.read(b, off, len));
     }
+
+    @Override
+    public int read(byte[] b, int off, int len, int requestLength) throws IOException {
+        int ret = BatchedRequestReader.read(is, b, off, len, requestLength);
+        // Line hints up with each request, as if they had been read one at a time
+        for (int request = 0; request < ret; request += requestLength) {
+            setHints(Math.min(requestLength, ret - request));
+        }
+        return ret;
+    }
 }
@@ -31,10 +31,12 @@ package edu.berkeley.cs.jqf.fuzz.junit.quickcheck;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Random;
 
 import com.pholser.junit.quickcheck.generator.GenerationStatus;
 import com.pholser.junit.quickcheck.generator.Generator;
 import com.pholser.junit.quickcheck.random.SourceOfRandomness;
+import edu.berkeley.cs.jqf.fuzz.guidance.StreamBackedRandom;
 
 /**
  * Lazy provider of bytes from an input stream. This is useful
@@ -75,6 +77,21 @@ public class InputStreamGenerator extends Generator<InputStream> {
                    }
                }
            }
+
+           @Override
+           public int read(byte[] b, int off, int len) throws IOException {
+               if (off < 0 || len < 0 || len > b.length - off) {
+                   throw new IndexOutOfBoundsException();
+               }
+               // A stream-backed source can copy a whole range of the
+               // same bytes that read() would return one at a time
+               Random random = sourceOfRandomness.toJDKRandom();
+               if (sourceOfRandomness instanceof FastSourceOfRandomness
+                       && random instanceof StreamBackedRandom) {
+                   return ((StreamBackedRandom) random).read(b, off, len);
+               }
+               return super.read(b, off, len);
+           }
        };
     }
 }
@@ -37,6 +37,8 @@ import edu.berkeley.cs.jqf.fuzz.guidance.Guidance;
 import edu.berkeley.cs.jqf.fuzz.guidance.GuidanceException;
 import edu.berkeley.cs.jqf.fuzz.guidance.Result;
 import edu.berkeley.cs.jqf.fuzz.util.Coverage;
+import edu.berkeley.cs.jqf.fuzz.util.CoverageShards;
+import edu.berkeley.cs.jqf.instrument.tracing.SingleSnoop;
 import edu.berkeley.cs.jqf.instrument.tracing.events.TraceEvent;
 
 /**
@@ -56,6 +58,7 @@ public class NoGuidance implements Guidance {
     private final PrintStream out;
     private Random random = new Random();
     private Coverage coverage;
+    private final CoverageShards coverageShards = new CoverageShards();
     private static boolean KEEP_GOING_ON_ERROR = true;
 
     /**
@@ -71,6 +74,7 @@ public class NoGuidance implements Guidance {
         }
         this.maxTrials = maxTrials;
         this.out = out;
+        SingleSnoop.setCoverageListener(coverageShards);
     }
 
     /**
@@ -80,6 +84,7 @@ public class NoGuidance implements Guidance {
      */
     @Override
     public InputStream getInput() {
+        coverageShards.startTrial();
         return Guidance.createInputStream(() -> random.nextInt(256));
     }
 
@@ -102,6 +107,9 @@ public class NoGuidance implements Guidance {
     public void handleResult(Result result, Throwable error) {
         numTrials++;
 
+        // Collect the coverage of this run
+        coverageShards.mergeInto(getCoverage());
+
         // Display error stack trace in case of failure
         if (result == Result.FAILURE) {
             if (out != null) {
@@ -126,19 +134,18 @@ public class NoGuidance implements Guidance {
     }
 
     /**
-     * Returns a callback that does almost nothing.
+     * Returns a callback that does nothing.
      *
      * <p>Since this is unguided random guidance, the trace events are
-     * not used in generating inputs.</p>
-     *
-     * <p>The handler here merely updates coverage statistics.</p>
+     * not used in generating inputs. Coverage statistics are collected
+     * from the instrumentation probes instead.</p>
      *
      * @param thread the thread whose events to handle
      * @return a callback that does nothing.
      */
     @Override
     public Consumer<TraceEvent> generateCallBack(Thread thread) {
-        return getCoverage()::handleEvent;
+        return (e) -> {};
     }
 
     /**
@@ -33,6 +33,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.LinkedList;
 
+import edu.berkeley.cs.jqf.fuzz.ei.CorpusStore;
 import edu.berkeley.cs.jqf.fuzz.junit.GuidedFuzzing;
 import edu.berkeley.cs.jqf.fuzz.knarr.KnarrGuidance;
 import edu.columbia.cs.psl.phosphor.PreMain;
@@ -72,8 +73,11 @@ public class ReproDriver {
             String traceDirName = System.getProperty("jqf.repro.traceDir");
             File traceDir = traceDirName != null ? new File(traceDirName) : null;
 
-            // Load the guidance
-            ReproGuidance guidance = new ReproGuidance(testInputFiles, traceDir);
+            // Load the guidance; a corpus saved as a store is replayed from the store
+            File corpusDir = new File(args[2]);
+            ReproGuidance guidance = args.length == 3 && CorpusStore.isStore(corpusDir)
+                    ? new ReproGuidance(new CorpusStore.Reader(corpusDir), traceDir)
+                    : new ReproGuidance(testInputFiles, traceDir);
 
             // Run the Junit test
             GuidedFuzzing.run(testClassName, testMethodName, guidance, System.out);
@@ -40,14 +40,17 @@ import java.util.function.Consumer;
 
 import edu.berkeley.cs.jqf.fuzz.central.Coordinator;
 import edu.berkeley.cs.jqf.fuzz.central.ZestClient;
+import edu.berkeley.cs.jqf.fuzz.ei.CorpusStore;
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance;
 import edu.berkeley.cs.jqf.fuzz.guidance.*;
 import edu.berkeley.cs.jqf.fuzz.knarr.KnarrGuidance;
 import edu.berkeley.cs.jqf.fuzz.util.Coverage;
-import edu.berkeley.cs.jqf.instrument.tracing.events.BranchEvent;
-import edu.berkeley.cs.jqf.instrument.tracing.events.CallEvent;
+import edu.berkeley.cs.jqf.fuzz.util.CoverageShards;
+import edu.berkeley.cs.jqf.instrument.tracing.SingleSnoop;
 import edu.berkeley.cs.jqf.instrument.tracing.events.TraceEvent;
 import edu.columbia.cs.psl.phosphor.PreMain;
 import edu.gmu.swe.knarr.runtime.PathUtils;
+import janala.instrument.GlobalStateForInstrumentation;
 import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.CoverageBuilder;
 import org.jacoco.core.tools.ExecFileLoader;
@@ -66,11 +69,14 @@ import za.ac.sun.cs.green.expr.Expression;
  */
 public class ReproGuidance implements Guidance {
     private final File[] inputFiles;
+    private final CorpusStore.Reader corpus;
     private final File traceDir;
     private int nextFileIdx = 0;
     private List<PrintStream> traceStreams = new ArrayList<>();
     private InputStream inputStream;
     private Coverage coverage = new Coverage();
+    private Coverage runCoverage = new Coverage();
+    private final CoverageShards coverageShards = new CoverageShards();
 
     private Set<String> branchesCoveredInCurrentRun;
     private Set<String> allBranchesCovered;
@@ -95,8 +101,28 @@ public class ReproGuidance implements Guidance {
      *                 traces
      */
     public ReproGuidance(File[] inputFiles, File traceDir) {
+        this(inputFiles, null, traceDir);
+    }
+
+    /**
+     * Constructs an instance of ReproGuidance that replays every
+     * input of a corpus store, and a directory where the trace
+     * events may be logged.
+     *
+     * @param corpus the corpus store to replay
+     * @param traceDir an optional directory, which if non-null will
+     *                 be the destination for log files containing event
+     *                 traces
+     */
+    public ReproGuidance(CorpusStore.Reader corpus, File traceDir) {
+        this(null, corpus, traceDir);
+    }
+
+    private ReproGuidance(File[] inputFiles, CorpusStore.Reader corpus, File traceDir) {
         this.inputFiles = inputFiles;
+        this.corpus = corpus;
         this.traceDir = traceDir;
+        SingleSnoop.setCoverageListener(coverageShards);
         if (Boolean.getBoolean("jqf.repro.logUniqueBranches")) {
             allBranchesCovered = new HashSet<>();
             branchesCoveredInCurrentRun = new HashSet<>();
@@ -132,18 +158,31 @@ public class ReproGuidance implements Guidance {
      */
     @Override
     public InputStream getInput() {
-            File inputFile = inputFiles[nextFileIdx];
+            File inputFile = getCurrentInputFile();
             this.currentInput = inputFile;
 
             //CONFETTI: we changed the saved input format.
-            try(ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(inputFile)))){
-                int inputSize = ois.readInt();
-                byte[] input = new byte[inputSize];
-                ois.readFully(input);
-                LinkedList<int[]> instructions = (LinkedList<int[]>) ois.readObject();
-                LinkedList<Coordinator.StringHint[]> stringHints = (LinkedList<Coordinator.StringHint[]>) ois.readObject();
-                LinkedList<Coordinator.TargetedHint> targetedHints = (LinkedList<Coordinator.TargetedHint>) ois.readObject();
-                int offsetOfLastAppliedHint = ois.readInt();
+            try {
+                byte[] input;
+                LinkedList<int[]> instructions;
+                LinkedList<Coordinator.StringHint[]> stringHints;
+                LinkedList<Coordinator.TargetedHint> targetedHints;
+                if (corpus != null) {
+                    ZestGuidance.LinearInput saved = corpus.get(nextFileIdx);
+                    input = saved.toByteArray();
+                    instructions = saved.instructions;
+                    stringHints = saved.stringEqualsHints;
+                    targetedHints = saved.appliedTargetedHints;
+                } else {
+                    try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(inputFile)))) {
+                        int inputSize = ois.readInt();
+                        input = new byte[inputSize];
+                        ois.readFully(input);
+                        instructions = (LinkedList<int[]>) ois.readObject();
+                        stringHints = (LinkedList<Coordinator.StringHint[]>) ois.readObject();
+                        targetedHints = (LinkedList<Coordinator.TargetedHint>) ois.readObject();
+                    }
+                }
                 this.inputStream = new ByteArrayInputStream(input);
                 KnarrGuidance.InputWithOnlyHints zestInput = new KnarrGuidance.InputWithOnlyHints();
                 zestInput.instructions = instructions;
@@ -151,7 +190,7 @@ public class ReproGuidance implements Guidance {
                 zestInput.appliedTargetedHints = targetedHints;
                 System.out.println("Running: " + inputFile.getName());
                 System.out.println("Input size: " + input.length);
-                System.out.println("Hint count: " + stringHints.size());
+                System.out.println("Hint count: " + (stringHints == null ? 0 : stringHints.size()));
                 if(instructions != null && stringHints != null){
                     if(instructions.size() != stringHints.size())
                         throw new IllegalStateException();
@@ -178,6 +217,9 @@ public class ReproGuidance implements Guidance {
                 branchesCoveredInCurrentRun.clear();
             }
 
+            runCoverage.clear();
+            coverageShards.startTrial();
+
 
             return this.inputStream;
     }
@@ -188,7 +230,7 @@ public class ReproGuidance implements Guidance {
      */
     @Override
     public boolean hasInput() {
-        return nextFileIdx < inputFiles.length;
+        return nextFileIdx < (corpus != null ? corpus.size() : inputFiles.length);
     }
 
     /**
@@ -196,6 +238,9 @@ public class ReproGuidance implements Guidance {
      * @return the current input file
      */
     private File getCurrentInputFile() {
+        if (corpus != null) {
+            return new File(corpus.getDirectory(), String.format("id_%06d", corpus.idAt(nextFileIdx)));
+        }
         return inputFiles[nextFileIdx];
     }
 
@@ -207,6 +252,13 @@ public class ReproGuidance implements Guidance {
      */
     @Override
     public void handleResult(Result result, Throwable error) {
+        // Collect the coverage of this run
+        coverageShards.mergeInto(runCoverage);
+        coverage.addCounts(runCoverage);
+        if (branchesCoveredInCurrentRun != null) {
+            runCoverage.forEachCount((key, count) -> branchesCoveredInCurrentRun.add(describeBranch(key)));
+        }
+
         // Close the open input file
         try {
             if (inputStream != null) {
@@ -282,70 +334,59 @@ public class ReproGuidance implements Guidance {
     }
 
     /**
-     * Returns a callback that can log trace events or code coverage info.
+     * Describes a coverage key for {@link #getBranchesCovered()}.
+     *
+     * <p>Probes only report the instrumentation id of each branch side
+     * or method entry, so the class, method and line are looked up in
+     * the instrumenter's probe table, which is kept whenever
+     * <tt>jqf.repro.logUniqueBranches</tt> is set. Keys that are not in
+     * the table are described by their id alone.</p>
+     *
+     * @param key the coverage key
+     * @return a description of the branch
+     */
+    private String describeBranch(int key) {
+        String str = branchDescCache.get(key);
+        if (str == null) {
+            str = GlobalStateForInstrumentation.instance.getProbeTable().describe(key);
+            branchDescCache.put(key, str);
+        }
+        return str;
+    }
+
+    /**
+     * Returns a callback that can log trace events.
      *
-     * <p>If the system property <tt>jqf.repro.logUniqueBranches</tt> was
-     * set to <tt>true</tt>, then the callback collects coverage info into
-     * the set {@link #branchesCoveredInCurrentRun}, which can be accessed using
+     * <p>Coverage is not collected from trace events, but from the
+     * instrumentation probes; see {@link #getCoverage()} and
      * {@link #getBranchesCovered()}.</p>
      *
-     * <p>Otherwise, if the <tt>traceDir</tt> was non-null during the construction of
+     * <p>If the <tt>traceDir</tt> was non-null during the construction of
      * this Guidance instance, then one log file per thread of
      * execution is created in this directory. The callbacks generated
      * by this method write trace event descriptions in sequence to
      * their own thread's log files.</p>
      *
-     * <p>If neither of the above are true, the returned callback simply updates
-     * a total coverage map (see {@link #getCoverage()}.</p>
-     *
      * @param thread the thread whose events to handle
-     * @return a callback to log code coverage or execution traces
+     * @return a callback to log execution traces
      */
     @Override
     public Consumer<TraceEvent> generateCallBack(Thread thread) {
-        if (branchesCoveredInCurrentRun != null) {
-            return (e) -> {
-                coverage.handleEvent(e);
-                if (e instanceof BranchEvent) {
-                    BranchEvent b = (BranchEvent) e;
-                    int hash = b.getIid() * 31 + b.getArm();
-                    String str = branchDescCache.get(hash);
-                    if (str == null) {
-                        str = String.format("(%09d) %s#%s():%d [%d]", b.getIid(), b.getContainingClass(), b.getContainingMethodName(),
-                                b.getLineNumber(), b.getArm());
-                        branchDescCache.put(hash, str);
-                    }
-                    branchesCoveredInCurrentRun.add(str);
-                } else if (e instanceof CallEvent) {
-                    CallEvent c = (CallEvent) e;
-                    String str = branchDescCache.get(c.getIid());
-                    if (str == null) {
-                        str = String.format("(%09d) %s#%s():%d --> %s", c.getIid(), c.getContainingClass(), c.getContainingMethodName(),
-                                c.getLineNumber(), c.getInvokedMethodName());
-                        branchDescCache.put(c.getIid(), str);
-                    }
-                    branchesCoveredInCurrentRun.add(str);
-                }
-            };
-        } else if (traceDir != null) {
+        if (traceDir != null) {
             File traceFile = new File(traceDir, thread.getName() + ".log");
             try {
                 PrintStream out = new PrintStream(traceFile);
                 traceStreams.add(out);
 
                 // Return an event logging callback
-                return (e) -> {
-                    coverage.handleEvent(e);
-                    out.println(e);
-                };
+                return out::println;
             } catch (FileNotFoundException e) {
                 // Note the exception, but ignore trace events
                 System.err.println("Could not open trace file: " + traceFile.getAbsolutePath());
             }
         }
 
-        // If none of the above work, just update coverage
-        return coverage::handleEvent;
+        return (e) -> {};
 
     }
 
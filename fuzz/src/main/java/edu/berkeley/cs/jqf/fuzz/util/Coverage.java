@@ -32,16 +32,12 @@ import edu.berkeley.cs.jqf.instrument.tracing.events.BranchEvent;
 import edu.berkeley.cs.jqf.instrument.tracing.events.CallEvent;
 import edu.berkeley.cs.jqf.instrument.tracing.events.TraceEvent;
 import edu.berkeley.cs.jqf.instrument.tracing.events.TraceEventVisitor;
-import edu.columbia.cs.psl.phosphor.struct.IntSinglyLinkedList;
 import janala.instrument.CoverageListener;
-import org.eclipse.collections.api.IntIterable;
-import org.eclipse.collections.api.iterator.IntIterator;
+import janala.instrument.GlobalStateForInstrumentation;
+import org.eclipse.collections.api.block.procedure.primitive.IntIntProcedure;
 import org.eclipse.collections.api.list.primitive.IntList;
-import org.eclipse.collections.api.tuple.primitive.IntIntPair;
 import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 
-import java.util.Iterator;
-
 /**
  * Utility class to collect branch and function coverage
  *
@@ -54,12 +50,45 @@ public class Coverage implements TraceEventVisitor, CoverageListener {
 
     /** The coverage counts for each edge. */
     //private final Counter counter = new NonZeroCachingCounter(COVERAGE_MAP_SIZE);
-    private final ReliableCounter counter = new ReliableCounter();
+    private final CoverageCounter counter;
+
+    /** Which {@link CoverageCounter} backs a coverage map. */
+    public enum CounterType {
+        /** A synchronized hash map; tolerates concurrent updates */
+        RELIABLE,
+        /** An unsynchronized array indexed by coverage key; see {@link DenseCounter} */
+        DENSE
+    }
+
+    /** The counter used by coverage maps that do not ask for a particular one. */
+    public static final CounterType DEFAULT_COUNTER_TYPE = defaultCounterType(GlobalStateForInstrumentation.instance);
+
+    /**
+     * Returns the counter given by <tt>jqf.coverage.counter</tt>, or else the one that suits the instrumentation's
+     * ids: stable ids are spread over their whole space, so arrays indexed by them would be mostly empty, and every
+     * copy of a coverage map would be as big as the space.
+     */
+    static CounterType defaultCounterType(GlobalStateForInstrumentation state) {
+        String counter = System.getProperty("jqf.coverage.counter");
+        if (counter != null) {
+            return CounterType.valueOf(counter.toUpperCase());
+        }
+        return state.isStable() ? CounterType.RELIABLE : CounterType.DENSE;
+    }
 
     private boolean lock = false;
     /** Creates a new coverage map. */
     public Coverage() {
+        this(DEFAULT_COUNTER_TYPE);
+    }
 
+    /**
+     * Creates a new coverage map backed by a specific kind of counter.
+     *
+     * @param counterType the counter to use
+     */
+    public Coverage(CounterType counterType) {
+        this.counter = counterType == CounterType.DENSE ? new DenseCounter() : new ReliableCounter();
     }
 
     /**
@@ -71,7 +100,7 @@ public class Coverage implements TraceEventVisitor, CoverageListener {
         //for (int idx = 0; idx < COVERAGE_MAP_SIZE; idx++) {
         //    this.counter.setAtIndex(idx, that.counter.getAtIndex(idx));
         //}
-        this.counter.copyFrom(that.counter);
+        this.counter = that.counter.copy();
     }
 
     /**
@@ -120,33 +149,89 @@ public class Coverage implements TraceEventVisitor, CoverageListener {
         return counter.getNonZeroSize();
     }
 
+    /**
+     * Returns the hit count of a single key.
+     *
+     * @param key the coverage key
+     * @return the number of times it was hit
+     */
+    int getCount(int key) {
+        return counter.get(key);
+    }
+
     /**
      * Returns a collection of branches that are covered.
      *
      * @return a collection of keys that are covered
      */
-    public IntSinglyLinkedList getCovered() {
+    public IntList getCovered() {
         return counter.getNonZeroKeys();
     }
 
 
     public IntList computeNewCoverage(Coverage baseline) {
+        if (this.counter instanceof DenseCounter && baseline.counter instanceof DenseCounter) {
+            return ((DenseCounter) this.counter).computeNewCoverage((DenseCounter) baseline.counter);
+        }
         IntArrayList newCoverage = new IntArrayList();
-
-        IntSinglyLinkedList baseNonZero = this.counter.getNonZeroKeys();
-        IntSinglyLinkedList.IntListIterator iter = baseNonZero.iterator();
-        while (iter.hasNext()) {
-            int idx = iter.nextInt();
+        this.counter.forEachNonZero((idx, count) -> {
             if (baseline.counter.get(idx) == 0) {
                 newCoverage.add(idx);
             }
-        }
+        });
         return newCoverage;
 
     }
 
 
 
+    /**
+     * Adds to the hit count of a single key.
+     *
+     * @param key the coverage key
+     * @param count the number of hits to add
+     */
+    void addCount(int key, int count) {
+        counter.increment(key, count);
+    }
+
+    /**
+     * Adds the counts of a per-thread shard to this map.
+     *
+     * @param shard the counts to add
+     */
+    void add(DenseCounter shard) {
+        shard.addTo(counter);
+    }
+
+    /**
+     * Adds the counts of another coverage map to this one.
+     *
+     * @param that the coverage map whose counts to add
+     */
+    public void addCounts(Coverage that) {
+        that.counter.forEachNonZero(this.counter::increment);
+    }
+
+    /**
+     * ORs bits into the count at a key.
+     *
+     * @param key the coverage key
+     * @param bits the bits to OR in
+     */
+    void or(int key, int bits) {
+        counter.or(key, bits);
+    }
+
+    /**
+     * Visits every covered key along with its hit count.
+     *
+     * @param procedure called with (key, count) for each covered key
+     */
+    public void forEachCount(IntIntProcedure procedure) {
+        counter.forEachNonZero(procedure);
+    }
+
     /**
      * Clears the coverage map.
      */
@@ -186,7 +271,7 @@ public class Coverage implements TraceEventVisitor, CoverageListener {
     }
 
     /** Returns the highest order bit (perhaps using the cache) */
-    private static int hob(int num) {
+    static int hob(int num) {
         if (num < HOB_CACHE.length) {
             return HOB_CACHE[num];
         } else {
@@ -204,7 +289,6 @@ public class Coverage implements TraceEventVisitor, CoverageListener {
      *         of <tt>this</tt>, causing <tt>this</tt> to change.
      */
     public boolean updateBits(Coverage that) {
-        boolean changed = false;
         //for (int idx = 0; idx < COVERAGE_MAP_SIZE; idx++) {
         //    int before = this.counter.getAtIndex(idx);
         //    int after = before | hob(that.counter.getAtIndex(idx));
@@ -213,25 +297,21 @@ public class Coverage implements TraceEventVisitor, CoverageListener {
         //        changed = true;
         //    }
         //}
+        if (this.counter instanceof DenseCounter && that.counter instanceof DenseCounter) {
+            return ((DenseCounter) this.counter).updateBits((DenseCounter) that.counter);
+        }
         synchronized (this.counter){
             synchronized (that.counter){
-                Iterator<IntIntPair> thatIter = that.counter.map.keyValuesView().iterator();
-
-                while(thatIter.hasNext()){
-                    IntIntPair coverageEntry = thatIter.next();
-                    int before = this.counter.map.get(coverageEntry.getOne());
-                    int after = before | hob(coverageEntry.getTwo());
-                    if(after != before){
-                        this.counter.map.put(coverageEntry.getOne(), after);
-                        changed = true;
+                boolean[] changed = {false};
+                that.counter.forEachNonZero((key, count) -> {
+                    int before = this.counter.or(key, hob(count));
+                    if ((before | hob(count)) != before) {
+                        changed[0] = true;
                     }
-                    if(before == 0){
-                        this.counter.nonZeroKeys.addFirst(coverageEntry.getOne());
-                    }
-                }
+                });
+                return changed[0];
             }
         }
-        return changed;
     }
 
     private int cachedSize = -1;
@@ -239,31 +319,33 @@ public class Coverage implements TraceEventVisitor, CoverageListener {
     public CoverageComparisonResult compareCoverage(Coverage that){
         synchronized (this.counter){
             synchronized (that.counter){
-                Iterator<IntIntPair> thisIter = this.counter.map.keyValuesView().iterator();
                 if(cachedSize == -1)
-                    this.cachedSize = this.counter.map.size();
-                if(that.counter.map.size() < cachedSize)
+                    this.cachedSize = this.counter.getNonZeroSize();
+                if(that.counter.getNonZeroSize() < cachedSize)
+                    return CoverageComparisonResult.THAT_DOES_NOT_COVER_ALL_OF_THIS;
+
+                // Anything not covered at all rules out both of the covering results, so check that word-at-a-time first
+                if (this.counter instanceof DenseCounter && that.counter instanceof DenseCounter
+                        && !((DenseCounter) this.counter).isCoveredBy((DenseCounter) that.counter))
                     return CoverageComparisonResult.THAT_DOES_NOT_COVER_ALL_OF_THIS;
 
-                boolean coversAllOfThis = true;
-                boolean coversAllOfThisSameOrGreaterHits = true;
-                while(thisIter.hasNext()){
-                    IntIntPair coverageEntry = thisIter.next();
-                    if(coverageEntry.getTwo() == 0)
-                        continue;
-                    int thatStatus = that.counter.map.get(coverageEntry.getOne());
+                boolean[] coversAllOfThis = {true};
+                boolean[] coversAllOfThisSameOrGreaterHits = {true};
+                this.counter.forEachNonZero((key, count) -> {
+                    if (!coversAllOfThis[0])
+                        return;
+                    int thatStatus = that.counter.get(key);
                     if(thatStatus == 0){
-                        coversAllOfThis = false;
-                        coversAllOfThisSameOrGreaterHits = false;
-                        break;
+                        coversAllOfThis[0] = false;
+                        coversAllOfThisSameOrGreaterHits[0] = false;
                     }
-                    else if(thatStatus < coverageEntry.getTwo()) {
-                        coversAllOfThisSameOrGreaterHits = false;
+                    else if(thatStatus < count) {
+                        coversAllOfThisSameOrGreaterHits[0] = false;
                     }
-                }
-                if(coversAllOfThisSameOrGreaterHits)
+                });
+                if(coversAllOfThisSameOrGreaterHits[0])
                     return CoverageComparisonResult.THAT_COVERS_ALL_OF_THIS_SAME_OR_GREATER_HITS;
-                if(coversAllOfThis)
+                if(coversAllOfThis[0])
                     return CoverageComparisonResult.THAT_COVERS_ALL_OF_THIS;
                 return CoverageComparisonResult.THAT_DOES_NOT_COVER_ALL_OF_THIS;
             }
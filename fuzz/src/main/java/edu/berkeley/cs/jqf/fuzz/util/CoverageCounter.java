@@ -0,0 +1,72 @@
+package edu.berkeley.cs.jqf.fuzz.util;
+
+import org.eclipse.collections.api.block.procedure.primitive.IntIntProcedure;
+import org.eclipse.collections.api.list.primitive.IntList;
+
+/**
+ * Storage for the hit counts of a {@link Coverage} map, keyed by coverage key (not hashed).
+ *
+ * @see ReliableCounter
+ * @see DenseCounter
+ */
+public interface CoverageCounter {
+
+    /**
+     * Increments the count at the given key.
+     *
+     * @param key the key whose count to increment
+     * @return the new value after incrementing the count
+     */
+    int increment(int key);
+
+    /**
+     * Adds to the count at the given key.
+     *
+     * @param key the key whose count to increment
+     * @param delta the amount to add
+     * @return the new value after incrementing the count
+     */
+    int increment(int key, int delta);
+
+    /**
+     * @param key the key to query
+     * @return the count for this key, zero if it was never hit
+     */
+    int get(int key);
+
+    /**
+     * ORs bits into the count at a key.
+     *
+     * @param key the key to update
+     * @param bits the bits to OR in
+     * @return the count before the update
+     */
+    int or(int key, int bits);
+
+    /**
+     * @return the number of keys with non-zero counts
+     */
+    int getNonZeroSize();
+
+    /**
+     * @return a snapshot of the keys with non-zero counts
+     */
+    IntList getNonZeroKeys();
+
+    /**
+     * Visits each key with a non-zero count, along with that count.
+     *
+     * @param procedure called with (key, count)
+     */
+    void forEachNonZero(IntIntProcedure procedure);
+
+    /**
+     * Sets every count back to zero.
+     */
+    void clear();
+
+    /**
+     * @return an independent counter holding the same counts as this one
+     */
+    CoverageCounter copy();
+}
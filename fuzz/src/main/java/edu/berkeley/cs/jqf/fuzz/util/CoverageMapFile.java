@@ -0,0 +1,150 @@
+package edu.berkeley.cs.jqf.fuzz.util;
+
+import janala.instrument.GlobalStateForInstrumentation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Reads and writes coverage maps, so that the coverage of one run can seed the next, or the coverage of several
+ * workers can be merged.
+ *
+ * <p>Coverage keys are only comparable between JVMs if they are derived from the instrumented code rather than from
+ * class-load order, i.e. if the instrumentation was run with <tt>janala.stableIds</tt>. The file records the number of
+ * bits in those ids, and refuses to load into a JVM that numbers its ids differently.</p>
+ *
+ * <p>The format is a big-endian header (magic, version, id bits, number of entries) followed by one (key, count) pair
+ * per covered key.</p>
+ */
+public class CoverageMapFile {
+
+    private static final int MAGIC = 0x4A514643; // "JQFC"
+    private static final int VERSION = 2; // Stable ids start at 1 since version 2
+
+    private CoverageMapFile() {}
+
+    /**
+     * Writes a coverage map to a file, replacing it atomically.
+     *
+     * @param coverage the coverage map to write
+     * @param file the file to write to
+     * @throws IOException if the file could not be written
+     */
+    public static void save(Coverage coverage, File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            write(coverage, out);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes a coverage map, in the format of {@link #save}, to a stream.
+     *
+     * @param coverage the coverage map to write
+     * @param out the stream to write to
+     * @throws IOException if the stream could not be written
+     */
+    public static void write(Coverage coverage, DataOutput out) throws IOException {
+        write(coverage, out, GlobalStateForInstrumentation.instance.getIdBits());
+    }
+
+    /**
+     * Writes a coverage map whose keys were numbered with the given stable id bits.
+     *
+     * @param coverage the coverage map to write
+     * @param out the stream to write to
+     * @param idBits the bits in the stable ids of the keys, or 0 for class-load-order ids
+     * @throws IOException if the stream could not be written
+     */
+    public static void write(Coverage coverage, DataOutput out, int idBits) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(idBits);
+        out.writeInt(coverage.getNonZeroCount());
+        IOException[] error = {null};
+        coverage.forEachCount((key, count) -> {
+            if (error[0] != null)
+                return;
+            try {
+                out.writeInt(key);
+                out.writeInt(count);
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+        if (error[0] != null)
+            throw error[0];
+    }
+
+    /**
+     * ORs the counts in a file into a coverage map.
+     *
+     * @param file the file to read
+     * @param coverage the coverage map to update
+     * @return the number of keys read
+     * @throws IOException if the file could not be read, or its keys do not match the current instrumentation
+     */
+    public static int load(File file, Coverage coverage) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return read(in, coverage, file.toString());
+        }
+    }
+
+    /**
+     * ORs the counts in a coverage map written by {@link #write} into a coverage map.
+     *
+     * @param in the stream to read
+     * @param coverage the coverage map to update
+     * @param source where the stream comes from, for error messages
+     * @return the number of keys read
+     * @throws IOException if the stream could not be read, or its keys do not match the current instrumentation
+     */
+    public static int read(DataInput in, Coverage coverage, String source) throws IOException {
+        return read(in, coverage, source, GlobalStateForInstrumentation.instance.getIdBits());
+    }
+
+    /**
+     * ORs the counts in a coverage map into a coverage map whose keys are numbered with the given stable id bits.
+     *
+     * @param in the stream to read
+     * @param coverage the coverage map to update
+     * @param source where the stream comes from, for error messages
+     * @param currentBits the bits in the stable ids of <tt>coverage</tt>, or 0 for class-load-order ids
+     * @return the number of keys read
+     * @throws IOException if the stream could not be read, or its keys were numbered differently
+     */
+    public static int read(DataInput in, Coverage coverage, String source, int currentBits) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a coverage map: " + source);
+        if (in.readInt() != VERSION)
+            throw new IOException("Coverage map " + source + " was written by another version of JQF");
+        int bits = in.readInt();
+        if (bits == 0 || bits != currentBits) {
+            throw new IOException(String.format("Coverage map %s was recorded with %s, but this JVM uses %s; " +
+                    "run both with the same -Djanala.stableIdBits and -Djanala.stableIds=true",
+                    source, describe(bits), describe(currentBits)));
+        }
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            int key = in.readInt();
+            int count = in.readInt();
+            coverage.or(key, count);
+        }
+        return n;
+    }
+
+    private static String describe(int bits) {
+        return bits == 0 ? "class-load-order ids" : bits + "-bit stable ids";
+    }
+}
@@ -0,0 +1,159 @@
+package edu.berkeley.cs.jqf.fuzz.util;
+
+import edu.berkeley.cs.jqf.instrument.tracing.CounterArrays;
+import janala.instrument.CoverageListener;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects coverage from instrumented branches into one shard per thread, to be merged into a run's coverage map
+ * once the run is over.
+ *
+ * <p>Each thread only ever writes its own shard, so recording a branch takes no lock. Only threads that belong to
+ * the current trial record anything: the thread that called {@link #startTrial()}, any thread that it (or one of
+ * its descendants) creates, and any thread registered through <tt>SingleSnoop.REGISTER_THREAD</tt>. Everything else,
+ * such as finalizers or JVM service threads, is ignored.</p>
+ *
+ * <p>Shards are stamped with the trial that last wrote them, and a shard from an older trial is cleared by its own
+ * thread the next time that thread records a branch. That way a thread pool that outlives a trial counts towards the
+ * trial it is working for, without the fuzzing thread ever having to touch another thread's shard.</p>
+ *
+ * <p>Shards start small and grow to fit the keys their thread hits. Once a thread dies, its counter is cleared and
+ * handed to the next attributed thread, so that targets that start short-lived workers in every trial do not
+ * allocate a counter per worker.</p>
+ *
+ * <p>Classes instrumented with <tt>janala.inlineCounters</tt> count branches in their own arrays instead (see
+ * {@link CounterArrays}); those are cleared when a trial starts and harvested along with the shards.</p>
+ */
+public class CoverageShards implements CoverageListener {
+
+    private static class Shard {
+        final WeakReference<Thread> thread;
+        /** Only allocated once the thread is attributed */
+        DenseCounter counts;
+        /** The trial these counts belong to */
+        int trial = -1;
+        boolean attributed;
+        /** The value of {@link #registrations} when this (unattributed) shard last checked whether it was registered */
+        int seenRegistrations = -1;
+
+        Shard(Thread thread) {
+            this.thread = new WeakReference<>(thread);
+        }
+    }
+
+    /** Set on the fuzzing thread; threads created from an attributed thread inherit it */
+    private final InheritableThreadLocal<Boolean> inTrial = new InheritableThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+
+    private final ThreadLocal<Shard> shard = new ThreadLocal<Shard>() {
+        @Override
+        protected Shard initialValue() {
+            Shard s = new Shard(Thread.currentThread());
+            if (inTrial.get()) {
+                attribute(s);
+            }
+            return s;
+        }
+    };
+
+    /** Shards of attributed threads, for merging */
+    private final ConcurrentLinkedQueue<Shard> shards = new ConcurrentLinkedQueue<>();
+
+    /** The most counters of dead threads kept for reuse */
+    private static final int MAX_SPARE_COUNTERS = 64;
+
+    /** Cleared counters of dead threads, for new threads to take over */
+    private final ConcurrentLinkedQueue<DenseCounter> spareCounters = new ConcurrentLinkedQueue<>();
+
+    /** Threads registered through REGISTER_THREAD */
+    private final Set<Thread> registered = Collections.newSetFromMap(Collections.synchronizedMap(new WeakHashMap<Thread, Boolean>()));
+    private volatile int registrations;
+
+    private volatile int trial;
+
+    private void attribute(Shard s) {
+        DenseCounter spare = spareCounters.poll();
+        s.counts = spare != null ? spare : new DenseCounter(DenseCounter.MIN_SIZE);
+        s.attributed = true;
+        shards.add(s);
+    }
+
+    /**
+     * Starts a new trial on the calling thread, which becomes its fuzzing thread.
+     */
+    public void startTrial() {
+        CounterArrays.harvest(null);
+        trial++;
+        if (!inTrial.get()) {
+            inTrial.set(true);
+        }
+        Shard s = shard.get();
+        if (!s.attributed) {
+            attribute(s);
+        }
+    }
+
+    /**
+     * Adds everything recorded for the current trial to a coverage map.
+     *
+     * @param runCoverage the coverage map for the trial
+     */
+    public void mergeInto(Coverage runCoverage) {
+        CounterArrays.harvest(runCoverage::addCount);
+        int current = trial;
+        Iterator<Shard> iter = shards.iterator();
+        while (iter.hasNext()) {
+            Shard s = iter.next();
+            if (s.trial == current) {
+                runCoverage.add(s.counts);
+            }
+            Thread t = s.thread.get();
+            if (t == null || !t.isAlive()) {
+                iter.remove();
+                // The thread is gone, so nothing writes to its counter any more
+                if (spareCounters.size() < MAX_SPARE_COUNTERS) {
+                    s.counts.clear();
+                    spareCounters.add(s.counts);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void registerThread(Thread thread) {
+        registered.add(thread);
+        registrations++;
+    }
+
+    @Override
+    public void logCoverage(int iid, int arm) {
+        Shard s = shard.get();
+        if (!s.attributed) {
+            int r = registrations;
+            if (s.seenRegistrations == r) {
+                return;
+            }
+            s.seenRegistrations = r;
+            if (!registered.remove(Thread.currentThread())) {
+                return;
+            }
+            attribute(s);
+        }
+        int current = trial;
+        if (s.trial != current) {
+            s.counts.clear();
+            s.trial = current;
+        }
+        s.counts.increment(iid + arm);
+    }
+}
@@ -0,0 +1,238 @@
+package edu.berkeley.cs.jqf.fuzz.util;
+
+import janala.instrument.GlobalStateForInstrumentation;
+import org.eclipse.collections.api.block.procedure.primitive.IntIntProcedure;
+import org.eclipse.collections.api.list.primitive.IntList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * A {@link CoverageCounter} backed by a plain array indexed by coverage key.
+ *
+ * <p>Coverage keys are instrumentation ids (plus an arm), which are handed out densely from zero, so the array is
+ * sized from the ids allocated so far and grows if a class instrumented later produces a bigger key. Stable ids are
+ * spread over their whole space instead, so then the array starts small and only grows to the biggest key hit; and
+ * copies are only as big as the biggest key they hold. Alongside the
+ * counts, the counter keeps the list of keys that have become non-zero, so that {@link #clear()} only touches those,
+ * and a bitmap of the non-zero keys, so that two counters can be compared 64 keys at a time.</p>
+ *
+ * <p>Nothing here is synchronized, and once the arrays have grown to fit, incrementing and clearing do not allocate.
+ * Keys must be non-negative.</p>
+ */
+public class DenseCounter implements CoverageCounter {
+
+    static final int MIN_SIZE = 1 << 16;
+
+    /** The count for each key */
+    int[] counts;
+
+    /** Bit (key % 64) of word (key / 64) is set iff counts[key] != 0 */
+    long[] nonZero;
+
+    /** Keys that have become non-zero since the last clear, in the order that they did so */
+    int[] touched;
+    int numTouched;
+
+    public DenseCounter() {
+        this(initialSize(GlobalStateForInstrumentation.instance));
+    }
+
+    /** Returns the size to start a counter at, which leaves room for the ids not handed out yet. */
+    static int initialSize(GlobalStateForInstrumentation state) {
+        // With stable ids, getId() is the size of the whole id space, not the biggest id in use
+        return state.isStable() ? MIN_SIZE : Math.max(MIN_SIZE, 2 * state.getId());
+    }
+
+    public DenseCounter(int size) {
+        this.counts = new int[size];
+        this.nonZero = new long[(size + 63) >>> 6];
+        this.touched = new int[1024];
+    }
+
+    public int size() {
+        return counts.length;
+    }
+
+    private void grow(int key) {
+        int newSize = Math.max(counts.length * 2, key + 1);
+        counts = Arrays.copyOf(counts, newSize);
+        nonZero = Arrays.copyOf(nonZero, (newSize + 63) >>> 6);
+    }
+
+    private void markNonZero(int key) {
+        if (numTouched == touched.length)
+            touched = Arrays.copyOf(touched, touched.length * 2);
+        touched[numTouched++] = key;
+        nonZero[key >>> 6] |= 1L << key;
+    }
+
+    @Override
+    public int increment(int key) {
+        if (key >= counts.length)
+            grow(key);
+        int newVal = ++counts[key];
+        if (newVal == 1)
+            markNonZero(key);
+        return newVal;
+    }
+
+    @Override
+    public int increment(int key, int delta) {
+        if (key >= counts.length)
+            grow(key);
+        int before = counts[key];
+        int newVal = before + delta;
+        counts[key] = newVal;
+        if (before == 0 && newVal != 0)
+            markNonZero(key);
+        return newVal;
+    }
+
+    @Override
+    public int get(int key) {
+        return key < counts.length ? counts[key] : 0;
+    }
+
+    @Override
+    public int or(int key, int bits) {
+        if (key >= counts.length)
+            grow(key);
+        int before = counts[key];
+        int after = before | bits;
+        if (after != before) {
+            counts[key] = after;
+            if (before == 0)
+                markNonZero(key);
+        }
+        return before;
+    }
+
+    @Override
+    public int getNonZeroSize() {
+        return numTouched;
+    }
+
+    @Override
+    public IntList getNonZeroKeys() {
+        return IntArrayList.newListWith(Arrays.copyOf(touched, numTouched));
+    }
+
+    @Override
+    public void forEachNonZero(IntIntProcedure procedure) {
+        for (int i = 0; i < numTouched; i++) {
+            int key = touched[i];
+            procedure.value(key, counts[key]);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < numTouched; i++) {
+            int key = touched[i];
+            counts[key] = 0;
+            nonZero[key >>> 6] = 0;
+        }
+        numTouched = 0;
+    }
+
+    @Override
+    public DenseCounter copy() {
+        // Nothing past the biggest non-zero key needs copying; the copy grows again if it needs to
+        int highest = -1;
+        for (int i = 0; i < numTouched; i++) {
+            highest = Math.max(highest, touched[i]);
+        }
+        int size = Math.min(counts.length, (highest + 64) & ~63);
+        DenseCounter ret = new DenseCounter(0);
+        ret.counts = Arrays.copyOf(counts, size);
+        ret.nonZero = Arrays.copyOf(nonZero, (size + 63) >>> 6);
+        ret.touched = Arrays.copyOf(touched, Math.max(numTouched, 1024));
+        ret.numTouched = numTouched;
+        return ret;
+    }
+
+    /**
+     * Adds each of this counter's counts to another counter.
+     *
+     * <p>This may be called from a thread other than the one updating this counter: it only reads, and it tolerates
+     * missing increments that are still in flight, but it never reads past the arrays it sees.</p>
+     *
+     * @param target the counter to add to
+     */
+    void addTo(CoverageCounter target) {
+        int n = numTouched;
+        int[] keys = touched;
+        int[] values = counts;
+        n = Math.min(n, keys.length);
+        for (int i = 0; i < n; i++) {
+            int key = keys[i];
+            int count = key < values.length ? values[key] : 0;
+            if (count != 0)
+                target.increment(key, count);
+        }
+    }
+
+    /**
+     * ORs the highest order bit of each of that's counts into this counter.
+     *
+     * @return true iff this counter changed
+     */
+    boolean updateBits(DenseCounter that) {
+        if (that.counts.length > this.counts.length)
+            grow(that.counts.length - 1);
+        boolean changed = false;
+        int[] thatCounts = that.counts;
+        for (int i = 0; i < that.numTouched; i++) {
+            int key = that.touched[i];
+            int before = this.counts[key];
+            int after = before | Coverage.hob(thatCounts[key]);
+            if (after != before) {
+                this.counts[key] = after;
+                if (before == 0)
+                    markNonZero(key);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the keys that are non-zero in this counter but zero in the baseline
+     */
+    IntArrayList computeNewCoverage(DenseCounter baseline) {
+        IntArrayList ret = new IntArrayList();
+        long[] mine = this.nonZero;
+        long[] theirs = baseline.nonZero;
+        // If only a few keys were hit, it is cheaper to look them up than to scan the whole bitmap
+        if (numTouched < (mine.length >>> 2)) {
+            for (int i = 0; i < numTouched; i++) {
+                int key = touched[i];
+                if (baseline.get(key) == 0)
+                    ret.add(key);
+            }
+            return ret;
+        }
+        for (int w = 0; w < mine.length; w++) {
+            long fresh = mine[w] & ~(w < theirs.length ? theirs[w] : 0);
+            while (fresh != 0) {
+                ret.add((w << 6) + Long.numberOfTrailingZeros(fresh));
+                fresh &= fresh - 1;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return true iff every key that is non-zero in this counter is also non-zero in that one
+     */
+    boolean isCoveredBy(DenseCounter that) {
+        long[] mine = this.nonZero;
+        long[] theirs = that.nonZero;
+        for (int w = 0; w < mine.length; w++) {
+            if ((mine[w] & ~(w < theirs.length ? theirs[w] : 0)) != 0)
+                return false;
+        }
+        return true;
+    }
+}
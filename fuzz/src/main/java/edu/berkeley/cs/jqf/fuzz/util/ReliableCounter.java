@@ -2,6 +2,7 @@ package edu.berkeley.cs.jqf.fuzz.util;
 
 
 import edu.columbia.cs.psl.phosphor.struct.IntSinglyLinkedList;
+import org.eclipse.collections.api.block.procedure.primitive.IntIntProcedure;
 import org.eclipse.collections.api.iterator.IntIterator;
 import org.eclipse.collections.api.list.primitive.IntList;
 import org.eclipse.collections.api.map.primitive.MutableIntIntMap;
@@ -11,7 +12,7 @@ import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
 
 import java.util.Iterator;
 
-public class ReliableCounter {
+public class ReliableCounter implements CoverageCounter {
 
     public IntSinglyLinkedList nonZeroKeys = new IntSinglyLinkedList();
     public MutableIntIntMap map = new IntIntHashMap(1 << 8);
@@ -44,8 +45,29 @@ public class ReliableCounter {
         return nonZeroKeys.size();
     }
 
-    public synchronized IntSinglyLinkedList getNonZeroKeys() {
-        return nonZeroKeys;
+    public synchronized IntList getNonZeroKeys() {
+        IntArrayList keys = new IntArrayList(nonZeroKeys.size());
+        IntSinglyLinkedList.IntListIterator iter = nonZeroKeys.iterator();
+        while (iter.hasNext()) {
+            keys.add(iter.nextInt());
+        }
+        return keys;
+    }
+
+    public synchronized void forEachNonZero(IntIntProcedure procedure) {
+        map.forEachKeyValue(procedure);
+    }
+
+    public synchronized int or(int key, int bits) {
+        int before = map.get(key);
+        int after = before | bits;
+        if (after != before) {
+            map.put(key, after);
+            if (before == 0) {
+                nonZeroKeys.addFirst(key);
+            }
+        }
+        return before;
     }
 
     public synchronized IntList getNonZeroValues() {
@@ -65,6 +87,12 @@ public class ReliableCounter {
         return map.get(key);
     }
 
+    public synchronized ReliableCounter copy() {
+        ReliableCounter ret = new ReliableCounter();
+        ret.copyFrom(this);
+        return ret;
+    }
+
     public void copyFrom(ReliableCounter counter) {
         this.map = new IntIntHashMap(counter.map);
         this.nonZeroKeys = new IntSinglyLinkedList();
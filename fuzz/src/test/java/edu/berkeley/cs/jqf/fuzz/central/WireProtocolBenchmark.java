@@ -0,0 +1,96 @@
+package edu.berkeley.cs.jqf.fuzz.central;
+
+import java.io.*;
+import java.util.HashSet;
+
+/**
+ * Compares the old ObjectOutputStream encoding of a SENDINPUT-sized message against WireProtocol.
+ *
+ * Not a unit test; run it directly with the test classpath:
+ * java -cp ... edu.berkeley.cs.jqf.fuzz.central.WireProtocolBenchmark [iterations]
+ */
+public class WireProtocolBenchmark {
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Coordinator.Input input = WireProtocolTest.input();
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("Round " + round);
+            serialization(input, iterations);
+            wireProtocol(input, iterations);
+        }
+    }
+
+    private static void report(String name, int iterations, long bytes, long nanos) {
+        System.out.println(String.format("\t%-16s %8.0f msgs/sec, %6d bytes/msg", name,
+                iterations / (nanos / 1e9), bytes / iterations));
+    }
+
+    /* Messages are encoded in batches and then decoded from the same buffer, as they would be read off the socket */
+    private static final int BATCH = 1000;
+
+    private static void serialization(Coordinator.Input input, int iterations) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i += BATCH) {
+            wire.reset();
+            ObjectOutputStream oos = new ObjectOutputStream(wire);
+            for (int j = 0; j < BATCH; j++) {
+                oos.writeObject(input.bytes);
+                oos.writeObject(input.hints);
+                oos.writeObject(input.instructions);
+                oos.writeObject(input.targetedHints);
+                oos.writeInt(input.id);
+                oos.writeBoolean(input.isValid);
+                oos.reset();
+                oos.flush();
+            }
+            bytes += wire.size();
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(wire.toByteArray()));
+            for (int j = 0; j < BATCH; j++) {
+                ois.readObject();
+                ois.readObject();
+                ois.readObject();
+                ois.readObject();
+                ois.readInt();
+                ois.readBoolean();
+            }
+        }
+        report("ObjectStream", iterations, bytes, System.nanoTime() - start);
+    }
+
+    private static void wireProtocol(Coordinator.Input input, int iterations) throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(wire);
+        WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+        WireProtocol.Decoder decoder = new WireProtocol.Decoder();
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i += BATCH) {
+            wire.reset();
+            for (int j = 0; j < BATCH; j++) {
+                encoder.writeByteArray(input.bytes);
+                encoder.writeHints(input.hints);
+                encoder.writeInstructions(input.instructions);
+                encoder.writeTargetedHints(input.targetedHints);
+                encoder.writeInt(input.id);
+                encoder.writeBoolean(input.isValid);
+                encoder.sendTo(out);
+            }
+            bytes += wire.size();
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(wire.toByteArray()));
+            for (int j = 0; j < BATCH; j++) {
+                decoder.readFrom(in);
+                decoder.readByteArray();
+                decoder.readHints();
+                decoder.readInstructions();
+                decoder.readTargetedHints(new HashSet<>());
+                decoder.readInt();
+                decoder.readBoolean();
+            }
+        }
+        report("WireProtocol", iterations, bytes, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,219 @@
+package edu.berkeley.cs.jqf.fuzz.central;
+
+import edu.berkeley.cs.jqf.fuzz.guidance.RecordingInputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class WireProtocolTest {
+
+    static Coordinator.Branch branch(int taken, int notTaken, String source) {
+        Coordinator.Branch b = new Coordinator.Branch();
+        b.takenID = taken;
+        b.notTakenID = notTaken;
+        b.result = true;
+        b.source = source;
+        b.controllingBytes = new HashSet<>(Arrays.asList(3, 4, 5));
+        return b;
+    }
+
+    static Coordinator.StringHint stringHint(String s, Coordinator.Branch b) {
+        Coordinator.StringHint h = new Coordinator.StringHint(s, Coordinator.HintType.EQUALS, b);
+        h.priority = 7;
+        return h;
+    }
+
+    static Coordinator.Input input() {
+        Coordinator.Branch b = branch(10, 11, "Foo.java:12");
+        Coordinator.Input in = new Coordinator.Input();
+        in.id = 42;
+        in.bytes = new byte[]{1, 2, 3, (byte) 0xff};
+        in.instructions = new LinkedList<>(Arrays.asList(new int[]{0, 4}, new int[]{4, 2}));
+        in.hints = new LinkedList<>();
+        in.hints.add(new Coordinator.StringHint[]{stringHint("hello", b), stringHint("wörld", b)});
+        in.hints.add(new Coordinator.StringHint[]{stringHint("", null)});
+        in.requestsForRandom = new int[]{0, 4, 4, 2};
+        in.isNew = true;
+        in.coveragePercentage = 12.5;
+        in.numExecutions = 1L << 40;
+        in.score = 3;
+        in.isValid = true;
+        in.hintGroups = new LinkedList<>();
+        Coordinator.StringHintGroup g = new Coordinator.StringHintGroup();
+        g.instructions.add(new int[]{0, 4});
+        g.hints.add(stringHint("grouped", b));
+        in.hintGroups.add(g);
+        in.targetedHints = new HashSet<>();
+        in.targetedHints.add(new Coordinator.CharHint('x', "abc", Coordinator.HintType.CHAR, 1, 3, 2, b));
+        return in;
+    }
+
+    static WireProtocol.Decoder roundTrip(WireProtocol.Encoder encoder) throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        encoder.sendTo(new DataOutputStream(wire));
+        return new WireProtocol.Decoder().readFrom(new DataInputStream(new ByteArrayInputStream(wire.toByteArray())));
+    }
+
+    static void assertHintsEqual(LinkedList<Coordinator.StringHint[]> expected, LinkedList<Coordinator.StringHint[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Coordinator.StringHint[] e = expected.get(i);
+            Coordinator.StringHint[] a = actual.get(i);
+            assertArrayEquals(e, a);
+            for (int j = 0; j < e.length; j++) {
+                assertEquals(e[j].priority, a[j].priority);
+                assertEquals(e[j].targetBranch, a[j].targetBranch);
+            }
+        }
+    }
+
+    @Test
+    public void inputRoundTrips() throws IOException {
+        Coordinator.Input expected = input();
+        WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+        encoder.writeInput(expected);
+        Coordinator.Input actual = roundTrip(encoder).readInput();
+
+        assertEquals(expected.id, actual.id);
+        assertArrayEquals(expected.bytes, actual.bytes);
+        assertEquals(expected.instructions.size(), actual.instructions.size());
+        for (int i = 0; i < expected.instructions.size(); i++)
+            assertArrayEquals(expected.instructions.get(i), actual.instructions.get(i));
+        assertHintsEqual(expected.hints, actual.hints);
+        assertArrayEquals(expected.requestsForRandom, actual.requestsForRandom);
+        assertEquals(expected.isNew, actual.isNew);
+        assertEquals(expected.coveragePercentage, actual.coveragePercentage, 0);
+        assertEquals(expected.numExecutions, actual.numExecutions);
+        assertEquals(expected.score, actual.score);
+        assertEquals(expected.isValid, actual.isValid);
+        assertEquals(1, actual.hintGroups.size());
+        assertEquals(expected.hintGroups.getFirst().hints, actual.hintGroups.getFirst().hints);
+        assertEquals(expected.targetedHints, actual.targetedHints);
+    }
+
+    @Test
+    public void missingFieldsDecodeLikeReadExternal() throws IOException {
+        Coordinator.Input expected = new Coordinator.Input();
+        expected.bytes = new byte[0];
+        WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+        encoder.writeInput(expected);
+        encoder.writeInput(null);
+        WireProtocol.Decoder decoder = roundTrip(encoder);
+        Coordinator.Input actual = decoder.readInput();
+
+        assertTrue(actual.instructions.isEmpty());
+        assertTrue(actual.hints.isEmpty());
+        assertTrue(actual.hintGroups.isEmpty());
+        assertNull(actual.requestsForRandom);
+        assertNull(actual.targetedHints);
+        assertNull(decoder.readInput());
+    }
+
+    @Test
+    public void sharedBranchIsDecodedOnce() throws IOException {
+        Coordinator.Branch b = branch(1, 2, "Bar.java:3");
+        WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+        encoder.writeStringHint(stringHint("a", b));
+        encoder.writeStringHint(stringHint("b", b));
+        WireProtocol.Decoder decoder = roundTrip(encoder);
+        Coordinator.StringHint first = decoder.readStringHint();
+        Coordinator.StringHint second = decoder.readStringHint();
+
+        assertEquals(b, first.targetBranch);
+        assertSame(first.targetBranch, second.targetBranch);
+        assertEquals(b.controllingBytes, first.targetBranch.controllingBytes);
+        assertEquals(b.source, first.targetBranch.source);
+        assertTrue(first.targetBranch.result);
+    }
+
+    @Test
+    public void charHintRoundTrips() throws IOException {
+        Coordinator.CharHint expected = new Coordinator.CharHint('q', null, Coordinator.HintType.CHAR, 5, 6, 7, null);
+        WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+        encoder.writeTargetedHint(expected);
+        encoder.writeTargetedHint(null);
+        WireProtocol.Decoder decoder = roundTrip(encoder);
+        Coordinator.CharHint actual = (Coordinator.CharHint) decoder.readTargetedHint();
+
+        assertEquals(expected, actual);
+        assertNull(actual.originalString);
+        assertNull(decoder.readTargetedHint());
+    }
+
+    @Test
+    public void markedInputRoundTrips() throws IOException {
+        RecordingInputStream.MarkedInput expected = new RecordingInputStream.MarkedInput(new byte[]{9, 8, 7, 6, 5}, new int[]{0, 1, 3});
+        WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+        encoder.writeMarkedInput(expected);
+        RecordingInputStream.MarkedInput actual = roundTrip(encoder).readMarkedInput();
+
+        assertArrayEquals(expected.getBytesRead(), actual.getBytesRead());
+        assertArrayEquals(expected.getMarks(), actual.getMarks());
+        assertEquals(2, actual.getMarkLength(2));
+    }
+
+    @Test
+    public void recordedInputRoundTrips() throws IOException {
+        RecordingInputStream.MarkedInput buffer = new RecordingInputStream.MarkedInput(new byte[64], 0, new int[64], 0);
+        RecordingInputStream ris = new RecordingInputStream(new ByteArrayInputStream(new byte[]{9, 8, 7, 6, 5, 4}), buffer);
+        ris.read();
+        ris.read(new byte[8], 2, 4);
+        assertEquals(1, RecordingInputStream.unsafeGetLastMark());
+        RecordingInputStream.unsafePatchLastReadIntTo(0x01020304);
+
+        WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+        encoder.writeMarkedInput(ris.getRecordedInput());
+        RecordingInputStream.MarkedInput actual = roundTrip(encoder).readMarkedInput();
+
+        assertArrayEquals(new byte[]{9, 1, 2, 3, 4}, actual.getBytesRead());
+        assertArrayEquals(new int[]{0, 1, 1, 4}, actual.getRuns());
+        assertSame(actual.getRunBuffer(), actual.getRuns());
+    }
+
+    @Test
+    public void framesAreIndependent() throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(wire);
+        WireProtocol.Encoder encoder = new WireProtocol.Encoder();
+        Coordinator.Branch b = branch(1, 2, "Baz.java:1");
+        for (int i = 0; i < 3; i++) {
+            encoder.writeInt(i);
+            encoder.writeBranch(b);
+            encoder.sendTo(out);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(wire.toByteArray()));
+        WireProtocol.Decoder decoder = new WireProtocol.Decoder();
+        for (int i = 0; i < 3; i++) {
+            decoder.readFrom(in);
+            assertEquals(i, decoder.readInt());
+            assertEquals(b, decoder.readBranch());
+        }
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void handshakeRejectsOtherVersions() throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        WireProtocol.writeHandshake(new DataOutputStream(wire));
+        WireProtocol.readHandshake(new DataInputStream(new ByteArrayInputStream(wire.toByteArray())));
+
+        ByteArrayOutputStream other = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(other);
+        out.writeInt(WireProtocol.MAGIC);
+        out.writeInt(WireProtocol.VERSION + 1);
+        try {
+            WireProtocol.readHandshake(new DataInputStream(new ByteArrayInputStream(other.toByteArray())));
+            fail("Expected a version mismatch");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("version"));
+        }
+    }
+}
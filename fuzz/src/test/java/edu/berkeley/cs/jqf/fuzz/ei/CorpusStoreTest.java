@@ -0,0 +1,125 @@
+package edu.berkeley.cs.jqf.fuzz.ei;
+
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.LinearInput;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class CorpusStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static LinearInput input(int... bytes) {
+        byte[] values = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            values[i] = (byte) bytes[i];
+        }
+        LinearInput input = new LinearInput(values);
+        input.instructions.add(new int[]{0, 2});
+        input.seedSource = ZestGuidance.SeedSource.HINTS;
+        return input;
+    }
+
+    @Test
+    public void latestVersionOfEachInputWins() throws IOException {
+        File dir = folder.newFolder("corpus");
+        try (CorpusStore.Writer writer = new CorpusStore.Writer(dir)) {
+            writer.append(input(1, 2, 255), 0, 10, 100, 0);
+            writer.append(input(3), 1, 20, 200, 0);
+            LinearInput again = input(1, 2, 255);
+            again.numMutations = 7;
+            writer.append(again, 0, 30, 300, 0);
+        }
+        assertTrue(CorpusStore.isStore(dir));
+        try (CorpusStore.Reader reader = new CorpusStore.Reader(dir)) {
+            assertEquals(2, reader.size());
+            assertEquals(0, reader.idAt(0));
+            LinearInput first = reader.get(0);
+            assertEquals(7, first.numMutations);
+            assertEquals(3, first.size());
+            assertEquals(255, first.get(2));
+            assertArrayEquals(new int[]{0, 2}, first.instructions.getFirst());
+            assertEquals(ZestGuidance.SeedSource.HINTS, first.seedSource);
+            assertNull(first.mutationType);
+            assertEquals(1, reader.get(1).id);
+        }
+    }
+
+    @Test
+    public void mappedInputsAreSavedAsTheirBytes() throws IOException {
+        ZestGuidance zest = new ZestGuidance("test", null, 1000, folder.newFolder("fuzz-out"));
+        ZestGuidance.MappedInput mapped = zest.new MappedInput();
+        Random random = new Random(42);
+        int[] values = new int[3];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = mapped.getOrGenerateFresh(new ExecutionIndex(new int[]{1, i + 1}), random);
+        }
+        File dir = folder.newFolder("corpus");
+        try (CorpusStore.Writer writer = new CorpusStore.Writer(dir)) {
+            writer.append(mapped, 0, 0, 0, 0);
+        }
+        try (CorpusStore.Reader reader = new CorpusStore.Reader(dir)) {
+            LinearInput saved = reader.get(0);
+            assertEquals(values.length, saved.size());
+            for (int i = 0; i < values.length; i++) {
+                assertEquals(values[i], saved.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void droppedIdsAreForgottenAndCanBeSavedAgain() throws IOException {
+        File dir = folder.newFolder("corpus");
+        try (CorpusStore.Writer writer = new CorpusStore.Writer(dir)) {
+            writer.append(input(1), 0, 0, 0, 0);
+            writer.append(input(2), 1, 0, 0, 0);
+            writer.append(input(3), 2, 0, 0, 0);
+            writer.append(input(4), 0, 0, 0, 0);
+            writer.dropIdsFrom(1);
+            writer.append(input(5), 1, 0, 0, 0);
+        }
+        try (CorpusStore.Reader reader = new CorpusStore.Reader(dir)) {
+            assertEquals(2, reader.size());
+            assertEquals(4, reader.get(0).get(0));
+            assertEquals(1, reader.idAt(1));
+            assertEquals(5, reader.get(1).get(0));
+            assertEquals(-1, reader.indexOf(2));
+        }
+    }
+
+    @Test
+    public void reopeningDropsATornTail() throws IOException {
+        File dir = folder.newFolder("corpus");
+        try (CorpusStore.Writer writer = new CorpusStore.Writer(dir)) {
+            writer.append(input(1), 0, 0, 0, 0);
+            writer.append(input(2), 1, 0, 0, 0);
+        }
+        // Tear the last index entry, as a crash mid-write would
+        File index = new File(dir, CorpusStore.INDEX_FILE);
+        try (RandomAccessFile raf = new RandomAccessFile(index, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+        try (CorpusStore.Reader reader = new CorpusStore.Reader(dir)) {
+            assertEquals(1, reader.size());
+        }
+        try (CorpusStore.Writer writer = new CorpusStore.Writer(dir)) {
+            writer.append(input(3), 2, 0, 0, 0);
+        }
+        try (CorpusStore.Reader reader = new CorpusStore.Reader(dir)) {
+            assertEquals(2, reader.size());
+            assertEquals(2, reader.idAt(1));
+            assertEquals(3, reader.get(1).get(0));
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package edu.berkeley.cs.jqf.fuzz.ei;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.MappedInput;
+import edu.berkeley.cs.jqf.instrument.tracing.CallStack;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+
+/**
+ * Measures reads of a mapped input in execution-indexing mode, replaying the call/return/read patterns of
+ * {@link ExecutionIndexingTest} (the fixed depth 0-2 scenarios, and a deep random one shaped like its
+ * validExecutionIndex property) as trials that each run a child of the same executed parent, so that most
+ * reads find their execution index already mapped. Compares the MappedInput read path that looks the current
+ * execution index up by hash, one that copies the call stack into a new ExecutionIndex for every read, and the
+ * LinkedHashMap keyed by array-hashed execution indexes that MappedInput used before.
+ *
+ * Not a unit test; run it directly with the test classpath:
+ * java -cp ... edu.berkeley.cs.jqf.fuzz.ei.ExecutionIndexingBenchmark [trials]
+ */
+public class ExecutionIndexingBenchmark {
+
+    private static final int READ = 0;
+    private static final int RETURN = -1;
+
+    public static void main(String[] args) throws IOException {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        ZestGuidance guidance = new ZestGuidance("bench", null, trials,
+                Files.createTempDirectory("fuzz-out").toFile());
+
+        int[][] scenarios = {
+                {READ},                                                          // testDepth0
+                {4, READ, RETURN},                                               // testDepth1
+                {4, READ, READ, READ, READ, RETURN},                             // testDepth1withRepeat
+                {4, RETURN, 4, 5, READ, RETURN, RETURN, 3, 5, RETURN, 5, RETURN, // testDepth2withRepeat
+                        5, RETURN, 5, RETURN, RETURN, 4, 5, RETURN, 5, READ, READ, READ, RETURN, RETURN},
+                deepScenario(new Random(42), 48, 4000),                          // validExecutionIndex, repeated
+        };
+        int[] script = concat(scenarios, 2);
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("Round " + round);
+            mapped("by hash", guidance, script, trials, true);
+            mapped("copying", guidance, script, trials, false);
+            linkedHashMap(script, trials);
+        }
+    }
+
+    /* Nested calls of iids 1-32 up to the given depth, with reads scattered among them */
+    private static int[] deepScenario(Random r, int maxDepth, int ops) {
+        IntArrayList script = new IntArrayList();
+        int depth = 0;
+        for (int i = 0; i < ops; i++) {
+            int op = r.nextInt(3);
+            if (op == 0 && depth < maxDepth) {
+                script.add(1 + r.nextInt(32));
+                depth++;
+            } else if (op == 1 && depth > 0) {
+                script.add(RETURN);
+                depth--;
+            } else {
+                script.add(READ);
+            }
+        }
+        for (; depth > 0; depth--) {
+            script.add(RETURN);
+        }
+        return script.toArray();
+    }
+
+    private static int[] concat(int[][] scenarios, int times) {
+        IntArrayList script = new IntArrayList();
+        for (int t = 0; t < times; t++) {
+            for (int[] scenario : scenarios) {
+                script.addAll(scenario);
+            }
+        }
+        return script.toArray();
+    }
+
+    private static void report(String name, int trials, long reads, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.println(String.format("\t%-14s %8.0f trials/sec %8.2f M reads/sec",
+                name, trials / seconds, reads / seconds / 1e6));
+    }
+
+    private static void mapped(String name, ZestGuidance guidance, int[] script, int trials, boolean byHash) {
+        Random random = new Random(0);
+        MappedInput parent = guidance.new MappedInput();
+        run(parent, script, random, byHash);
+        long reads = 0;
+        long start = System.nanoTime();
+        for (int t = 0; t < trials; t++) {
+            MappedInput child = guidance.new MappedInput(parent);
+            reads += run(child, script, random, byHash);
+        }
+        report(name, trials, reads, System.nanoTime() - start);
+    }
+
+    private static int run(MappedInput input, int[] script, Random random, boolean byHash) {
+        ExecutionIndexingState eiState = ExecutionIndexingState.forCurrentThread();
+        CallStack stack = CallStack.current();
+        int reads = 0;
+        for (int op : script) {
+            if (op == READ) {
+                ExecutionIndex ei = byHash ? input.getExecutionIndex(eiState) : eiState.getExecutionIndex();
+                input.getOrGenerateFresh(ei, random);
+                reads++;
+            } else if (op == RETURN) {
+                stack.pop();
+            } else {
+                stack.call(op);
+            }
+        }
+        input.gc();
+        return reads;
+    }
+
+    /* The LinkedHashMap representation with boxed values that MappedInput used before, and its hashing */
+    private static void linkedHashMap(int[] script, int trials) {
+        Random random = new Random(0);
+        LinkedHashMap<ArrayKey, Integer> parent = new LinkedHashMap<>();
+        runLinkedHashMap(parent, script, random);
+        long reads = 0;
+        long start = System.nanoTime();
+        for (int t = 0; t < trials; t++) {
+            reads += runLinkedHashMap(new LinkedHashMap<>(parent), script, random);
+        }
+        report("LinkedHashMap", trials, reads, System.nanoTime() - start);
+    }
+
+    private static int runLinkedHashMap(LinkedHashMap<ArrayKey, Integer> map, int[] script, Random random) {
+        CallStack stack = CallStack.current();
+        stack.reset();
+        ArrayList<ArrayKey> orderedKeys = new ArrayList<>();
+        for (int op : script) {
+            if (op == READ) {
+                ArrayKey key = new ArrayKey(stack.executionIndex(0));
+                Integer val = map.get(key);
+                if (val == null) {
+                    val = random.nextInt(256);
+                    map.put(key, val);
+                }
+                orderedKeys.add(key);
+            } else if (op == RETURN) {
+                stack.pop();
+            } else {
+                stack.call(op);
+            }
+        }
+        LinkedHashMap<ArrayKey, Integer> trimmed = new LinkedHashMap<>();
+        for (ArrayKey key : orderedKeys) {
+            trimmed.put(key, map.get(key));
+        }
+        return orderedKeys.size();
+    }
+
+    private static final class ArrayKey {
+        private final int[] ei;
+
+        ArrayKey(int[] ei) {
+            this.ei = ei;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(ei);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ArrayKey && Arrays.equals(ei, ((ArrayKey) other).ei);
+        }
+    }
+}
@@ -34,6 +34,7 @@ import com.pholser.junit.quickcheck.Property;
 import com.pholser.junit.quickcheck.generator.InRange;
 import com.pholser.junit.quickcheck.generator.Size;
 import com.pholser.junit.quickcheck.runner.JUnitQuickcheck;
+import edu.berkeley.cs.jqf.instrument.tracing.CallStack;
 import edu.berkeley.cs.jqf.instrument.tracing.events.CallEvent;
 import edu.berkeley.cs.jqf.instrument.tracing.events.ReadEvent;
 import edu.berkeley.cs.jqf.instrument.tracing.events.ReturnEvent;
@@ -82,6 +83,26 @@ public class ExecutionIndexingTest {
         assertArrayEquals(expected, ei);
     }
 
+    @Test
+    public void saturatesAtMaxDepth() {
+        ExecutionIndexingState e = new ExecutionIndexingState();
+        int max = CallStack.MAX_SUPPORTED_DEPTH;
+        for (int i = 0; i < max + 10; i++) {
+            e.pushCall(callEvent(4));
+        }
+        int[] deep = e.getExecutionIndex(readEvent(42)).ei;
+        assertEquals(2*max, deep.length);
+        for (int i = 0; i < 10; i++) {
+            e.popReturn(returnEvent(-1));
+        }
+        // The deepest pushed frame is still on the stack
+        assertEquals(2*max, e.getExecutionIndex(readEvent(42)).ei.length);
+        for (int i = 0; i < max; i++) {
+            e.popReturn(returnEvent(-1));
+        }
+        assertArrayEquals(new int[]{42, 1}, e.getExecutionIndex(readEvent(42)).ei);
+    }
+
 
     @Test
     public void testDepth1withRepeat() {
@@ -0,0 +1,47 @@
+package edu.berkeley.cs.jqf.fuzz.ei;
+
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.LinearInput;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class LinearInputTest {
+
+    @Test
+    public void childWritesDoNotReachParent() {
+        LinearInput parent = new LinearInput(new byte[]{1, 2, 3, 4});
+        LinearInput child = new LinearInput(parent);
+        child.set(1, 200);
+        child.set(3, 9);
+        child.set(1, 7);
+        parent.set(0, 5);
+
+        assertArrayEquals(new byte[]{5, 2, 3, 4}, parent.toByteArray());
+        assertArrayEquals(new byte[]{1, 7, 3, 9}, child.toByteArray());
+
+        byte[] b = new byte[3];
+        assertEquals(1, child.getOrGenerateFresh(0, new Random()));
+        assertEquals(3, child.getOrGenerateFresh(1, b, 0, 3, new Random()));
+        assertArrayEquals(new byte[]{7, 3, 9}, b);
+    }
+
+    @Test
+    public void gcKeepsBytesNeverRequested() {
+        LinearInput parent = new LinearInput(new byte[]{1, 2, 3, 4});
+        LinearInput child = new LinearInput(parent);
+        child.set(3, 8);
+        child.getOrGenerateFresh(0, new Random());
+        child.getOrGenerateFresh(1, new Random());
+        child.gc();
+        child.compact();
+
+        assertEquals(4, child.size());
+        assertArrayEquals(new byte[]{1, 2, 3, 8}, child.toByteArray());
+        assertEquals(4, parent.size());
+    }
+}
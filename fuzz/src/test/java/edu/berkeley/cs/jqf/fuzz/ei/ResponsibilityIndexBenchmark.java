@@ -0,0 +1,101 @@
+package edu.berkeley.cs.jqf.fuzz.ei;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.Input;
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.LinearInput;
+import edu.berkeley.cs.jqf.fuzz.util.Coverage;
+import org.eclipse.collections.api.iterator.IntIterator;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+
+/**
+ * Measures how fast STEAL_RESPONSIBILITY finds the saved inputs that a run subsumes, on corpora of 10k to 100k
+ * inputs. Responsibilities are handed out as the guidance does, each saved input taking a few keys and stealing
+ * them from earlier inputs, and each run covers a few thousand keys. Compares the ResponsibilityIndex lookup from
+ * covered keys against the scan of every saved input's responsibilities that the guidance did before.
+ *
+ * Not a unit test; run it directly with the test classpath:
+ * java -cp ... edu.berkeley.cs.jqf.fuzz.ei.ResponsibilityIndexBenchmark [runs]
+ */
+public class ResponsibilityIndexBenchmark {
+
+    private static final int KEYS = 1 << 16;
+    private static final int KEYS_PER_RUN = 3000;
+
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        for (int round = 0; round < 3; round++) {
+            System.out.println("Round " + round);
+            for (int corpusSize : new int[]{10000, 30000, 100000}) {
+                bench(corpusSize, runs);
+            }
+        }
+    }
+
+    private static void bench(int corpusSize, int runs) {
+        Random r = new Random(corpusSize);
+        List<Input> savedInputs = new ArrayList<>(corpusSize);
+        ResponsibilityIndex index = new ResponsibilityIndex(KEYS);
+        for (int id = 0; id < corpusSize; id++) {
+            Input input = new LinearInput();
+            input.id = id;
+            IntHashSet keys = new IntHashSet();
+            for (int k = 1 + r.nextInt(8); k > 0; k--) {
+                keys.add(r.nextInt(KEYS));
+            }
+            index.assign(input, keys);
+            savedInputs.add(input);
+        }
+
+        Coverage[] coverage = new Coverage[runs];
+        for (int i = 0; i < runs; i++) {
+            coverage[i] = new Coverage();
+            // Runs mostly cover the same hot keys, plus a tail of their own
+            for (int k = 0; k < KEYS_PER_RUN; k++) {
+                coverage[i].logCoverage(r.nextInt(4) == 0 ? r.nextInt(KEYS) : r.nextInt(KEYS / 16), 0);
+            }
+        }
+
+        long subsumed = 0;
+        long start = System.nanoTime();
+        for (Coverage run : coverage) {
+            long[] found = {0};
+            index.countCoveredResponsibilities(run).forEachKeyValue((candidate, covered) -> {
+                if (covered == candidate.responsibilities.size()) {
+                    found[0]++;
+                }
+            });
+            subsumed += found[0];
+        }
+        report("index", corpusSize, runs, subsumed, System.nanoTime() - start);
+
+        subsumed = 0;
+        start = System.nanoTime();
+        for (Coverage run : coverage) {
+            IntHashSet covered = new IntHashSet();
+            covered.addAll(run.getCovered());
+            candidate_search:
+            for (Input candidate : savedInputs) {
+                IntHashSet responsibilities = candidate.responsibilities;
+                if (responsibilities.isEmpty()) {
+                    continue;
+                }
+                IntIterator iter = responsibilities.intIterator();
+                while (iter.hasNext()) {
+                    if (!covered.contains(iter.next())) {
+                        continue candidate_search;
+                    }
+                }
+                subsumed++;
+            }
+        }
+        report("scan", corpusSize, runs, subsumed, System.nanoTime() - start);
+    }
+
+    private static void report(String name, int corpusSize, int runs, long subsumed, long nanos) {
+        System.out.println(String.format("\t%6d inputs %-6s %10.0f runs/sec (%d subsumed)",
+                corpusSize, name, runs / (nanos / 1e9), subsumed));
+    }
+}
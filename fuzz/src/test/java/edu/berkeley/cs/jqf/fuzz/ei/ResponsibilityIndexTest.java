@@ -0,0 +1,63 @@
+package edu.berkeley.cs.jqf.fuzz.ei;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.Input;
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.LinearInput;
+import edu.berkeley.cs.jqf.fuzz.util.Coverage;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ResponsibilityIndexTest {
+
+    @Test
+    public void countsCoveredResponsibilitiesOfOwners() {
+        ResponsibilityIndex index = new ResponsibilityIndex(16);
+        Input first = new LinearInput();
+        Input second = new LinearInput();
+        index.assign(first, IntHashSet.newSetWith(1, 2, 3));
+        index.assign(second, IntHashSet.newSetWith(3, 4));
+
+        // The second input took key 3 from the first
+        assertEquals(IntHashSet.newSetWith(1, 2), first.responsibilities);
+        assertSame(second, index.get(3));
+
+        Coverage run = new Coverage();
+        run.logCoverage(1, 0);
+        run.logCoverage(2, 0);
+        run.logCoverage(4, 0);
+        run.logCoverage(9, 0);
+        ObjectIntHashMap<Input> counts = index.countCoveredResponsibilities(run);
+        assertEquals(2, counts.size());
+        assertEquals(2, counts.get(first));  // All of its responsibilities
+        assertEquals(1, counts.get(second)); // Not key 3
+    }
+
+    @Test
+    public void countsFavoredInputsAsResponsibilitiesMove() {
+        List<Input> unfavored = new ArrayList<>();
+        ResponsibilityIndex index = new ResponsibilityIndex(16, unfavored::add);
+        Input first = new LinearInput();
+        Input second = new LinearInput();
+        Input third = new LinearInput();
+        index.assign(first, IntHashSet.newSetWith(1, 2));
+        index.assign(second, IntHashSet.newSetWith(3));
+        assertEquals(2, index.numFavored());
+        assertEquals(3, index.sumResponsibilities());
+
+        // The third input takes all of the first's keys and one of its own
+        index.assign(third, IntHashSet.newSetWith(1, 2, 4));
+        assertEquals(2, index.numFavored());
+        assertEquals(4, index.sumResponsibilities());
+        assertEquals(1, unfavored.size());
+        assertSame(first, unfavored.get(0));
+        assertTrue(first.responsibilities.isEmpty());
+    }
+}
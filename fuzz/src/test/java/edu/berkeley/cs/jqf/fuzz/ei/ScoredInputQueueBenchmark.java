@@ -0,0 +1,107 @@
+package edu.berkeley.cs.jqf.fuzz.ei;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.Input;
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.LinearInput;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+
+/**
+ * Measures the priority-queue bookkeeping that ZestGuidance does per saved input: queue the new input, apply the
+ * score updates that central sent since the last save, and now and then take the best input as the next parent.
+ * Starts from a corpus of already-queued inputs and compares ScoredInputQueue against the java.util.PriorityQueue
+ * with a linear search, remove and re-add per update that the guidance used before.
+ *
+ * Not a unit test; run it directly with the test classpath:
+ * java -cp ... edu.berkeley.cs.jqf.fuzz.ei.ScoredInputQueueBenchmark [corpus_size] [saves] [updates_per_save]
+ */
+public class ScoredInputQueueBenchmark {
+
+    /** Saves between two parents being taken off the queue */
+    private static final int SAVES_PER_PARENT = 20;
+
+    public static void main(String[] args) {
+        int corpusSize = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int saves = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int updatesPerSave = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("Round " + round);
+            indexed(corpusSize, saves, updatesPerSave);
+            priorityQueue(corpusSize, saves, updatesPerSave);
+        }
+    }
+
+    private static List<Input> corpus(int size, Random r) {
+        List<Input> inputs = new ArrayList<>(size);
+        for (int id = 0; id < size; id++) {
+            inputs.add(input(id, r));
+        }
+        return inputs;
+    }
+
+    private static Input input(int id, Random r) {
+        Input input = new LinearInput();
+        input.id = id;
+        input.score = r.nextInt(100);
+        return input;
+    }
+
+    private static void report(String name, int saves, long nanos) {
+        System.out.println(String.format("\t%-14s %10.0f saves/sec", name, saves / (nanos / 1e9)));
+    }
+
+    private static void indexed(int corpusSize, int saves, int updatesPerSave) {
+        Random r = new Random(0);
+        List<Input> inputs = corpus(corpusSize, r);
+        ScoredInputQueue queue = new ScoredInputQueue();
+        queue.addAll(inputs);
+        long start = System.nanoTime();
+        for (int s = 0; s < saves; s++) {
+            Input saved = input(inputs.size(), r);
+            inputs.add(saved);
+            queue.add(saved);
+            IntIntHashMap deltas = new IntIntHashMap();
+            for (int u = 0; u < updatesPerSave; u++) {
+                deltas.addToValue(r.nextInt(inputs.size()), 1 + r.nextInt(10));
+            }
+            queue.addScores(deltas);
+            if (s % SAVES_PER_PARENT == 0) {
+                queue.remove();
+            }
+        }
+        report("indexed heap", saves, System.nanoTime() - start);
+    }
+
+    private static void priorityQueue(int corpusSize, int saves, int updatesPerSave) {
+        Random r = new Random(0);
+        List<Input> inputs = corpus(corpusSize, r);
+        PriorityQueue<Input> queue = new PriorityQueue<>((i1, i2) -> Integer.compare(i2.score, i1.score));
+        queue.addAll(inputs);
+        long start = System.nanoTime();
+        for (int s = 0; s < saves; s++) {
+            Input saved = input(inputs.size(), r);
+            inputs.add(saved);
+            queue.add(saved);
+            for (int u = 0; u < updatesPerSave; u++) {
+                int id = r.nextInt(inputs.size());
+                int delta = 1 + r.nextInt(10);
+                for (Input i : queue) {
+                    if (i.id == id) {
+                        queue.remove(i);
+                        i.score += delta;
+                        queue.add(i);
+                        break;
+                    }
+                }
+            }
+            if (s % SAVES_PER_PARENT == 0) {
+                queue.remove();
+            }
+        }
+        report("PriorityQueue", saves, System.nanoTime() - start);
+    }
+}
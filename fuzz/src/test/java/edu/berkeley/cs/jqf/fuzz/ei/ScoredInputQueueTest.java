@@ -0,0 +1,69 @@
+package edu.berkeley.cs.jqf.fuzz.ei;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.Input;
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.LinearInput;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ScoredInputQueueTest {
+
+    private static Input input(int id, int score) {
+        Input input = new LinearInput();
+        input.id = id;
+        input.score = score;
+        return input;
+    }
+
+    @Test
+    public void removesByScoreThenId() {
+        ScoredInputQueue queue = new ScoredInputQueue();
+        queue.addAll(Arrays.asList(input(0, 5), input(1, 9), input(2, 5), input(3, 1)));
+        queue.add(input(4, 7));
+
+        IntIntHashMap deltas = new IntIntHashMap();
+        deltas.put(3, 10);
+        deltas.put(7, 100); // Not queued
+        queue.addScores(deltas);
+
+        int[] order = new int[5];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = queue.remove().id;
+        }
+        assertArrayEquals(new int[]{3, 1, 4, 0, 2}, order);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void matchesSortedOrderUnderRandomUpdates() {
+        Random r = new Random(42);
+        List<Input> inputs = new ArrayList<>();
+        ScoredInputQueue queue = new ScoredInputQueue();
+        for (int id = 0; id < 500; id++) {
+            Input input = input(id, r.nextInt(50));
+            inputs.add(input);
+            queue.add(input);
+            if (r.nextInt(4) == 0) {
+                IntIntHashMap deltas = new IntIntHashMap();
+                for (int k = r.nextInt(100); k > 0; k--) {
+                    deltas.addToValue(r.nextInt(id + 1), r.nextInt(21) - 10);
+                }
+                // Small batches move inputs one by one, large ones rebuild the heap
+                queue.addScores(deltas);
+            }
+        }
+        inputs.sort((a, b) -> a.score.equals(b.score) ? a.id - b.id : b.score - a.score);
+        for (Input expected : inputs) {
+            assertSame(expected, queue.remove());
+        }
+    }
+}
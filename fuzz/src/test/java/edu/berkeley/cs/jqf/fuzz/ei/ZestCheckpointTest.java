@@ -0,0 +1,116 @@
+package edu.berkeley.cs.jqf.fuzz.ei;
+
+import edu.berkeley.cs.jqf.fuzz.guidance.Result;
+import edu.berkeley.cs.jqf.instrument.tracing.SingleSnoop;
+import janala.instrument.GlobalStateForInstrumentation;
+import org.eclipse.collections.api.list.primitive.IntList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ZestCheckpointTest {
+
+    private static final int INPUT_SIZE = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Stable ids, so that checkpoints are written even though this JVM is not instrumented with them */
+    private final GlobalStateForInstrumentation instrumentation = new GlobalStateForInstrumentation(24, false);
+
+    /* Runs one trial of a stand-in target that takes one branch per input byte, and another of its own */
+    private static void runTrial(ZestGuidance guidance, int key, Result result) throws IOException {
+        InputStream in = guidance.getInput();
+        for (int i = 0; i < INPUT_SIZE; i++) {
+            int b = in.read();
+            assertTrue(b >= 0);
+            SingleSnoop.LOGJUMP(10 + 2 * i, b & 1);
+        }
+        SingleSnoop.LOGJUMP(key, 0);
+        guidance.handleResult(result, result == Result.FAILURE ? new IllegalStateException("boom") : null);
+    }
+
+    /* Reads a checkpoint's payload, without the time it was written at */
+    private static byte[] payloadWithoutTime(File file) throws IOException {
+        byte[] payload = ZestCheckpoint.read(file);
+        Arrays.fill(payload, 1, 9, (byte) 0); // Elapsed time, after the corpus format flag
+        return payload;
+    }
+
+    @Test
+    public void resumedCampaignCarriesOnFromTheCheckpoint() throws IOException {
+        File outputDirectory = folder.newFolder("fuzz-out");
+        File checkpointFile = new File(outputDirectory, ZestCheckpoint.FILE);
+        ZestGuidance zest = new ZestGuidance("test", null, 1000, outputDirectory, false, instrumentation);
+        zest.setArgs(new Object[0]);
+        for (int i = 0; i < 20; i++) {
+            runTrial(zest, 1000 + i % 5, i == 7 ? Result.FAILURE : Result.SUCCESS);
+        }
+        zest.writeCheckpoint();
+        byte[] checkpointed = payloadWithoutTime(checkpointFile);
+        IntList covered = zest.getTotalCoverage().getCovered().toSortedList();
+        File corpusDirectory = new File(outputDirectory, "corpus");
+        int numSaved;
+        try (CorpusStore.Reader corpus = new CorpusStore.Reader(corpusDirectory)) {
+            numSaved = corpus.size();
+        }
+        assertTrue(numSaved > 0);
+
+        // Saved after the checkpoint, so forgotten by the resumed campaign
+        for (int i = 0; i < 5; i++) {
+            runTrial(zest, 2000 + i, Result.SUCCESS);
+        }
+
+        ZestGuidance resumed = new ZestGuidance("test", null, 1000, outputDirectory, true, instrumentation);
+        assertEquals(covered, resumed.getTotalCoverage().getCovered().toSortedList());
+        try (CorpusStore.Reader corpus = new CorpusStore.Reader(corpusDirectory)) {
+            assertEquals(numSaved, corpus.size());
+        }
+        // Counters, coverage, failures, and the responsibilities and hint state of every input
+        resumed.writeCheckpoint();
+        assertArrayEquals(checkpointed, payloadWithoutTime(checkpointFile));
+    }
+
+    @Test
+    public void corruptCheckpointIsRejected() throws IOException {
+        File file = folder.newFile(ZestCheckpoint.FILE);
+        ZestCheckpoint.write(file, new byte[]{1, 2, 3, 4});
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, ZestCheckpoint.read(file));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            raf.write(5);
+        }
+        try {
+            ZestCheckpoint.read(file);
+            fail("Read a corrupt checkpoint");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Corrupt checkpoint"));
+        }
+    }
+
+    @Test
+    public void truncatedCheckpointIsRejected() throws IOException {
+        File file = folder.newFile(ZestCheckpoint.FILE);
+        ZestCheckpoint.write(file, new byte[]{1, 2, 3, 4});
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 2);
+        }
+        try {
+            ZestCheckpoint.read(file);
+            fail("Read a truncated checkpoint");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Truncated checkpoint"));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package edu.berkeley.cs.jqf.fuzz.guidance;
+
+import java.io.ByteArrayInputStream;
+
+import edu.berkeley.cs.jqf.fuzz.central.Coordinator;
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance.LinearInput;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class StreamBackedRandomTest {
+
+    private static final byte[] BYTES = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14};
+
+    @Test
+    public void bulkReadsRecordOneRunPerIntOrByte() {
+        RecordingInputStream ris = new RecordingInputStream(new ByteArrayInputStream(BYTES));
+        StreamBackedRandom random = new StreamBackedRandom(ris);
+
+        byte[] ints = new byte[8];
+        random.nextBytes(ints);
+        byte[] bytes = new byte[3];
+        assertEquals(3, random.read(bytes, 0, 3));
+
+        RecordingInputStream.MarkedInput recorded = ris.getRecordedInput();
+        assertArrayEquals(new int[]{0, 4, 4, 4, 8, 1, 9, 1, 10, 1}, recorded.getRuns());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, ints);
+        assertArrayEquals(new byte[]{9, 10, 11}, bytes);
+    }
+
+    @Test
+    public void hintInsideBulkReadApplies() {
+        Coordinator.StringHint[] hint = {new Coordinator.StringHint("hint", Coordinator.HintType.Z3, null)};
+        LinearInput input = new LinearInput();
+        input.instructions.add(new int[]{4, 4}); // The second int of the bulk read
+        input.stringEqualsHints.add(hint);
+        RecordingInputStream ris = new RecordingInputStream(new ByteArrayInputStream(BYTES));
+        StreamBackedRandom random = new StreamBackedRandom(new StringEqualsHintingInputStream(ris, ris, input));
+
+        random.nextBytes(new byte[12]);
+
+        assertEquals(1, StringEqualsHintingInputStream.getHints().size());
+        assertSame(hint, StringEqualsHintingInputStream.getHints().getFirst());
+        assertSame(hint, StringEqualsHintingInputStream.getHintsForCurrentInput());
+    }
+}
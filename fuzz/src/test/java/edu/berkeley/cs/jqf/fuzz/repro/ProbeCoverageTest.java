@@ -0,0 +1,78 @@
+package edu.berkeley.cs.jqf.fuzz.repro;
+
+import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance;
+import edu.berkeley.cs.jqf.fuzz.guidance.Result;
+import edu.berkeley.cs.jqf.instrument.tracing.SingleSnoop;
+import org.eclipse.collections.api.list.primitive.IntList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that Zest and repro see the same coverage for the same input, now that both collect it from the
+ * instrumentation probes rather than from trace events.
+ */
+@RunWith(JUnit4.class)
+public class ProbeCoverageTest {
+
+    private static final int INPUT_SIZE = 16;
+
+    /**
+     * Stands in for an instrumented test: hits a method-entry probe, then one branch per input byte, with half of
+     * them on a worker thread.
+     */
+    private static byte[] runTarget(InputStream in) throws IOException, InterruptedException {
+        byte[] read = new byte[INPUT_SIZE];
+        SingleSnoop.LOGJUMP(1, 0);
+        for (int i = 0; i < INPUT_SIZE; i++) {
+            int b = in.read();
+            assertTrue(b >= 0);
+            read[i] = (byte) b;
+        }
+        Thread worker = new Thread(() -> {
+            for (int i = INPUT_SIZE / 2; i < INPUT_SIZE; i++)
+                SingleSnoop.LOGJUMP(10 + 2 * i, read[i] & 1);
+        });
+        worker.start();
+        for (int i = 0; i < INPUT_SIZE / 2; i++)
+            SingleSnoop.LOGJUMP(10 + 2 * i, read[i] & 1);
+        worker.join();
+        return read;
+    }
+
+    private static void writeReproInput(File file, byte[] bytes) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
+            oos.writeInt(bytes.length);
+            oos.write(bytes);
+            oos.writeObject(null); // instructions
+            oos.writeObject(null); // string hints
+            oos.writeObject(null); // targeted hints
+            oos.writeInt(0);
+        }
+    }
+
+    @Test
+    public void zestAndReproSeeTheSameCoverageKeys() throws Exception {
+        File outputDirectory = Files.createTempDirectory("fuzz-out").toFile();
+        ZestGuidance zest = new ZestGuidance("test", null, 1000, outputDirectory);
+        zest.setArgs(new Object[0]);
+        byte[] input = runTarget(zest.getInput());
+        zest.handleResult(Result.SUCCESS, null);
+        IntList zestKeys = zest.getTotalCoverage().getCovered().toSortedList();
+
+        File inputFile = new File(outputDirectory, "repro_input");
+        writeReproInput(inputFile, input);
+        ReproGuidance repro = new ReproGuidance(inputFile, null);
+        assertArrayEquals(input, runTarget(repro.getInput()));
+        repro.handleResult(Result.SUCCESS, null);
+        IntList reproKeys = repro.getCoverage().getCovered().toSortedList();
+
+        assertEquals(1 + INPUT_SIZE, zestKeys.size());
+        assertEquals(zestKeys, reproKeys);
+    }
+}
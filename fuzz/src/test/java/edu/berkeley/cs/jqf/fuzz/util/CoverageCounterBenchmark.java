@@ -0,0 +1,72 @@
+package edu.berkeley.cs.jqf.fuzz.util;
+
+import java.util.Random;
+
+/**
+ * Compares the coverage counter backends on a trial-shaped workload: a burst of increments over a few thousand keys,
+ * then an updateBits into a long-lived map, then a clear.
+ *
+ * Not a unit test; run it directly with the test classpath:
+ * java -cp ... edu.berkeley.cs.jqf.fuzz.util.CoverageCounterBenchmark [trials]
+ */
+public class CoverageCounterBenchmark {
+
+    private static final int KEYS = 1 << 16;
+    private static final int EVENTS_PER_TRIAL = 20000;
+
+    public static void main(String[] args) {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Random r = new Random(0);
+        int[] events = new int[EVENTS_PER_TRIAL];
+        for (int i = 0; i < events.length; i++) {
+            // A hot loop body plus a long tail of rarely-hit branches
+            events[i] = r.nextInt(4) == 0 ? r.nextInt(KEYS) : r.nextInt(256);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("Round " + round);
+            coverage(Coverage.CounterType.RELIABLE, events, trials);
+            coverage(Coverage.CounterType.DENSE, events, trials);
+            nonZeroCaching(events, trials);
+        }
+    }
+
+    private static void report(String name, int trials, long nanos) {
+        System.out.println(String.format("\t%-20s %8.0f trials/sec", name, trials / (nanos / 1e9)));
+    }
+
+    private static void coverage(Coverage.CounterType type, int[] events, int trials) {
+        Coverage run = new Coverage(type);
+        Coverage total = new Coverage(type);
+        long start = System.nanoTime();
+        for (int t = 0; t < trials; t++) {
+            for (int e : events) {
+                run.logCoverage(e, 0);
+            }
+            run.computeNewCoverage(total);
+            total.updateBits(run);
+            run.clear();
+        }
+        report(type.toString(), trials, System.nanoTime() - start);
+    }
+
+    /* The hashed Counter that Coverage used before ReliableCounter; it has no updateBits, so this copies by index */
+    private static void nonZeroCaching(int[] events, int trials) {
+        Counter run = new NonZeroCachingCounter(KEYS - 1);
+        Counter total = new NonZeroCachingCounter(KEYS - 1);
+        long start = System.nanoTime();
+        for (int t = 0; t < trials; t++) {
+            for (int e : events) {
+                run.increment(e);
+            }
+            for (Integer idx : run.getNonZeroIndices()) {
+                int before = total.getAtIndex(idx);
+                int after = before | Coverage.hob(run.getAtIndex(idx));
+                if (after != before)
+                    total.setAtIndex(idx, after);
+            }
+            run.clear();
+        }
+        report("NonZeroCaching", trials, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,68 @@
+package edu.berkeley.cs.jqf.fuzz.util;
+
+import janala.instrument.GlobalStateForInstrumentation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+
+@RunWith(JUnit4.class)
+public class CoverageMapFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void stableIdsDependOnlyOnTheProbe() {
+        GlobalStateForInstrumentation state = GlobalStateForInstrumentation.instance;
+        int a = state.stableId("p/Foo", "bar", "(I)V", 3, 2);
+        int b = state.stableId("p/Foo", "bar", "(I)V", 3, 2);
+        int c = state.stableId("p/Foo", "bar", "(I)V", 4, 2);
+        assertEquals(a, b);
+        assertNotEquals(a, c);
+        // Instrumenting the same probe again is not a collision
+        for (String line : state.getCollisions()) {
+            assertFalse(line, line.contains("p/Foo.bar(I)V#3\tp/Foo.bar(I)V#3"));
+        }
+    }
+
+    @Test
+    public void stableIdsStayWithinTheSpaceAndNeverUseZero() {
+        GlobalStateForInstrumentation state = new GlobalStateForInstrumentation(8, true);
+        for (int ordinal = 0; ordinal < 1000; ordinal++) {
+            int id = state.stableId("p/Foo", "bar", "(I)V", ordinal, 3);
+            assertTrue(id >= 1);
+            assertTrue(id + 3 <= 1 << 8);
+        }
+        // A thousand probes in 255 ids must collide, and be reported when asked for
+        assertFalse(state.getCollisions().isEmpty());
+        GlobalStateForInstrumentation unreported = new GlobalStateForInstrumentation(8, false);
+        for (int ordinal = 0; ordinal < 1000; ordinal++) {
+            unreported.stableId("p/Foo", "bar", "(I)V", ordinal, 3);
+        }
+        assertTrue(unreported.getCollisions().isEmpty());
+    }
+
+    @Test
+    public void refusesMapsFromClassLoadOrderIds() throws IOException {
+        assumeFalse(GlobalStateForInstrumentation.instance.isStable());
+        Coverage coverage = new Coverage();
+        coverage.logCoverage(10, 1);
+        File file = folder.newFile("coverage_map");
+        CoverageMapFile.save(coverage, file);
+        assertTrue(file.length() > 0);
+        try {
+            CoverageMapFile.load(file, new Coverage());
+            fail("Loaded a map whose keys depend on class-load order");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("class-load-order"));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package edu.berkeley.cs.jqf.fuzz.util;
+
+import janala.instrument.CoverageListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Simulates a target that hands its work to an executor, as the HTTP and Tomcat harnesses do: each trial submits
+ * tasks that hit branches from several worker threads at once. Compares a shared synchronized map, as Coverage used
+ * before, against per-thread CoverageShards. Also runs targets that start many short-lived threads in every trial
+ * instead, whose shards CoverageShards has to allocate or reuse once per thread.
+ *
+ * Not a unit test; run it directly with the test classpath:
+ * java -cp ... edu.berkeley.cs.jqf.fuzz.util.CoverageShardsBenchmark [trials] [threads] [threads_per_trial]
+ */
+public class CoverageShardsBenchmark {
+
+    private static final int BRANCHES_PER_TASK = 50000;
+
+    public static void main(String[] args) throws Exception {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int threadsPerTrial = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("Round " + round);
+            shared(trials, threads);
+            sharded(trials, threads);
+            shortLivedThreads(trials, threadsPerTrial);
+        }
+    }
+
+    private static void report(String name, int trials, long nanos) {
+        System.out.println(String.format("\t%-20s %8.0f trials/sec", name, trials / (nanos / 1e9)));
+    }
+
+    private static void runTasks(ExecutorService pool, CoverageListener listener, int threads) throws Exception {
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int offset = i * 1000;
+            tasks.add(pool.submit(() -> {
+                for (int b = 0; b < BRANCHES_PER_TASK; b++) {
+                    listener.logCoverage(offset + (b & 511), b & 1);
+                }
+            }));
+        }
+        for (Future<?> f : tasks) {
+            f.get();
+        }
+    }
+
+    private static void shared(int trials, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Coverage run = new Coverage(Coverage.CounterType.RELIABLE);
+        long start = System.nanoTime();
+        for (int t = 0; t < trials; t++) {
+            run.clear();
+            runTasks(pool, run, threads);
+        }
+        report("synchronized map", trials, System.nanoTime() - start);
+        pool.shutdown();
+    }
+
+    private static void sharded(int trials, int threads) throws Exception {
+        CoverageShards shards = new CoverageShards();
+        Coverage run = new Coverage();
+        shards.startTrial(); // So that the pool's threads, created from here, are attributed
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < trials; t++) {
+            run.clear();
+            shards.startTrial();
+            runTasks(pool, shards, threads);
+            shards.mergeInto(run);
+        }
+        report("CoverageShards", trials, System.nanoTime() - start);
+        pool.shutdown();
+    }
+
+    private static void shortLivedThreads(int trials, int threadsPerTrial) throws Exception {
+        CoverageShards shards = new CoverageShards();
+        Coverage run = new Coverage();
+        Thread[] workers = new Thread[threadsPerTrial];
+        long start = System.nanoTime();
+        for (int t = 0; t < trials; t++) {
+            run.clear();
+            shards.startTrial(); // Workers started from here are attributed
+            for (int i = 0; i < threadsPerTrial; i++) {
+                int offset = i * 1000;
+                workers[i] = new Thread(() -> {
+                    for (int b = 0; b < BRANCHES_PER_TASK / threadsPerTrial; b++) {
+                        shards.logCoverage(offset + (b & 511), b & 1);
+                    }
+                });
+                workers[i].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            shards.mergeInto(run);
+        }
+        report(threadsPerTrial + " threads/trial", trials, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,67 @@
+package edu.berkeley.cs.jqf.fuzz.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class CoverageShardsTest {
+
+    private static void runOn(Thread t) throws InterruptedException {
+        t.start();
+        t.join();
+    }
+
+    @Test
+    public void childThreadsAreAttributedToTheTrial() throws InterruptedException {
+        CoverageShards shards = new CoverageShards();
+        Coverage run = new Coverage();
+        shards.startTrial();
+        shards.logCoverage(10, 0);
+        runOn(new Thread(() -> {
+            shards.logCoverage(20, 0);
+            shards.logCoverage(20, 0);
+        }));
+        shards.mergeInto(run);
+
+        assertEquals(2, run.getNonZeroCount());
+        assertEquals(1, run.getCount(10));
+        assertEquals(2, run.getCount(20));
+    }
+
+    @Test
+    public void unrelatedThreadsAreIgnoredUnlessRegistered() throws InterruptedException {
+        CoverageShards shards = new CoverageShards();
+        Thread[] unrelated = new Thread[2];
+        // Created before the trial starts, so they do not inherit it
+        unrelated[0] = new Thread(() -> shards.logCoverage(30, 0));
+        unrelated[1] = new Thread(() -> shards.logCoverage(40, 0));
+        Coverage run = new Coverage();
+        shards.startTrial();
+        shards.registerThread(unrelated[1]);
+        runOn(unrelated[0]);
+        runOn(unrelated[1]);
+        shards.mergeInto(run);
+
+        assertEquals(1, run.getNonZeroCount());
+        assertEquals(1, run.getCount(40));
+    }
+
+    @Test
+    public void earlierTrialsAreNotMergedAgain() {
+        CoverageShards shards = new CoverageShards();
+        Coverage run = new Coverage();
+        shards.startTrial();
+        shards.logCoverage(50, 0);
+        shards.mergeInto(run);
+        run.clear();
+
+        shards.startTrial();
+        shards.logCoverage(60, 0);
+        shards.mergeInto(run);
+        assertEquals(1, run.getNonZeroCount());
+        assertEquals(1, run.getCount(60));
+    }
+}
@@ -0,0 +1,94 @@
+package edu.berkeley.cs.jqf.fuzz.util;
+
+import edu.berkeley.cs.jqf.instrument.tracing.events.BranchEvent;
+import janala.instrument.GlobalStateForInstrumentation;
+import org.eclipse.collections.api.list.primitive.IntList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class DenseCounterTest {
+
+    @Test
+    public void clearResetsOnlyWhatWasTouched() {
+        DenseCounter counter = new DenseCounter(128);
+        counter.increment(3);
+        counter.increment(3);
+        counter.increment(64);
+        assertEquals(2, counter.get(3));
+        assertEquals(2, counter.getNonZeroSize());
+
+        counter.clear();
+        assertEquals(0, counter.getNonZeroSize());
+        assertEquals(0, counter.get(3));
+        assertEquals(0, counter.get(64));
+        assertTrue(counter.getNonZeroKeys().isEmpty());
+
+        counter.increment(64);
+        assertEquals(1, counter.get(64));
+        assertEquals(1, counter.getNonZeroSize());
+    }
+
+    @Test
+    public void growsForKeysPastTheEnd() {
+        DenseCounter counter = new DenseCounter(8);
+        assertEquals(0, counter.get(1000));
+        counter.increment(1000);
+        counter.or(5000, 4);
+        assertTrue(counter.size() > 5000);
+        assertEquals(1, counter.get(1000));
+        assertEquals(4, counter.get(5000));
+        assertEquals(2, counter.getNonZeroSize());
+    }
+
+    @Test
+    public void newCoverageAgreesWithReliableCounter() {
+        Coverage[] dense = {new Coverage(Coverage.CounterType.DENSE), new Coverage(Coverage.CounterType.DENSE)};
+        Coverage[] reliable = {new Coverage(Coverage.CounterType.RELIABLE), new Coverage(Coverage.CounterType.RELIABLE)};
+        int[][] iids = {{1, 2, 3, 40, 500}, {2, 3, 17, 40, 600, 601}};
+        for (int i = 0; i < 2; i++) {
+            for (int iid : iids[i]) {
+                dense[i].handleEvent(new BranchEvent(iid, null, 0, iid % 2));
+                reliable[i].handleEvent(new BranchEvent(iid, null, 0, iid % 2));
+            }
+        }
+        IntList expected = reliable[1].computeNewCoverage(reliable[0]);
+        IntList actual = dense[1].computeNewCoverage(dense[0]);
+        assertEquals(expected.toSortedList(), actual.toSortedList());
+        assertEquals(reliable[1].getCovered().toSortedList(), dense[1].getCovered().toSortedList());
+
+        assertEquals(reliable[0].updateBits(reliable[1]), dense[0].updateBits(dense[1]));
+        assertEquals(reliable[0].getNonZeroCount(), dense[0].getNonZeroCount());
+        assertEquals(Coverage.CoverageComparisonResult.THAT_COVERS_ALL_OF_THIS_SAME_OR_GREATER_HITS, dense[1].compareCoverage(dense[0]));
+        assertEquals(Coverage.CoverageComparisonResult.THAT_DOES_NOT_COVER_ALL_OF_THIS, dense[0].compareCoverage(dense[1]));
+    }
+
+    @Test
+    public void stableIdsDoNotSizeCountersToTheirSpace() {
+        GlobalStateForInstrumentation stable = new GlobalStateForInstrumentation(28, false);
+        assertEquals(1 << 28, stable.getId());
+        assertEquals(DenseCounter.MIN_SIZE, DenseCounter.initialSize(stable));
+        if (System.getProperty("jqf.coverage.counter") == null) {
+            assertEquals(Coverage.CounterType.RELIABLE, Coverage.defaultCounterType(stable));
+        }
+
+        // A stable id far out grows the counter to it, but copies are only as big as what they hold
+        DenseCounter counter = new DenseCounter(DenseCounter.initialSize(stable));
+        int key = stable.stableId("a/B", "m", "()V", 0, 2);
+        counter.increment(key);
+        counter.increment(100);
+        assertTrue(counter.size() > key);
+        counter.clear();
+        counter.increment(100);
+        DenseCounter copy = counter.copy();
+        assertTrue(copy.size() <= 128);
+        assertEquals(1, copy.get(100));
+        assertEquals(0, copy.get(key));
+        copy.increment(key);
+        assertEquals(1, copy.get(key));
+        assertEquals(2, copy.getNonZeroSize());
+    }
+}
@@ -0,0 +1,276 @@
+package edu.berkeley.cs.jqf.instrument.tracing;
+
+import java.util.Arrays;
+
+/**
+ * A per-thread stack of call sites, maintained by the LOGCALL/LOGRETURN probes that the
+ * instrumentation inserts around method calls when execution indexing is enabled.
+ *
+ * <p>Each frame holds the iid of the call site that created it, together with how many
+ * times that call site has been reached within the parent frame. Both are kept in a flat
+ * <tt>int[]</tt>, so that an execution index is simply a copy of its prefix.</p>
+ *
+ * <p>Each frame also keeps a 64-bit hash of the (iid, count) pairs up to and including it,
+ * so that the hash of an execution index can be had in constant time, without copying it
+ * (see {@link #executionIndexHash(int)}).</p>
+ *
+ * <p>A call whose callee throws never reaches its LOGRETURN, so returns are matched by
+ * call-site iid: a LOGRETURN pops every frame down to and including the one created by the
+ * same call site.</p>
+ *
+ * <p>The stack saturates at {@link #MAX_SUPPORTED_DEPTH}: deeper calls are only counted, not
+ * pushed, and as many returns are then skipped, so that all execution indices below the
+ * maximum depth are those of the deepest frame there. The probes run in every thread of the
+ * target, so running out of frames must not throw.</p>
+ */
+public final class CallStack {
+
+    public static final int MAX_SUPPORTED_DEPTH = 1024; // Calls any deeper are not pushed
+
+    /** The hash of an empty execution index */
+    private static final long HASH_SEED = 0x6A09E667F3BCC909L;
+
+    private static final ThreadLocal<CallStack> stacks = new ThreadLocal<CallStack>() {
+        @Override
+        protected CallStack initialValue() {
+            return new CallStack();
+        }
+    };
+
+    /**
+     * @return the call stack of the current thread
+     */
+    public static CallStack current() {
+        return stacks.get();
+    }
+
+    private int depth = 0;
+
+    /** Calls made while the stack was full, whose returns are yet to be skipped */
+    private int overflow = 0;
+
+    /** (call-site iid, count) for each depth */
+    private final int[] rollingIndex = new int[2*MAX_SUPPORTED_DEPTH];
+
+    /** Hash of the (call-site iid, count) pairs up to and including each depth */
+    private final long[] frameHashes = new long[MAX_SUPPORTED_DEPTH];
+
+    /** Counts of the call sites (and other keys) reached within each frame; allocated on first use */
+    private final SiteCounts[] counts = new SiteCounts[MAX_SUPPORTED_DEPTH];
+
+    public int getDepth() {
+        return depth;
+    }
+
+    private SiteCounts countsAt(int d) {
+        SiteCounts c = counts[d];
+        if (c == null) {
+            c = counts[d] = new SiteCounts();
+        }
+        return c;
+    }
+
+    /**
+     * Pushes a frame for a call made from the given call site.
+     *
+     * @param iid the call site
+     */
+    public void call(int iid) {
+        if (depth == MAX_SUPPORTED_DEPTH - 1) {
+            overflow++;
+            return;
+        }
+        int count = countsAt(depth).increment(iid);
+        rollingIndex[2*depth] = iid;
+        rollingIndex[2*depth + 1] = count;
+        frameHashes[depth] = hash(depth == 0 ? HASH_SEED : frameHashes[depth - 1], iid, count);
+        depth++;
+    }
+
+    /**
+     * Pops the frame pushed by the given call site, and any frames above it. Does nothing if
+     * no frame on the stack was pushed by that call site (e.g. the call started before the
+     * stack was last reset). Only skips the return if the stack has overflowed.
+     *
+     * @param iid the call site
+     */
+    public void ret(int iid) {
+        if (overflow > 0) {
+            overflow--;
+            return;
+        }
+        for (int d = depth - 1; d >= 0; d--) {
+            if (rollingIndex[2*d] == iid) {
+                popTo(d);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Pops the top-most frame, whichever call site pushed it.
+     */
+    public void pop() {
+        if (overflow > 0) {
+            overflow--;
+        } else if (depth > 0) {
+            popTo(depth - 1);
+        }
+    }
+
+    private void popTo(int d) {
+        assert (d >= 0);
+        while (depth > d) {
+            SiteCounts c = counts[depth];
+            if (c != null) {
+                c.clear();
+            }
+            depth--;
+        }
+    }
+
+    /**
+     * Empties the stack, so that the next call is at depth zero.
+     */
+    public void reset() {
+        overflow = 0;
+        popTo(0);
+        SiteCounts c = counts[0];
+        if (c != null) {
+            c.clear();
+        }
+    }
+
+    /**
+     * Counts one more occurrence of a key in the current frame, and returns the execution
+     * index of that occurrence.
+     *
+     * @param key the key (e.g. an iid) to count
+     * @return the call sites and counts leading here, followed by the key and its count
+     */
+    public int[] executionIndex(int key) {
+        executionIndexHash(key);
+        return lastExecutionIndex();
+    }
+
+    /**
+     * Counts one more occurrence of a key in the current frame, like {@link #executionIndex(int)},
+     * but returns the hash of that occurrence's execution index instead of a copy of it.
+     *
+     * @param key the key (e.g. an iid) to count
+     * @return the hash of the execution index, as {@link #hash(int[])} would compute it
+     */
+    public long executionIndexHash(int key) {
+        int count = countsAt(depth).increment(key);
+        rollingIndex[2*depth] = key;
+        rollingIndex[2*depth + 1] = count;
+        return hash(depth == 0 ? HASH_SEED : frameHashes[depth - 1], key, count);
+    }
+
+    /**
+     * Returns a copy of the execution index of the last key counted. Only valid until the
+     * stack next changes.
+     *
+     * @return the call sites and counts leading to the last key counted, followed by the key and its count
+     */
+    public int[] lastExecutionIndex() {
+        return Arrays.copyOf(rollingIndex, 2*(depth+1));
+    }
+
+    /**
+     * Compares the execution index of the last key counted with another, without copying it.
+     * Only valid until the stack next changes.
+     *
+     * @param ei an execution index
+     * @return whether <tt>ei</tt> is the execution index of the last key counted
+     */
+    public boolean isLastExecutionIndex(int[] ei) {
+        if (ei.length != 2*(depth+1)) {
+            return false;
+        }
+        for (int i = ei.length - 1; i >= 0; i--) {
+            if (ei[i] != rollingIndex[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the 64-bit hash of an execution index.
+     *
+     * @param ei (iid, count) pairs, outermost first
+     * @return the hash
+     */
+    public static long hash(int[] ei) {
+        long h = HASH_SEED;
+        for (int i = 0; i + 1 < ei.length; i += 2) {
+            h = hash(h, ei[i], ei[i+1]);
+        }
+        return h;
+    }
+
+    /** Extends the hash of an execution index by one (iid, count) pair. */
+    private static long hash(long h, int iid, int count) {
+        h = (h ^ (((long) iid << 32) | (count & 0xFFFFFFFFL))) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * An open-addressing map from key to a positive count; zero marks an empty slot.
+     */
+    private static final class SiteCounts {
+        private int[] keys = new int[16];
+        private int[] values = new int[16];
+        private int size = 0;
+
+        private static int slot(int key, int mask) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        int increment(int key) {
+            int mask = keys.length - 1;
+            int idx = slot(key, mask);
+            while (true) {
+                if (values[idx] == 0) {
+                    keys[idx] = key;
+                    values[idx] = 1;
+                    if (++size * 2 > keys.length) {
+                        grow();
+                    }
+                    return 1;
+                }
+                if (keys[idx] == key) {
+                    return ++values[idx];
+                }
+                idx = (idx + 1) & mask;
+            }
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != 0) {
+                    int idx = slot(oldKeys[i], mask);
+                    while (values[idx] != 0) {
+                        idx = (idx + 1) & mask;
+                    }
+                    keys[idx] = oldKeys[i];
+                    values[idx] = oldValues[i];
+                }
+            }
+        }
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(values, 0);
+                size = 0;
+            }
+        }
+    }
+}
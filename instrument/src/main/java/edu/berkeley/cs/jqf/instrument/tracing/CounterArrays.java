@@ -0,0 +1,98 @@
+package edu.berkeley.cs.jqf.instrument.tracing;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The coverage counter arrays of classes instrumented with <tt>janala.inlineCounters</tt>.
+ *
+ * <p>Such a class holds one <tt>int[]</tt> of hit counts, and its branch probes increment it
+ * in place instead of calling into {@link SingleSnoop}. The array is allocated, and registered
+ * here, the first time a method of the class is entered. Slot <tt>i</tt> of the array counts
+ * coverage key <tt>base + i</tt>, or, with stable ids, a key of its own that the class passes
+ * in when it registers the array, so that each probe keeps the same key it would have had
+ * without inline counters.</p>
+ *
+ * <p>Every registered array is harvested, so that counts from methods that were entered
+ * before the last harvest and are still running go to the trial they were made in. This costs
+ * a pass over the counters of every class that has run so far, whether it ran in this trial or
+ * not.</p>
+ *
+ * <p>Increments are not atomic and are not attributed to threads, so concurrent threads may
+ * lose counts and any thread's coverage counts towards the current trial.</p>
+ */
+public final class CounterArrays {
+
+    /** Receives harvested counts */
+    public interface Harvester {
+        void add(int key, int count);
+    }
+
+    /** Where the slots of an array map to */
+    private static final class Keys {
+        final int base;
+        /** The key of each slot, or null if they follow on from <tt>base</tt> */
+        final int[] keys;
+
+        Keys(int base, int[] keys) {
+            this.base = base;
+            this.keys = keys;
+        }
+    }
+
+    /** Arrays compare by identity, and those of unloaded classes can go */
+    private static final Map<int[], Keys> registered = new WeakHashMap<>();
+
+    private CounterArrays() {}
+
+    /**
+     * Allocates the counter array of a class whose slots count consecutive keys.
+     *
+     * @param base the coverage key of slot 0
+     * @param width the number of slots
+     * @return the new counter array
+     */
+    static synchronized int[] register(int base, int width) {
+        int[] counts = new int[width];
+        registered.put(counts, new Keys(base, null));
+        return counts;
+    }
+
+    /**
+     * Allocates the counter array of a class whose slots each have a key of their own.
+     *
+     * @param encodedKeys the key of each slot, as two chars (high half first), so that the
+     *                    class can hold them in a string constant
+     * @return the new counter array
+     */
+    static synchronized int[] register(String encodedKeys) {
+        int[] keys = new int[encodedKeys.length() / 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (encodedKeys.charAt(2 * i) << 16) | encodedKeys.charAt(2 * i + 1);
+        }
+        int[] counts = new int[keys.length];
+        registered.put(counts, new Keys(0, keys));
+        return counts;
+    }
+
+    /**
+     * Passes every non-zero count of every array to a harvester, and clears them.
+     *
+     * @param harvester receives (coverage key, count) pairs; may be null to just clear
+     */
+    public static synchronized void harvest(Harvester harvester) {
+        for (Map.Entry<int[], Keys> entry : registered.entrySet()) {
+            int[] counts = entry.getKey();
+            Keys keys = entry.getValue();
+            for (int i = 0; i < counts.length; i++) {
+                int count = counts[i];
+                if (count != 0) {
+                    counts[i] = 0;
+                    if (harvester != null) {
+                        harvester.add(keys.keys != null ? keys.keys[i] : keys.base + i, count);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -119,6 +119,8 @@ public final class SingleSnoop {
     }
 
     public static void REGISTER_THREAD(Thread thread) {
+        // Attribute the thread's coverage to the current run
+        coverageListener.registerThread(thread);
         // Mark entry point as run()
         try {
             // Get a reference to the Thread's Runnable if it exists
@@ -1044,26 +1046,20 @@ public final class SingleSnoop {
         coverageListener.logCoverage(iid, branch);
     }
 
-    public static void LOGLOOKUPSWITCH(int value, int iid, int dflt, int[] cases) {
-        // Compute arm index or else default
-        int arm = cases.length;
-        for (int i = 0; i < cases.length; i++) {
-            if (value == cases[i]) {
-                arm = i;
-                break;
-            }
-        }
-        arm++;
-        coverageListener.logCoverage(iid, arm);
+    public static int[] REGISTER_COUNTERS(int base, int width) {
+        return CounterArrays.register(base, width);
     }
 
-    public static void LOGTABLESWITCH(int value, int iid, int min, int max, int dflt) {
-        int arm = 1 + max - min;
-        if (value >= min && value <= max) {
-            arm = value - min;
-        }
-        arm++;
-        coverageListener.logCoverage(iid, arm);
+    public static int[] REGISTER_COUNTERS(String encodedKeys) {
+        return CounterArrays.register(encodedKeys);
+    }
+
+    public static void LOGCALL(int iid) {
+        CallStack.current().call(iid);
+    }
+
+    public static void LOGRETURN(int iid) {
+        CallStack.current().ret(iid);
     }
 
 }
@@ -0,0 +1,102 @@
+package janala.instrument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * The superclass, interfaces and access flags of classes that {@link SafeClassWriter} has
+ * looked up, so that computing frames does not parse the same ancestors again for every
+ * class that is instrumented.
+ *
+ * <p>Two class loaders may define different classes with the same name, so entries are kept
+ * per class loader, except for <tt>java/</tt> classes, which every loader must delegate to the
+ * bootstrap loader and which are therefore shared. Each loader's entries are dropped with the
+ * loader, and a loader's map is simply cleared once it grows past
+ * <tt>janala.hierarchyCacheSize</tt> entries. Lookups may run on any number of threads.</p>
+ */
+public class ClassHierarchyCache {
+
+  /** What getCommonSuperClass needs to know about a class */
+  public static final class TypeInfo {
+    final int access;
+    final String superName;
+    final String[] interfaces;
+
+    TypeInfo(int access, String superName, String[] interfaces) {
+      this.access = access;
+      this.superName = superName;
+      this.interfaces = interfaces;
+    }
+  }
+
+  public static final ClassHierarchyCache instance = new ClassHierarchyCache(
+      Config.instance.hierarchyCacheSize, Config.instance.hierarchyCache);
+
+  private final int maxEntriesPerLoader;
+  private final boolean enabled;
+  private final ConcurrentHashMap<String, TypeInfo> shared = new ConcurrentHashMap<>();
+  private final Map<ClassLoader, ConcurrentHashMap<String, TypeInfo>> perLoader =
+      Collections.synchronizedMap(new WeakHashMap<ClassLoader, ConcurrentHashMap<String, TypeInfo>>());
+
+  ClassHierarchyCache(int maxEntriesPerLoader, boolean enabled) {
+    this.maxEntriesPerLoader = maxEntriesPerLoader;
+    this.enabled = enabled;
+  }
+
+  /**
+   * Returns the hierarchy information of a class, reading it through a class loader the
+   * first time.
+   *
+   * @param loader the loader that sees the class
+   * @param type the internal name of a class or interface
+   * @return the class's access flags, superclass and interfaces
+   * @throws IOException if the class file cannot be found or read
+   */
+  public TypeInfo get(ClassLoader loader, String type) throws IOException {
+    if (!enabled) {
+      return read(loader, type);
+    }
+    ConcurrentHashMap<String, TypeInfo> map = type.startsWith("java/") ? shared : mapFor(loader);
+    TypeInfo info = map.get(type);
+    if (info == null) {
+      // Two threads may both read the class; that is cheaper than holding a lock while we do
+      info = read(loader, type);
+      if (map.size() >= maxEntriesPerLoader) {
+        map.clear();
+      }
+      map.put(type, info);
+    }
+    return info;
+  }
+
+  private ConcurrentHashMap<String, TypeInfo> mapFor(ClassLoader loader) {
+    synchronized (perLoader) {
+      ConcurrentHashMap<String, TypeInfo> map = perLoader.get(loader);
+      if (map == null) {
+        map = new ConcurrentHashMap<>();
+        perLoader.put(loader, map);
+      }
+      return map;
+    }
+  }
+
+  private static TypeInfo read(ClassLoader loader, String type) throws IOException {
+    String resource = type + ".class";
+    InputStream is = loader.getResourceAsStream(resource);
+    if (is == null) {
+      throw new IOException("Cannot create ClassReader for type " + type);
+    }
+    try {
+      ClassReader cr = new ClassReader(is);
+      return new TypeInfo(cr.getAccess(), cr.getSuperName(), cr.getInterfaces());
+    } finally {
+      is.close();
+    }
+  }
+}
@@ -18,6 +18,16 @@ class Config {
   public final boolean instrumentHeapLoad;
   public final boolean instrumentAlloc;
   public final String instrumentationCacheDir;
+  public final boolean instrumentCalls;
+  public final boolean stableIds;
+  public final int stableIdBits;
+  public final boolean reportIdCollisions;
+  public final boolean serialTransform;
+  public final int retransformThreads;
+  public final boolean hierarchyCache;
+  public final boolean inlineCounters;
+  public final int hierarchyCacheSize;
+  public final boolean probeTable;
 
   private Config() {
       // Read properties from the conf file
@@ -61,5 +71,47 @@ class Config {
 
       instrumentationCacheDir = properties.getProperty("janala.instrumentationCacheDir");
 
+      // Call-site probes are only needed to compute execution indexes
+      instrumentCalls = Boolean.parseBoolean(properties.getProperty("janala.instrumentCalls",
+              properties.getProperty("jqf.ei.ENABLE_EXECUTION_INDEXING", "false")));
+
+      // Derive iids from class, method and probe position instead of class-load order. Probes whose
+      // ids are hashed into the same keys share coverage; about one key in 2^stableIdBits / (keys
+      // in use) collides, so 24 bits keep that near 1% even for targets with ~100k branches.
+      // Nothing is sized to the id space, so a wider one costs no memory.
+      stableIds = Boolean.parseBoolean(properties.getProperty("janala.stableIds", "false"));
+      stableIdBits = Integer.parseInt(properties.getProperty("janala.stableIdBits", "24"));
+      if (stableIdBits < 8 || stableIdBits > 28) {
+          throw new IllegalArgumentException("janala.stableIdBits must be between 8 and 28");
+      }
+      // Remembers which probe owns each stable id, to list the ones that collide
+      reportIdCollisions = Boolean.parseBoolean(properties.getProperty("janala.reportIdCollisions", "false"));
+
+      // Transform one class at a time, as we used to (for comparing start-up times)
+      serialTransform = Boolean.parseBoolean(properties.getProperty("janala.serialTransform", "false"));
+      retransformThreads = Integer.parseInt(properties.getProperty("janala.retransformThreads",
+              Integer.toString(serialTransform ? 1 : Runtime.getRuntime().availableProcessors())));
+
+      // Count branches in per-class arrays instead of calling LOGJUMP
+      inlineCounters = Boolean.parseBoolean(properties.getProperty("janala.inlineCounters", "false"));
+
+      hierarchyCache = Boolean.parseBoolean(properties.getProperty("janala.hierarchyCache", "true"));
+      hierarchyCacheSize = Integer.parseInt(properties.getProperty("janala.hierarchyCacheSize", "100000"));
+
+      // Remember where each probe is, which only logging unique branches needs
+      probeTable = Boolean.parseBoolean(properties.getProperty("janala.probeTable",
+              properties.getProperty("jqf.repro.logUniqueBranches", "false")));
+
+  }
+
+  /** Describes every setting that changes the instrumented bytecode, so that cached or
+   * pre-instrumented classes can be matched against the current configuration. */
+  String fingerprint() {
+      return "v4;snoop=" + analysisClass
+              + ";excludes=" + String.join(",", excludeInst)
+              + ";includes=" + String.join(",", includeInst)
+              + ";calls=" + instrumentCalls
+              + ";inlineCounters=" + inlineCounters
+              + ";stableIds=" + (stableIds ? stableIdBits : 0);
   }
 }
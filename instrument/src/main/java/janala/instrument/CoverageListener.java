@@ -2,4 +2,14 @@ package janala.instrument;
 
 public interface CoverageListener {
     public void logCoverage(int iid, int arm);
+
+    /**
+     * Called when the application explicitly registers a thread for tracing,
+     * so that coverage from that thread can be attributed to the current run.
+     *
+     * @param thread the thread being registered
+     */
+    public default void registerThread(Thread thread) {
+
+    }
 }
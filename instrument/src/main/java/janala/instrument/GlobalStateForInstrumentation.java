@@ -1,10 +1,31 @@
 package janala.instrument;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /** An object to keep track of (classId, methodId, instructionId) tuples during
- instrumentation. */
+ instrumentation. Classes may be instrumented on several threads at once, so ids are
+ handed out atomically. */
 public class GlobalStateForInstrumentation {
   public static GlobalStateForInstrumentation instance = new GlobalStateForInstrumentation();
-  private int iid = 0;
+
+  static {
+    // Classes that were instrumented ahead of time keep their iids, whether or not the agent is running
+    OfflineInstrumenter.reserveIds(System.getProperty("java.class.path"));
+  }
+
+  private final AtomicInteger iid = new AtomicInteger();
+
+  // With janala.stableIds, iids are hashed from where the probe is instead of counted
+  private final boolean stableIds;
+  private final int stableIdSpace;
+  // Only with janala.reportIdCollisions, as it keeps a string per id
+  private final ConcurrentHashMap<Integer, String> stableIdOwners;
+  private final List<String> collisions = Collections.synchronizedList(new ArrayList<String>());
+  private final ProbeTable probeTable = new ProbeTable(Config.instance.probeTable);
   private int mid = 0;
   private int cid = 0;
 
@@ -14,15 +35,100 @@ public class GlobalStateForInstrumentation {
   private final static int MBITS = 10;  // MID occupies the next 10 bits
   private final static int IBITS = 32 - CBITS - MBITS;  // MID occupies the remaining 12 bits
 
+  public GlobalStateForInstrumentation() {
+    this(Config.instance.stableIds, Config.instance.stableIdBits, Config.instance.reportIdCollisions);
+  }
+
+  /** Creates a state that hands out stable iids of <tt>stableIdBits</tt> bits, whatever the config says;
+   * for tests and tools that need both kinds of iids in one JVM. */
+  public GlobalStateForInstrumentation(int stableIdBits, boolean reportIdCollisions) {
+    this(true, stableIdBits, reportIdCollisions);
+  }
+
+  private GlobalStateForInstrumentation(boolean stableIds, int stableIdBits, boolean reportIdCollisions) {
+    this.stableIds = stableIds;
+    this.stableIdSpace = 1 << stableIdBits;
+    this.stableIdOwners = reportIdCollisions ? new ConcurrentHashMap<Integer, String>() : null;
+  }
+
   public int incAndGetId() {
-    iid++;
     //validate(iid, IBITS);
-    return getId();
+    return iid.incrementAndGet();
   }
 
+  /** Reserves <tt>n</tt> consecutive ids, and returns the first of them. */
+  public int incAndGetIds(int n) {
+    return iid.getAndAdd(n) + 1;
+  }
+
+  /** Returns the last iid handed out, or, with stable ids, the size of the id space. Either way,
+   * no coverage key is much bigger than this. */
   public int getId() {
     //return (cid << (32 - CBITS)) + (mid << (32 - CBITS - MBITS)) + iid;
-      return iid;
+      return stableIds ? stableIdSpace : iid.get();
+  }
+
+  public boolean isStable() {
+    return stableIds;
+  }
+
+  /** Returns the number of bits in a stable iid, or 0 if iids are handed out in class-load order. */
+  public int getIdBits() {
+    return stableIds ? Integer.numberOfTrailingZeros(stableIdSpace) : 0;
+  }
+
+  /**
+   * Returns the first of <tt>width</tt> consecutive iids for a probe, derived only from the
+   * probe's class, method and position within the method. The same probe therefore gets the
+   * same iids in every JVM, whatever order classes are loaded in.
+   *
+   * <p>Iids are at least 1, as 0 is not a probe (execution indexing counts input reads under
+   * it). Two different probes may hash to overlapping ranges, and then share coverage keys;
+   * with <tt>janala.reportIdCollisions</tt>, each such collision is recorded (see
+   * {@link #getCollisions()}).</p>
+   *
+   * @param className the internal name of the class
+   * @param methodName the name of the method
+   * @param desc the descriptor of the method
+   * @param ordinal the position of the probe among the probes of the method
+   * @param width the number of consecutive iids the probe needs (one per arm)
+   */
+  public int stableId(String className, String methodName, String desc, int ordinal, int width) {
+    String owner = className + "." + methodName + desc + "#" + ordinal;
+    // 64-bit FNV-1a
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < owner.length(); i++) {
+      h ^= owner.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= (h >>> 32);
+    int range = Math.max(1, stableIdSpace - width);
+    int base = 1 + (int) Math.floorMod(h, (long) range);
+    if (stableIdOwners == null) {
+      return base;
+    }
+    for (int id = base; id < base + width; id++) {
+      String previous = stableIdOwners.putIfAbsent(id, owner);
+      // The same class may be instrumented more than once (e.g. by several class loaders)
+      if (previous != null && !previous.equals(owner)) {
+        collisions.add(String.format("%d\t%s\t%s", id, previous, owner));
+        break;
+      }
+    }
+    return base;
+  }
+
+  /** Returns one line per stable iid collision, as "iid, earlier probe, later probe" separated by tabs;
+   * always empty unless <tt>janala.reportIdCollisions</tt> is set. */
+  public List<String> getCollisions() {
+    synchronized (collisions) {
+      return new ArrayList<>(collisions);
+    }
+  }
+
+  /** Returns the table of where each probe is, which is only filled in with <tt>janala.probeTable</tt>. */
+  public ProbeTable getProbeTable() {
+    return probeTable;
   }
 
   //public int getMid() {
@@ -0,0 +1,174 @@
+package janala.instrument;
+
+import java.util.Arrays;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Per-class state for <tt>janala.inlineCounters</tt>: hands out slots in the class's coverage
+ * counter array, emits the probes that use them, and adds the members that hold the array.
+ *
+ * <p>A class gets a static <tt>int[]</tt> of counters and the coverage key of its slot 0, plus
+ * a static helper that every method calls on entry. The helper allocates and registers the
+ * array the first time round (see <tt>CounterArrays</tt>), and counts the method entry.
+ * Branch probes then increment their slot in place, since the array must exist by the time a
+ * method gets to a branch. No class initializer is added, so serialVersionUIDs do not change.</p>
+ *
+ * <p>The slots of a class map to consecutive coverage keys, reserved once the whole class has
+ * been visited. With stable ids, each probe's slots map to the keys hashed for that probe
+ * instead, which the helper passes along when it registers the array; a whole class hashed as
+ * one block would overlap other classes far more often than its probes do one by one.</p>
+ */
+class InlineCounters implements Opcodes {
+  static final String COUNTERS_FIELD = "$$jqfCounters";
+  static final String BASE_FIELD = "$$jqfBase";
+  static final String ENTER_METHOD = "$$jqfEnter";
+
+  /** Keys per string constant; each takes two chars of up to three bytes, within the 64KB limit */
+  private static final int KEYS_PER_CONSTANT = 8192;
+
+  private final String className;
+  private final GlobalStateForInstrumentation instrumentationState;
+  private int nextSlot = 0;
+  private int[] slotKeys; // With stable ids, the coverage key of each slot
+  private int base = -1; // Without stable ids, the coverage key of slot 0, once reserved
+
+  InlineCounters(String className, GlobalStateForInstrumentation instrumentationState) {
+    this.className = className;
+    this.instrumentationState = instrumentationState;
+    if (instrumentationState.isStable()) {
+      this.slotKeys = new int[16];
+    }
+  }
+
+  /**
+   * Reserves <tt>width</tt> consecutive slots, and returns the first.
+   *
+   * @param key with stable ids, the first of the probe's <tt>width</tt> keys; otherwise ignored
+   */
+  int newSlots(int width, int key) {
+    int slot = nextSlot;
+    nextSlot += width;
+    if (slotKeys != null) {
+      if (nextSlot > slotKeys.length) {
+        slotKeys = Arrays.copyOf(slotKeys, Math.max(nextSlot, 2 * slotKeys.length));
+      }
+      for (int i = 0; i < width; i++) {
+        slotKeys[slot + i] = key + i;
+      }
+    }
+    return slot;
+  }
+
+  /** Returns the coverage key of a slot; without stable ids, only once {@link #addMembers} has run. */
+  int keyOf(int slot) {
+    return slotKeys != null ? slotKeys[slot] : base + slot;
+  }
+
+  /** Emits a call to the method-entry helper, which also counts the given slot. */
+  void addEnterProbe(MethodVisitor mv, int slot) {
+    Utils.addBipushInsn(mv, slot);
+    mv.visitMethodInsn(INVOKESTATIC, className, ENTER_METHOD, "(I)V", false);
+  }
+
+  /** Emits an increment of a slot. */
+  void addIncrement(MethodVisitor mv, int slot) {
+    mv.visitFieldInsn(GETSTATIC, className, COUNTERS_FIELD, "[I");
+    Utils.addBipushInsn(mv, slot);
+    mv.visitInsn(DUP2);
+    mv.visitInsn(IALOAD);
+    mv.visitInsn(ICONST_1);
+    mv.visitInsn(IADD);
+    mv.visitInsn(IASTORE);
+  }
+
+  /** Pushes the iid of a slot, for probes that still call into the analysis class. */
+  void addIid(MethodVisitor mv, int slot) {
+    if (slotKeys != null) {
+      Utils.addBipushInsn(mv, slotKeys[slot]);
+      return;
+    }
+    mv.visitFieldInsn(GETSTATIC, className, BASE_FIELD, "I");
+    Utils.addBipushInsn(mv, slot);
+    mv.visitInsn(IADD);
+  }
+
+  /** Adds the counter fields and the method-entry helper, if any probe was emitted. To be
+   * called once every method of the class has been visited. */
+  void addMembers(ClassVisitor cv) {
+    if (nextSlot == 0) {
+      return;
+    }
+    int width = nextSlot;
+    if (slotKeys == null) {
+      base = instrumentationState.incAndGetIds(width);
+    }
+
+    int fieldAccess = ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC | ACC_TRANSIENT;
+    FieldVisitor fv = cv.visitField(fieldAccess | ACC_VOLATILE, COUNTERS_FIELD, "[I", null, null);
+    if (fv != null) {
+      fv.visitEnd();
+    }
+    if (slotKeys == null) {
+      fv = cv.visitField(fieldAccess, BASE_FIELD, "I", null, null);
+      if (fv != null) {
+        fv.visitEnd();
+      }
+    }
+
+    MethodVisitor mv = cv.visitMethod(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, ENTER_METHOD, "(I)V", null, null);
+    if (mv == null) {
+      return;
+    }
+    Label ready = new Label();
+    mv.visitCode();
+    // Allocate the array on first use; the base is written first, as the array publishes it
+    mv.visitFieldInsn(GETSTATIC, className, COUNTERS_FIELD, "[I");
+    mv.visitInsn(DUP);
+    mv.visitJumpInsn(IFNONNULL, ready);
+    mv.visitInsn(POP);
+    if (slotKeys == null) {
+      Utils.addBipushInsn(mv, base);
+      mv.visitFieldInsn(PUTSTATIC, className, BASE_FIELD, "I");
+      Utils.addBipushInsn(mv, base);
+      Utils.addBipushInsn(mv, width);
+      mv.visitMethodInsn(INVOKESTATIC, Config.instance.analysisClass, "REGISTER_COUNTERS", "(II)[I", false);
+    } else {
+      addEncodedKeys(mv, width);
+      mv.visitMethodInsn(INVOKESTATIC, Config.instance.analysisClass, "REGISTER_COUNTERS",
+          "(Ljava/lang/String;)[I", false);
+    }
+    mv.visitInsn(DUP);
+    mv.visitFieldInsn(PUTSTATIC, className, COUNTERS_FIELD, "[I");
+    mv.visitLabel(ready);
+    // Count the method entry
+    mv.visitVarInsn(ILOAD, 0);
+    mv.visitInsn(DUP2);
+    mv.visitInsn(IALOAD);
+    mv.visitInsn(ICONST_1);
+    mv.visitInsn(IADD);
+    mv.visitInsn(IASTORE);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /** Pushes the keys of the slots as one string of two chars per key, built from as many constants as needed. */
+  private void addEncodedKeys(MethodVisitor mv, int width) {
+    for (int start = 0; start < width; start += KEYS_PER_CONSTANT) {
+      int end = Math.min(width, start + KEYS_PER_CONSTANT);
+      StringBuilder sb = new StringBuilder(2 * (end - start));
+      for (int slot = start; slot < end; slot++) {
+        sb.append((char) (slotKeys[slot] >>> 16)).append((char) slotKeys[slot]);
+      }
+      mv.visitLdcInsn(sb.toString());
+      if (start > 0) {
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;", false);
+      }
+    }
+  }
+}
@@ -0,0 +1,364 @@
+package janala.instrument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Instruments a whole classpath ahead of time into one jar, so that fuzzing and repro runs
+ * can put that jar in front of the classpath instead of instrumenting every class again
+ * through the agent on every start.
+ *
+ * <p>The jar holds only the classes that the agent would have instrumented. Its manifest
+ * records a SHA-256 of each classpath entry, a hash of the instrumentation config and the
+ * range of iids that were handed out; {@link #isFresh} only accepts the jar if the first
+ * two still match, and the JVM that loads the jar reserves the range (see {@link #reserveIds})
+ * so that the classes it still instruments get other iids. Classes on the boot class path (e.g. <tt>java/text</tt>) can only be
+ * instrumented by the agent, so they are not covered when running from this jar.</p>
+ *
+ * <pre>
+ *   OfflineInstrumenter OUT_JAR CLASSPATH           instruments CLASSPATH into OUT_JAR
+ *   OfflineInstrumenter --check OUT_JAR CLASSPATH   exits with 0 iff OUT_JAR is fresh
+ * </pre>
+ */
+public class OfflineInstrumenter {
+
+  static final Attributes.Name CONFIG_HASH = new Attributes.Name("Janala-Config-Hash");
+  static final Attributes.Name CLASSPATH_HASHES = new Attributes.Name("Janala-Classpath-Hashes");
+  static final Attributes.Name ID_RANGE = new Attributes.Name("Janala-Id-Range");
+  static final Attributes.Name STABLE_ID_BITS = new Attributes.Name("Janala-Stable-Id-Bits");
+
+  /** The jars whose iids were reserved in this JVM */
+  private static final Set<File> reservedJars = new HashSet<>();
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 3 && args[0].equals("--check")) {
+      boolean fresh = isFresh(new File(args[1]), args[2]);
+      if (!fresh && Config.instance.verbose) {
+        System.err.println("[JANALA] " + args[1] + " is missing or stale");
+      }
+      System.exit(fresh ? 0 : 1);
+    }
+    if (args.length != 2) {
+      System.err.println("Usage: OfflineInstrumenter [--check] OUT_JAR CLASSPATH");
+      System.exit(2);
+    }
+    long start = System.nanoTime();
+    int count = instrument(new File(args[0]), args[1]);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(String.format("[JANALA] Instrumented %d classes into %s in %.2fs (%.0f classes/sec)",
+        count, args[0], seconds, count / seconds));
+  }
+
+  /**
+   * Instruments every class on a classpath that the agent would instrument, and writes
+   * them to a jar.
+   *
+   * @param outJar the jar to write
+   * @param classpath the classpath, as for <tt>java -cp</tt> (entries may end with <tt>*</tt>)
+   * @return the number of classes instrumented
+   * @throws IOException if the classpath cannot be read or the jar cannot be written
+   */
+  public static int instrument(File outJar, String classpath) throws IOException {
+    List<File> entries = expand(classpath);
+    GlobalStateForInstrumentation state = GlobalStateForInstrumentation.instance;
+    int firstId = state.getId() + 1;
+
+    Manifest manifest = new Manifest();
+    Attributes attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.put(CONFIG_HASH, configHash());
+    attributes.put(CLASSPATH_HASHES, classpathHashes(entries));
+
+    File tmp = File.createTempFile(outJar.getName(), ".tmp", outJar.getAbsoluteFile().getParentFile());
+    int count = 0;
+    URL[] urls = new URL[entries.size()];
+    for (int i = 0; i < urls.length; i++) {
+      urls[i] = entries.get(i).toURI().toURL();
+    }
+    try (URLClassLoader loader = new URLClassLoader(urls, OfflineInstrumenter.class.getClassLoader());
+         JarOutputStream out = new JarOutputStream(new FileOutputStream(tmp))) {
+      Set<String> seen = new HashSet<>();
+      List<ProbeTable.Probe> probes = new ArrayList<>();
+      for (File entry : entries) {
+        try (JarFile jar = entry.isDirectory() ? null : new JarFile(entry)) {
+          for (String path : listClasses(entry)) {
+            // Like the JVM, only the first class of each name on the classpath counts
+            if (!seen.add(path)) {
+              continue;
+            }
+            String cname = path.substring(0, path.length() - ".class".length());
+            if (SnoopInstructionTransformer.shouldExclude(cname)) {
+              continue;
+            }
+            byte[] instrumented;
+            try {
+              instrumented = SnoopInstructionTransformer.instrumentBytes(loader, cname, readClass(entry, jar, path), true,
+                  probes);
+            } catch (Throwable e) {
+              System.err.println("[JANALA] Error instrumenting class " + cname + "; leaving it uninstrumented");
+              if (Config.instance.verbose) {
+                e.printStackTrace();
+              }
+              continue;
+            }
+            out.putNextEntry(new JarEntry(path));
+            out.write(instrumented);
+            out.closeEntry();
+            count++;
+          }
+        }
+      }
+      // Lets the probe table describe the classes of this jar in the JVMs that load it
+      out.putNextEntry(new JarEntry(ProbeTable.RESOURCE));
+      out.write(ProbeTable.toText(probes).getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+      // The manifest goes last, since only now do we know which ids were used (JarFile finds
+      // it by name wherever it is)
+      if (state.isStable()) {
+        attributes.put(STABLE_ID_BITS, Integer.toString(state.getIdBits()));
+      } else {
+        attributes.put(ID_RANGE, firstId + "-" + state.getId());
+      }
+      out.putNextEntry(new JarEntry(JarFile.MANIFEST_NAME));
+      manifest.write(out);
+      out.closeEntry();
+    } catch (IOException | RuntimeException e) {
+      tmp.delete();
+      throw e;
+    }
+    Files.move(tmp.toPath(), outJar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return count;
+  }
+
+  /**
+   * Checks whether a jar written by {@link #instrument} still matches a classpath and the
+   * current instrumentation config.
+   *
+   * @param jar the pre-instrumented jar
+   * @param classpath the classpath it should have been built from
+   * @return true iff the jar exists and was built from exactly this classpath and config
+   */
+  public static boolean isFresh(File jar, String classpath) {
+    if (!jar.isFile()) {
+      return false;
+    }
+    try (JarFile jarFile = new JarFile(jar)) {
+      Manifest manifest = jarFile.getManifest();
+      if (manifest == null) {
+        return false;
+      }
+      Attributes attributes = manifest.getMainAttributes();
+      return configHash().equals(attributes.getValue(CONFIG_HASH))
+          && classpathHashes(expand(classpath)).equals(attributes.getValue(CLASSPATH_HASHES));
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reserves the iids used by the pre-instrumented jars on a classpath, so that classes
+   * instrumented in this JVM do not share coverage keys with them, and so that coverage is
+   * sized for their keys. The jars on the JVM's own classpath are reserved as soon as
+   * {@link GlobalStateForInstrumentation} is loaded; jars loaded in other ways (e.g. through
+   * a <tt>URLClassLoader</tt>) must be reserved before anything else is instrumented. Jars
+   * that were already reserved are skipped. Stable iids need no reserving, as they do not
+   * depend on what else was instrumented.
+   *
+   * @param classpath the classpath that the jars are loaded from
+   * @throws IllegalStateException if a jar's id range is malformed, or overlaps iids that
+   *                               were already handed out
+   */
+  public static synchronized void reserveIds(String classpath) {
+    GlobalStateForInstrumentation state = GlobalStateForInstrumentation.instance;
+    if (state.isStable()) {
+      return;
+    }
+    for (File entry : expand(classpath)) {
+      if (reservedJars.contains(entry.getAbsoluteFile())) {
+        continue;
+      }
+      String range;
+      try (JarFile jarFile = entry.isFile() ? new JarFile(entry) : null) {
+        Manifest manifest = jarFile == null ? null : jarFile.getManifest();
+        range = manifest == null ? null : manifest.getMainAttributes().getValue(ID_RANGE);
+      } catch (IOException e) {
+        continue; // Not a jar, so not one of ours
+      }
+      if (range == null) {
+        continue;
+      }
+      int first;
+      int last;
+      try {
+        int dash = range.indexOf('-');
+        first = Integer.parseInt(range.substring(0, dash));
+        last = Integer.parseInt(range.substring(dash + 1));
+      } catch (RuntimeException e) {
+        throw new IllegalStateException("Malformed " + ID_RANGE + " in " + entry + ": " + range);
+      }
+      if (first > last + 1) { // An empty range is first = last + 1
+        throw new IllegalStateException("Malformed " + ID_RANGE + " in " + entry + ": " + range);
+      }
+      if (first <= state.getId() && first <= last) {
+        throw new IllegalStateException("Iids " + range + " of " + entry + " overlap iids 1-" + state.getId()
+            + " that were already handed out; instrument the classpath into a single jar");
+      }
+      if (last > state.getId()) {
+        state.incAndGetIds(last - state.getId());
+      }
+      reservedJars.add(entry.getAbsoluteFile());
+    }
+  }
+
+  static String configHash() {
+    return toHex(sha256().digest(Config.instance.fingerprint().getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /** Returns one SHA-256 per entry, separated by spaces. */
+  private static String classpathHashes(List<File> entries) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (File entry : entries) {
+      if (sb.length() > 0) {
+        sb.append(' ');
+      }
+      sb.append(hash(entry));
+    }
+    return sb.toString();
+  }
+
+  /** Hashes a jar's bytes, or the names and contents of the class files under a directory. */
+  private static String hash(File entry) throws IOException {
+    MessageDigest digest = sha256();
+    if (entry.isDirectory()) {
+      for (String path : listClasses(entry)) {
+        digest.update(path.getBytes(StandardCharsets.UTF_8));
+        digest.update(Files.readAllBytes(new File(entry, path).toPath()));
+      }
+    } else if (entry.isFile()) {
+      byte[] buf = new byte[64 * 1024];
+      try (InputStream in = new DigestInputStream(new FileInputStream(entry), digest)) {
+        while (in.read(buf) != -1) {
+          // Digested as a side effect
+        }
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  /** Splits a classpath, expanding <tt>dir/*</tt> to the jars in <tt>dir</tt> (in name order)
+   * and dropping entries that do not exist. */
+  static List<File> expand(String classpath) {
+    List<File> entries = new ArrayList<>();
+    for (String element : classpath.split(File.pathSeparator)) {
+      if (element.isEmpty()) {
+        continue;
+      }
+      if (element.endsWith("*")) {
+        File[] jars = new File(element.substring(0, element.length() - 1)).listFiles();
+        if (jars != null) {
+          Arrays.sort(jars);
+          for (File jar : jars) {
+            String name = jar.getName().toLowerCase();
+            if (jar.isFile() && (name.endsWith(".jar") || name.endsWith(".zip"))) {
+              entries.add(jar);
+            }
+          }
+        }
+      } else {
+        File file = new File(element);
+        if (file.exists()) {
+          entries.add(file);
+        }
+      }
+    }
+    return entries;
+  }
+
+  /** Returns the paths of the class files in a jar or directory, in a fixed order. */
+  private static List<String> listClasses(File entry) throws IOException {
+    List<String> paths = new ArrayList<>();
+    if (entry.isDirectory()) {
+      Path root = entry.toPath();
+      try (Stream<Path> files = Files.walk(root)) {
+        paths.addAll(files.filter(Files::isRegularFile)
+            .map(p -> root.relativize(p).toString().replace(File.separatorChar, '/'))
+            .filter(OfflineInstrumenter::isInstrumentableClass)
+            .collect(Collectors.toList()));
+      }
+    } else {
+      try (JarFile jar = new JarFile(entry)) {
+        Enumeration<JarEntry> jarEntries = jar.entries();
+        while (jarEntries.hasMoreElements()) {
+          String name = jarEntries.nextElement().getName();
+          if (isInstrumentableClass(name)) {
+            paths.add(name);
+          }
+        }
+      }
+    }
+    paths.sort(null);
+    return paths;
+  }
+
+  private static boolean isInstrumentableClass(String path) {
+    return path.endsWith(".class") && !path.startsWith("META-INF/")
+        && !path.endsWith("module-info.class") && !path.endsWith("package-info.class");
+  }
+
+  private static byte[] readClass(File entry, JarFile jar, String path) throws IOException {
+    if (jar == null) {
+      return Files.readAllBytes(new File(entry, path).toPath());
+    }
+    try (InputStream in = jar.getInputStream(jar.getJarEntry(path))) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        bytes.write(buf, 0, n);
+      }
+      return bytes.toByteArray();
+    }
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,159 @@
+package janala.instrument;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Maps the coverage keys of probes back to the class, method and line that they were emitted in, so that coverage
+ * can be reported the way branch events used to describe themselves.
+ *
+ * <p>Probes only pass their iid (and arm) at run time, so this side table is filled in as classes are
+ * instrumented. Classes that are not instrumented in this JVM bring their probes along: the agent writes a
+ * <tt>.probes</tt> file next to each class in the instrumentation cache, and {@link OfflineInstrumenter} puts the
+ * probes of a whole jar in its {@link #RESOURCE} entry, which is read from the classpath on the first lookup.
+ * Each probe is stored as a line of tab-separated (first iid, number of keys, class, method, line).</p>
+ *
+ * <p>The table is only kept with <tt>janala.probeTable</tt>, which is on by default when
+ * <tt>jqf.repro.logUniqueBranches</tt> is.</p>
+ */
+public class ProbeTable {
+
+  /** The jar entry that lists the probes of an offline-instrumented jar */
+  static final String RESOURCE = "META-INF/janala.probes";
+
+  /** A probe that counts coverage, with one key per arm */
+  static final class Probe {
+    final int iid;
+    final int width;
+    final String className;
+    final String methodName;
+    final int line;
+
+    Probe(int iid, int width, String className, String methodName, int line) {
+      this.iid = iid;
+      this.width = width;
+      this.className = className;
+      this.methodName = methodName;
+      this.line = line;
+    }
+
+    /** Returns this probe with another first iid, for probes that were numbered by counter slot */
+    Probe withIid(int iid) {
+      return new Probe(iid, width, className, methodName, line);
+    }
+
+    String toLine() {
+      return iid + "\t" + width + "\t" + className + "\t" + methodName + "\t" + line;
+    }
+
+    static Probe fromLine(String line) {
+      String[] fields = line.split("\t");
+      if (fields.length != 5) {
+        throw new IllegalArgumentException("Not a probe: " + line);
+      }
+      return new Probe(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), fields[2], fields[3],
+          Integer.parseInt(fields[4]));
+    }
+  }
+
+  private final boolean enabled;
+  private final ConcurrentSkipListMap<Integer, Probe> probes = new ConcurrentSkipListMap<>();
+  private volatile boolean loadedResources;
+
+  ProbeTable(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Returns whether probes are being recorded. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Records the probes of an instrumented class, if the table is kept. */
+  void addAll(List<Probe> classProbes) {
+    if (enabled) {
+      for (Probe probe : classProbes) {
+        probes.put(probe.iid, probe);
+      }
+    }
+  }
+
+  /** Formats probes as the lines of a <tt>.probes</tt> file. */
+  static String toText(List<Probe> classProbes) {
+    StringBuilder sb = new StringBuilder();
+    for (Probe probe : classProbes) {
+      sb.append(probe.toLine()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  /** Parses the lines of a <tt>.probes</tt> file. */
+  static List<Probe> fromText(String text) {
+    List<Probe> classProbes = new ArrayList<>();
+    for (String line : text.split("\n")) {
+      if (!line.isEmpty()) {
+        classProbes.add(Probe.fromLine(line));
+      }
+    }
+    return classProbes;
+  }
+
+  /* Adds the probes of offline-instrumented jars on the classpath, once */
+  private void loadResources() {
+    if (loadedResources) {
+      return;
+    }
+    synchronized (this) {
+      if (loadedResources) {
+        return;
+      }
+      try {
+        Enumeration<URL> resources = ClassLoader.getSystemResources(RESOURCE);
+        while (resources.hasMoreElements()) {
+          try (InputStream in = resources.nextElement().openStream();
+               BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+              if (!line.isEmpty()) {
+                Probe probe = Probe.fromLine(line);
+                probes.putIfAbsent(probe.iid, probe);
+              }
+            }
+          }
+        }
+      } catch (IOException | IllegalArgumentException e) {
+        System.err.println("[JANALA] Could not read the probes of pre-instrumented classes: " + e);
+      }
+      loadedResources = true;
+    }
+  }
+
+  /**
+   * Describes a coverage key as <tt>(iid) class#method():line [arm]</tt>, where <tt>iid</tt> is the first key of
+   * its probe; or only as <tt>(key)</tt> if no known probe covers it.
+   *
+   * @param key the coverage key
+   * @return a description of the branch
+   */
+  public String describe(int key) {
+    if (enabled) {
+      loadResources();
+      Map.Entry<Integer, Probe> entry = probes.floorEntry(key);
+      if (entry != null && key < entry.getKey() + entry.getValue().width) {
+        Probe probe = entry.getValue();
+        return String.format("(%09d) %s#%s():%d [%d]", probe.iid, probe.className, probe.methodName, probe.line,
+            key - probe.iid);
+      }
+    }
+    return String.format("(%09d)", key);
+  }
+}
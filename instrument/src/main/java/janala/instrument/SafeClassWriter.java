@@ -30,8 +30,8 @@ package janala.instrument;
 
 
 import java.io.IOException;
-import java.io.InputStream;
 
+import janala.instrument.ClassHierarchyCache.TypeInfo;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
@@ -40,7 +40,8 @@ import org.objectweb.asm.Opcodes;
 
 /**
  * A ClassWriter that computes the common super class of two classes without
- * actually loading them with a ClassLoader.
+ * actually loading them with a ClassLoader. What it reads about each class is
+ * kept in the {@link ClassHierarchyCache}.
  * 
  * @author Eric Bruneton
  */
@@ -57,16 +58,16 @@ public class SafeClassWriter extends ClassWriter {
     @Override
     protected String getCommonSuperClass(final String type1, final String type2) {
         try {
-            ClassReader info1 = typeInfo(type1);
-            ClassReader info2 = typeInfo(type2);
-            if ((info1.getAccess() & Opcodes.ACC_INTERFACE) != 0) {
+            TypeInfo info1 = typeInfo(type1);
+            TypeInfo info2 = typeInfo(type2);
+            if ((info1.access & Opcodes.ACC_INTERFACE) != 0) {
                 if (typeImplements(type2, info2, type1)) {
                     return type1;
                 } else {
                     return "java/lang/Object";
                 }
             }
-            if ((info2.getAccess() & Opcodes.ACC_INTERFACE) != 0) {
+            if ((info2.access & Opcodes.ACC_INTERFACE) != 0) {
                 if (typeImplements(type1, info1, type2)) {
                     return type2;
                 } else {
@@ -107,7 +108,7 @@ public class SafeClassWriter extends ClassWriter {
      * @param type
      *            the internal name of a class or interface.
      * @param info
-     *            the ClassReader corresponding to 'type'.
+     *            the TypeInfo corresponding to 'type'.
      * @return a StringBuilder containing the ancestor classes of 'type',
      *         separated by ';'. The returned string has the following format:
      *         ";type1;type2 ... ;typeN", where type1 is 'type', and typeN is a
@@ -117,12 +118,12 @@ public class SafeClassWriter extends ClassWriter {
      *             if the bytecode of 'type' or of some of its ancestor class
      *             cannot be loaded.
      */
-    private StringBuilder typeAncestors(String type, ClassReader info)
+    private StringBuilder typeAncestors(String type, TypeInfo info)
             throws IOException {
         StringBuilder b = new StringBuilder();
         while (!"java/lang/Object".equals(type)) {
             b.append(';').append(type);
-            type = info.getSuperName();
+            type = info.superName;
             info = typeInfo(type);
         }
         return b;
@@ -134,7 +135,7 @@ public class SafeClassWriter extends ClassWriter {
      * @param type
      *            the internal name of a class or interface.
      * @param info
-     *            the ClassReader corresponding to 'type'.
+     *            the TypeInfo corresponding to 'type'.
      * @param itf
      *            the internal name of a interface.
      * @return true if 'type' implements directly or indirectly 'itf'
@@ -142,10 +143,10 @@ public class SafeClassWriter extends ClassWriter {
      *             if the bytecode of 'type' or of some of its ancestor class
      *             cannot be loaded.
      */
-    private boolean typeImplements(String type, ClassReader info, String itf)
+    private boolean typeImplements(String type, TypeInfo info, String itf)
             throws IOException {
         while (!"java/lang/Object".equals(type)) {
-            String[] itfs = info.getInterfaces();
+            String[] itfs = info.interfaces;
             for (int i = 0; i < itfs.length; ++i) {
                 if (itfs[i].equals(itf)) {
                     return true;
@@ -156,32 +157,23 @@ public class SafeClassWriter extends ClassWriter {
                     return true;
                 }
             }
-            type = info.getSuperName();
+            type = info.superName;
             info = typeInfo(type);
         }
         return false;
     }
 
     /**
-     * Returns a ClassReader corresponding to the given class or interface.
+     * Returns the hierarchy information of the given class or interface.
      * 
      * @param type
      *            the internal name of a class or interface.
-     * @return the ClassReader corresponding to 'type'.
+     * @return the TypeInfo corresponding to 'type'.
      * @throws IOException
      *             if the bytecode of 'type' cannot be loaded.
      */
-    private ClassReader typeInfo(final String type) throws IOException {
-        String resource = type + ".class";
-        InputStream is = loader.getResourceAsStream(resource);
-        if (is == null) {
-            throw new IOException("Cannot create ClassReader for type " + type);
-        }
-        try {
-            return new ClassReader(is);
-        } finally {
-            is.close();
-        }
+    private TypeInfo typeInfo(final String type) throws IOException {
+        return ClassHierarchyCache.instance.get(loader, type);
     }
 }
 
@@ -5,14 +5,29 @@ import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 public class SnoopInstructionClassAdapter extends ClassVisitor {
   private final String className;
+  private final boolean canAddMembers;
   private String superName;
+  private InlineCounters inlineCounters;
+  private final List<ProbeTable.Probe> probes = new ArrayList<>();
 
   public SnoopInstructionClassAdapter(ClassVisitor cv, String className) {
+    this(cv, className, false);
+  }
+
+  /**
+   * @param canAddMembers whether fields and methods may be added to the class, which is not
+   *                      the case when retransforming a class that has already been loaded
+   */
+  public SnoopInstructionClassAdapter(ClassVisitor cv, String className, boolean canAddMembers) {
     super(Opcodes.ASM5, cv);
     this.className = className;
+    this.canAddMembers = canAddMembers;
   }
 
   @Override
@@ -24,6 +39,10 @@ public class SnoopInstructionClassAdapter extends ClassVisitor {
                     String[] interfaces) {
     assert name.equals(this.className);
     this.superName = superName;
+    // Interfaces cannot have the private static members that counter arrays need
+    if (Config.instance.inlineCounters && canAddMembers && (access & Opcodes.ACC_INTERFACE) == 0) {
+      this.inlineCounters = new InlineCounters(className, GlobalStateForInstrumentation.instance);
+    }
     cv.visit(version, access, name, signature, superName, interfaces);
   }
 
@@ -33,8 +52,25 @@ public class SnoopInstructionClassAdapter extends ClassVisitor {
     MethodVisitor mv = cv.visitMethod(access, name, desc, signature, exceptions);
     if (mv != null) {
       return new SnoopInstructionMethodAdapter(mv, className, name, desc, superName,
-          GlobalStateForInstrumentation.instance);
+          GlobalStateForInstrumentation.instance, inlineCounters, probes);
     }
     return null;
   }
+
+  @Override
+  public void visitEnd() {
+    if (inlineCounters != null) {
+      // Probes were numbered by counter slot until now
+      inlineCounters.addMembers(cv);
+      for (int i = 0; i < probes.size(); i++) {
+        probes.set(i, probes.get(i).withIid(inlineCounters.keyOf(probes.get(i).iid)));
+      }
+    }
+    cv.visitEnd();
+  }
+
+  /** Returns the coverage probes of the class, which are only complete once it has been visited. */
+  List<ProbeTable.Probe> getProbes() {
+    return probes;
+  }
 }
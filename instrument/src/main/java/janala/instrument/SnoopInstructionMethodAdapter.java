@@ -6,6 +6,7 @@ import org.objectweb.asm.Opcodes;
 
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 
 public class SnoopInstructionMethodAdapter extends MethodVisitor implements Opcodes {
   boolean isInit;
@@ -21,11 +22,33 @@ public class SnoopInstructionMethodAdapter extends MethodVisitor implements Opco
   private final String superName;
 
   private final GlobalStateForInstrumentation instrumentationState;
+  private final InlineCounters inlineCounters; // Null unless this class counts coverage in place
+  private int probeOrdinal = 0; // Position of the next probe within this method, for stable iids
+  private final List<ProbeTable.Probe> probes; // Where coverage probes are recorded, if anywhere
+  private int enterProbe = -1; // Index in probes of the method-entry probe, until its line is known
 
   public SnoopInstructionMethodAdapter(MethodVisitor mv, String className,
       String methodName, String descriptor, String superName,
       GlobalStateForInstrumentation instrumentationState) {
+    this(mv, className, methodName, descriptor, superName, instrumentationState, null);
+  }
+
+  public SnoopInstructionMethodAdapter(MethodVisitor mv, String className,
+      String methodName, String descriptor, String superName,
+      GlobalStateForInstrumentation instrumentationState, InlineCounters inlineCounters) {
+    this(mv, className, methodName, descriptor, superName, instrumentationState, inlineCounters, null);
+  }
+
+  /**
+   * @param probes a list to add the coverage probes of the method to, or null
+   */
+  public SnoopInstructionMethodAdapter(MethodVisitor mv, String className,
+      String methodName, String descriptor, String superName,
+      GlobalStateForInstrumentation instrumentationState, InlineCounters inlineCounters,
+      List<ProbeTable.Probe> probes) {
     super(ASM5, mv);
+    this.inlineCounters = inlineCounters;
+    this.probes = probes;
     this.isInit = methodName.equals("<init>");
     this.isSuperInitCalled = false;
     this.className = className;
@@ -38,6 +61,37 @@ public class SnoopInstructionMethodAdapter extends MethodVisitor implements Opco
   }
 
 
+  /** Allocates <tt>width</tt> consecutive iids (or, with inline counters, counter slots) for
+   * the next probe, and returns the first. */
+  private int newIid(int width) {
+    int stableId = instrumentationState.isStable()
+        ? instrumentationState.stableId(className, methodName, descriptor, probeOrdinal++, width)
+        : -1;
+    if (inlineCounters != null) {
+      return inlineCounters.newSlots(width, stableId);
+    }
+    if (instrumentationState.isStable()) {
+      return stableId;
+    }
+    return instrumentationState.incAndGetIds(width);
+  }
+
+  /** Records where a coverage probe is, for describing its keys later. */
+  private void addProbe(int iid, int width) {
+    if (probes != null) {
+      probes.add(new ProbeTable.Probe(iid, width, className, methodName, lastLineNumber));
+    }
+  }
+
+  /** Pushes the iid of a probe allocated by {@link #newIid}. */
+  private void addIidInsn(MethodVisitor mv, int iid) {
+    if (inlineCounters != null) {
+      inlineCounters.addIid(mv, iid);
+    } else {
+      addBipushInsn(mv, iid);
+    }
+  }
+
   /** Push a value onto the stack. */
   private static void addBipushInsn(MethodVisitor mv, int val) {
     Utils.addBipushInsn(mv, val);
@@ -48,7 +102,7 @@ public class SnoopInstructionMethodAdapter extends MethodVisitor implements Opco
     Utils.addValueReadInsn(mv, desc, methodNamePrefix);
   }
   private void addInsn(MethodVisitor mv, String insn, int opcode) {
-    addBipushInsn(mv, instrumentationState.incAndGetId());
+    addIidInsn(mv, newIid(1));
     addBipushInsn(mv, lastLineNumber);
     mv.visitMethodInsn(INVOKESTATIC, Config.instance.analysisClass, insn, "(II)V", false);
 
@@ -84,12 +138,12 @@ public class SnoopInstructionMethodAdapter extends MethodVisitor implements Opco
         isSuperInitCalled = true;
 
         // Call <init>
-        mv.visitMethodInsn(opcode, owner, name, desc, itf);
+        addCallInsn(opcode, owner, name, desc, itf);
 
       } else {
         // Call to <init> but not a super() or this(). Must have occurred after a NEW.
         //addMethodWithTryCatch(opcode, owner, name, desc, itf);
-        mv.visitMethodInsn(opcode, owner, name, desc, itf);
+        addCallInsn(opcode, owner, name, desc, itf);
 
         // This is an outer constructor call, so reduce the NEW stack
         if (isInit) {
@@ -99,14 +153,43 @@ public class SnoopInstructionMethodAdapter extends MethodVisitor implements Opco
       }
     }
     else{
+      addCallInsn(opcode, owner, name, desc, itf);
+    }
+  }
+
+  /**
+   * Emits a method call, surrounded by call-site probes if execution indexing needs them.
+   *
+   * <p>The same iid is passed to LOGCALL before the call and to LOGRETURN after it, so
+   * that the call stack can be unwound to the right frame even if an exception skipped
+   * some LOGRETURNs deeper down.</p>
+   */
+  private void addCallInsn(int opcode, String owner, String name, String desc, boolean itf) {
+    if (!Config.instance.instrumentCalls) {
       mv.visitMethodInsn(opcode, owner, name, desc, itf);
+      return;
     }
+    int iid = newIid(1);
+    addIidInsn(mv, iid);
+    mv.visitMethodInsn(INVOKESTATIC, Config.instance.analysisClass, "LOGCALL", "(I)V", false);
+    mv.visitMethodInsn(opcode, owner, name, desc, itf);
+    addIidInsn(mv, iid);
+    mv.visitMethodInsn(INVOKESTATIC, Config.instance.analysisClass, "LOGRETURN", "(I)V", false);
   }
 
   @Override
   public void visitCode() {
     super.visitCode();
-    int iid = instrumentationState.incAndGetId();
+    int iid = newIid(1);
+    if (probes != null) {
+      // The method's first line has not been visited yet
+      enterProbe = probes.size();
+      addProbe(iid, 1);
+    }
+    if (inlineCounters != null) {
+      inlineCounters.addEnterProbe(mv, iid);
+      return;
+    }
     addBipushInsn(mv, iid);
     mv.visitInsn(ICONST_0);
     mv.visitMethodInsn(INVOKESTATIC, Config.instance.analysisClass, "LOGJUMP", "(II)V", false);
@@ -114,8 +197,8 @@ public class SnoopInstructionMethodAdapter extends MethodVisitor implements Opco
 
   private void addConditionalJumpInstrumentation(int opcode, Label finalBranchTarget,
                                                  String instMethodName, String instMethodDesc) {
-    int iid = instrumentationState.incAndGetId();
-    instrumentationState.incAndGetId(); //reserver another counter for the other side of this branch
+    int iid = newIid(2); //reserve another counter for the other side of this branch
+    addProbe(iid, 2);
 
     Label intermediateBranchTarget = new Label();
     Label fallthrough = new Label();
@@ -129,17 +212,25 @@ public class SnoopInstructionMethodAdapter extends MethodVisitor implements Opco
     mv.visitLabel(intermediateBranchTarget);
     //addValueReadInsn(mv, "Z", "GETVALUE_"); // Send value to logger (Z for boolean)
     //mv.visitInsn(POP);
-    addBipushInsn(mv, iid);
-    //addBipushInsn(mv, lastLineNumber);
-    addBipushInsn(mv, 1); // Mark branch as taken
-    //addBipushInsn(mv, getLabelNum(finalBranchTarget));
-    mv.visitMethodInsn(INVOKESTATIC, Config.instance.analysisClass, instMethodName, instMethodDesc, false);
+    if (inlineCounters != null) {
+      inlineCounters.addIncrement(mv, iid + 1); // Mark branch as taken
+    } else {
+      addBipushInsn(mv, iid);
+      //addBipushInsn(mv, lastLineNumber);
+      addBipushInsn(mv, 1); // Mark branch as taken
+      //addBipushInsn(mv, getLabelNum(finalBranchTarget));
+      mv.visitMethodInsn(INVOKESTATIC, Config.instance.analysisClass, instMethodName, instMethodDesc, false);
+    }
     mv.visitJumpInsn(GOTO, finalBranchTarget); // Go to actual branch target
 
     // Now instrument the fall through
     mv.visitLabel(fallthrough);
     //addValueReadInsn(mv, "Z", "GETVALUE_"); // Send value to logger (Z for boolean)
     //mv.visitInsn(POP);
+    if (inlineCounters != null) {
+      inlineCounters.addIncrement(mv, iid); // Mark branch as not taken
+      return;
+    }
     addBipushInsn(mv, iid);
     addBipushInsn(mv, 0); // Mark branch as not taken
     //addBipushInsn(mv, lastLineNumber);
@@ -193,6 +284,11 @@ public class SnoopInstructionMethodAdapter extends MethodVisitor implements Opco
   @Override
   public void visitLineNumber(int lineNumber, Label label) {
     lastLineNumber = lineNumber;
+    if (enterProbe >= 0) {
+      ProbeTable.Probe probe = probes.get(enterProbe);
+      probes.set(enterProbe, new ProbeTable.Probe(probe.iid, probe.width, className, methodName, lineNumber));
+      enterProbe = -1;
+    }
     mv.visitLineNumber(lineNumber, label);
   }
 
@@ -204,52 +300,59 @@ public class SnoopInstructionMethodAdapter extends MethodVisitor implements Opco
 
   @Override
   public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
-    // Save operand value
-    //addValueReadInsn(mv, "I", "GETVALUE_");
-    mv.visitInsn(Opcodes.DUP);
-    // Log switch instruction
-    addBipushInsn(mv, instrumentationState.incAndGetId());
-    addBipushInsn(mv, min);
-    addBipushInsn(mv, max);
-    addBipushInsn(mv, getLabelNum(dflt));
-
-    for (int i = 0; i < labels.length; i++) {
-      //create a coverage probe for each of the arms, we'll refer to it by offset
-      instrumentationState.incAndGetId();
-    }
-
-
-    //create a coverage probe for the default case
-    instrumentationState.incAndGetId();
-    mv.visitMethodInsn(INVOKESTATIC, Config.instance.analysisClass, "LOGTABLESWITCH", "(IIIII)V", false);
-    mv.visitTableSwitchInsn(min, max, dflt, labels);
+    // A coverage probe for each of the arms and the default case, which we'll refer to by offset
+    int iid = newIid(labels.length + 2);
+    addProbe(iid, labels.length + 2);
+    Label[] armProbes = newLabels(labels.length);
+    Label dfltProbe = new Label();
+    mv.visitTableSwitchInsn(min, max, dfltProbe, armProbes);
+    addArmProbes(iid, armProbes, labels, dfltProbe, dflt);
   }
 
   @Override
   public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
-    // Save operand value
-    mv.visitInsn(Opcodes.DUP);
-
-    // Log switch instruction
-    addBipushInsn(mv, instrumentationState.incAndGetId());
-    addBipushInsn(mv, getLabelNum(dflt));
-
-    addBipushInsn(mv, keys.length);
-    mv.visitIntInsn(NEWARRAY, T_INT);
-    for (int i = 0; i < keys.length; i++) {
-      mv.visitInsn(DUP);
-      addBipushInsn(mv, i);
-      addBipushInsn(mv, keys[i]);
-      mv.visitInsn(IASTORE);
-      //create a coverage probe for each of the arms, we'll refer to it by offset
-      instrumentationState.incAndGetId();
+    // A coverage probe for each of the arms and the default case, which we'll refer to by offset
+    int iid = newIid(keys.length + 2);
+    addProbe(iid, keys.length + 2);
+    Label[] armProbes = newLabels(labels.length);
+    Label dfltProbe = new Label();
+    mv.visitLookupSwitchInsn(dfltProbe, keys, armProbes);
+    addArmProbes(iid, armProbes, labels, dfltProbe, dflt);
+  }
+
+  private static Label[] newLabels(int n) {
+    Label[] labels = new Label[n];
+    for (int i = 0; i < n; i++) {
+      labels[i] = new Label();
     }
+    return labels;
+  }
 
+  /**
+   * Emits the probes that a switch jumps to instead of its real targets. Each one logs its
+   * arm (1..n for the cases, n+1 for the default) and goes on to the case it stands for, so
+   * that the switch itself still picks the arm, and nothing is allocated or searched at run
+   * time. Every case gets its own probe, even if several share a target.
+   */
+  private void addArmProbes(int iid, Label[] armProbes, Label[] labels, Label dfltProbe, Label dflt) {
+    for (int i = 0; i < labels.length; i++) {
+      mv.visitLabel(armProbes[i]);
+      addArmProbe(iid, i + 1);
+      mv.visitJumpInsn(GOTO, labels[i]);
+    }
+    mv.visitLabel(dfltProbe);
+    addArmProbe(iid, labels.length + 1);
+    mv.visitJumpInsn(GOTO, dflt);
+  }
 
-    //create a coverage probe for the default case
-    instrumentationState.incAndGetId();
-    mv.visitMethodInsn(INVOKESTATIC, Config.instance.analysisClass, "LOGLOOKUPSWITCH", "(III[I)V", false);
-    mv.visitLookupSwitchInsn(dflt, keys, labels);
+  private void addArmProbe(int iid, int arm) {
+    if (inlineCounters != null) {
+      inlineCounters.addIncrement(mv, iid + arm);
+      return;
+    }
+    addBipushInsn(mv, iid);
+    addBipushInsn(mv, arm);
+    mv.visitMethodInsn(INVOKESTATIC, Config.instance.analysisClass, "LOGJUMP", "(II)V", false);
   }
 
   @Override
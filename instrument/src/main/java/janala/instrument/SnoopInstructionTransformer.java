@@ -6,23 +6,36 @@ import java.io.IOException;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.lang.instrument.Instrumentation;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.ProtectionDomain;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.columbia.cs.psl.vmvm.runtime.PreMain;
 import edu.columbia.cs.psl.vmvm.runtime.VMVMClassFileTransformer;
 import edu.columbia.cs.psl.vmvm.runtime.inst.Utils;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 
+/**
+ * Instruments classes as they are loaded. Parallel-capable class loaders may call
+ * {@link #transform} from several threads at once; nothing here is locked unless
+ * <tt>janala.serialTransform</tt> is set.
+ */
 @SuppressWarnings("unused") // Registered via -javaagent
 public class SnoopInstructionTransformer implements ClassFileTransformer {
   private static final String instDir = Config.instance.instrumentationCacheDir;
   private static final boolean verbose = Config.instance.verbose;
+  private static final boolean serialTransform = Config.instance.serialTransform;
+  private static final ProbeTable probeTable = GlobalStateForInstrumentation.instance.getProbeTable();
+  private static final byte[] configFingerprint = Config.instance.fingerprint().getBytes(StandardCharsets.UTF_8);
 
   private static String[] banned = {"[", "java/lang", "org/eclipse/collections", "janala", "org/objectweb/asm", "sun", "jdk", "java/util/function"};
   private static String[] excludes = Config.instance.excludeInst;;
@@ -36,26 +49,69 @@ public class SnoopInstructionTransformer implements ClassFileTransformer {
   public static void premain(String agentArgs, Instrumentation inst) throws ClassNotFoundException {
 
     preloadClasses();
+    // Classes that were instrumented ahead of time keep their iids
+    OfflineInstrumenter.reserveIds(System.getProperty("java.class.path"));
 
     inst.addTransformer(new SnoopInstructionTransformer(), true);
     if (inst.isRetransformClassesSupported()) {
-      for (Class clazz : inst.getAllLoadedClasses()) {
-        try {
-          String cname = clazz.getName().replace(".","/");
-          if (shouldExclude(cname) == false) {
-            if (inst.isModifiableClass(clazz)) {
-              inst.retransformClasses(clazz);
-            } else {
-              println("[JANALA] Could not instrument " + clazz + " :-(");
-            }
-          }
-        } catch (Exception e){
-          if (verbose) {
+      List<Class<?>> toRetransform = new ArrayList<>();
+      for (Class<?> clazz : inst.getAllLoadedClasses()) {
+        String cname = clazz.getName().replace(".","/");
+        if (shouldExclude(cname) == false) {
+          if (inst.isModifiableClass(clazz)) {
+            toRetransform.add(clazz);
+          } else {
             println("[JANALA] Could not instrument " + clazz + " :-(");
-            e.printStackTrace();
           }
         }
       }
+      retransformAll(inst, toRetransform);
+    }
+  }
+
+  /** Retransforms classes on janala.retransformThreads threads; the JVM only
+   * serializes the final redefinition, not our instrumentation of each class. */
+  private static void retransformAll(final Instrumentation inst, final List<Class<?>> classes) {
+    int numThreads = Math.min(Config.instance.retransformThreads, classes.size());
+    if (numThreads <= 1) {
+      for (Class<?> clazz : classes) {
+        retransform(inst, clazz);
+      }
+      return;
+    }
+    final AtomicInteger next = new AtomicInteger();
+    Thread[] workers = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      workers[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          int idx;
+          while ((idx = next.getAndIncrement()) < classes.size()) {
+            retransform(inst, classes.get(idx));
+          }
+        }
+      }, "JANALA retransform " + i);
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private static void retransform(Instrumentation inst, Class<?> clazz) {
+    try {
+      inst.retransformClasses(clazz);
+    } catch (Exception e){
+      if (verbose) {
+        println("[JANALA] Could not instrument " + clazz + " :-(");
+        e.printStackTrace();
+      }
     }
   }
 
@@ -71,7 +127,7 @@ public class SnoopInstructionTransformer implements ClassFileTransformer {
   }
 
   /** packages that should be exluded from the instrumentation */
-  private static boolean shouldExclude(String cname) {
+  static boolean shouldExclude(String cname) {
     if(cname == null)
       return true;
     for (String e : banned) {
@@ -93,10 +149,18 @@ public class SnoopInstructionTransformer implements ClassFileTransformer {
   }
 
   @Override
-  synchronized public byte[] transform(ClassLoader loader, String cname, Class<?> classBeingRedefined,
+  public byte[] transform(ClassLoader loader, String cname, Class<?> classBeingRedefined,
       ProtectionDomain d, byte[] cbuf)
     throws IllegalClassFormatException {
+    if (serialTransform) {
+      synchronized (this) {
+        return instrument(loader, cname, classBeingRedefined, cbuf);
+      }
+    }
+    return instrument(loader, cname, classBeingRedefined, cbuf);
+  }
 
+  private byte[] instrument(ClassLoader loader, String cname, Class<?> classBeingRedefined, byte[] cbuf) {
     if(cname == null) {
       // Do not instrument lambdas
       return null;
@@ -104,41 +168,39 @@ public class SnoopInstructionTransformer implements ClassFileTransformer {
     boolean toInstrument = !shouldExclude(cname);
 
     if (toInstrument) {
-      print("[JANALA] ");
-      if (classBeingRedefined != null) {
-        print("* ");
-      }
-      print("Instrumenting: " + cname + "... ");
+      // Other threads may be instrumenting too, so only ever log whole lines
+      String log = "[JANALA] " + (classBeingRedefined != null ? "* " : "") + "Instrumenting: " + cname + "... ";
       GlobalStateForInstrumentation.instance.setCid(cname.hashCode());
 
+      // Cached classes are named after a hash of their original bytes and of the config, so
+      // finding the file is all the validation that is needed
+      File cachedFile = null;
+      File probesFile = null;
       if (instDir != null) {
-        File cachedFile = new File(instDir + "/" + cname + ".instrumented.class");
-        File referenceFile = new File(instDir + "/" + cname + ".original.class");
-        if (cachedFile.exists() && referenceFile.exists()) {
+        String cachedName = instDir + "/" + cname + "." + cacheKey(cbuf, classBeingRedefined == null);
+        cachedFile = new File(cachedName + ".instrumented.class");
+        // The probe table needs the probes of cached classes too; classes cached without them are instrumented again
+        probesFile = probeTable.isEnabled() ? new File(cachedName + ".probes") : null;
+        if (cachedFile.exists() && (probesFile == null || probesFile.exists())) {
           try {
-            byte[] origBytes = Files.readAllBytes(referenceFile.toPath());
-            if (Arrays.equals(cbuf, origBytes)) {
-              byte[] instBytes = Files.readAllBytes(cachedFile.toPath());
-              println(" Found in disk-cache!");
-              return instBytes;
+            byte[] instBytes = Files.readAllBytes(cachedFile.toPath());
+            if (probesFile != null) {
+              probeTable.addAll(ProbeTable.fromText(
+                  new String(Files.readAllBytes(probesFile.toPath()), StandardCharsets.UTF_8)));
             }
-          } catch (IOException e) {
-            print(" <cache error> ");
+            println(log + " Found in disk-cache!");
+            return instBytes;
+          } catch (IOException | IllegalArgumentException e) {
+            log += " <cache error> ";
           }
         }
       }
 
       byte[] ret = cbuf;
+      List<ProbeTable.Probe> probes = new ArrayList<>();
       try {
-
-        ClassReader cr = new ClassReader(cbuf);
-        ClassWriter cw = new SafeClassWriter(cr,  loader,
-                ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
-        ClassVisitor cv = new SnoopInstructionClassAdapter(cw, cname);
-
-        cr.accept(cv, 0);
-
-        ret = cw.toByteArray();
+        // A class that is already loaded cannot be given new fields for inline counters
+        ret = instrumentBytes(loader, cname, cbuf, classBeingRedefined == null, probes);
       } catch (Throwable e) {
         System.err.println("\n[JANALA] Error instrumenting class " + cname);
         if (verbose) {
@@ -147,20 +209,17 @@ public class SnoopInstructionTransformer implements ClassFileTransformer {
         return null;
       }
 
-      println("Done!");
+      println(log + "Done!");
 
-      if (instDir != null) {
+      if (cachedFile != null) {
         try {
-          File cachedFile = new File(instDir + "/" + cname + ".instrumented.class");
-          File referenceFile = new File(instDir + "/" + cname + ".original.class");
           File parent = new File(cachedFile.getParent());
           parent.mkdirs();
-          try(FileOutputStream out = new FileOutputStream(cachedFile)) {
-            out.write(ret);
-          }
-          try(FileOutputStream out = new FileOutputStream(referenceFile)) {
-            out.write(cbuf);
+          // Before the class, so that a cached class always has its probes
+          if (probesFile != null) {
+            writeAtomically(probesFile, ProbeTable.toText(probes).getBytes(StandardCharsets.UTF_8));
           }
+          writeAtomically(cachedFile, ret);
         } catch(Exception e) {
           e.printStackTrace();
         }
@@ -171,10 +230,47 @@ public class SnoopInstructionTransformer implements ClassFileTransformer {
     }
   }
 
-  private static void print(String str) {
-    if (verbose) {
-      System.out.print(str);
+  /** Instruments the bytes of a class; <tt>loader</tt> is only used to look up its ancestors. */
+  static byte[] instrumentBytes(ClassLoader loader, String cname, byte[] cbuf, boolean canAddMembers) {
+    return instrumentBytes(loader, cname, cbuf, canAddMembers, new ArrayList<ProbeTable.Probe>());
+  }
+
+  /** Instruments the bytes of a class, adding its coverage probes to <tt>probes</tt> and to the probe table. */
+  static byte[] instrumentBytes(ClassLoader loader, String cname, byte[] cbuf, boolean canAddMembers,
+                                List<ProbeTable.Probe> probes) {
+    ClassReader cr = new ClassReader(cbuf);
+    ClassWriter cw = new SafeClassWriter(cr,  loader,
+            ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+    SnoopInstructionClassAdapter cv = new SnoopInstructionClassAdapter(cw, cname, canAddMembers);
+
+    cr.accept(cv, 0);
+
+    byte[] instrumented = cw.toByteArray();
+    probes.addAll(cv.getProbes());
+    probeTable.addAll(cv.getProbes());
+    return instrumented;
+  }
+
+  /** Returns a hex SHA-1 of the config fingerprint and the original bytes of a class. */
+  private static String cacheKey(byte[] cbuf, boolean canAddMembers) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(configFingerprint);
+      digest.update((byte) (canAddMembers ? 1 : 0));
+      digest.update(cbuf);
+      return OfflineInstrumenter.toHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Writes a file so that a thread instrumenting the same class never reads half of it. */
+  private static void writeAtomically(File file, byte[] bytes) throws IOException {
+    File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+    try (FileOutputStream out = new FileOutputStream(tmp)) {
+      out.write(bytes);
     }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
   }
 
   private static void println(String line) {
@@ -32,14 +32,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.time.Duration;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 
 import edu.berkeley.cs.jqf.fuzz.ei.ZestGuidance;
 import edu.berkeley.cs.jqf.fuzz.guidance.Guidance;
 import edu.berkeley.cs.jqf.fuzz.junit.GuidedFuzzing;
 import edu.berkeley.cs.jqf.instrument.InstrumentingClassLoader;
+import janala.instrument.OfflineInstrumenter;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -142,6 +146,28 @@ public class FuzzGoal extends AbstractMojo {
     @Parameter(property="out")
     private String outputDirectory;
 
+    /**
+     * A jar of pre-instrumented classes, as written by <tt>bin/jqf-instrument</tt>
+     * (or <tt>janala.instrument.OfflineInstrumenter</tt>) from the test classpath.
+     *
+     * <p>If the jar is still fresh, i.e. it was built from exactly the current
+     * test classpath with the same instrumentation settings, classes are loaded
+     * from it instead of being instrumented again. Otherwise it is ignored.</p>
+     */
+    @Parameter(property="instrumentedJar")
+    private File instrumentedJar;
+
+    /**
+     * Whether to carry on from the checkpoint left in the output
+     * directory by an earlier run, instead of starting afresh.
+     *
+     * <p>Checkpoints are only written when classes are instrumented
+     * with stable ids (<tt>-Djanala.stableIds=true</tt>). Without a
+     * checkpoint, a new campaign is started.</p>
+     */
+    @Parameter(property="resume")
+    private boolean resume;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         ClassLoader loader;
@@ -174,9 +200,27 @@ public class FuzzGoal extends AbstractMojo {
         try {
             List<String> classpathElements = project.getTestClasspathElements();
 
-            loader = new InstrumentingClassLoader(
-                    classpathElements.toArray(new String[0]),
-                    getClass().getClassLoader());
+            if (instrumentedJar != null && OfflineInstrumenter.isFresh(instrumentedJar,
+                    String.join(File.pathSeparator, classpathElements))) {
+                log.info("Using pre-instrumented classes from " + instrumentedJar);
+                // Without the agent, nothing else tells this JVM which iids the jar's classes use
+                OfflineInstrumenter.reserveIds(instrumentedJar.getPath());
+                List<String> paths = new ArrayList<>();
+                paths.add(instrumentedJar.getPath());
+                paths.addAll(classpathElements);
+                URL[] urls = new URL[paths.size()];
+                for (int i = 0; i < urls.length; i++) {
+                    urls[i] = new File(paths.get(i)).toURI().toURL();
+                }
+                loader = new URLClassLoader(urls, getClass().getClassLoader());
+            } else {
+                if (instrumentedJar != null) {
+                    log.warn(instrumentedJar + " does not match the test classpath; instrumenting classes as they load");
+                }
+                loader = new InstrumentingClassLoader(
+                        classpathElements.toArray(new String[0]),
+                        getClass().getClassLoader());
+            }
         } catch (DependencyResolutionRequiredException|MalformedURLException e) {
             throw new MojoExecutionException("Could not get project classpath", e);
         }
@@ -184,7 +228,7 @@ public class FuzzGoal extends AbstractMojo {
         try {
             File resultsDir = new File(target, outputDirectory);
             String targetName = testClassName + "#" + testMethod;
-            guidance = new ZestGuidance(targetName, duration, 1000, resultsDir);
+            guidance = new ZestGuidance(targetName, duration, 1000, resultsDir, resume);
         } catch (IOException e) {
             throw new MojoExecutionException("Could not create output directory", e);
         }
@@ -0,0 +1,46 @@
+#!/bin/bash
+
+# Measures Zest throughput with execution indexing on and off, on the XML (Maven model reader)
+# and JavaScript (Rhino compiler) examples. Requires the examples module to be built.
+#
+# Usage: ei_throughput.sh [SECONDS_PER_RUN]
+#
+# Results (one 60-second run per row on one CPU, JDK 17 with ASM 9.5 standing in for the
+# pinned ASM; execs/sec with indexing off -> on):
+#   maven.ModelReaderTest    980.4 -> 219.2
+#   rhino.CompilerTest       304.1 -> 115.9
+# Before the call-site probes, runs with indexing on logged no progress at all (plot_data held
+# only its header), so there is no earlier figure to compare against.
+
+# Figure out script absolute path
+pushd `dirname $0` > /dev/null
+SCRIPT_DIR=`pwd`
+popd > /dev/null
+
+ROOT_DIR=`dirname $SCRIPT_DIR`
+
+duration="${1:-60}"
+
+export CLASSPATH="$ROOT_DIR/examples/target/classes/:$ROOT_DIR/examples/target/test-classes/:$ROOT_DIR/examples/target/dependency/*"
+
+benchmarks="maven.ModelReaderTest:testWithGenerator rhino.CompilerTest:testWithGenerator"
+
+printf "%-40s %-8s %12s %12s\n" "benchmark" "ei" "executions" "execs/sec"
+for benchmark in $benchmarks; do
+  class="edu.berkeley.cs.jqf.examples.${benchmark%%:*}"
+  method="${benchmark##*:}"
+  for ei in false true; do
+    out_dir=$(mktemp -d)
+    JVM_OPTS="-Dtime=$duration -Djqf.ei.QUIET_MODE=true -Djqf.ei.ENABLE_EXECUTION_INDEXING=$ei" \
+      "$ROOT_DIR/bin/jqf-ei" "$class" "$method" "$out_dir" > /dev/null 2>&1
+    # Columns 1 and 12 of plot_data are unix_time and total_inputs
+    grep -v '^#' "$out_dir/plot_data" | awk -F', *' -v name="${benchmark}" -v ei="$ei" '
+      NR == 1 { start = $1 }
+      { end = $1; execs = $12 }
+      END {
+        secs = end - start
+        printf "%-40s %-8s %12d %12.1f\n", name, ei, execs, (secs > 0 ? execs / secs : 0)
+      }'
+    rm -rf "$out_dir"
+  done
+done
@@ -0,0 +1,68 @@
+#!/bin/bash
+
+# Compares coverage probes that call SingleSnoop.LOGJUMP with inline per-class counter arrays
+# (janala.inlineCounters): Zest throughput on the Maven, Rhino and Closure examples, and the
+# size of the Rhino and Closure jars' classes once instrumented. Requires the examples module
+# to be built, with its dependencies copied to examples/target/dependency.
+#
+# Usage: inline_counters_benchmark.sh [SECONDS_PER_RUN]
+#
+# Results (one 60-second run per row on one CPU, JDK 17 with ASM 9.5 standing in for the
+# pinned ASM):
+#   growth of class bytes       LOGJUMP    inline
+#     closure-compiler          +11.9%     +18.9%
+#     rhino                     +20.3%     +30.1%
+#   execs/sec                   LOGJUMP    inline
+#     maven.ModelReaderTest      1099.4    2655.0
+#     rhino.CompilerTest          442.4     762.1
+#     closure.CompilerTest        183.9     337.2
+
+# Figure out script absolute path
+pushd `dirname $0` > /dev/null
+SCRIPT_DIR=`pwd`
+popd > /dev/null
+
+ROOT_DIR=`dirname $SCRIPT_DIR`
+DEP_DIR="$ROOT_DIR/examples/target/dependency"
+
+duration="${1:-60}"
+
+export CLASSPATH="$ROOT_DIR/examples/target/classes/:$ROOT_DIR/examples/target/test-classes/:$DEP_DIR/*"
+
+# Sum of the uncompressed sizes of the .class entries of a jar
+class_bytes() {
+  unzip -l "$1" '*.class' | tail -1 | awk '{print $1}'
+}
+
+echo "== Bytecode size =="
+out_dir=$(mktemp -d)
+for jar in "$DEP_DIR"/closure-compiler-v*.jar "$DEP_DIR"/rhino-*.jar; do
+  original=$(class_bytes "$jar")
+  for inline in false true; do
+    JVM_OPTS="-Djanala.inlineCounters=$inline -Djanala.excludes= -Djanala.includes=" \
+      "$ROOT_DIR/bin/jqf-instrument" -c "$jar" "$out_dir/out.jar" > /dev/null
+    instrumented=$(class_bytes "$out_dir/out.jar")
+    printf "%-40s inline=%-6s %12d -> %12d bytes (%+.1f%%)\n" "$(basename $jar)" "$inline" \
+      "$original" "$instrumented" $(awk -v i="$instrumented" -v o="$original" 'BEGIN { print 100 * (i - o) / o }')
+  done
+done
+
+echo "== Throughput =="
+benchmarks="maven.ModelReaderTest:testWithGenerator rhino.CompilerTest:testWithGenerator closure.CompilerTest:testWithGenerator"
+for benchmark in $benchmarks; do
+  class="edu.berkeley.cs.jqf.examples.${benchmark%%:*}"
+  method="${benchmark##*:}"
+  for inline in false true; do
+    JVM_OPTS="-Dtime=$duration -Djqf.ei.QUIET_MODE=true -Djanala.inlineCounters=$inline" \
+      "$ROOT_DIR/bin/jqf-ei" "$class" "$method" "$out_dir/fuzz" > /dev/null 2>&1
+    # Columns 1 and 12 of plot_data are unix_time and total_inputs
+    grep -v '^#' "$out_dir/fuzz/plot_data" | awk -F', *' -v name="$benchmark" -v inline="$inline" '
+      NR == 1 { start = $1 }
+      { end = $1; execs = $12 }
+      END {
+        secs = end - start
+        printf "%-40s inline=%-6s %12.1f execs/sec\n", name, inline, (secs > 0 ? execs / secs : 0)
+      }'
+  done
+done
+rm -rf "$out_dir"
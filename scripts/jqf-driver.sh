@@ -31,11 +31,6 @@ if [ -z "${CLASSPATH}" ]; then
   CLASSPATH="."
 fi
 
-# Java Agent config (can be turned off using env var)
-if [ -z "$JQF_DISABLE_INSTRUMENTATION" ]; then
-  JAVAAGENT="-javaagent:${INST_JAR}"
-fi
-
 # Run Java
 if [ -n "$JAVA_HOME" ]; then
     java="$JAVA_HOME"/bin/java
@@ -45,6 +40,18 @@ fi
 if [ -z "$JANALA_CONF_NAME" ]; then
   JANALA_CONF_NAME="janala.conf"
 fi
+
+# Java Agent config (can be turned off using env var). If JQF_INSTRUMENTED_JAR names a jar
+# made by bin/jqf-instrument from this same CLASSPATH and config, use it instead of the agent.
+if [ -z "$JQF_DISABLE_INSTRUMENTATION" ]; then
+  if [ -n "$JQF_INSTRUMENTED_JAR" ] && "$java" -cp "${INST_CLASSPATH}" \
+      -Djanala.conf="${SCRIPT_DIR}/${JANALA_CONF_NAME}" ${JVM_OPTS} \
+      janala.instrument.OfflineInstrumenter --check "$JQF_INSTRUMENTED_JAR" "$CLASSPATH"; then
+    CLASSPATH="${JQF_INSTRUMENTED_JAR}:${CLASSPATH}"
+  else
+    JAVAAGENT="-javaagent:${INST_JAR}"
+  fi
+fi
 "$java" -ea \
   -Xbootclasspath/a:"$INST_CLASSPATH" \
   ${JAVAAGENT} \
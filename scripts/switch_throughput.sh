@@ -0,0 +1,52 @@
+#!/bin/bash
+
+# Measures Zest throughput on lexer-heavy targets, whose tokenizers and class-file parsers run
+# large switch statements on every character or byte: Rhino and Closure compiling arbitrary
+# strings, and BCEL parsing class files from raw bytes. Run it against two builds of JQF to
+# compare the cost of switch instrumentation. Requires the examples module to be built.
+#
+# Usage: switch_throughput.sh [SECONDS_PER_RUN]
+#
+# Results (execs/sec in two 60-second runs per row, on one CPU with JDK 17 and ASM 9.5 standing
+# in for the pinned ASM; key array search -> probes at the switch targets):
+#   rhino   inline=false    1343, 1384 -> 1565, 1133
+#   rhino   inline=true     2234, 1852 -> 1668, 1783
+#   closure inline=false     298,  290 ->  301,  223
+#   closure inline=true      403,  425 ->  390,  385
+#   bcel    inline=false   38531, 47102 -> 34005, 41814
+#   bcel    inline=true    40485, 34859 -> 39135, 35437
+# No difference shows through the noise here. The quickcheck string generator of the first two
+# spends its first ~5 seconds building its code point tables, so keep runs well above that.
+
+# Figure out script absolute path
+pushd `dirname $0` > /dev/null
+SCRIPT_DIR=`pwd`
+popd > /dev/null
+
+ROOT_DIR=`dirname $SCRIPT_DIR`
+
+duration="${1:-60}"
+
+export CLASSPATH="$ROOT_DIR/examples/target/classes/:$ROOT_DIR/examples/target/test-classes/:$ROOT_DIR/examples/target/dependency/*"
+
+benchmarks="rhino.CompilerTest:testWithString closure.CompilerTest:testWithString bcel.ParserTest:testWithInputStream"
+
+printf "%-40s %-8s %12s %12s\n" "benchmark" "inline" "executions" "execs/sec"
+for benchmark in $benchmarks; do
+  class="edu.berkeley.cs.jqf.examples.${benchmark%%:*}"
+  method="${benchmark##*:}"
+  for inline in false true; do
+    out_dir=$(mktemp -d)
+    JVM_OPTS="-Dtime=$duration -Djqf.ei.QUIET_MODE=true -Djanala.inlineCounters=$inline" \
+      "$ROOT_DIR/bin/jqf-ei" "$class" "$method" "$out_dir" > /dev/null 2>&1
+    # Columns 1 and 12 of plot_data are unix_time and total_inputs
+    grep -v '^#' "$out_dir/plot_data" | awk -F', *' -v name="${benchmark}" -v inline="$inline" '
+      NR == 1 { start = $1 }
+      { end = $1; execs = $12 }
+      END {
+        secs = end - start
+        printf "%-40s %-8s %12d %12.1f\n", name, inline, execs, (secs > 0 ? execs / secs : 0)
+      }'
+    rm -rf "$out_dir"
+  done
+done